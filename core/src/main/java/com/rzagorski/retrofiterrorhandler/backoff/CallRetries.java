@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.backoff;
+
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+import com.rzagorski.retrofiterrorhandler.scheduler.PendingRetries;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryQueueFullException;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Retries of a single execution of the call, made the same way by every binding. It decides, whether
+ * the failed attempt is retried, counts the retries of the strategies, keeps the call within
+ * {@link PendingRetries} and the slots of {@link RetryScheduler}, and leaves to the {@link Binding}
+ * only the retry action of the strategy and the wait before the retry.
+ * <br>
+ * An error is retried, when the host does not fail for every call, the interceptor of the client did not
+ * retry it already and a strategy is applicable to it. Every applicable strategy counts the retry and
+ * the error is passed on, when one of them has no retries left. Otherwise the retry is made, when the first
+ * of their waits is over. An unsuccessful response, emitted without an error, is retried by the first strategy
+ * applicable to its code, which has retries left, and is emitted as it is otherwise.
+ * <br>
+ * The attempts of one execution never overlap, so {@link #onError(Throwable, Callback)} and
+ * {@link #onResponse(int, Object, Callback)} are never called at once. {@link #dispose()} can be called
+ * at any time, from any thread.
+ *
+ * @param <S> the backoff strategy of the binding
+ */
+public final class CallRetries<S> {
+    private final RetryAttempts<S, ? extends Exception> attempts;
+    private final Binding<S> binding;
+    private final HostHealth health;
+    private final int maxConsecutiveFailures;
+    private final PendingRetries pendingRetries;
+    private final RetryScheduler.Ticket ticket;
+    private final AtomicBoolean pending;
+    private volatile boolean disposed;
+    private volatile boolean exhausted;
+    private volatile Round round;
+
+    /**
+     * @param attempts               counters of the strategies, created for this execution of the call
+     * @param binding                the binding waiting for the retries
+     * @param health                 health of the host the call is made to, {@code null} when unknown
+     * @param maxConsecutiveFailures errors are not retried, when the host failed this many times in a row
+     * @param pendingRetries         the cap of the calls waiting for a retry, {@code null} when there is none
+     * @param ticket                 the ticket of the call, {@code null} when its retries are not scheduled
+     */
+    public CallRetries(RetryAttempts<S, ? extends Exception> attempts, Binding<S> binding, HostHealth health,
+                       int maxConsecutiveFailures, PendingRetries pendingRetries, RetryScheduler.Ticket ticket) {
+        this.attempts = attempts;
+        this.binding = binding;
+        this.health = health;
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+        this.pendingRetries = pendingRetries;
+        this.ticket = ticket;
+        this.pending = new AtomicBoolean();
+    }
+
+    /**
+     * Decides, whether the attempt, which failed with the error, is retried.
+     *
+     * @param error    the error of the attempt
+     * @param callback told to make the retry, when it is due, or to pass the error on
+     */
+    public void onError(Throwable error, Callback callback) {
+        exhausted = false;
+        if (ticket != null) {
+            ticket.attemptFinished();
+        }
+        int[] indexes;
+        try {
+            if (health != null && health.getConsecutiveFailures() >= maxConsecutiveFailures) {
+                //the host keeps failing for every call, retrying would only add to its load
+                callback.giveUp(error);
+                return;
+            }
+            if (binding.hasRetried(error)) {
+                callback.giveUp(error);
+                return;
+            }
+            indexes = attempts.applicableStrategies(error);
+        } catch (Exception e) {
+            callback.giveUp(e);
+            return;
+        }
+        if (indexes.length == 0) {
+            exhausted = true;
+            callback.giveUp(error);
+            return;
+        }
+        if (!enter()) {
+            callback.giveUp(new RetryQueueFullException(pendingRetries.getMaxPendingRetries(), error));
+            return;
+        }
+        boolean noRetryLeft = false;
+        try {
+            for (int index : indexes) {
+                int retry = attempts.count(index);
+                binding.onRetry(attempts.getStrategy(index), error, retry);
+                noRetryLeft |= !attempts.allowsRetry(index);
+            }
+        } catch (Exception e) {
+            leave();
+            callback.giveUp(e);
+            return;
+        }
+        if (noRetryLeft) {
+            exhausted = true;
+            leave();
+            callback.giveUp(error);
+            return;
+        }
+        await(indexes, error, callback, ticket);
+    }
+
+    /**
+     * Decides, whether the unsuccessful response, which the attempt emitted without an error, is retried.
+     * Such retries are not capped by the pending retries and do not take the slots of the scheduler.
+     *
+     * @param httpCode code of the response
+     * @param response the response, passed back to the binding as the cause of the retry
+     * @param callback told to make the retry, when it is due, or to emit the response with {@code null} error
+     */
+    public void onResponse(int httpCode, Object response, Callback callback) {
+        exhausted = false;
+        int index;
+        try {
+            if (binding.hasRetried(response)) {
+                callback.giveUp(null);
+                return;
+            }
+            index = attempts.nextStrategy(httpCode);
+            if (index == RetryAttempts.NO_STRATEGY) {
+                exhausted = true;
+                callback.giveUp(null);
+                return;
+            }
+            binding.onRetry(attempts.getStrategy(index), response, attempts.getRetry(index));
+        } catch (Exception e) {
+            callback.giveUp(e);
+            return;
+        }
+        await(new int[]{index}, response, callback, null);
+    }
+
+    /**
+     * @return {@code true} when the last attempt was passed on, because no strategy had a retry for it,
+     * not because the host, the pending retries or the binding did not allow the retry
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Ends the retries, when the call ends or is cancelled: stops the waits and gives back the pending retry
+     * and the slot of the scheduler.
+     */
+    public void dispose() {
+        disposed = true;
+        Round current = round;
+        if (current != null) {
+            current.cancel();
+        }
+        leave();
+        if (ticket != null) {
+            ticket.release();
+        }
+    }
+
+    private void await(int[] indexes, Object cause, Callback callback, RetryScheduler.Ticket ticket) {
+        Round current = new Round(callback, ticket);
+        round = current;
+        for (int index : indexes) {
+            if (current.isDone()) {
+                break;
+            }
+            current.add(binding.schedule(attempts.getStrategy(index), cause, attempts.getRetry(index), current));
+        }
+        if (disposed) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * An error can still reach {@link #onError(Throwable, Callback)}, while the call is being disposed.
+     * Both sides check the flag set by the other one, so the retry counted after the disposal is released too.
+     */
+    private boolean enter() {
+        if (pendingRetries == null) {
+            return true;
+        }
+        if (pending.compareAndSet(false, true) && !pendingRetries.tryEnter()) {
+            pending.set(false);
+            return false;
+        }
+        if (disposed) {
+            leave();
+        }
+        return true;
+    }
+
+    private void leave() {
+        if (pending.compareAndSet(true, false)) {
+            pendingRetries.leave();
+        }
+    }
+
+    /**
+     * The waits started for a single failed attempt. The first of them, which is over, makes the retry
+     * and cancels the others.
+     */
+    private final class Round implements Callback {
+        private final Callback callback;
+        private final RetryScheduler.Ticket ticket;
+        private final AtomicBoolean done;
+        private final List<Wait> waits;
+
+        Round(Callback callback, RetryScheduler.Ticket ticket) {
+            this.callback = callback;
+            this.ticket = ticket;
+            this.done = new AtomicBoolean();
+            this.waits = new ArrayList<>(1);
+        }
+
+        boolean isDone() {
+            return done.get();
+        }
+
+        void add(Wait wait) {
+            synchronized (waits) {
+                waits.add(wait);
+            }
+            if (done.get()) {
+                wait.cancel();
+            }
+        }
+
+        void cancel() {
+            done.set(true);
+            cancelWaits();
+        }
+
+        @Override
+        public void retry() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            cancelWaits();
+            if (ticket == null) {
+                proceed();
+                return;
+            }
+            Slot slot = new Slot();
+            ticket.schedule(slot);
+            slot.queued = true;
+        }
+
+        @Override
+        public void giveUp(Throwable error) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            cancelWaits();
+            leave();
+            callback.giveUp(error);
+        }
+
+        private void cancelWaits() {
+            List<Wait> started;
+            synchronized (waits) {
+                started = new ArrayList<>(waits);
+            }
+            for (Wait wait : started) {
+                wait.cancel();
+            }
+        }
+
+        private void proceed() {
+            leave();
+            if (!disposed) {
+                callback.retry();
+            }
+        }
+
+        /**
+         * Makes the retry, when the scheduler releases it. The retry released by another call
+         * is not made on its thread.
+         */
+        private final class Slot implements Runnable {
+            private final Thread scheduling = Thread.currentThread();
+            private volatile boolean queued;
+
+            @Override
+            public void run() {
+                if (!queued && Thread.currentThread() == scheduling) {
+                    proceed();
+                    return;
+                }
+                binding.resume(new Runnable() {
+                    @Override
+                    public void run() {
+                        proceed();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * The part of the retries, which depends on the binding: the strategies it is built with
+     * and the way it waits.
+     *
+     * @param <S> the backoff strategy of the binding
+     */
+    public interface Binding<S> {
+
+        /**
+         * @param cause the error of the attempt or the unsuccessful response passed to {@link CallRetries}
+         * @return {@code true} when the attempts ending with it were retried already, e.g. by the interceptor
+         * of the client
+         */
+        boolean hasRetried(Object cause) throws Exception;
+
+        /**
+         * Logs the retry and runs the retry action of the strategy. Called for every strategy counting
+         * the retry, also for the one, which has no retries left, before the call gives up.
+         *
+         * @param strategy the strategy
+         * @param cause    the error of the attempt or the unsuccessful response passed to {@link CallRetries}
+         * @param retry    number of the retry, starting from 1
+         */
+        void onRetry(S strategy, Object cause, int retry) throws Exception;
+
+        /**
+         * Starts the wait before the retry. When it is over, the binding calls {@link Callback#retry()},
+         * when it fails, {@link Callback#giveUp(Throwable)}, possibly on another thread.
+         *
+         * @param strategy the strategy
+         * @param cause    the error of the attempt or the unsuccessful response passed to {@link CallRetries}
+         * @param retry    number of the retry, starting from 1
+         * @param callback told, when the wait is over
+         * @return the wait, cancelled when the retry is made after another wait or the call ends
+         */
+        Wait schedule(S strategy, Object cause, int retry, Callback callback);
+
+        /**
+         * Makes the retry, which another call released from {@link RetryScheduler}, on a thread of the binding.
+         *
+         * @param retry makes the retry
+         */
+        void resume(Runnable retry);
+    }
+
+    /**
+     * Wait started by {@link Binding#schedule(Object, Object, int, Callback)}.
+     */
+    public interface Wait {
+
+        void cancel();
+    }
+
+    /**
+     * Told by {@link CallRetries} how the failed attempt ends.
+     */
+    public interface Callback {
+
+        /**
+         * Makes the retry, which is due now.
+         */
+        void retry();
+
+        /**
+         * Passes the error on, without the retry.
+         *
+         * @param error the error, {@code null} when the unsuccessful response should be emitted as it is
+         */
+        void giveUp(Throwable error);
+    }
+}
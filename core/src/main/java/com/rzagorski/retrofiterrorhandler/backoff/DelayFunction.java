@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.backoff;
+
+/**
+ * Computes the wait before the retry, independently of the reactive library the call is made with.
+ */
+public interface DelayFunction {
+
+    /**
+     * @param retry number of the retry, starting from 1
+     * @return the wait in milliseconds
+     */
+    long getDelayMillis(int retry);
+}
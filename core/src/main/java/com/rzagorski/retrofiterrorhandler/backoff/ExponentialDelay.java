@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.backoff;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits {@code base} to the power of the retry number, in given unit.
+ */
+public class ExponentialDelay implements DelayFunction {
+    private final int base;
+    private final TimeUnit unit;
+
+    /**
+     * @param base the base of exponential function
+     * @param unit unit of the computed wait
+     */
+    public ExponentialDelay(int base, TimeUnit unit) {
+        this.base = base;
+        this.unit = unit;
+    }
+
+    @Override
+    public long getDelayMillis(int retry) {
+        //the cast saturates at Long.MAX_VALUE, and so does the conversion
+        return unit.toMillis((long) Math.pow(base, retry));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.backoff;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Retries made for a single execution of the call, counted for every strategy separately.
+ * <br>
+ * The binding tells, whether its strategy allows the retry and is applicable to the error,
+ * and gets the index of the strategy, which the retry is counted for. The attempts of one execution
+ * never overlap, so the counters need no synchronization. Create one for every execution of the call.
+ *
+ * @param <S> the backoff strategy of the binding
+ * @param <X> the exception the strategy can throw, while checking the error
+ */
+public abstract class RetryAttempts<S, X extends Throwable> {
+    /**
+     * Returned, when no strategy retries the error.
+     */
+    public static final int NO_STRATEGY = -1;
+
+    private final List<? extends S> strategies;
+    private final int[] retries;
+
+    protected RetryAttempts(List<? extends S> strategies) {
+        this.strategies = strategies;
+        this.retries = new int[strategies.size()];
+    }
+
+    /**
+     * @param strategy the strategy
+     * @param retry    number of the retry, starting from 1
+     * @return {@code true} when the strategy allows the retry
+     */
+    protected abstract boolean canRetry(S strategy, int retry);
+
+    /**
+     * @param strategy the strategy
+     * @param error    the error of the attempt
+     * @return {@code true} when the strategy retries the error
+     */
+    protected abstract boolean isApplicable(S strategy, Throwable error) throws X;
+
+    /**
+     * Checks the code of the unsuccessful response emitted without throwing the HTTP error.
+     * No strategy retries such responses by default.
+     *
+     * @param strategy the strategy
+     * @param httpCode code of the response
+     * @return {@code true} when the strategy retries the response
+     */
+    protected boolean isApplicable(S strategy, int httpCode) {
+        return false;
+    }
+
+    /**
+     * Finds the first strategy applicable to the error, which has retries left, and counts the retry.
+     *
+     * @param error the error of the attempt
+     * @return index of the strategy or {@link #NO_STRATEGY}
+     */
+    public final int nextStrategy(Throwable error) throws X {
+        for (int i = 0; i < retries.length; i++) {
+            S strategy = strategies.get(i);
+            if (canRetry(strategy, retries[i] + 1) && isApplicable(strategy, error)) {
+                retries[i]++;
+                return i;
+            }
+        }
+        return NO_STRATEGY;
+    }
+
+    /**
+     * The same as {@link #nextStrategy(Throwable)}, for the unsuccessful response.
+     *
+     * @param httpCode code of the response
+     * @return index of the strategy or {@link #NO_STRATEGY}
+     */
+    public final int nextStrategy(int httpCode) {
+        for (int i = 0; i < retries.length; i++) {
+            S strategy = strategies.get(i);
+            if (canRetry(strategy, retries[i] + 1) && isApplicable(strategy, httpCode)) {
+                retries[i]++;
+                return i;
+            }
+        }
+        return NO_STRATEGY;
+    }
+
+    /**
+     * Offers the error to every strategy applicable to it and counts the retry for each of them,
+     * the same as the RxJava bindings pass every error to all the strategies.
+     *
+     * @param error the error of the attempt
+     * @return indexes of the applicable strategies, {@code null}, when none of them is applicable
+     * or one of them has no retries left, so the error should be passed on
+     */
+    public final int[] nextStrategies(Throwable error) throws X {
+        int[] applicable = new int[retries.length];
+        int count = 0;
+        for (int i = 0; i < retries.length; i++) {
+            S strategy = strategies.get(i);
+            if (isApplicable(strategy, error)) {
+                if (!canRetry(strategy, retries[i] + 1)) {
+                    return null;
+                }
+                applicable[count++] = i;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        for (int i = 0; i < count; i++) {
+            retries[applicable[i]]++;
+        }
+        return Arrays.copyOf(applicable, count);
+    }
+
+    /**
+     * @param error the error of the call
+     * @return {@code true}, when any of the strategies is applicable to the error, regardless of its retries
+     */
+    public final boolean isRetryable(Throwable error) throws X {
+        return applicableStrategies(error).length > 0;
+    }
+
+    /**
+     * @param httpCode the code of the unsuccessful response
+     * @return {@code true}, when any of the strategies is applicable to the response, regardless of its retries
+     */
+    public final boolean isRetryable(int httpCode) {
+        for (S strategy : strategies) {
+            if (isApplicable(strategy, httpCode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param error the error of the attempt
+     * @return indexes of the strategies applicable to the error, empty when none of them is
+     */
+    final int[] applicableStrategies(Throwable error) throws X {
+        int[] applicable = new int[retries.length];
+        int count = 0;
+        for (int i = 0; i < retries.length; i++) {
+            if (isApplicable(strategies.get(i), error)) {
+                applicable[count++] = i;
+            }
+        }
+        return Arrays.copyOf(applicable, count);
+    }
+
+    /**
+     * Counts the retry for the strategy, also when it has no retries left.
+     *
+     * @param index index of the strategy
+     * @return number of the retry, starting from 1
+     */
+    final int count(int index) {
+        return ++retries[index];
+    }
+
+    /**
+     * @param index index of the strategy
+     * @return {@code true} when the strategy allows the retries counted for it
+     */
+    final boolean allowsRetry(int index) {
+        return canRetry(strategies.get(index), retries[index]);
+    }
+
+    public final S getStrategy(int index) {
+        return strategies.get(index);
+    }
+
+    /**
+     * @param index index of the strategy
+     * @return number of the retries counted for the strategy
+     */
+    public final int getRetry(int index) {
+        return retries[index];
+    }
+}
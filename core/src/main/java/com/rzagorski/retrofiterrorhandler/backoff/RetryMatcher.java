@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.backoff;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the error of the call against the throwables and HTTP codes set on the backoff strategy.
+ * <br>
+ * The matcher knows nothing about the HTTP exception of the reactive binding, so the binding passes
+ * its class once and the code of every error it checks. The lists are copied when the matcher is created.
+ */
+public final class RetryMatcher {
+    /**
+     * Passed instead of the HTTP code, when the error is not an HTTP error.
+     */
+    public static final int NO_HTTP_CODE = -1;
+
+    private final List<Class<? extends Throwable>> throwables;
+    private final BitSet httpCodes;
+    private final boolean anyHttpCode;
+
+    /**
+     * @param throwables         throwables that are retried, with their subclasses
+     * @param httpCodes          HTTP codes that are retried
+     * @param httpExceptionClass class of the HTTP error of the binding, all codes are retried,
+     *                           when it or its superclass is on the {@code throwables} list
+     */
+    public RetryMatcher(List<Class<? extends Throwable>> throwables, List<Integer> httpCodes,
+                        Class<? extends Throwable> httpExceptionClass) {
+        this.throwables = throwables == null
+                ? Collections.<Class<? extends Throwable>>emptyList()
+                : new ArrayList<>(throwables);
+        this.httpCodes = new BitSet();
+        if (httpCodes != null) {
+            for (Integer code : httpCodes) {
+                if (code != null && code >= 0) {
+                    this.httpCodes.set(code);
+                }
+            }
+        }
+        boolean any = false;
+        for (Class<? extends Throwable> throwable : this.throwables) {
+            if (throwable.isAssignableFrom(httpExceptionClass)) {
+                any = true;
+            }
+        }
+        this.anyHttpCode = any;
+    }
+
+    /**
+     * @param throwable the error of the call
+     * @param httpCode  code of the HTTP error or {@link #NO_HTTP_CODE}
+     * @return {@code true} when the code or the class of the error is on the lists
+     */
+    public boolean matches(Throwable throwable, int httpCode) {
+        return containsHttpCode(httpCode) || containsThrowable(throwable);
+    }
+
+    /**
+     * Checks the code of the unsuccessful response emitted without throwing the HTTP error.
+     *
+     * @param httpCode code of the response
+     * @return {@code true} when the code is on the list or all HTTP errors are retried
+     */
+    public boolean matchesResponse(int httpCode) {
+        return containsHttpCode(httpCode) || anyHttpCode;
+    }
+
+    public boolean containsHttpCode(int httpCode) {
+        return httpCode >= 0 && httpCodes.get(httpCode);
+    }
+
+    /**
+     * @return {@code true} when the HTTP error of the binding or its superclass is on the list
+     */
+    public boolean containsHttpException() {
+        return anyHttpCode;
+    }
+
+    public boolean containsThrowable(Throwable throwable) {
+        for (int i = 0; i < throwables.size(); i++) {
+            if (throwables.get(i).isInstance(throwable)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
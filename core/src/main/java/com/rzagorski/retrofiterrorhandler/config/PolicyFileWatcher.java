@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.config;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the retry policy from a local properties file and reads it again, every time the file is changed.
+ * <br>
+ * The directory of the file is watched with {@link WatchService} by a single daemon thread. The file is read
+ * once by {@link #start()}, where a missing or invalid file fails, and then after every change. The properties
+ * are passed to the {@link Listener}, which compiles and swaps the policy. When a changed file cannot be read
+ * or the listener rejects it, the policy in use is kept and the error is available from {@link #getLastFailure()},
+ * until the file is read successfully again.
+ * <br>
+ * The file is read, when it has not changed for {@value #SETTLE_MILLIS} ms, but a file written in place can still
+ * be read half written. Replace it atomically instead, by writing another file and renaming it.
+ */
+public class PolicyFileWatcher implements Closeable {
+    static final long SETTLE_MILLIS = 100;
+    private final File file;
+    private final Listener listener;
+    private volatile WatchService watchService;
+    private volatile RuntimeException lastFailure;
+
+    public PolicyFileWatcher(File file, Listener listener) {
+        this.file = file.getAbsoluteFile();
+        this.listener = listener;
+    }
+
+    /**
+     * Reads the file and starts watching it.
+     *
+     * @throws IOException              when the file cannot be read or its directory cannot be watched
+     * @throws IllegalArgumentException when the listener rejects the properties
+     */
+    public void start() throws IOException {
+        if (watchService != null) {
+            throw new IllegalStateException("Already started");
+        }
+        load();
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        file.getParentFile().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchService = watchService;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "PolicyFileWatcher " + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the error of the last reading of the file, {@code null} when it was read successfully
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public void close() throws IOException {
+        WatchService watchService = this.watchService;
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch() {
+        Path fileName = file.toPath().getFileName();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                //the changes made one after another, e.g. truncating and writing the file, are read once
+                while (key != null) {
+                    changed |= isChanged(key, fileName);
+                    if (!key.reset()) {
+                        return;
+                    }
+                    key = changed ? watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS) : null;
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            //closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isChanged(WatchKey key, Path fileName) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            //after an overflow it is unknown, which files were changed
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+        }
+        return changed;
+    }
+
+    private void reload() {
+        try {
+            load();
+            lastFailure = null;
+        } catch (IOException e) {
+            //e.g. the file is being replaced, it will be read again after the next change
+            lastFailure = new IllegalStateException("Could not read " + file, e);
+        } catch (RuntimeException e) {
+            lastFailure = e;
+        }
+    }
+
+    private void load() throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        listener.onChanged(properties);
+    }
+
+    public interface Listener {
+
+        /**
+         * Called with the content of the file, by {@link #start()} and then on the watching thread.
+         *
+         * @param properties the properties read from the file
+         * @throws IllegalArgumentException when the properties do not describe a valid policy
+         */
+        void onChanged(Properties properties);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.download;
+
+import java.io.IOException;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+import okio.Timeout;
+
+/**
+ * Body of a {@link retrofit2.http.Streaming} download, which survives broken connections.
+ * <br>
+ * The body counts bytes already delivered to the reader. When reading fails, it requests the rest
+ * of the resource with {@code Range: bytes=N-} and {@code If-Range} header carrying the {@code ETag}
+ * (or {@code Last-Modified}) of the first response, and continues reading from the new response,
+ * so the reader sees one uninterrupted stream. When the resource has changed in the meantime,
+ * the server answers with the whole resource and reading ends with {@link IOException}.
+ * <br>
+ * Offsets are offsets of bytes sent by the server, so resuming is possible only when the first
+ * response has {@code Content-Length} or the request has {@code Accept-Encoding} set explicitly
+ * (which turns off transparent gzip of OkHttp).
+ */
+public class ResumableResponseBody extends ResponseBody {
+    private final Call.Factory callFactory;
+    private final Request request;
+    private final String validator;
+    private final int maxResumes;
+    private final MediaType contentType;
+    private final long contentLength;
+    private final BufferedSource source;
+    private volatile ResponseBody current;
+    private volatile Call resumeCall;
+    private volatile boolean closed;
+    private long bytesRead;
+    private int resumes;
+
+    /**
+     * @param callFactory factory used to make requests for the rest of the resource
+     * @param response    the first, successful response
+     * @param maxResumes  the number of times reading can be resumed
+     */
+    public ResumableResponseBody(Call.Factory callFactory, Response response, int maxResumes) {
+        this.callFactory = callFactory;
+        this.request = response.request();
+        this.validator = isResumable(response) ? validator(response) : null;
+        this.maxResumes = maxResumes;
+        this.current = response.body();
+        this.contentType = current.contentType();
+        this.contentLength = current.contentLength();
+        this.source = Okio.buffer(new ResumingSource());
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public BufferedSource source() {
+        return source;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Call call = resumeCall;
+        if (call != null) {
+            call.cancel();
+        }
+        current.close();
+    }
+
+    /**
+     * @return number of times reading was resumed
+     */
+    public int getResumeCount() {
+        return resumes;
+    }
+
+    private static boolean isResumable(Response response) {
+        return response.code() == 200
+                && (response.header("Content-Length") != null
+                || response.request().header("Accept-Encoding") != null);
+    }
+
+    private static String validator(Response response) {
+        String eTag = response.header("ETag");
+        //If-Range requires a strong validator
+        if (eTag != null && !eTag.startsWith("W/")) {
+            return eTag;
+        }
+        return response.header("Last-Modified");
+    }
+
+    /**
+     * @return {@code false} when the server did not answer with the requested range
+     */
+    private boolean resume() throws IOException {
+        closeQuietly(current);
+        Request range = request.newBuilder()
+                .header("Range", "bytes=" + bytesRead + "-")
+                .header("If-Range", validator)
+                .build();
+        Call call = callFactory.newCall(range);
+        resumeCall = call;
+        if (closed) {
+            call.cancel();
+        }
+        Response response = call.execute();
+        if (response.code() != 206 || !startsAt(response.header("Content-Range"), bytesRead)) {
+            closeQuietly(response.body());
+            return false;
+        }
+        current = response.body();
+        return true;
+    }
+
+    private static boolean startsAt(String contentRange, long offset) {
+        return contentRange != null && contentRange.startsWith("bytes " + offset + "-");
+    }
+
+    private static void closeQuietly(ResponseBody body) {
+        if (body == null) {
+            return;
+        }
+        try {
+            body.close();
+        } catch (RuntimeException ignored) {
+        }
+    }
+
+    private class ResumingSource implements Source {
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            for (; ; ) {
+                try {
+                    long read = current.source().read(sink, byteCount);
+                    if (read > 0) {
+                        bytesRead += read;
+                    }
+                    return read;
+                } catch (IOException e) {
+                    if (closed || validator == null || resumes >= maxResumes) {
+                        throw e;
+                    }
+                    resumeOrThrow(e);
+                }
+            }
+        }
+
+        private void resumeOrThrow(IOException cause) throws IOException {
+            for (; ; ) {
+                resumes++;
+                boolean resumed;
+                try {
+                    resumed = resume();
+                } catch (IOException e) {
+                    //the request for the rest failed too, try again while resumes are left
+                    if (closed || resumes >= maxResumes) {
+                        throw e;
+                    }
+                    continue;
+                }
+                if (!resumed) {
+                    throw new IOException("Download cannot be resumed at byte " + bytesRead, cause);
+                }
+                return;
+            }
+        }
+
+        @Override
+        public Timeout timeout() {
+            return current.source().timeout();
+        }
+
+        @Override
+        public void close() throws IOException {
+            ResumableResponseBody.this.close();
+        }
+    }
+}
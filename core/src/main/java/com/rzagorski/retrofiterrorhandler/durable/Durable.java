@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.durable;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Makes the calls of annotated Retrofit method durable. A failed call is written to {@link RetryLog}
+ * before it is retried and removed from it, when an attempt succeeds, so the calls, whose retries
+ * were not finished, can be replayed after the process restarts.
+ * <br>
+ * To let the server recognize the replays of a call, give it a key with
+ * {@link DurableRequest#IDEMPOTENCY_KEY_HEADER} header, e.g. with parameter
+ * {@code @Header(DurableRequest.IDEMPOTENCY_KEY_HEADER) String key}. Otherwise the key is generated,
+ * when the call fails first, and only the replays carry it.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Durable {
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.durable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.UUID;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+/**
+ * The snapshot of a request written to {@link RetryLog}: method, URL, headers and body,
+ * identified by its idempotency key.
+ */
+public final class DurableRequest {
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private final String key;
+    private final String method;
+    private final String url;
+    private final Headers headers;
+    private final String contentType;
+    private final byte[] body;
+
+    private DurableRequest(String key, String method, String url, Headers headers, String contentType,
+                           byte[] body) {
+        this.key = key;
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    /**
+     * Takes the snapshot of the request. The body is read to memory.
+     *
+     * @param request the request of the call
+     * @return the snapshot with the key from {@link #IDEMPOTENCY_KEY_HEADER} header or a random one
+     * @throws IOException when the body cannot be read
+     */
+    public static DurableRequest of(Request request) throws IOException {
+        String key = request.header(IDEMPOTENCY_KEY_HEADER);
+        if (key == null) {
+            key = UUID.randomUUID().toString();
+        }
+        String contentType = null;
+        byte[] body = null;
+        RequestBody requestBody = request.body();
+        if (requestBody != null) {
+            MediaType mediaType = requestBody.contentType();
+            contentType = mediaType != null ? mediaType.toString() : null;
+            Buffer buffer = new Buffer();
+            requestBody.writeTo(buffer);
+            body = buffer.readByteArray();
+        }
+        return new DurableRequest(key, request.method(), request.url().toString(), request.headers(),
+                contentType, body);
+    }
+
+    /**
+     * Gives the request its idempotency key before it is sent for the first time.
+     *
+     * @param request the request of the call
+     * @return the request with a random key in {@link #IDEMPOTENCY_KEY_HEADER} header,
+     * or the same request, when it has the key already
+     */
+    public static Request withIdempotencyKey(Request request) {
+        if (request.header(IDEMPOTENCY_KEY_HEADER) != null) {
+            return request;
+        }
+        return request.newBuilder()
+                .header(IDEMPOTENCY_KEY_HEADER, UUID.randomUUID().toString())
+                .build();
+    }
+
+    /**
+     * @param annotations annotations of the Retrofit method
+     * @return {@code true} when the method is annotated with {@link Durable}
+     */
+    public static boolean isDurable(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Durable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the request to replay, carrying the idempotency key in {@link #IDEMPOTENCY_KEY_HEADER} header
+     */
+    public Request toRequest() {
+        RequestBody requestBody = body == null
+                ? null
+                : RequestBody.create(contentType == null ? null : MediaType.parse(contentType), body);
+        return new Request.Builder()
+                .url(url)
+                .headers(headers)
+                .header(IDEMPOTENCY_KEY_HEADER, key)
+                .method(method, requestBody)
+                .build();
+    }
+
+    void writeTo(DataOutput output) throws IOException {
+        output.writeUTF(key);
+        output.writeUTF(method);
+        output.writeUTF(url);
+        output.writeInt(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            output.writeUTF(headers.name(i));
+            output.writeUTF(headers.value(i));
+        }
+        output.writeBoolean(contentType != null);
+        if (contentType != null) {
+            output.writeUTF(contentType);
+        }
+        output.writeInt(body == null ? -1 : body.length);
+        if (body != null) {
+            output.write(body);
+        }
+    }
+
+    static DurableRequest readFrom(DataInput input) throws IOException {
+        String key = input.readUTF();
+        String method = input.readUTF();
+        String url = input.readUTF();
+        int headerCount = input.readInt();
+        Headers.Builder headers = new Headers.Builder();
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(input.readUTF(), input.readUTF());
+        }
+        String contentType = input.readBoolean() ? input.readUTF() : null;
+        int bodyLength = input.readInt();
+        byte[] body = null;
+        if (bodyLength >= 0) {
+            body = new byte[bodyLength];
+            input.readFully(body);
+        }
+        return new DurableRequest(key, method, url, headers.build(), contentType, body);
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.durable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the {@link DurableRequest requests}, whose retries are not finished, kept on local disk.
+ * <br>
+ * The log is split into segment files. A request is appended to the newest segment, when its call fails,
+ * and an acknowledgement is appended, when the call succeeds. The oldest segments are deleted, as soon as
+ * all their requests are acknowledged, and the whole log is rewritten to a single segment, when it is opened.
+ * Every record carries its length and checksum, so a record torn by a crash is dropped on opening.
+ * <br>
+ * The records are written to the file right away, so they survive a crash of the process. To survive a power
+ * loss they have to be synced to the disk, which is done for a batch of records, at the latest after
+ * the set delay.
+ */
+public final class RetryLog implements Closeable {
+    private static final byte APPEND = 1;
+    private static final byte ACKNOWLEDGE = 2;
+    private static final String SEGMENT_PREFIX = "retry-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final int syncBatchRecords;
+    private final long maxSyncDelayMillis;
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Runnable syncTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (RetryLog.this) {
+                syncScheduled = false;
+                try {
+                    sync();
+                } catch (IOException ignored) {
+                    //the next append or sync reports the broken file
+                }
+            }
+        }
+    };
+    private FileChannel channel;
+    private int unsyncedRecords;
+    private boolean syncScheduled;
+    private boolean closed;
+
+    private RetryLog(Builder builder) {
+        this.directory = builder.directory;
+        this.maxSegmentBytes = builder.maxSegmentBytes;
+        this.syncBatchRecords = builder.syncBatchRecords;
+        this.maxSyncDelayMillis = builder.maxSyncDelayMillis;
+    }
+
+    /**
+     * Writes the request to the log, unless a request with the same key is already there.
+     *
+     * @param request the request of the failed call
+     * @return {@code true} when the request was written
+     * @throws IOException when the log cannot be written
+     */
+    public synchronized boolean append(DurableRequest request) throws IOException {
+        checkOpen();
+        if (pending.containsKey(request.getKey())) {
+            return false;
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        request.writeTo(new DataOutputStream(payload));
+        writeRecord(APPEND, payload.toByteArray());
+        Segment segment = segments.getLast();
+        segment.live++;
+        pending.put(request.getKey(), new Entry(request, segment));
+        if (channel.size() >= maxSegmentBytes) {
+            rotate();
+        }
+        return true;
+    }
+
+    /**
+     * Acknowledges the request, when its call succeeded. Deletes the oldest segments,
+     * which have no request left.
+     *
+     * @param key the idempotency key of the request
+     * @return {@code true} when the request was in the log
+     * @throws IOException when the log cannot be written
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        checkOpen();
+        Entry entry = pending.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        new DataOutputStream(payload).writeUTF(key);
+        writeRecord(ACKNOWLEDGE, payload.toByteArray());
+        entry.segment.live--;
+        //an acknowledgement is always in the same or a newer segment than its request,
+        //so deleting only from the oldest side never brings an acknowledged request back
+        while (segments.size() > 1 && segments.getFirst().live == 0) {
+            delete(segments.removeFirst().file);
+        }
+        return true;
+    }
+
+    /**
+     * @param key the idempotency key of the request
+     * @return {@code true} when the request is in the log
+     */
+    public synchronized boolean contains(String key) {
+        return pending.containsKey(key);
+    }
+
+    /**
+     * @return the requests in the log, in order they were written
+     */
+    public synchronized List<DurableRequest> getPending() {
+        List<DurableRequest> requests = new ArrayList<>(pending.size());
+        for (Entry entry : pending.values()) {
+            requests.add(entry.request);
+        }
+        return requests;
+    }
+
+    /**
+     * @return number of segment files of the log
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Syncs the records written so far to the disk.
+     *
+     * @throws IOException when the file cannot be synced
+     */
+    public synchronized void sync() throws IOException {
+        if (closed || unsyncedRecords == 0) {
+            return;
+        }
+        channel.force(false);
+        unsyncedRecords = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        sync();
+        closed = true;
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        File[] files = directory.listFiles();
+        List<Long> ids = new ArrayList<>();
+        for (File file : files != null ? files : new File[0]) {
+            Long id = segmentId(file.getName());
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        Long[] sorted = ids.toArray(new Long[ids.size()]);
+        Arrays.sort(sorted);
+        List<File> oldFiles = new ArrayList<>();
+        Segment replayed = new Segment(null);
+        for (Long id : sorted) {
+            File file = segmentFile(id);
+            oldFiles.add(file);
+            readSegment(file, replayed);
+        }
+        //compaction: the requests left are written again to a fresh segment and the old ones are deleted
+        long nextId = sorted.length == 0 ? 1 : sorted[sorted.length - 1] + 1;
+        openSegment(nextId);
+        Segment segment = segments.getLast();
+        for (Entry entry : pending.values()) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            entry.request.writeTo(new DataOutputStream(payload));
+            writeRecord(APPEND, payload.toByteArray());
+            entry.segment = segment;
+            segment.live++;
+        }
+        sync();
+        for (File file : oldFiles) {
+            delete(file);
+        }
+    }
+
+    private void readSegment(File file, Segment segment) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        long remaining = file.length();
+        try {
+            while (true) {
+                if (remaining < 8) {
+                    //the end of the segment or a torn header
+                    return;
+                }
+                int length = input.readInt();
+                long checksum = input.readInt() & 0xffffffffL;
+                remaining -= 8;
+                if (length <= 0 || length > remaining) {
+                    //the length itself was torn
+                    return;
+                }
+                byte[] record = new byte[length];
+                input.readFully(record);
+                remaining -= length;
+                CRC32 crc = new CRC32();
+                crc.update(record, 0, length);
+                if (crc.getValue() != checksum) {
+                    //torn or corrupted record, nothing after it can be trusted
+                    return;
+                }
+                DataInputStream payload = new DataInputStream(new ByteArrayInputStream(record, 1, length - 1));
+                if (record[0] == APPEND) {
+                    DurableRequest request = DurableRequest.readFrom(payload);
+                    if (!pending.containsKey(request.getKey())) {
+                        pending.put(request.getKey(), new Entry(request, segment));
+                    }
+                } else if (record[0] == ACKNOWLEDGE) {
+                    pending.remove(payload.readUTF());
+                }
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private void writeRecord(byte type, byte[] payload) throws IOException {
+        int length = payload.length + 1;
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + length);
+        buffer.putInt(length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.put(payload);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        unsyncedRecords++;
+        if (unsyncedRecords >= syncBatchRecords) {
+            sync();
+        } else if (!syncScheduled) {
+            syncScheduled = true;
+            SyncExecutor.INSTANCE.schedule(syncTask, maxSyncDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rotate() throws IOException {
+        sync();
+        channel.close();
+        openSegment(segmentId(segments.getLast().file.getName()) + 1);
+    }
+
+    private void openSegment(long id) throws IOException {
+        File file = segmentFile(id);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(0);
+        channel = randomAccessFile.getChannel();
+        segments.addLast(new Segment(file));
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+    }
+
+    private static Long segmentId(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Retry log is closed");
+        }
+    }
+
+    private static final class Entry {
+        final DurableRequest request;
+        Segment segment;
+
+        Entry(DurableRequest request, Segment segment) {
+            this.request = request;
+            this.segment = segment;
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        int live;
+
+        Segment(File file) {
+            this.file = file;
+        }
+    }
+
+    //a single daemon thread syncs the batches of all logs, which did not fill up in time
+    private static final class SyncExecutor {
+        static final ScheduledExecutorService INSTANCE = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RetryLog sync");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static class Builder {
+        private final File directory;
+        private long maxSegmentBytes = 1024 * 1024;
+        private int syncBatchRecords = 32;
+        private long maxSyncDelayMillis = 100;
+
+        /**
+         * @param directory the directory of the segment files, used only by this log
+         */
+        public Builder(File directory) {
+            if (directory == null) {
+                throw new IllegalArgumentException("Directory must not be null");
+            }
+            this.directory = directory;
+        }
+
+        /**
+         * @param maxSegmentBytes size, after which the next segment is started, 1 MiB by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setMaxSegmentBytes(long maxSegmentBytes) {
+            if (maxSegmentBytes <= 0) {
+                throw new IllegalArgumentException("Max segment bytes must be positive");
+            }
+            this.maxSegmentBytes = maxSegmentBytes;
+            return this;
+        }
+
+        /**
+         * Sets, how the records are synced to the disk. 1 record syncs every record right away.
+         *
+         * @param records  number of records synced together, 32 by default
+         * @param maxDelay the longest time a record waits for the sync, 100 milliseconds by default
+         * @param unit     the unit of the delay
+         * @return the Builder to add more parameters
+         */
+        public Builder setSyncBatch(int records, long maxDelay, TimeUnit unit) {
+            if (records < 1) {
+                throw new IllegalArgumentException("Sync batch must have at least 1 record");
+            }
+            if (maxDelay < 0) {
+                throw new IllegalArgumentException("Max sync delay must not be negative");
+            }
+            this.syncBatchRecords = records;
+            this.maxSyncDelayMillis = unit.toMillis(maxDelay);
+            return this;
+        }
+
+        /**
+         * Opens the log, reading and compacting the segments left in the directory.
+         *
+         * @return the log with the requests, whose retries were not finished, available from
+         * {@link RetryLog#getPending()}
+         * @throws IOException when the directory cannot be read or written
+         */
+        public RetryLog build() throws IOException {
+            RetryLog log = new RetryLog(this);
+            log.open();
+            return log;
+        }
+    }
+}
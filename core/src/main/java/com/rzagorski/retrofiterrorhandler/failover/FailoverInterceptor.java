@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.failover;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends every attempt made to one of the hosts of {@link ReplicaSet} to a replica that is not ejected,
+ * and records the latency and result of the attempt in its health.
+ * <br>
+ * The attempt stays on the requested host as long as it is healthy. After the host fails to connect,
+ * it is ejected, and the next attempt, e.g. the retry made by
+ * {@code Failover} strategy,
+ * goes to the healthiest replica.
+ */
+public class FailoverInterceptor implements Interceptor {
+    private final ReplicaSet replicaSet;
+
+    public FailoverInterceptor(ReplicaSet replicaSet) {
+        this.replicaSet = replicaSet;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.tag() == ReplicaSet.PROBE_TAG) {
+            return chain.proceed(request);
+        }
+        Replica replica = replicaSet.select(request.url());
+        if (replica == null) {
+            return chain.proceed(request);
+        }
+        Request rewritten = request.newBuilder().url(replica.rewrite(request.url())).build();
+        long startTime = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(rewritten);
+        } catch (IOException e) {
+            replica.record(System.nanoTime() - startTime, true);
+            if (isConnectionFailure(e)) {
+                replicaSet.eject(replica);
+            }
+            throw e;
+        }
+        replica.record(System.nanoTime() - startTime, response.code() >= 500);
+        return response;
+    }
+
+    /**
+     * @param throwable the error of the attempt
+     * @return {@code true} when the host could not be reached at all. A timeout is not such a failure,
+     * the host may only be slow to respond.
+     */
+    public static boolean isConnectionFailure(Throwable throwable) {
+        return throwable instanceof ConnectException
+                || throwable instanceof NoRouteToHostException
+                || throwable instanceof UnknownHostException;
+    }
+}
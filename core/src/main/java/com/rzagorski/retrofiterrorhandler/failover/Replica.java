@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.failover;
+
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.HttpUrl;
+
+/**
+ * A single host of {@link ReplicaSet} with its health.
+ * <br>
+ * The replica with the lowest {@link #getScore() score}, computed from moving averages
+ * of latency and error rate, is the healthiest.
+ */
+public final class Replica {
+    //every error makes the replica look this many times slower
+    private static final double ERROR_PENALTY = 10;
+    private static final long MIN_LATENCY_NANOS = 1000000L;
+
+    private final HttpUrl baseUrl;
+    private final HostHealth health;
+    private final AtomicBoolean ejected;
+
+    Replica(HttpUrl baseUrl, double weight) {
+        this.baseUrl = baseUrl;
+        this.health = new HostHealth(weight);
+        this.ejected = new AtomicBoolean(false);
+    }
+
+    public HttpUrl getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @return health of the replica, recorded by {@link FailoverInterceptor} and the probes
+     */
+    public HostHealth getHealth() {
+        return health;
+    }
+
+    /**
+     * @return {@code true} when the replica failed and was not restored by the probe yet
+     */
+    public boolean isEjected() {
+        return ejected.get();
+    }
+
+    /**
+     * @return the score used to rank replicas, lower is better
+     */
+    public double getScore() {
+        return Math.max(health.getLatencyNanos(), MIN_LATENCY_NANOS) * (1 + ERROR_PENALTY * health.getErrorRate());
+    }
+
+    boolean matches(HttpUrl url) {
+        return baseUrl.host().equalsIgnoreCase(url.host()) && baseUrl.port() == url.port()
+                && baseUrl.scheme().equals(url.scheme());
+    }
+
+    HttpUrl rewrite(HttpUrl url) {
+        if (matches(url)) {
+            return url;
+        }
+        return url.newBuilder()
+                .scheme(baseUrl.scheme())
+                .host(baseUrl.host())
+                .port(baseUrl.port())
+                .build();
+    }
+
+    void record(long latencyNanos, boolean failed) {
+        health.record(latencyNanos, failed);
+    }
+
+    boolean eject() {
+        return ejected.compareAndSet(false, true);
+    }
+
+    void restore() {
+        ejected.set(false);
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl.toString();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.failover;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Hosts serving the same API. Calls made to any of them can be sent to the others,
+ * when {@link FailoverInterceptor} is added to the {@link OkHttpClient} used by Retrofit.
+ * <br>
+ * A replica that failed to connect is ejected: no call is sent to it, until the probe sent in
+ * the background after {@link Builder#setEjectionTime(long, TimeUnit) ejection time} succeeds.
+ * Failed probe keeps the replica ejected for another ejection time.
+ * <br>
+ * Unless they are set in the {@link Builder}, the replica set creates its own probe client and executor.
+ * Close it, when it is no longer used, to stop them.
+ */
+public class ReplicaSet implements Closeable {
+    static final Object PROBE_TAG = new Object();
+
+    private final List<Replica> replicas;
+    private final long ejectionNanos;
+    private final String probePath;
+    private final Call.Factory probeClient;
+    private final ScheduledExecutorService probeExecutor;
+    private final boolean ownsProbeClient;
+    private final boolean ownsProbeExecutor;
+    private volatile boolean closed;
+
+    private ReplicaSet(Builder builder) {
+        List<Replica> replicas = new ArrayList<>();
+        for (HttpUrl baseUrl : builder.baseUrls) {
+            replicas.add(new Replica(baseUrl, builder.weight));
+        }
+        this.replicas = Collections.unmodifiableList(replicas);
+        this.ejectionNanos = builder.ejectionNanos;
+        this.probePath = builder.probePath;
+        this.ownsProbeClient = builder.probeClient == null;
+        this.probeClient = ownsProbeClient ? new OkHttpClient() : builder.probeClient;
+        this.ownsProbeExecutor = builder.probeExecutor == null;
+        this.probeExecutor = ownsProbeExecutor ? createProbeExecutor() : builder.probeExecutor;
+    }
+
+    private static ScheduledExecutorService createProbeExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ReplicaSet probe");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Finds the replica for the attempt sent to given url.
+     *
+     * @param url url of the request
+     * @return the replica the url points to, when it is not ejected, otherwise the healthiest replica
+     * that is not ejected. {@code null}, when the url does not point to any of the replicas
+     * or all of them are ejected.
+     */
+    public Replica select(HttpUrl url) {
+        Replica requested = null;
+        for (Replica replica : replicas) {
+            if (replica.matches(url)) {
+                requested = replica;
+                break;
+            }
+        }
+        if (requested == null || !requested.isEjected()) {
+            return requested;
+        }
+        return getHealthiest();
+    }
+
+    /**
+     * @return the replica with the lowest score, that is not ejected, or {@code null}, when all are ejected
+     */
+    public Replica getHealthiest() {
+        Replica healthiest = null;
+        for (Replica replica : replicas) {
+            if (!replica.isEjected() && (healthiest == null || replica.getScore() < healthiest.getScore())) {
+                healthiest = replica;
+            }
+        }
+        return healthiest;
+    }
+
+    /**
+     * @return {@code true} when at least one replica can be used
+     */
+    public boolean hasAvailable() {
+        for (Replica replica : replicas) {
+            if (!replica.isEjected()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getEjectionTime(TimeUnit unit) {
+        return unit.convert(ejectionNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void eject(Replica replica) {
+        if (replica.eject()) {
+            scheduleProbe(replica);
+        }
+    }
+
+    /**
+     * Stops probing the ejected replicas. The probe client and executor are shut down, unless they were
+     * set in the {@link Builder}. The ejected replicas stay ejected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (ownsProbeExecutor) {
+            probeExecutor.shutdownNow();
+        }
+        if (ownsProbeClient) {
+            OkHttpClient client = (OkHttpClient) probeClient;
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    private void scheduleProbe(final Replica replica) {
+        if (closed) {
+            return;
+        }
+        probeExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                probe(replica);
+            }
+        }, ejectionNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void probe(final Replica replica) {
+        if (closed) {
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(replica.getBaseUrl().resolve(probePath))
+                .tag(PROBE_TAG)
+                .build();
+        final long startTime = System.nanoTime();
+        probeClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                replica.record(System.nanoTime() - startTime, true);
+                scheduleProbe(replica);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                if (response.code() >= 500) {
+                    replica.record(System.nanoTime() - startTime, true);
+                    scheduleProbe(replica);
+                } else {
+                    replica.record(System.nanoTime() - startTime, false);
+                    replica.restore();
+                }
+            }
+        });
+    }
+
+    public static final class Builder {
+        private final List<HttpUrl> baseUrls;
+        private long ejectionNanos = TimeUnit.SECONDS.toNanos(30);
+        private double weight = 0.2;
+        private String probePath = "/";
+        private Call.Factory probeClient;
+        private ScheduledExecutorService probeExecutor;
+
+        public Builder() {
+            baseUrls = new ArrayList<>();
+        }
+
+        /**
+         * Adds the host. The base url given to Retrofit should be one of the replicas.
+         *
+         * @param baseUrl url of the replica, only the scheme, host and port are used
+         * @return the Builder to add more parameters
+         */
+        public Builder addReplica(String baseUrl) {
+            HttpUrl url = HttpUrl.parse(baseUrl);
+            if (url == null) {
+                throw new IllegalArgumentException("Invalid url: " + baseUrl);
+            }
+            baseUrls.add(url);
+            return this;
+        }
+
+        /**
+         * Sets the time after which the ejected replica is probed.
+         *
+         * @param ejectionTime the time, 30 seconds by default
+         * @param unit         unit of {@code ejectionTime}
+         * @return the Builder to add more parameters
+         */
+        public Builder setEjectionTime(long ejectionTime, TimeUnit unit) {
+            this.ejectionNanos = unit.toNanos(ejectionTime);
+            return this;
+        }
+
+        /**
+         * Sets the weight of the newest attempt in moving averages of latency and error rate.
+         *
+         * @param weight number from 0 to 1, 0.2 by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setEwmaWeight(double weight) {
+            if (weight <= 0 || weight > 1) {
+                throw new IllegalArgumentException("Weight must be in range (0, 1]");
+            }
+            this.weight = weight;
+            return this;
+        }
+
+        /**
+         * Sets the path the probe is sent to. Any response with code lower than 500 restores the replica.
+         *
+         * @param probePath path relative to the base url of the replica, {@code /} by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setProbePath(String probePath) {
+            this.probePath = probePath;
+            return this;
+        }
+
+        /**
+         * Sets the client the probes are sent with. It should not contain {@link FailoverInterceptor}.
+         * It is not shut down by {@link ReplicaSet#close()}.
+         *
+         * @param probeClient the client, new {@link OkHttpClient} by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setProbeClient(Call.Factory probeClient) {
+            this.probeClient = probeClient;
+            return this;
+        }
+
+        /**
+         * Sets the executor the probes are scheduled on. It is not shut down by {@link ReplicaSet#close()}.
+         *
+         * @param probeExecutor the executor, new single thread executor by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setProbeExecutor(ScheduledExecutorService probeExecutor) {
+            this.probeExecutor = probeExecutor;
+            return this;
+        }
+
+        public ReplicaSet build() {
+            if (baseUrls.isEmpty()) {
+                throw new IllegalStateException("At least one replica is needed");
+            }
+            return new ReplicaSet(this);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.health;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link HostHealth} of every host called through the library.
+ * <br>
+ * {@code RxErrorHandingFactory} records the attempts of its calls, when something reads the health:
+ * the scoreboard was set on its {@code RxCallAdapter}, e.g. to be read for dashboards, or its retry policy
+ * stops retrying failing hosts or has a strategy choosing the wait from the health of the host. Unless set,
+ * the factories share the {@link #getDefault() default scoreboard}, so the backoff strategies of every call
+ * see what other calls to the same host experienced.
+ * <br>
+ * Hosts, which were not called for the idle time, are evicted, so the scoreboard does not grow with every host
+ * the process ever called. The next call to such a host starts with a new health.
+ */
+public class HealthScoreboard {
+    private static final long DEFAULT_IDLE_MINUTES = 10;
+    private static final HealthScoreboard DEFAULT = new HealthScoreboard(0.2);
+
+    private final double weight;
+    private final long idleNanos;
+    private final ConcurrentMap<String, HostHealth> hosts;
+    private final AtomicLong lastEviction;
+
+    /**
+     * Creates the scoreboard evicting hosts not called for 10 minutes.
+     *
+     * @param weight weight of the newest attempt in moving averages, from 0 to 1
+     */
+    public HealthScoreboard(double weight) {
+        this(weight, DEFAULT_IDLE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param weight   weight of the newest attempt in moving averages, from 0 to 1
+     * @param idleTime time after the last attempt to the host, when its health is evicted
+     * @param unit     unit of {@code idleTime}
+     */
+    public HealthScoreboard(double weight, long idleTime, TimeUnit unit) {
+        if (idleTime <= 0) {
+            throw new IllegalArgumentException("Idle time must be positive");
+        }
+        this.weight = weight;
+        this.idleNanos = unit.toNanos(idleTime);
+        this.hosts = new ConcurrentHashMap<>();
+        this.lastEviction = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @return the scoreboard shared by the whole process
+     */
+    public static HealthScoreboard getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the health of given host. The health is created with the first call to the host.
+     *
+     * @param host the host taken from request url
+     * @return health shared by all calls to this host
+     */
+    public HostHealth get(String host) {
+        evictIdle();
+        HostHealth health = hosts.get(host);
+        if (health == null) {
+            HostHealth created = new HostHealth(weight);
+            health = hosts.putIfAbsent(host, created);
+            if (health == null) {
+                health = created;
+            }
+        }
+        return health;
+    }
+
+    /**
+     * @return health of all hosts called recently, by host; the map is updated as hosts are called and evicted
+     */
+    public Map<String, HostHealth> getHosts() {
+        return Collections.unmodifiableMap(hosts);
+    }
+
+    //the hosts are checked at most once per idle time, by the call which comes first
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long last = lastEviction.get();
+        if (now - last < idleNanos || !lastEviction.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, HostHealth> entry : hosts.entrySet()) {
+            if (now - entry.getValue().getLastRecordNanos() >= idleNanos) {
+                hosts.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
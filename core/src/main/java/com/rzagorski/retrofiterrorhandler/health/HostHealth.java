@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.health;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Health of a single host, updated by every attempt of every call made to it.
+ * <br>
+ * Latency and error rate are exponentially weighted moving averages, so recent attempts
+ * count more than old ones. All values are updated without locks and can be read at any time.
+ */
+public final class HostHealth {
+    private final double weight;
+    private final AtomicLong latencyNanos;
+    private final AtomicLong errorRate;
+    private final AtomicInteger consecutiveFailures;
+    private final AtomicLong lastSuccessTime;
+    private volatile long lastRecordNanos;
+
+    /**
+     * @param weight weight of the newest attempt in moving averages, from 0 to 1
+     */
+    public HostHealth(double weight) {
+        if (weight <= 0 || weight > 1) {
+            throw new IllegalArgumentException("Weight must be in range (0, 1]");
+        }
+        this.weight = weight;
+        this.latencyNanos = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+        this.errorRate = new AtomicLong(Double.doubleToRawLongBits(0));
+        this.consecutiveFailures = new AtomicInteger();
+        this.lastSuccessTime = new AtomicLong();
+        this.lastRecordNanos = System.nanoTime();
+    }
+
+    /**
+     * @param latencyNanos time of the attempt
+     * @param failed       {@code true} when the host did not answer or answered with an error
+     */
+    public void record(long latencyNanos, boolean failed) {
+        lastRecordNanos = System.nanoTime();
+        update(this.latencyNanos, latencyNanos);
+        update(this.errorRate, failed ? 1 : 0);
+        if (failed) {
+            consecutiveFailures.incrementAndGet();
+        } else {
+            consecutiveFailures.set(0);
+            lastSuccessTime.set(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return moving average of the time of the attempts in nanoseconds, 0 before the first attempt
+     */
+    public double getLatencyNanos() {
+        double latency = Double.longBitsToDouble(latencyNanos.get());
+        return Double.isNaN(latency) ? 0 : latency;
+    }
+
+    /**
+     * @return moving average of failed attempts, from 0 to 1
+     */
+    public double getErrorRate() {
+        return Double.longBitsToDouble(errorRate.get());
+    }
+
+    /**
+     * @return number of attempts that failed since the last successful one
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * @return time of the last successful attempt in milliseconds, as in {@link System#currentTimeMillis()},
+     * or 0 when there was none
+     */
+    public long getLastSuccessTime() {
+        return lastSuccessTime.get();
+    }
+
+    /**
+     * @return time of the last attempt, or of the creation, when there was none, as in {@link System#nanoTime()}
+     */
+    long getLastRecordNanos() {
+        return lastRecordNanos;
+    }
+
+    private void update(AtomicLong average, double sample) {
+        for (; ; ) {
+            long current = average.get();
+            double value = Double.longBitsToDouble(current);
+            //the first sample is taken as it is
+            double next = Double.isNaN(value) ? sample : value + weight * (sample - value);
+            if (average.compareAndSet(current, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HostHealth{latencyNanos=" + getLatencyNanos()
+                + ", errorRate=" + getErrorRate()
+                + ", consecutiveFailures=" + getConsecutiveFailures()
+                + ", lastSuccessTime=" + getLastSuccessTime() + "}";
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.limit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive limit of concurrent calls, computed separately for every host.
+ * <br>
+ * The limit is adjusted with AIMD algorithm (additive increase, multiplicative decrease).
+ * Every call finished within {@link Builder#setRttThreshold(long, TimeUnit) RTT threshold}
+ * raises the limit by {@code 1/limit}, every call that failed on the network level, with HTTP 5xx or 429
+ * code or that took longer than threshold multiplies it by {@link Builder#setBackoffRatio(double) backoff ratio}.
+ * <br>
+ * Calls over the limit wait in a bounded queue. When the queue is full, the call ends with
+ * {@link LimitExceededException}.
+ */
+public class ConcurrencyLimit {
+    final int initialLimit;
+    final int minLimit;
+    final int maxLimit;
+    final double backoffRatio;
+    final long rttThresholdNanos;
+    final int maxQueueSize;
+    private final ConcurrentMap<String, ConcurrencyLimiter> limiters;
+
+    private ConcurrencyLimit(Builder builder) {
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.rttThresholdNanos = builder.rttThresholdNanos;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.limiters = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the limiter for given host. The limiter is created with the first call to the host.
+     *
+     * @param host the host taken from request url
+     * @return limiter shared by all calls to this host
+     */
+    public ConcurrencyLimiter getLimiter(String host) {
+        ConcurrencyLimiter limiter = limiters.get(host);
+        if (limiter == null) {
+            ConcurrencyLimiter created = new ConcurrencyLimiter(this);
+            limiter = limiters.putIfAbsent(host, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    public static final class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double backoffRatio = 0.9;
+        private long rttThresholdNanos = TimeUnit.SECONDS.toNanos(5);
+        private int maxQueueSize = 100;
+
+        public Builder() {
+        }
+
+        /**
+         * Sets the limit used before any call to the host finishes.
+         *
+         * @param initialLimit initial number of concurrent calls
+         * @return the Builder to add more parameters
+         */
+        public Builder setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Sets the bounds the limit is kept between.
+         *
+         * @param minLimit the lowest possible limit, at least 1
+         * @param maxLimit the highest possible limit
+         * @return the Builder to add more parameters
+         */
+        public Builder setLimitRange(int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Sets the factor the limit is multiplied by after failed or too slow call.
+         *
+         * @param backoffRatio value between 0 and 1
+         * @return the Builder to add more parameters
+         */
+        public Builder setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * Sets the round trip time above which a successful call is treated as a sign of overload.
+         *
+         * @param rttThreshold the time
+         * @param unit         unit of {@code rttThreshold}
+         * @return the Builder to add more parameters
+         */
+        public Builder setRttThreshold(long rttThreshold, TimeUnit unit) {
+            this.rttThresholdNanos = unit.toNanos(rttThreshold);
+            return this;
+        }
+
+        /**
+         * Sets the number of calls that can wait for the host when the limit is reached.
+         * With {@code 0} calls over the limit are rejected immediately.
+         *
+         * @param maxQueueSize maximum number of waiting calls per host
+         * @return the Builder to add more parameters
+         */
+        public Builder setMaxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        public ConcurrencyLimit build() {
+            if (minLimit < 1 || maxLimit < minLimit) {
+                throw new IllegalArgumentException("Limit range must satisfy 1 <= min <= max");
+            }
+            if (backoffRatio <= 0 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+            }
+            if (maxQueueSize < 0) {
+                throw new IllegalArgumentException("Queue size cannot be negative");
+            }
+            initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+            return new ConcurrencyLimit(this);
+        }
+    }
+}
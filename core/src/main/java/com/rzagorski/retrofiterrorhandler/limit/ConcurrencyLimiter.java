@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.limit;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free state of {@link ConcurrencyLimit} for a single host.
+ * <br>
+ * The current limit is kept as bits of {@code double} in {@link AtomicLong}, so it can grow
+ * by fractions and still be updated with compare-and-set.
+ */
+public class ConcurrencyLimiter {
+    private final ConcurrencyLimit config;
+    private final AtomicLong limit;
+    private final AtomicInteger inFlight;
+    private final AtomicInteger queued;
+    private final Queue<Permit> waiting;
+
+    ConcurrencyLimiter(ConcurrencyLimit config) {
+        this.config = config;
+        this.limit = new AtomicLong(Double.doubleToLongBits(config.initialLimit));
+        this.inFlight = new AtomicInteger();
+        this.queued = new AtomicInteger();
+        this.waiting = new ConcurrentLinkedQueue<>();
+    }
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Requests a slot for a single call.
+     * <br>
+     * When the slot is available, {@code onGranted} is run before this method returns.
+     * Otherwise the permit waits in the queue and {@code onGranted} is run by the thread
+     * that releases the slot.
+     *
+     * @param onGranted action starting the call
+     * @return the permit, that has to be {@link Permit#release() released} or {@code null}
+     * when the queue is full
+     */
+    public Permit acquire(Runnable onGranted) {
+        Permit permit = new Permit(this, onGranted);
+        if (queued.get() == 0 && tryAcquire()) {
+            permit.grant();
+            return permit;
+        }
+        if (queued.incrementAndGet() > config.maxQueueSize) {
+            queued.decrementAndGet();
+            return null;
+        }
+        waiting.offer(permit);
+        drain();
+        return permit;
+    }
+
+    void cancel(Permit permit) {
+        if (waiting.remove(permit)) {
+            queued.decrementAndGet();
+        }
+    }
+
+    void release(Permit permit) {
+        if (permit.getOutcome() != Permit.UNKNOWN) {
+            boolean dropped = permit.getOutcome() == Permit.DROPPED
+                    || System.nanoTime() - permit.getGrantTime() > config.rttThresholdNanos;
+            updateLimit(dropped, inFlight.get());
+        }
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    private boolean tryAcquire() {
+        for (; ; ) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void drain() {
+        while (queued.get() > 0 && tryAcquire()) {
+            Permit next = waiting.poll();
+            if (next == null) {
+                //permit is being offered right now, its owner will drain the queue
+                inFlight.decrementAndGet();
+                return;
+            }
+            queued.decrementAndGet();
+            if (!next.grant()) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void updateLimit(boolean dropped, int currentInFlight) {
+        for (; ; ) {
+            long bits = limit.get();
+            double current = Double.longBitsToDouble(bits);
+            double next;
+            if (dropped) {
+                next = Math.max(config.minLimit, current * config.backoffRatio);
+            } else if (currentInFlight * 2 >= current) {
+                next = Math.min(config.maxLimit, current + 1.0 / current);
+            } else {
+                //the host is not loaded enough to tell whether the limit can grow
+                return;
+            }
+            if (next == current || limit.compareAndSet(bits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.limit;
+
+/**
+ * Thrown when the call was not sent, because the limit of concurrent calls to the host
+ * was reached and there was no place left in the queue.
+ */
+public class LimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final String host;
+
+    public LimitExceededException(String host) {
+        this("Concurrency limit exceeded for host: ", host);
+    }
+
+    protected LimitExceededException(String message, String host) {
+        super(message + host);
+        this.host = host;
+    }
+
+    public String getHost() {
+        return host;
+    }
+}
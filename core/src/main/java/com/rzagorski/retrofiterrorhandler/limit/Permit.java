@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single slot of {@link ConcurrencyLimiter} taken by one attempt of a call.
+ * <br>
+ * The permit is either waiting in the queue or granted. Once {@link #release() released}
+ * it returns the slot to the limiter (or leaves the queue) exactly once.
+ */
+public final class Permit {
+    static final int UNKNOWN = 0;
+    static final int SUCCEEDED = 1;
+    static final int DROPPED = 2;
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int RELEASED = 2;
+
+    private final ConcurrencyLimiter limiter;
+    private final Runnable onGranted;
+    private final AtomicInteger state;
+    private volatile int outcome;
+    private volatile long grantTime;
+
+    Permit(ConcurrencyLimiter limiter, Runnable onGranted) {
+        this.limiter = limiter;
+        this.onGranted = onGranted;
+        this.state = new AtomicInteger(WAITING);
+    }
+
+    boolean grant() {
+        if (!state.compareAndSet(WAITING, GRANTED)) {
+            return false;
+        }
+        grantTime = System.nanoTime();
+        onGranted.run();
+        return true;
+    }
+
+    public boolean isGranted() {
+        return state.get() == GRANTED;
+    }
+
+    /**
+     * Records the result of the call, used to adjust the limit when the permit is released.
+     *
+     * @param dropped whether the call failed in a way showing the host is overloaded
+     */
+    public void setOutcome(boolean dropped) {
+        outcome = dropped ? DROPPED : SUCCEEDED;
+    }
+
+    int getOutcome() {
+        return outcome;
+    }
+
+    long getGrantTime() {
+        return grantTime;
+    }
+
+    /**
+     * Returns the slot to the limiter or removes the permit from the queue. Only the first call has effect.
+     */
+    public void release() {
+        int previous = state.getAndSet(RELEASED);
+        if (previous == WAITING) {
+            limiter.cancel(this);
+        } else if (previous == GRANTED) {
+            limiter.release(this);
+        }
+    }
+}
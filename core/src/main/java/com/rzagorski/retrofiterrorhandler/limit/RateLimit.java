@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.limit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Client side rate limit for a host or a single endpoint.
+ * <br>
+ * Every attempt of a matching call, including retries made by backoff strategies, waits for a
+ * token from the {@link TokenBucket} before it is sent, so the quota is not exceeded and the server
+ * does not have to answer with 429.
+ */
+public class RateLimit {
+    private final String host;
+    private final String pathPrefix;
+    private final long intervalNanos;
+    private final int burst;
+    private final long maxWaitNanos;
+    private final ConcurrentMap<String, TokenBucket> buckets;
+
+    private RateLimit(Builder builder) {
+        this.host = builder.host;
+        this.pathPrefix = builder.pathPrefix;
+        this.intervalNanos = builder.intervalNanos;
+        this.burst = builder.burst;
+        this.maxWaitNanos = builder.maxWaitNanos;
+        this.buckets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Creates the limit shared by all calls to the host.
+     *
+     * @param host the host, as in {@link HttpUrl#host()}
+     * @return the Builder to add more parameters
+     */
+    public static Builder forHost(String host) {
+        return new Builder(host, null);
+    }
+
+    /**
+     * Creates the limit shared by calls to the host with path starting with {@code pathPrefix}.
+     *
+     * @param host       the host, as in {@link HttpUrl#host()}
+     * @param pathPrefix beginning of {@link HttpUrl#encodedPath()}, e.g. {@code /search/}
+     * @return the Builder to add more parameters
+     */
+    public static Builder forEndpoint(String host, String pathPrefix) {
+        return new Builder(host, pathPrefix);
+    }
+
+    /**
+     * Creates the limit applied to every host separately.
+     *
+     * @return the Builder to add more parameters
+     */
+    public static Builder forEveryHost() {
+        return new Builder(null, null);
+    }
+
+    public boolean matches(HttpUrl url) {
+        return (host == null || host.equalsIgnoreCase(url.host()))
+                && (pathPrefix == null || url.encodedPath().startsWith(pathPrefix));
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    /**
+     * Returns the bucket for given host. For limits created with {@link #forHost(String)}
+     * and {@link #forEndpoint(String, String)} there is only one bucket.
+     *
+     * @param host the host taken from request url
+     * @return the bucket tokens are taken from
+     */
+    public TokenBucket getBucket(String host) {
+        String key = this.host == null ? host : this.host;
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(intervalNanos, burst);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    public static final class Builder {
+        private final String host;
+        private final String pathPrefix;
+        private long intervalNanos = TimeUnit.SECONDS.toNanos(1);
+        private int burst = 1;
+        private long maxWaitNanos = Long.MAX_VALUE;
+
+        private Builder(String host, String pathPrefix) {
+            this.host = host;
+            this.pathPrefix = pathPrefix;
+        }
+
+        /**
+         * Sets the number of calls allowed in given period.
+         *
+         * @param permits number of calls
+         * @param period  length of the period
+         * @param unit    unit of {@code period}
+         * @return the Builder to add more parameters
+         */
+        public Builder setRate(int permits, long period, TimeUnit unit) {
+            if (permits < 1 || period < 1) {
+                throw new IllegalArgumentException("Rate must be positive");
+            }
+            this.intervalNanos = Math.max(1, unit.toNanos(period) / permits);
+            return this;
+        }
+
+        /**
+         * Sets the number of calls that can be sent at once after a period of inactivity.
+         *
+         * @param burst size of the bucket, 1 by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setBurst(int burst) {
+            if (burst < 1) {
+                throw new IllegalArgumentException("Burst must be positive");
+            }
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Sets the longest time a call can wait for the token. When the wait would be longer,
+         * the call ends with {@link RateLimitExceededException}.
+         *
+         * @param maxWait the time
+         * @param unit    unit of {@code maxWait}
+         * @return the Builder to add more parameters
+         */
+        public Builder setMaxWait(long maxWait, TimeUnit unit) {
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        public RateLimit build() {
+            return new RateLimit(this);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.limit;
+
+/**
+ * Thrown when the call was not sent, because the next token of {@link RateLimit} would be available
+ * later than {@link RateLimit.Builder#setMaxWait(long, java.util.concurrent.TimeUnit) maximum wait time}.
+ */
+public class RateLimitExceededException extends LimitExceededException {
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitExceededException(String host) {
+        super("Rate limit exceeded for host: ", host);
+    }
+}
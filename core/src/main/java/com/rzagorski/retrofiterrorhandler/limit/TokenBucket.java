@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <br>
+ * Instead of counting tokens, the bucket keeps the time at which the next token will be free
+ * (the generic cell rate algorithm), so taking a token is a single compare-and-set and
+ * the bucket never needs a refilling thread.
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong nextFreeTime;
+
+    /**
+     * @param intervalNanos time needed to refill one token
+     * @param capacity      maximum number of tokens that can be taken at once
+     */
+    public TokenBucket(long intervalNanos, int capacity) {
+        this.intervalNanos = intervalNanos;
+        this.burstNanos = intervalNanos * (capacity - 1);
+        this.nextFreeTime = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token without blocking.
+     *
+     * @return {@code true} when the token was available right now
+     */
+    public boolean tryAcquire() {
+        return tryReserve(0) == 0;
+    }
+
+    /**
+     * Reserves the next token, no matter how far in the future it is.
+     *
+     * @return the time in nanoseconds the caller has to wait before using the token
+     */
+    public long reserve() {
+        return tryReserve(Long.MAX_VALUE);
+    }
+
+    /**
+     * Reserves the next token, only when it will be available within {@code maxWaitNanos}.
+     *
+     * @param maxWaitNanos the longest acceptable wait
+     * @return the time in nanoseconds the caller has to wait before using the token
+     * or {@code -1} when nothing was reserved
+     */
+    public long tryReserve(long maxWaitNanos) {
+        for (; ; ) {
+            long now = System.nanoTime();
+            long current = nextFreeTime.get();
+            long waitNanos = Math.max(0, current - burstNanos - now);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            long next = (current - now > 0 ? current : now) + intervalNanos;
+            if (nextFreeTime.compareAndSet(current, next)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    /**
+     * Gives back the token reserved with {@link #tryReserve(long)}, which was not used,
+     * e.g. the call was cancelled during the wait. Nothing is given back to a full bucket.
+     */
+    public void release() {
+        for (; ; ) {
+            long now = System.nanoTime();
+            long current = nextFreeTime.get();
+            if (current - now <= 0) {
+                return;
+            }
+            long next = Math.max(current - intervalNanos, now);
+            if (nextFreeTime.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.metrics;
+
+import java.util.Map;
+
+/**
+ * Latencies of a single Retrofit method in one interval, in microseconds.
+ */
+public final class EndpointSnapshot {
+    private final String endpoint;
+    private final HistogramSnapshot firstAttempt;
+    private final HistogramSnapshot total;
+    private final HistogramSnapshot attempts;
+    private final Map<String, HistogramSnapshot> backoff;
+
+    EndpointSnapshot(String endpoint, HistogramSnapshot firstAttempt, HistogramSnapshot total,
+                     HistogramSnapshot attempts, Map<String, HistogramSnapshot> backoff) {
+        this.endpoint = endpoint;
+        this.firstAttempt = firstAttempt;
+        this.total = total;
+        this.attempts = attempts;
+        this.backoff = backoff;
+    }
+
+    /**
+     * @return HTTP method and path template, e.g. {@code GET /users/{owner}/repos}
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return time from the subscription to the response or the error of the first attempt
+     */
+    public HistogramSnapshot getFirstAttempt() {
+        return firstAttempt;
+    }
+
+    /**
+     * @return time from the subscription to the end of the call, with all retries and backoff waits
+     */
+    public HistogramSnapshot getTotal() {
+        return total;
+    }
+
+    /**
+     * @return number of attempts made by the calls, not a latency
+     */
+    public HistogramSnapshot getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return backoff waits by the simple name of the strategy, which waited
+     */
+    public Map<String, HistogramSnapshot> getBackoff() {
+        return backoff;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + " {firstAttempt: " + firstAttempt + "; total: " + total + "; attempts: " + attempts
+                + "; backoff: " + backoff + "}";
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.metrics;
+
+/**
+ * Values recorded by {@link IntervalRecorder} in a single interval. Percentiles are given as the highest value
+ * of the bucket they fall into, so they are never lower than the recorded value.
+ */
+public final class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+
+    HistogramSnapshot(long[] counts, long count, long sum) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return mean of the values or 0, when nothing was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100, e.g. {@code 99.9}
+     * @return value at the percentile or 0, when nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        double bounded = Math.min(Math.max(percentile, 0), 100);
+        long target = Math.max(1, (long) Math.ceil(bounded / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return IntervalRecorder.highestValueAt(i);
+            }
+        }
+        return IntervalRecorder.MAX_VALUE;
+    }
+
+    public long getP50() {
+        return getValueAtPercentile(50);
+    }
+
+    public long getP90() {
+        return getValueAtPercentile(90);
+    }
+
+    public long getP99() {
+        return getValueAtPercentile(99);
+    }
+
+    public long getP999() {
+        return getValueAtPercentile(99.9);
+    }
+
+    public long getMax() {
+        return getValueAtPercentile(100);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", p50=" + getP50() + ", p90=" + getP90() + ", p99=" + getP99()
+                + ", p999=" + getP999() + ", max=" + getMax();
+    }
+}
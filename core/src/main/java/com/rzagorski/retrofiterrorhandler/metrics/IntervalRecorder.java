@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, in the spirit of the {@code Recorder} of HdrHistogram.
+ * Values below 128 are counted exactly, larger ones in buckets narrower than 2% of the value.
+ * <br>
+ * Recording only increments atomic counters, so it can be made from any thread. The counters are never reset:
+ * {@link #intervalSnapshot()} subtracts the counts seen by the previous snapshot, so a value recorded
+ * while the snapshot is taken falls into the next interval, instead of being lost.
+ */
+public class IntervalRecorder {
+    /**
+     * Values above are recorded as the highest value, about 19 hours in microseconds.
+     */
+    public static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong sum;
+    private final long[] previousCounts;
+    private long previousSum;
+
+    public IntervalRecorder() {
+        this.counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+        this.sum = new AtomicLong();
+        this.previousCounts = new long[counts.length()];
+    }
+
+    /**
+     * @param value value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long bounded = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(bounded));
+        sum.addAndGet(bounded);
+    }
+
+    /**
+     * Returns the values recorded since the previous call.
+     *
+     * @return histogram of the interval
+     */
+    public synchronized HistogramSnapshot intervalSnapshot() {
+        long[] interval = new long[previousCounts.length];
+        long count = 0;
+        for (int i = 0; i < interval.length; i++) {
+            long current = counts.get(i);
+            interval[i] = current - previousCounts[i];
+            previousCounts[i] = current;
+            count += interval[i];
+        }
+        //the sum can include a value, which is counted in the next interval, it only moves the mean a bit
+        long currentSum = sum.get();
+        long intervalSum = currentSum - previousSum;
+        previousSum = currentSum;
+        return new HistogramSnapshot(interval, count, intervalSum);
+    }
+
+    //values are split into exact sub-buckets below 128 and into 64 sub-buckets of every next power of 2
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) (value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = index - SUB_BUCKET_COUNT;
+        int shift = bucket / SUB_BUCKET_HALF + 1;
+        long subBucket = bucket % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.metrics;
+
+import com.rzagorski.retrofiterrorhandler.tracing.SemanticAttributes;
+import com.rzagorski.retrofiterrorhandler.tracing.Span;
+import com.rzagorski.retrofiterrorhandler.tracing.SpanExporter;
+import com.rzagorski.retrofiterrorhandler.tracing.Tracer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records latency distributions of every Retrofit method from the spans of the {@link Tracer}:
+ * <ul>
+ * <li>the first attempt of the call,</li>
+ * <li>the whole call, with retries and backoff waits,</li>
+ * <li>backoff waits of every strategy,</li>
+ * <li>number of attempts of the call.</li>
+ * </ul>
+ * The methods are told apart by the HTTP method and path template, so {@code /users/{owner}/repos} is a single
+ * endpoint, whatever the owner. Unsubscribed calls are not recorded.
+ * <br>
+ * Use it as the exporter of the tracer, or together with another exporter in
+ * {@link com.rzagorski.retrofiterrorhandler.tracing.CompositeSpanExporter}:
+ * <pre>
+ * LatencyMetrics metrics = new LatencyMetrics();
+ * new RxCallAdapter.Builder().setTracer(new Tracer(metrics))
+ * </pre>
+ */
+public class LatencyMetrics implements SpanExporter {
+    private final ConcurrentMap<String, EndpointRecorder> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean export(Collection<Span> spans) {
+        for (Span span : spans) {
+            record(span);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the latencies recorded since the previous call, sorted by endpoint. Endpoints without calls
+     * in the interval are returned with empty histograms.
+     *
+     * @return snapshots by the endpoint
+     */
+    public Map<String, EndpointSnapshot> intervalSnapshot() {
+        Map<String, EndpointSnapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, EndpointRecorder> entry : endpoints.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().intervalSnapshot(entry.getKey()));
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    @Override
+    public void shutdown() {
+        endpoints.clear();
+    }
+
+    private void record(Span span) {
+        Object method = span.getAttribute(SemanticAttributes.HTTP_METHOD);
+        Object route = span.getAttribute(SemanticAttributes.HTTP_ROUTE);
+        if (method == null || route == null || span.getStatusCode() == Span.StatusCode.UNSET) {
+            return;
+        }
+        EndpointRecorder recorder = getOrCreate(method + " " + route);
+        long micros = TimeUnit.NANOSECONDS.toMicros(span.getEndEpochNanos() - span.getStartEpochNanos());
+        if (span.getKind() == Span.Kind.CLIENT) {
+            recorder.total.record(micros);
+            Object retries = span.getAttribute(SemanticAttributes.RETRY_COUNT);
+            recorder.attempts.record(retries instanceof Number ? ((Number) retries).longValue() + 1 : 1);
+        } else if (Tracer.ATTEMPT.equals(span.getName())) {
+            if (Integer.valueOf(1).equals(span.getAttribute(SemanticAttributes.RETRY_ATTEMPT))) {
+                recorder.firstAttempt.record(micros);
+            }
+        } else if (Tracer.BACKOFF.equals(span.getName())
+                && span.getAttribute(SemanticAttributes.RETRY_DELAY_MS) != null) {
+            recorder.getOrCreateBackoff(String.valueOf(span.getAttribute(SemanticAttributes.RETRY_STRATEGY)))
+                    .record(micros);
+        }
+    }
+
+    private EndpointRecorder getOrCreate(String endpoint) {
+        EndpointRecorder recorder = endpoints.get(endpoint);
+        if (recorder == null) {
+            EndpointRecorder created = new EndpointRecorder();
+            recorder = endpoints.putIfAbsent(endpoint, created);
+            if (recorder == null) {
+                recorder = created;
+            }
+        }
+        return recorder;
+    }
+
+    private static class EndpointRecorder {
+        final IntervalRecorder firstAttempt = new IntervalRecorder();
+        final IntervalRecorder total = new IntervalRecorder();
+        final IntervalRecorder attempts = new IntervalRecorder();
+        final ConcurrentMap<String, IntervalRecorder> backoff = new ConcurrentHashMap<>();
+
+        IntervalRecorder getOrCreateBackoff(String strategy) {
+            IntervalRecorder recorder = backoff.get(strategy);
+            if (recorder == null) {
+                IntervalRecorder created = new IntervalRecorder();
+                recorder = backoff.putIfAbsent(strategy, created);
+                if (recorder == null) {
+                    recorder = created;
+                }
+            }
+            return recorder;
+        }
+
+        EndpointSnapshot intervalSnapshot(String endpoint) {
+            Map<String, HistogramSnapshot> backoffSnapshots = new LinkedHashMap<>();
+            for (Map.Entry<String, IntervalRecorder> entry : new TreeMap<>(backoff).entrySet()) {
+                backoffSnapshots.put(entry.getKey(), entry.getValue().intervalSnapshot());
+            }
+            return new EndpointSnapshot(endpoint, firstAttempt.intervalSnapshot(), total.intervalSnapshot(),
+                    attempts.intervalSnapshot(), Collections.unmodifiableMap(backoffSnapshots));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.offline;
+
+/**
+ * Checks, whether the network is available again, while {@link OfflineMode} is offline.
+ * It is called on the background thread of {@link OfflineMode}, so it may block.
+ *
+ * @see HttpConnectivityProbe
+ */
+public interface ConnectivityProbe {
+
+    /**
+     * @return {@code true} when the network is available
+     * @throws Exception when the check failed, which means the network is not available
+     */
+    boolean isConnected() throws Exception;
+}
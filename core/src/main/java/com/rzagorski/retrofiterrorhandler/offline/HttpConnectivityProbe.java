@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.offline;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends {@code HEAD} request to the url. Any response, whatever its code, means the network is available.
+ */
+public class HttpConnectivityProbe implements ConnectivityProbe {
+    private final Call.Factory client;
+    private final HttpUrl url;
+
+    /**
+     * @param client the client the probe is sent with, e.g. {@link okhttp3.OkHttpClient} with short timeouts
+     * @param url    the url the probe is sent to
+     */
+    public HttpConnectivityProbe(Call.Factory client, String url) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            throw new IllegalArgumentException("Invalid url: " + url);
+        }
+        this.client = client;
+        this.url = httpUrl;
+    }
+
+    @Override
+    public boolean isConnected() throws Exception {
+        Request request = new Request.Builder()
+                .url(url)
+                .head()
+                .build();
+        Response response = client.newCall(request).execute();
+        response.close();
+        return true;
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.offline;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parks the calls, which cannot reach the network, instead of letting every one of them retry on its own schedule.
+ * <br>
+ * {@link UnknownHostException} and {@link ConnectException} are connectivity failures. When this many of them
+ * occurred in a row, in any calls, the network is considered down: the calls failing with a connectivity
+ * failure are parked in a bounded queue and do not schedule retries. A single {@link ConnectivityProbe}
+ * checks the network in the background, waiting twice as long after every failed check. When it succeeds,
+ * or any call succeeds, the parked calls are released in batches, so they do not all hit the network at once.
+ * <br>
+ * The same instance can be set on many {@code RxCallAdapter}s to share the probe and the queue between them.
+ */
+public class OfflineMode {
+    private final ConnectivityProbe probe;
+    private final int failureThreshold;
+    private final int maxParkedCalls;
+    private final long initialProbeDelayNanos;
+    private final long maxProbeDelayNanos;
+    private final int releaseBatchSize;
+    private final long releaseIntervalNanos;
+    private final ScheduledExecutorService executor;
+    private final AtomicInteger connectivityFailures;
+    private final AtomicBoolean offline;
+    //incremented every time the network goes down, so the probe of the previous outage stops
+    private final AtomicInteger outage;
+    private final Queue<ParkedCall> parked;
+    private final AtomicInteger parkedCount;
+    private final AtomicBoolean releaseScheduled;
+    private final Runnable releaseTask = new Runnable() {
+        @Override
+        public void run() {
+            releaseBatch();
+        }
+    };
+
+    private OfflineMode(Builder builder) {
+        this.probe = builder.probe;
+        this.failureThreshold = builder.failureThreshold;
+        this.maxParkedCalls = builder.maxParkedCalls;
+        this.initialProbeDelayNanos = builder.initialProbeDelayNanos;
+        this.maxProbeDelayNanos = builder.maxProbeDelayNanos;
+        this.releaseBatchSize = builder.releaseBatchSize;
+        this.releaseIntervalNanos = builder.releaseIntervalNanos;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "OfflineMode probe");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.executor = executor;
+        this.connectivityFailures = new AtomicInteger();
+        this.offline = new AtomicBoolean();
+        this.outage = new AtomicInteger();
+        this.parked = new ConcurrentLinkedQueue<>();
+        this.parkedCount = new AtomicInteger();
+        this.releaseScheduled = new AtomicBoolean();
+    }
+
+    /**
+     * @param throwable the error of the attempt
+     * @return {@code true} when the attempt failed, because the network is not available
+     */
+    public static boolean isConnectivityFailure(Throwable throwable) {
+        return throwable instanceof UnknownHostException || throwable instanceof ConnectException;
+    }
+
+    public boolean isOffline() {
+        return offline.get();
+    }
+
+    /**
+     * @return number of calls waiting for the network right now
+     */
+    public int getParkedCount() {
+        return parkedCount.get();
+    }
+
+    public int getMaxParkedCalls() {
+        return maxParkedCalls;
+    }
+
+    /**
+     * Records the attempt, which reached the server, whatever the response was. Brings the network
+     * back up, when it was considered down.
+     */
+    public void recordSuccess() {
+        connectivityFailures.set(0);
+        if (offline.compareAndSet(true, false)) {
+            scheduleRelease(0);
+        }
+    }
+
+    /**
+     * Records the failed attempt. Connectivity failures bring the network down, when there are enough of them in a row.
+     *
+     * @param throwable the error of the attempt
+     */
+    public void recordFailure(Throwable throwable) {
+        if (!isConnectivityFailure(throwable)) {
+            return;
+        }
+        if (connectivityFailures.incrementAndGet() >= failureThreshold && offline.compareAndSet(false, true)) {
+            scheduleProbe(outage.incrementAndGet(), initialProbeDelayNanos);
+        }
+    }
+
+    /**
+     * Parks the call, until the network is available.
+     *
+     * @param onRelease called on the background thread, when the call can be retried
+     * @return the parked call, which should be cancelled, when the call ends before it is released,
+     * or {@code null}, when the queue is full
+     */
+    public ParkedCall park(Runnable onRelease) {
+        for (; ; ) {
+            int current = parkedCount.get();
+            if (current >= maxParkedCalls) {
+                return null;
+            }
+            if (parkedCount.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        ParkedCall parkedCall = new ParkedCall(this, onRelease);
+        parked.offer(parkedCall);
+        if (!offline.get()) {
+            //the network came back, while the call was being parked
+            scheduleRelease(0);
+        }
+        return parkedCall;
+    }
+
+    private void scheduleProbe(final int probedOutage, final long delayNanos) {
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!offline.get() || outage.get() != probedOutage) {
+                    return;
+                }
+                boolean connected;
+                try {
+                    connected = probe.isConnected();
+                } catch (Exception e) {
+                    connected = false;
+                }
+                if (connected) {
+                    recordSuccess();
+                } else {
+                    scheduleProbe(probedOutage, Math.min(delayNanos * 2, maxProbeDelayNanos));
+                }
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void scheduleRelease(long delayNanos) {
+        if (releaseScheduled.compareAndSet(false, true)) {
+            executor.schedule(releaseTask, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void releaseBatch() {
+        releaseScheduled.set(false);
+        if (offline.get()) {
+            //the network went down again, the calls wait for the next probe
+            return;
+        }
+        int released = 0;
+        while (released < releaseBatchSize) {
+            ParkedCall parkedCall = parked.poll();
+            if (parkedCall == null) {
+                return;
+            }
+            if (parkedCall.release()) {
+                released++;
+            }
+        }
+        if (!parked.isEmpty()) {
+            scheduleRelease(releaseIntervalNanos);
+        }
+    }
+
+    /**
+     * The call waiting for the network.
+     */
+    public static final class ParkedCall {
+        private final OfflineMode offlineMode;
+        private final Runnable onRelease;
+        private final AtomicBoolean parked;
+
+        private ParkedCall(OfflineMode offlineMode, Runnable onRelease) {
+            this.offlineMode = offlineMode;
+            this.onRelease = onRelease;
+            this.parked = new AtomicBoolean(true);
+        }
+
+        /**
+         * Removes the call from the queue. It is not released anymore.
+         */
+        public void cancel() {
+            if (parked.compareAndSet(true, false)) {
+                offlineMode.parkedCount.decrementAndGet();
+                offlineMode.parked.remove(this);
+            }
+        }
+
+        boolean release() {
+            if (!parked.compareAndSet(true, false)) {
+                return false;
+            }
+            offlineMode.parkedCount.decrementAndGet();
+            onRelease.run();
+            return true;
+        }
+    }
+
+    public static final class Builder {
+        private final ConnectivityProbe probe;
+        private int failureThreshold = 3;
+        private int maxParkedCalls = 100;
+        private long initialProbeDelayNanos = TimeUnit.SECONDS.toNanos(1);
+        private long maxProbeDelayNanos = TimeUnit.MINUTES.toNanos(1);
+        private int releaseBatchSize = 10;
+        private long releaseIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+        /**
+         * @param probe the check of the network, e.g. {@link HttpConnectivityProbe}
+         */
+        public Builder(ConnectivityProbe probe) {
+            if (probe == null) {
+                throw new IllegalArgumentException("Probe must not be null");
+            }
+            this.probe = probe;
+        }
+
+        /**
+         * Sets the number of connectivity failures in a row, after which the network is considered down.
+         *
+         * @param failureThreshold the number of failures, 3 by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setFailureThreshold(int failureThreshold) {
+            if (failureThreshold < 1) {
+                throw new IllegalArgumentException("Failure threshold must be positive");
+            }
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the number of calls, which can wait for the network at once. When the cap is reached,
+         * a failed call ends with {@link OfflineQueueFullException}.
+         *
+         * @param maxParkedCalls the cap, 100 by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setMaxParkedCalls(int maxParkedCalls) {
+            if (maxParkedCalls < 0) {
+                throw new IllegalArgumentException("Max parked calls must not be negative");
+            }
+            this.maxParkedCalls = maxParkedCalls;
+            return this;
+        }
+
+        /**
+         * Sets the wait before the first check of the network and the cap of the waits between the next ones.
+         *
+         * @param initialDelay the first wait, 1 second by default
+         * @param maxDelay     the longest wait, 1 minute by default
+         * @param unit         unit of both delays
+         * @return the Builder to add more parameters
+         */
+        public Builder setProbeDelay(long initialDelay, long maxDelay, TimeUnit unit) {
+            if (initialDelay <= 0 || maxDelay < initialDelay) {
+                throw new IllegalArgumentException("Delays must be positive and the max delay not shorter");
+            }
+            this.initialProbeDelayNanos = unit.toNanos(initialDelay);
+            this.maxProbeDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * Sets how many parked calls are released at once, when the network is back, and how often.
+         *
+         * @param batchSize the number of calls, 10 by default
+         * @param interval  the time between the batches, 1 second by default
+         * @param unit      unit of {@code interval}
+         * @return the Builder to add more parameters
+         */
+        public Builder setReleaseBatch(int batchSize, long interval, TimeUnit unit) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            this.releaseBatchSize = batchSize;
+            this.releaseIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        public OfflineMode build() {
+            return new OfflineMode(this);
+        }
+    }
+}
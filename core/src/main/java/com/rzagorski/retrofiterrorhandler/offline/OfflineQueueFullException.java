@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.offline;
+
+/**
+ * Thrown instead of parking the call, when the network is down and the number of parked calls
+ * reached the cap set with {@link OfflineMode.Builder#setMaxParkedCalls(int)}.
+ * The original error is the cause.
+ */
+public class OfflineQueueFullException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int maxParkedCalls;
+
+    public OfflineQueueFullException(int maxParkedCalls, Throwable cause) {
+        super("Too many calls waiting for the network, the cap is: " + maxParkedCalls, cause);
+        this.maxParkedCalls = maxParkedCalls;
+    }
+
+    public int getMaxParkedCalls() {
+        return maxParkedCalls;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.scheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts calls waiting for a retry, from the failure accepted by backoff strategies until the retry
+ * is made, and keeps the count under the cap.
+ */
+public class PendingRetries {
+    private final int maxPendingRetries;
+    private final AtomicInteger depth;
+
+    public PendingRetries(int maxPendingRetries) {
+        this.maxPendingRetries = maxPendingRetries;
+        this.depth = new AtomicInteger();
+    }
+
+    /**
+     * @return {@code true} when the call can wait for the retry, {@code false} when the cap was reached
+     */
+    public boolean tryEnter() {
+        for (; ; ) {
+            int current = depth.get();
+            if (current >= maxPendingRetries) {
+                return false;
+            }
+            if (depth.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void leave() {
+        depth.decrementAndGet();
+    }
+
+    /**
+     * @return number of calls waiting for a retry right now
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public int getMaxPendingRetries() {
+        return maxPendingRetries;
+    }
+}
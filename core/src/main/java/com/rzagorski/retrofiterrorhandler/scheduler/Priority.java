@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.scheduler;
+
+import java.lang.annotation.Annotation;
+import java.util.Locale;
+
+import okhttp3.Request;
+
+/**
+ * Priority of retries made by {@link RetryScheduler}, from the most to the least important.
+ */
+public enum Priority {
+    HIGH,
+    NORMAL,
+    LOW;
+
+    /**
+     * Resolves the priority of a call. The {@link RetryPriority#HEADER header} set for a single call
+     * takes precedence over {@link RetryPriority} annotation of the method.
+     *
+     * @param annotations annotations of the Retrofit method
+     * @param request     the request of the call
+     * @return the priority, {@link #NORMAL} when nothing was set
+     */
+    public static Priority of(Annotation[] annotations, Request request) {
+        String header = request.header(RetryPriority.HEADER);
+        if (header != null) {
+            try {
+                return valueOf(header.trim().toUpperCase(Locale.US));
+            } catch (IllegalArgumentException ignored) {
+                //unknown value, fall back to the annotation
+            }
+        }
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof RetryPriority) {
+                return ((RetryPriority) annotation).value();
+            }
+        }
+        return NORMAL;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.scheduler;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Removes the {@link RetryPriority#HEADER} header, so it is not sent to the server. The priority is read
+ * from the request of the call before it reaches {@code OkHttpClient}, so it is not affected. Add it to the client:
+ * <pre>{@code
+ * new OkHttpClient.Builder().addInterceptor(new PriorityHeaderInterceptor())
+ * }</pre>
+ */
+public class PriorityHeaderInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (request.header(RetryPriority.HEADER) == null) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder().removeHeader(RetryPriority.HEADER).build());
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.scheduler;
+
+import com.rzagorski.retrofiterrorhandler.limit.TokenBucket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * Coalesces the retries of many calls failing against the same endpoint.
+ * <br>
+ * The first retry, which is due, becomes the leader and is the only one sent to the server.
+ * Retries of other calls to the endpoint, which are due before the leader ends, wait for its outcome.
+ * When the leader succeeds, they are sent, at most at the {@link Builder#setReleaseRate(int, long, TimeUnit)
+ * release rate}. When it fails, they fail with its error without reaching the server, so they go back
+ * to their backoff. When the leader is abandoned, one of them becomes the new leader.
+ * <br>
+ * The first attempts of the calls are never coalesced. The same instance can be set on many
+ * {@code RxCallAdapter}s to coalesce the retries of all of them.
+ */
+public class RetryCoalescer {
+    private final ConcurrentMap<String, Leader> leaders;
+    private final TokenBucket releaseBucket;
+    private final AtomicLong coalescedRetries;
+
+    private RetryCoalescer(Builder builder) {
+        this.leaders = new ConcurrentHashMap<>();
+        this.releaseBucket = builder.releaseBucket;
+        this.coalescedRetries = new AtomicLong();
+    }
+
+    /**
+     * @param request the request of the call
+     * @return the endpoint the retries of the call are coalesced by: method and url without query
+     */
+    public static String endpointOf(Request request) {
+        HttpUrl url = request.url();
+        return request.method() + ' ' + url.scheme() + "://" + url.host() + ':' + url.port() + url.encodedPath();
+    }
+
+    /**
+     * Joins the retry, which is due now.
+     *
+     * @param endpoint the endpoint from {@link #endpointOf(Request)}
+     * @return the retry, which is either the leader or waits for the leader
+     */
+    public Retry join(String endpoint) {
+        Leader created = new Leader(this, endpoint);
+        Leader leader = leaders.putIfAbsent(endpoint, created);
+        if (leader == null) {
+            return new Retry(created, true);
+        }
+        Retry retry = new Retry(leader, false);
+        coalescedRetries.incrementAndGet();
+        return retry;
+    }
+
+    /**
+     * @return number of retries, which waited for the leader, instead of being sent to the server
+     */
+    public long getCoalescedRetries() {
+        return coalescedRetries.get();
+    }
+
+    private long reserveRelease() {
+        return releaseBucket == null ? 0 : releaseBucket.reserve();
+    }
+
+    /**
+     * Receives the outcome of the leader. Called on the thread, which ended the leader.
+     */
+    public interface Listener {
+
+        /**
+         * @param delayNanos the time to wait before the retry is sent, to keep the release rate
+         */
+        void onLeaderSucceeded(long delayNanos);
+
+        /**
+         * @param error the error the leader failed with
+         */
+        void onLeaderFailed(Throwable error);
+
+        /**
+         * The leader ended without outcome, the retry should join again.
+         */
+        void onLeaderAbandoned();
+    }
+
+    /**
+     * The retry of a single call.
+     */
+    public static final class Retry {
+        private final Leader leader;
+        private final boolean isLeader;
+        private Listener listener;
+
+        private Retry(Leader leader, boolean isLeader) {
+            this.leader = leader;
+            this.isLeader = isLeader;
+        }
+
+        /**
+         * @return {@code true} when the retry is sent to the server and should report its outcome
+         */
+        public boolean isLeader() {
+            return isLeader;
+        }
+
+        /**
+         * Reports the success of the leader.
+         */
+        public void succeeded() {
+            if (isLeader) {
+                leader.finish(Leader.SUCCEEDED, null);
+            }
+        }
+
+        /**
+         * Reports the failure of the leader.
+         *
+         * @param error the error of the attempt
+         */
+        public void failed(Throwable error) {
+            if (isLeader) {
+                leader.finish(Leader.FAILED, error);
+            }
+        }
+
+        /**
+         * Waits for the outcome of the leader. Called once, by the retry, which is not the leader.
+         *
+         * @param listener notified of the outcome, immediately, when the leader has already ended
+         */
+        public void await(Listener listener) {
+            this.listener = listener;
+            leader.addFollower(this);
+        }
+
+        /**
+         * Ends the retry, which did not get the outcome. The leader lets the others join again.
+         */
+        public void cancel() {
+            if (isLeader) {
+                leader.finish(Leader.ABANDONED, null);
+            } else {
+                leader.removeFollower(this);
+            }
+        }
+    }
+
+    private static final class Leader {
+        static final int RUNNING = 0;
+        static final int SUCCEEDED = 1;
+        static final int FAILED = 2;
+        static final int ABANDONED = 3;
+
+        private final RetryCoalescer coalescer;
+        private final String endpoint;
+        private final List<Retry> followers;
+        private int outcome;
+        private Throwable error;
+
+        Leader(RetryCoalescer coalescer, String endpoint) {
+            this.coalescer = coalescer;
+            this.endpoint = endpoint;
+            this.followers = new ArrayList<>();
+        }
+
+        void finish(int outcome, Throwable error) {
+            List<Retry> notified;
+            synchronized (this) {
+                if (this.outcome != RUNNING) {
+                    return;
+                }
+                this.outcome = outcome;
+                this.error = error;
+                notified = new ArrayList<>(followers);
+                followers.clear();
+            }
+            //retries due from now on elect the new leader
+            coalescer.leaders.remove(endpoint, this);
+            for (Retry follower : notified) {
+                notify(follower);
+            }
+        }
+
+        void addFollower(Retry follower) {
+            synchronized (this) {
+                if (outcome == RUNNING) {
+                    followers.add(follower);
+                    return;
+                }
+            }
+            notify(follower);
+        }
+
+        synchronized void removeFollower(Retry follower) {
+            followers.remove(follower);
+        }
+
+        private void notify(Retry follower) {
+            switch (outcome) {
+                case SUCCEEDED:
+                    follower.listener.onLeaderSucceeded(coalescer.reserveRelease());
+                    break;
+                case FAILED:
+                    follower.listener.onLeaderFailed(error);
+                    break;
+                default:
+                    follower.listener.onLeaderAbandoned();
+                    break;
+            }
+        }
+    }
+
+    public static final class Builder {
+        private TokenBucket releaseBucket;
+
+        /**
+         * Limits the rate at which the retries waiting for the leader are sent, when it succeeds.
+         *
+         * @param retries the number of retries sent at once and in every period
+         * @param period  the period, in which {@code retries} are sent
+         * @param unit    unit of {@code period}
+         * @return the Builder to add more parameters
+         */
+        public Builder setReleaseRate(int retries, long period, TimeUnit unit) {
+            if (retries < 1 || period <= 0) {
+                throw new IllegalArgumentException("Retries and period must be positive");
+            }
+            this.releaseBucket = new TokenBucket(unit.toNanos(period) / retries, retries);
+            return this;
+        }
+
+        public RetryCoalescer build() {
+            return new RetryCoalescer(this);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.scheduler;
+
+/**
+ * Thrown instead of retrying, when the number of calls waiting for a retry reached
+ * the cap set with {@code RxCallAdapter.Builder#setMaxPendingRetries(int)}.
+ * The original error is the cause.
+ */
+public class RetryQueueFullException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int maxPendingRetries;
+
+    public RetryQueueFullException(int maxPendingRetries, Throwable cause) {
+        super("Too many pending retries, the cap is: " + maxPendingRetries, cause);
+        this.maxPendingRetries = maxPendingRetries;
+    }
+
+    public int getMaxPendingRetries() {
+        return maxPendingRetries;
+    }
+}
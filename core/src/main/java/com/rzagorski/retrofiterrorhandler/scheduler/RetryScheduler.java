@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Central scheduler of retries made by backoff strategies.
+ * <br>
+ * At most {@code maxConcurrentRetries} retries run at once. Retries which are due when the cap
+ * is reached wait in a queue and are released in {@link Priority} order. A retry waiting longer
+ * than the starvation timeout goes before all others, so low priority retries are delayed,
+ * but never starved.
+ * <br>
+ * The same instance can be set on many {@code RxCallAdapter}s
+ * to share the cap between them.
+ */
+public class RetryScheduler {
+    private final int maxConcurrentRetries;
+    private final long starvationNanos;
+    private final List<Queue<Ticket>> queues;
+    private final AtomicInteger running;
+    private final AtomicInteger queued;
+
+    private RetryScheduler(Builder builder) {
+        this.maxConcurrentRetries = builder.maxConcurrentRetries;
+        this.starvationNanos = builder.starvationNanos;
+        this.queues = new ArrayList<>(Priority.values().length);
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new ConcurrentLinkedQueue<Ticket>());
+        }
+        this.running = new AtomicInteger();
+        this.queued = new AtomicInteger();
+    }
+
+    /**
+     * Creates the ticket used by all retries of a single subscription to the call.
+     *
+     * @param priority priority of the retries
+     * @return the ticket
+     */
+    public Ticket newTicket(Priority priority) {
+        return new Ticket(this, priority);
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    public int getQueued() {
+        return Math.max(0, queued.get());
+    }
+
+    void submit(Ticket ticket) {
+        queues.get(ticket.priority.ordinal()).offer(ticket);
+        queued.incrementAndGet();
+        drain();
+    }
+
+    //the ticket polled by drain is counted there
+    void cancel(Ticket ticket) {
+        if (queues.get(ticket.priority.ordinal()).remove(ticket)) {
+            queued.decrementAndGet();
+        }
+    }
+
+    void releaseSlot() {
+        running.decrementAndGet();
+        drain();
+    }
+
+    private void drain() {
+        while (queued.get() > 0 && tryTakeSlot()) {
+            Ticket ticket = pollNext();
+            if (ticket == null) {
+                running.decrementAndGet();
+                return;
+            }
+            queued.decrementAndGet();
+            if (!ticket.grant()) {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean tryTakeSlot() {
+        for (; ; ) {
+            int current = running.get();
+            if (current >= maxConcurrentRetries) {
+                return false;
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private Ticket pollNext() {
+        long now = System.nanoTime();
+        //the retry waiting longest among those over the starvation timeout goes first
+        Ticket starving = null;
+        Queue<Ticket> starvingQueue = null;
+        for (Queue<Ticket> queue : queues) {
+            Ticket head = queue.peek();
+            if (head != null && now - head.enqueueTime >= starvationNanos
+                    && (starving == null || head.enqueueTime - starving.enqueueTime < 0)) {
+                starving = head;
+                starvingQueue = queue;
+            }
+        }
+        if (starving != null && starvingQueue.remove(starving)) {
+            return starving;
+        }
+        for (Queue<Ticket> queue : queues) {
+            Ticket ticket = queue.poll();
+            if (ticket != null) {
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retries of a single subscription to the call. The ticket takes a slot when the retry is released
+     * and gives it back when the attempt fails again or the subscription ends.
+     */
+    public static final class Ticket {
+        private static final int IDLE = 0;
+        private static final int QUEUED = 1;
+        private static final int RUNNING = 2;
+        private static final int DONE = 3;
+
+        private final RetryScheduler scheduler;
+        private final Priority priority;
+        private final AtomicInteger state;
+        private volatile Runnable onGranted;
+        private volatile long enqueueTime;
+
+        private Ticket(RetryScheduler scheduler, Priority priority) {
+            this.scheduler = scheduler;
+            this.priority = priority;
+            this.state = new AtomicInteger(IDLE);
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * Queues the retry, which is due now. Calls to this method must not overlap.
+         *
+         * @param onGranted called, possibly on other thread, when the retry can be made
+         */
+        public void schedule(Runnable onGranted) {
+            if (state.get() == IDLE) {
+                this.onGranted = onGranted;
+                this.enqueueTime = System.nanoTime();
+                if (state.compareAndSet(IDLE, QUEUED)) {
+                    scheduler.submit(this);
+                    return;
+                }
+            }
+            if (state.get() == RUNNING) {
+                //the slot is already held by this subscription
+                onGranted.run();
+            }
+        }
+
+        /**
+         * Gives back the slot taken by the retry, because the attempt failed.
+         */
+        public void attemptFinished() {
+            if (state.compareAndSet(RUNNING, IDLE)) {
+                scheduler.releaseSlot();
+            }
+        }
+
+        /**
+         * Gives back the slot, if taken, and removes the ticket from the queue.
+         * Called when the subscription to the call ends.
+         */
+        public void release() {
+            int previous = state.getAndSet(DONE);
+            if (previous == RUNNING) {
+                scheduler.releaseSlot();
+            } else if (previous == QUEUED) {
+                scheduler.cancel(this);
+            }
+        }
+
+        boolean grant() {
+            if (state.compareAndSet(QUEUED, RUNNING)) {
+                onGranted.run();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public static final class Builder {
+        private int maxConcurrentRetries = 32;
+        private long starvationNanos = TimeUnit.SECONDS.toNanos(10);
+
+        /**
+         * Sets the number of retries that can run at once, in all calls using this scheduler.
+         *
+         * @param maxConcurrentRetries the cap, 32 by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setMaxConcurrentRetries(int maxConcurrentRetries) {
+            if (maxConcurrentRetries < 1) {
+                throw new IllegalArgumentException("Max concurrent retries must be positive");
+            }
+            this.maxConcurrentRetries = maxConcurrentRetries;
+            return this;
+        }
+
+        /**
+         * Sets the time after which a waiting retry is released before retries of higher priority.
+         *
+         * @param timeout the time, 10 seconds by default
+         * @param unit    unit of {@code timeout}
+         * @return the Builder to add more parameters
+         */
+        public Builder setStarvationTimeout(long timeout, TimeUnit unit) {
+            this.starvationNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        public RetryScheduler build() {
+            return new RetryScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.tracing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Passes the spans to every exporter, e.g. to write them to a file and record their latencies.
+ */
+public class CompositeSpanExporter implements SpanExporter {
+    private final List<SpanExporter> exporters;
+
+    public CompositeSpanExporter(SpanExporter... exporters) {
+        this.exporters = new ArrayList<>(Arrays.asList(exporters));
+    }
+
+    /**
+     * @return {@code true} when every exporter exported the spans
+     */
+    @Override
+    public boolean export(Collection<Span> spans) {
+        boolean exported = true;
+        for (SpanExporter exporter : exporters) {
+            exported &= exporter.export(spans);
+        }
+        return exported;
+    }
+
+    @Override
+    public void shutdown() {
+        for (SpanExporter exporter : exporters) {
+            exporter.shutdown();
+        }
+    }
+}
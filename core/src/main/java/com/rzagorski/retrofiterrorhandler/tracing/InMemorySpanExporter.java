@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.tracing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps the ended spans in memory, e.g. for tests or to show them in a debug screen of the application.
+ */
+public class InMemorySpanExporter implements SpanExporter {
+    private final List<Span> finishedSpans = new ArrayList<>();
+    private boolean shutdown;
+
+    @Override
+    public synchronized boolean export(Collection<Span> spans) {
+        if (shutdown) {
+            return false;
+        }
+        finishedSpans.addAll(spans);
+        return true;
+    }
+
+    /**
+     * @return copy of the spans in order they ended
+     */
+    public synchronized List<Span> getFinishedSpans() {
+        return new ArrayList<>(finishedSpans);
+    }
+
+    /**
+     * Removes the spans exported until now.
+     */
+    public synchronized void reset() {
+        finishedSpans.clear();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        finishedSpans.clear();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.tracing;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends every span as a JSON object in a separate line of the file. The names of the fields follow
+ * the JSON encoding of OpenTelemetry, e.g. {@code traceId} or {@code startTimeUnixNano},
+ * but the attributes are written as a plain object:
+ * <pre>
+ * {"traceId":"...","spanId":"...","parentSpanId":"...","name":"attempt","kind":"INTERNAL",
+ *  "startTimeUnixNano":1508400000000000000,"endTimeUnixNano":1508400000120000000,
+ *  "attributes":{"retry.attempt":1,"http.status_code":503},"status":{"code":"ERROR","message":"..."}}
+ * </pre>
+ * The span of the call has no parent, so its line has no {@code parentSpanId}.
+ * <br>
+ * The spans are batched the same way as the batch span processor of OpenTelemetry does it: ended spans
+ * are put in a bounded queue and a daemon thread writes them and flushes the file once for the batch,
+ * when the batch is full or the flush interval passes. The spans, which do not fit in the queue, are dropped.
+ * {@link #shutdown()} writes the spans left in the queue and closes the file.
+ */
+public class JsonLinesSpanExporter implements SpanExporter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_QUEUE_SIZE = 2048;
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private final Writer writer;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<Span> queue;
+    private final Thread worker;
+    private volatile boolean shutdown;
+
+    /**
+     * Creates the exporter flushing the file every second.
+     *
+     * @param file the file the spans are appended to, it is created, when it does not exist
+     * @throws IOException when the file cannot be opened
+     */
+    public JsonLinesSpanExporter(File file) throws IOException {
+        this(file, 1000);
+    }
+
+    /**
+     * @param file                the file the spans are appended to, it is created, when it does not exist
+     * @param flushIntervalMillis the longest time an ended span waits, before it is written to the file
+     * @throws IOException when the file cannot be opened
+     */
+    public JsonLinesSpanExporter(File file, long flushIntervalMillis) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.queue = new ArrayBlockingQueue<>(MAX_QUEUE_SIZE);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBatches();
+            }
+        }, "JsonLinesSpanExporter");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues the spans, without waiting for the file.
+     *
+     * @return {@code false} when the exporter is shut down or the queue is full and some spans were dropped
+     */
+    @Override
+    public boolean export(Collection<Span> spans) {
+        if (shutdown) {
+            return false;
+        }
+        boolean queued = true;
+        for (Span span : spans) {
+            queued &= queue.offer(span);
+        }
+        return queued;
+    }
+
+    /**
+     * Writes the queued spans and closes the file. Waits for the thread of the exporter to finish.
+     */
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+        }
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatches() {
+        List<Span> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try {
+            while (!shutdown) {
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    Span span = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (span == null) {
+                        break;
+                    }
+                    batch.add(span);
+                }
+                write(batch);
+            }
+        } catch (InterruptedException ignored) {
+            //interrupted by shutdown()
+        }
+        queue.drainTo(batch);
+        write(batch);
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            //the batches were flushed, when they were written
+        }
+    }
+
+    private void write(List<Span> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (Span span : batch) {
+                writer.write(toJson(span));
+                writer.write('\n');
+            }
+            writer.flush();
+        } catch (IOException ignored) {
+            //tracing must not break the calls, the spans are lost
+        }
+        batch.clear();
+    }
+
+    static String toJson(Span span) {
+        StringBuilder json = new StringBuilder(256);
+        json.append('{');
+        appendField(json, "traceId", span.getTraceId()).append(',');
+        appendField(json, "spanId", span.getSpanId()).append(',');
+        if (!Span.INVALID_SPAN_ID.equals(span.getParentSpanId())) {
+            appendField(json, "parentSpanId", span.getParentSpanId()).append(',');
+        }
+        appendField(json, "name", span.getName()).append(',');
+        appendField(json, "kind", span.getKind().name()).append(',');
+        appendString(json, "startTimeUnixNano").append(':').append(span.getStartEpochNanos()).append(',');
+        appendString(json, "endTimeUnixNano").append(':').append(span.getEndEpochNanos()).append(',');
+        appendString(json, "attributes").append(":{");
+        boolean first = true;
+        for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, attribute.getKey()).append(':');
+            appendValue(json, attribute.getValue());
+        }
+        json.append("},");
+        appendString(json, "status").append(":{");
+        appendField(json, "code", span.getStatusCode().name());
+        if (span.getStatusDescription() != null) {
+            json.append(',');
+            appendField(json, "message", span.getStatusDescription());
+        }
+        json.append("}}");
+        return json.toString();
+    }
+
+    private static StringBuilder appendField(StringBuilder json, String name, String value) {
+        return appendString(appendString(json, name).append(':'), value);
+    }
+
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value instanceof Boolean || value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            json.append(value);
+        } else if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue())
+                && !Double.isInfinite(((Number) value).doubleValue())) {
+            json.append(value);
+        } else {
+            appendString(json, String.valueOf(value));
+        }
+    }
+
+    private static StringBuilder appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"');
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.tracing;
+
+/**
+ * Names of the span attributes. HTTP and exception attributes follow the semantic conventions
+ * of OpenTelemetry, retry attributes are specific to the library.
+ */
+public final class SemanticAttributes {
+    public static final String HTTP_METHOD = "http.method";
+    public static final String HTTP_URL = "http.url";
+    public static final String HTTP_STATUS_CODE = "http.status_code";
+    /**
+     * Path template of the Retrofit method, e.g. {@code /users/{owner}/repos}, set on the span of the call
+     * and on its child spans.
+     */
+    public static final String HTTP_ROUTE = "http.route";
+    public static final String EXCEPTION_TYPE = "exception.type";
+    /**
+     * Number of the attempt of the call, starting from 1, or of the retry the backoff wait is made for.
+     */
+    public static final String RETRY_ATTEMPT = "retry.attempt";
+    /**
+     * Simple name of the class of the backoff strategy.
+     */
+    public static final String RETRY_STRATEGY = "retry.strategy";
+    /**
+     * Time the call actually waited for the retry, in milliseconds.
+     */
+    public static final String RETRY_DELAY_MS = "retry.delay_ms";
+    /**
+     * Number of retries made, set on the span of the call.
+     */
+    public static final String RETRY_COUNT = "retry.count";
+
+    private SemanticAttributes() {
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.tracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timed operation of the call: the whole call, an attempt, a backoff wait or an execution of the backup observable.
+ * Identifiers, kind, status and times follow the data model of OpenTelemetry, so the spans can be sent
+ * to any OpenTelemetry collector.
+ * <br>
+ * The span can be changed from many threads until it ends. Ending it again does nothing.
+ */
+public final class Span {
+    public static final String INVALID_SPAN_ID = "0000000000000000";
+
+    public enum Kind {
+        /**
+         * The call made to the server.
+         */
+        CLIENT,
+        /**
+         * Attempts, backoff waits and backup observables of the call.
+         */
+        INTERNAL
+    }
+
+    public enum StatusCode {
+        UNSET, OK, ERROR
+    }
+
+    private final Tracer tracer;
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final Kind kind;
+    private final long startEpochNanos;
+    private final long startNanos;
+    private final Map<String, Object> attributes;
+    private StatusCode statusCode;
+    private String statusDescription;
+    private long endEpochNanos;
+    private boolean ended;
+
+    Span(Tracer tracer, String traceId, String parentSpanId, String name, Kind kind) {
+        this.tracer = tracer;
+        this.traceId = traceId;
+        this.spanId = tracer.newSpanId();
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.kind = kind;
+        this.startNanos = System.nanoTime();
+        this.startEpochNanos = tracer.toEpochNanos(startNanos);
+        this.attributes = new LinkedHashMap<>();
+        this.statusCode = StatusCode.UNSET;
+    }
+
+    /**
+     * Starts the span of the operation, which is a part of this one.
+     *
+     * @param name name of the operation
+     * @return the started span
+     */
+    public Span startChild(String name) {
+        return new Span(tracer, traceId, spanId, name, Kind.INTERNAL);
+    }
+
+    /**
+     * @param key   name of the attribute, see {@link SemanticAttributes}
+     * @param value {@link String}, {@link Boolean} or a {@link Number}
+     * @return this span
+     */
+    public synchronized Span setAttribute(String key, Object value) {
+        if (!ended) {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    public synchronized Span setStatus(StatusCode statusCode, String description) {
+        if (!ended) {
+            this.statusCode = statusCode;
+            this.statusDescription = description;
+        }
+        return this;
+    }
+
+    /**
+     * Ends the span and passes it to the {@link SpanExporter}.
+     */
+    public void end() {
+        long endNanos = System.nanoTime();
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            endEpochNanos = startEpochNanos + (endNanos - startNanos);
+        }
+        tracer.export(this);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * @return id of the parent span or {@link #INVALID_SPAN_ID} for the span of the call
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    /**
+     * @return time the span ended at, 0 while it lasts
+     */
+    public synchronized long getEndEpochNanos() {
+        return endEpochNanos;
+    }
+
+    public synchronized boolean hasEnded() {
+        return ended;
+    }
+
+    /**
+     * @return copy of the attributes in order they were set
+     */
+    public synchronized Map<String, Object> getAttributes() {
+        return new LinkedHashMap<>(attributes);
+    }
+
+    public synchronized Object getAttribute(String key) {
+        return attributes.get(key);
+    }
+
+    public synchronized StatusCode getStatusCode() {
+        return statusCode;
+    }
+
+    public synchronized String getStatusDescription() {
+        return statusDescription;
+    }
+
+    @Override
+    public String toString() {
+        return "Span{" + name + ", traceId=" + traceId + ", spanId=" + spanId + ", parentSpanId=" + parentSpanId
+                + ", attributes=" + getAttributes() + ", status=" + getStatusCode() + "}";
+    }
+}
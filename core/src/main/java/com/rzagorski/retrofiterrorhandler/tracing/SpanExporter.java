@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.tracing;
+
+import java.util.Collection;
+
+/**
+ * Receives the spans, when they end. The interface follows the span exporter of OpenTelemetry,
+ * so an exporter sending the spans to a collector can be added by the application.
+ * <br>
+ * The spans are exported on the thread, which ended them, so the exporter must be thread safe
+ * and should not block for long.
+ */
+public interface SpanExporter {
+
+    /**
+     * @param spans ended spans
+     * @return {@code true} when the spans were exported
+     */
+    boolean export(Collection<Span> spans);
+
+    /**
+     * Releases the resources of the exporter. The spans ended afterwards are dropped.
+     */
+    void shutdown();
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.tracing;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the spans of the calls and passes the ended ones to the {@link SpanExporter}.
+ * Every call gets a {@link Span.Kind#CLIENT} span named after the method and the path of the request,
+ * with child spans for every {@link #ATTEMPT attempt}, {@link #BACKOFF backoff wait}
+ * and {@link #BACKUP backup observable}.
+ * <br>
+ * The tracer works without any collector, with {@link InMemorySpanExporter} or {@link JsonLinesSpanExporter}.
+ */
+public class Tracer {
+    public static final String ATTEMPT = "attempt";
+    public static final String BACKOFF = "backoff";
+    public static final String BACKUP = "backup";
+
+    private final SpanExporter exporter;
+    private final long anchorEpochNanos;
+    private final long anchorNanos;
+    private final ThreadLocal<Random> random;
+
+    public Tracer(SpanExporter exporter) {
+        this.exporter = exporter;
+        this.anchorEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        this.anchorNanos = System.nanoTime();
+        this.random = new ThreadLocal<Random>() {
+            @Override
+            protected Random initialValue() {
+                return new Random();
+            }
+        };
+    }
+
+    /**
+     * Starts the span of a new trace.
+     *
+     * @param name name of the call, e.g. {@code GET /users}
+     * @return the started span
+     */
+    public Span startSpan(String name) {
+        return new Span(this, newTraceId(), Span.INVALID_SPAN_ID, name, Span.Kind.CLIENT);
+    }
+
+    /**
+     * Shuts down the exporter.
+     */
+    public void shutdown() {
+        exporter.shutdown();
+    }
+
+    void export(Span span) {
+        exporter.export(Collections.singletonList(span));
+    }
+
+    long toEpochNanos(long nanoTime) {
+        return anchorEpochNanos + (nanoTime - anchorNanos);
+    }
+
+    String newSpanId() {
+        return toHex(nonZero());
+    }
+
+    private String newTraceId() {
+        return toHex(nonZero()) + toHex(random.get().nextLong());
+    }
+
+    //ids made of zeros are invalid in OpenTelemetry
+    private long nonZero() {
+        long id;
+        do {
+            id = random.get().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    private static String toHex(long value) {
+        return String.format(Locale.US, "%016x", value);
+    }
+}
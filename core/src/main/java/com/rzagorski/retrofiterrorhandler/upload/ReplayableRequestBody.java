@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Request body backed by a file, which can be written any number of times at no extra cost,
+ * so large uploads can be retried with constant heap use.
+ * <br>
+ * Bytes are read from the file (with positional {@link FileChannel} reads or from a memory mapping)
+ * in small chunks, which are copied into the segments of {@link BufferedSink}, so only a few kilobytes
+ * of the body are on the heap at once. Every write starts from the first byte, so there is no state
+ * to rewind between attempts.
+ * <br>
+ * While a call with such body is subscribed, the retry engine {@link #retain() retains} the body,
+ * so the file stays open (or mapped) for all attempts and is closed, when the call ends.
+ */
+public abstract class ReplayableRequestBody extends RequestBody {
+    private final MediaType contentType;
+    private final AtomicInteger holders;
+
+    ReplayableRequestBody(MediaType contentType) {
+        this.contentType = contentType;
+        this.holders = new AtomicInteger();
+    }
+
+    /**
+     * Creates the body read from the file with {@link FileChannel}.
+     *
+     * @param contentType type of the body
+     * @param file        the file to upload
+     * @return the body
+     */
+    public static ReplayableRequestBody create(MediaType contentType, File file) {
+        return new FileChannelBody(contentType, file);
+    }
+
+    /**
+     * Creates the body read from the memory mapped file. The file must be smaller than 2 GB.
+     *
+     * @param contentType type of the body
+     * @param file        the file to upload
+     * @return the body
+     */
+    public static ReplayableRequestBody createMapped(MediaType contentType, File file) {
+        return new MappedBody(contentType, file);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    /**
+     * Keeps the file open until {@link #release()} is called.
+     */
+    public final void retain() {
+        holders.incrementAndGet();
+    }
+
+    /**
+     * Closes the file, when nobody {@link #retain() retains} the body.
+     */
+    public final void release() {
+        if (holders.decrementAndGet() == 0) {
+            closeSource();
+        }
+    }
+
+    final boolean isRetained() {
+        return holders.get() > 0;
+    }
+
+    abstract void closeSource();
+
+    private static final class FileChannelBody extends ReplayableRequestBody {
+        private final File file;
+        private FileChannel channel;
+        private int writers;
+
+        FileChannelBody(MediaType contentType, File file) {
+            super(contentType);
+            this.file = file;
+        }
+
+        @Override
+        public long contentLength() {
+            return file.length();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            FileChannel channel = open();
+            try {
+                sink.writeAll(Okio.source(new PositionalInputStream(channel)));
+            } finally {
+                close();
+            }
+        }
+
+        //the channel is shared by concurrent writes, e.g. of a retry and a logging interceptor,
+        //and closed by the last of them, unless the body is retained
+        private synchronized FileChannel open() throws IOException {
+            if (channel == null || !channel.isOpen()) {
+                channel = new RandomAccessFile(file, "r").getChannel();
+            }
+            writers++;
+            return channel;
+        }
+
+        private synchronized void close() {
+            writers--;
+            if (!isRetained()) {
+                closeSource();
+            }
+        }
+
+        @Override
+        synchronized void closeSource() {
+            if (writers == 0 && channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+            }
+        }
+    }
+
+    private static final class MappedBody extends ReplayableRequestBody {
+        private final File file;
+        private ByteBuffer mapped;
+
+        MappedBody(MediaType contentType, File file) {
+            super(contentType);
+            this.file = file;
+        }
+
+        @Override
+        public long contentLength() {
+            return file.length();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            //the duplicate has its own position, so concurrent and repeated writes start from the first byte
+            ByteBuffer buffer = map().duplicate();
+            try {
+                sink.writeAll(Okio.source(new ByteBufferInputStream(buffer)));
+            } finally {
+                if (!isRetained()) {
+                    closeSource();
+                }
+            }
+        }
+
+        private synchronized ByteBuffer map() throws IOException {
+            if (mapped == null) {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                try {
+                    FileChannel channel = randomAccessFile.getChannel();
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } finally {
+                    randomAccessFile.close();
+                }
+            }
+            return mapped;
+        }
+
+        @Override
+        synchronized void closeSource() {
+            //the mapping is released by the garbage collector
+            mapped = null;
+        }
+    }
+
+    /**
+     * Reads the channel from the first byte without moving its position.
+     */
+    private static final class PositionalInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        PositionalInputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+    }
+}
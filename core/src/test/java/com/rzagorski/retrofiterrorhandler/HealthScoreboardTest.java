@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.health.HealthScoreboard;
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HealthScoreboardTest {
+
+    /**
+     * Test shows, that the host not called for the idle time is evicted and starts with a new health,
+     * while the host called meanwhile is kept.
+     */
+    @Test
+    public void testIdleHostEvicted() throws Exception {
+        HealthScoreboard scoreboard = new HealthScoreboard(0.5, 200, TimeUnit.MILLISECONDS);
+        HostHealth idle = scoreboard.get("idle.example.com");
+        idle.record(TimeUnit.MILLISECONDS.toNanos(10), true);
+        Thread.sleep(150);
+        scoreboard.get("busy.example.com").record(TimeUnit.MILLISECONDS.toNanos(10), false);
+        Thread.sleep(100);
+
+        scoreboard.get("other.example.com");
+        assertFalse(scoreboard.getHosts().containsKey("idle.example.com"));
+        assertTrue(scoreboard.getHosts().containsKey("busy.example.com"));
+        assertNotSame(idle, scoreboard.get("idle.example.com"));
+    }
+}
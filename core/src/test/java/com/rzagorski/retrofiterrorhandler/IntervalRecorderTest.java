@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.metrics.HistogramSnapshot;
+import com.rzagorski.retrofiterrorhandler.metrics.IntervalRecorder;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IntervalRecorderTest {
+
+    /**
+     * Test shows, that small values are exact and the percentiles of larger ones are at most 2% above the value.
+     */
+    @Test
+    public void testPercentiles() throws Exception {
+        IntervalRecorder recorder = new IntervalRecorder();
+        for (int value = 1; value <= 100; value++) {
+            recorder.record(value);
+        }
+        HistogramSnapshot small = recorder.intervalSnapshot();
+        assertEquals(100, small.getCount());
+        assertEquals(50, small.getP50());
+        assertEquals(99, small.getP99());
+        assertEquals(100, small.getMax());
+        assertEquals(50.5, small.getMean(), 0.001);
+
+        for (int value = 1; value <= 100000; value++) {
+            recorder.record(value);
+        }
+        HistogramSnapshot large = recorder.intervalSnapshot();
+        assertEquals(100000, large.getCount());
+        assertWithin(50000, large.getP50());
+        assertWithin(90000, large.getP90());
+        assertWithin(99000, large.getP99());
+        assertWithin(99900, large.getP999());
+        assertWithin(100000, large.getMax());
+    }
+
+    /**
+     * Test shows, that every snapshot holds only the values recorded since the previous one,
+     * also when the values are recorded from many threads.
+     */
+    @Test
+    public void testIntervals() throws Exception {
+        final IntervalRecorder recorder = new IntervalRecorder();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int value = 0; value < 10000; value++) {
+                        recorder.record(value);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        long count = 0;
+        for (Thread thread : threads) {
+            count += recorder.intervalSnapshot().getCount();
+            thread.join();
+        }
+        count += recorder.intervalSnapshot().getCount();
+        assertEquals(40000, count);
+
+        recorder.record(-1);
+        recorder.record(Long.MAX_VALUE);
+        HistogramSnapshot bounded = recorder.intervalSnapshot();
+        assertEquals(2, bounded.getCount());
+        assertEquals(0, bounded.getP50());
+        assertEquals(IntervalRecorder.MAX_VALUE, bounded.getMax());
+        assertEquals(0, recorder.intervalSnapshot().getCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " for " + expected, actual >= expected && actual <= expected * 1.02);
+    }
+}
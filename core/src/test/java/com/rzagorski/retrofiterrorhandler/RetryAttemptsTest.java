@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.backoff.RetryAttempts;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetryAttemptsTest {
+
+    /**
+     * Test shows, that the retry is counted for the first applicable strategy, until it has no retries left,
+     * and then for the next one.
+     */
+    @Test
+    public void testFirstApplicableStrategyWithRetriesLeft() throws Exception {
+        Attempts attempts = new Attempts(Arrays.asList(
+                new Rule(SocketTimeoutException.class, 503, 1),
+                new Rule(IOException.class, 503, 2)));
+
+        assertEquals(0, attempts.nextStrategy(new SocketTimeoutException()));
+        assertEquals(1, attempts.nextStrategy(new SocketTimeoutException()));
+        assertEquals(1, attempts.nextStrategy(new ConnectException()));
+        assertEquals(RetryAttempts.NO_STRATEGY, attempts.nextStrategy(new SocketTimeoutException()));
+        assertEquals(1, attempts.getRetry(0));
+        assertEquals(2, attempts.getRetry(1));
+    }
+
+    /**
+     * Test shows, that the unsuccessful responses are counted by their code, separately from the errors
+     * no strategy is applicable to.
+     */
+    @Test
+    public void testResponseCode() throws Exception {
+        Attempts attempts = new Attempts(Arrays.asList(
+                new Rule(SocketTimeoutException.class, 503, 1)));
+
+        assertEquals(RetryAttempts.NO_STRATEGY, attempts.nextStrategy(404));
+        assertEquals(RetryAttempts.NO_STRATEGY, attempts.nextStrategy(new IllegalStateException()));
+        assertEquals(0, attempts.nextStrategy(503));
+        assertEquals(RetryAttempts.NO_STRATEGY, attempts.nextStrategy(503));
+    }
+
+    /**
+     * Test shows, that every applicable strategy counts the retry, and the error is passed on,
+     * when one of them has no retries left.
+     */
+    @Test
+    public void testEveryApplicableStrategy() throws Exception {
+        Attempts attempts = new Attempts(Arrays.asList(
+                new Rule(IOException.class, 503, 3),
+                new Rule(IllegalStateException.class, 503, 3),
+                new Rule(SocketTimeoutException.class, 503, 1)));
+
+        assertArrayEquals(new int[]{0}, attempts.nextStrategies(new ConnectException()));
+        assertArrayEquals(new int[]{0, 2}, attempts.nextStrategies(new SocketTimeoutException()));
+        assertNull(attempts.nextStrategies(new SocketTimeoutException()));
+        assertNull(attempts.nextStrategies(new UnsupportedOperationException()));
+        assertEquals(2, attempts.getRetry(0));
+        assertEquals(0, attempts.getRetry(1));
+        assertEquals(1, attempts.getRetry(2));
+    }
+
+    private static final class Rule {
+        final Class<? extends Throwable> throwable;
+        final int httpCode;
+        final int maxRetries;
+
+        Rule(Class<? extends Throwable> throwable, int httpCode, int maxRetries) {
+            this.throwable = throwable;
+            this.httpCode = httpCode;
+            this.maxRetries = maxRetries;
+        }
+    }
+
+    private static final class Attempts extends RetryAttempts<Rule, RuntimeException> {
+
+        Attempts(List<Rule> strategies) {
+            super(strategies);
+        }
+
+        @Override
+        protected boolean canRetry(Rule strategy, int retry) {
+            return retry <= strategy.maxRetries;
+        }
+
+        @Override
+        protected boolean isApplicable(Rule strategy, Throwable error) {
+            return strategy.throwable.isInstance(error);
+        }
+
+        @Override
+        protected boolean isApplicable(Rule strategy, int httpCode) {
+            return strategy.httpCode == httpCode;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.durable.DurableRequest;
+import com.rzagorski.retrofiterrorhandler.durable.RetryLog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetryLogTest {
+
+    File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("retrylog", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Test shows, that the requests not removed from the log are read back with method, URL, headers and body,
+     * in order they were written, when the log is opened again, and the same key is written only once.
+     */
+    @Test
+    public void testReopenedLogKeepsPending() throws Exception {
+        RetryLog log = new RetryLog.Builder(directory).build();
+        DurableRequest first = DurableRequest.of(post("/orders", "first", "key-1"));
+        DurableRequest second = DurableRequest.of(post("/orders", "second", "key-2"));
+        DurableRequest third = DurableRequest.of(post("/orders", "third", "key-3"));
+        assertTrue(log.append(first));
+        assertTrue(log.append(second));
+        assertTrue(log.append(third));
+        assertFalse(log.append(DurableRequest.of(post("/orders", "first", "key-1"))));
+        assertTrue(log.remove("key-2"));
+        log.close();
+
+        log = new RetryLog.Builder(directory).build();
+        List<DurableRequest> pending = log.getPending();
+        assertEquals(2, pending.size());
+        assertEquals("key-1", pending.get(0).getKey());
+        assertEquals("key-3", pending.get(1).getKey());
+        Request request = pending.get(1).toRequest();
+        assertEquals("POST", request.method());
+        assertEquals("http://localhost/orders", request.url().toString());
+        assertEquals("key-3", request.header(DurableRequest.IDEMPOTENCY_KEY_HEADER));
+        assertEquals("value", request.header("X-Custom"));
+        assertEquals("third", bodyOf(request));
+        assertEquals(1, log.getSegmentCount());
+        log.close();
+    }
+
+    /**
+     * Test shows, that a new segment is started, when the current one is full, and the oldest segments
+     * are deleted only when all their requests are removed.
+     */
+    @Test
+    public void testSegmentsCompacted() throws Exception {
+        RetryLog log = new RetryLog.Builder(directory)
+                .setMaxSegmentBytes(100)
+                .build();
+        log.append(DurableRequest.of(post("/orders", "first", "key-1")));
+        log.append(DurableRequest.of(post("/orders", "second", "key-2")));
+        log.append(DurableRequest.of(post("/orders", "third", "key-3")));
+        assertEquals(4, log.getSegmentCount());
+
+        log.remove("key-1");
+        assertEquals(3, log.getSegmentCount());
+        log.remove("key-3");
+        assertEquals(3, log.getSegmentCount());
+        log.remove("key-2");
+        assertEquals(1, log.getSegmentCount());
+        assertEquals(1, directory.listFiles().length);
+        log.close();
+    }
+
+    /**
+     * Test shows, that a record torn by a crash is dropped, when the log is opened,
+     * and the records before it are kept.
+     */
+    @Test
+    public void testTornRecordDropped() throws Exception {
+        RetryLog log = new RetryLog.Builder(directory)
+                .setSyncBatch(1, 0, TimeUnit.MILLISECONDS)
+                .build();
+        log.append(DurableRequest.of(post("/orders", "first", "key-1")));
+        log.append(DurableRequest.of(post("/orders", "second", "key-2")));
+        log.close();
+        File segment = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        log = new RetryLog.Builder(directory).build();
+        List<DurableRequest> pending = log.getPending();
+        assertEquals(1, pending.size());
+        assertEquals("key-1", pending.get(0).getKey());
+        assertTrue(log.append(DurableRequest.of(post("/orders", "second", "key-2"))));
+        log.close();
+    }
+
+    private static Request post(String path, String body, String key) {
+        return new Request.Builder()
+                .url("http://localhost" + path)
+                .header("X-Custom", "value")
+                .header(DurableRequest.IDEMPOTENCY_KEY_HEADER, key)
+                .post(RequestBody.create(MediaType.parse("text/plain"), body))
+                .build();
+    }
+
+    private static String bodyOf(Request request) throws Exception {
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return buffer.readUtf8();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofiterrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.backoff.ExponentialDelay;
+import com.rzagorski.retrofiterrorhandler.backoff.RetryMatcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetryMatcherTest {
+
+    /**
+     * Test shows, that the error is matched by the listed code of the HTTP error or by its class,
+     * with subclasses.
+     */
+    @Test
+    public void testMatchesCodeOrThrowable() throws Exception {
+        RetryMatcher matcher = new RetryMatcher(
+                Collections.<Class<? extends Throwable>>singletonList(IOException.class),
+                Arrays.asList(500, 503), HttpError.class);
+
+        assertTrue(matcher.matches(new HttpError(), 503));
+        assertFalse(matcher.matches(new HttpError(), 404));
+        assertTrue(matcher.matches(new SocketTimeoutException(), RetryMatcher.NO_HTTP_CODE));
+        assertFalse(matcher.matches(new IllegalStateException(), RetryMatcher.NO_HTTP_CODE));
+        assertTrue(matcher.matchesResponse(500));
+        assertFalse(matcher.matchesResponse(404));
+    }
+
+    /**
+     * Test shows, that all codes of the response are matched, when the HTTP error
+     * or its superclass is on the list.
+     */
+    @Test
+    public void testHttpErrorMatchesAllCodes() throws Exception {
+        RetryMatcher matcher = new RetryMatcher(
+                Collections.<Class<? extends Throwable>>singletonList(RuntimeException.class),
+                null, HttpError.class);
+
+        assertTrue(matcher.containsHttpException());
+        assertTrue(matcher.matchesResponse(404));
+        assertFalse(matcher.containsHttpCode(404));
+    }
+
+    /**
+     * Test shows, that the exponential delay is the base to the power of the retry number.
+     */
+    @Test
+    public void testExponentialDelay() throws Exception {
+        ExponentialDelay delay = new ExponentialDelay(2, TimeUnit.SECONDS);
+
+        assertEquals(2000, delay.getDelayMillis(1));
+        assertEquals(8000, delay.getDelayMillis(3));
+        assertEquals(Long.MAX_VALUE, delay.getDelayMillis(100));
+    }
+
+    private static class HttpError extends RuntimeException {
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.backoff.RetryAttempts;
+import com.rzagorski.retrofitrxerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitrxerrorhandler.backoff.BaseBackoffStrategy;
+
+import java.util.List;
+
+/**
+ * Retries made for a single subscription to the call or inside the interceptor, counted for every strategy.
+ * The strategies extending {@link BaseBackoffStrategy} are counted by their maximum number of retries,
+ * the others decide about their retries themselves, from the errors passed to them, and never retry
+ * the unsuccessful responses emitted without an error.
+ */
+final class Attempts extends RetryAttempts<BackoffStrategy, RuntimeException> {
+    private final boolean withOtherStrategies;
+
+    /**
+     * @param strategies          the strategies of the policy
+     * @param withOtherStrategies {@code false} to skip the strategies, which do not extend
+     *                            {@link BaseBackoffStrategy}, as they can retry only the subscription
+     */
+    Attempts(List<BackoffStrategy> strategies, boolean withOtherStrategies) {
+        super(strategies);
+        this.withOtherStrategies = withOtherStrategies;
+    }
+
+    @Override
+    protected boolean canRetry(BackoffStrategy strategy, int retry) {
+        if (strategy instanceof BaseBackoffStrategy) {
+            return ((BaseBackoffStrategy) strategy).canRetry(retry);
+        }
+        return withOtherStrategies;
+    }
+
+    @Override
+    protected boolean isApplicable(BackoffStrategy strategy, Throwable error) {
+        if (!withOtherStrategies && !(strategy instanceof BaseBackoffStrategy)) {
+            return false;
+        }
+        return strategy.isApplicable(error);
+    }
+
+    @Override
+    protected boolean isApplicable(BackoffStrategy strategy, int httpCode) {
+        return strategy instanceof BaseBackoffStrategy && ((BaseBackoffStrategy) strategy).isApplicable(httpCode);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofitrxerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitrxerrorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.AddReaction;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Simple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Immutable snapshot of the retry configuration: the backoff strategies, the max consecutive failures
+ * and logging. {@link RxErrorHandingFactory} starts with the policy of its {@link RxCallAdapter}
+ * and can {@link RxErrorHandingFactory#swapRetryPolicy(RetryPolicy) swap it} at runtime. Every subscription
+ * uses the policy, which was active when it was subscribed, until it ends. The strategies extending
+ * {@link BaseBackoffStrategy} are copied with the logging of the policy, so the policies sharing them
+ * do not change the logging of each other.
+ */
+public final class RetryPolicy {
+    private final List<BackoffStrategy> backoffStrategyList;
+    private final int maxConsecutiveFailures;
+    private final boolean loggingEnabled;
+    private final boolean usesHostHealth;
+
+    private RetryPolicy(Builder builder) {
+        this.backoffStrategyList = Collections.unmodifiableList(withLogging(builder.backoffStrategyList,
+                builder.loggingEnabled));
+        this.maxConsecutiveFailures = builder.maxConsecutiveFailures;
+        this.loggingEnabled = builder.loggingEnabled;
+        this.usesHostHealth = maxConsecutiveFailures != Integer.MAX_VALUE || usesHostHealth(backoffStrategyList);
+    }
+
+    //the strategy can be in the policy used until now too, so its subscriptions keep their logging
+    private static List<BackoffStrategy> withLogging(List<BackoffStrategy> strategies, boolean logging) {
+        List<BackoffStrategy> copies = new ArrayList<>(strategies.size());
+        for (BackoffStrategy strategy : strategies) {
+            copies.add(strategy instanceof BaseBackoffStrategy
+                    ? ((BaseBackoffStrategy) strategy).withLoggingEnabled(logging)
+                    : strategy);
+        }
+        return copies;
+    }
+
+    //other strategies are not given the health of the host
+    private static boolean usesHostHealth(List<BackoffStrategy> strategies) {
+        for (BackoffStrategy strategy : strategies) {
+            if (strategy instanceof BaseBackoffStrategy && ((BaseBackoffStrategy) strategy).usesHostHealth()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<BackoffStrategy> getBackoffStrategies() {
+        return backoffStrategyList;
+    }
+
+    public int getMaxConsecutiveFailures() {
+        return maxConsecutiveFailures;
+    }
+
+    public boolean isLoggingEnabled() {
+        return loggingEnabled;
+    }
+
+    /**
+     * @return {@code true} when the policy stops retrying failing hosts or a strategy reads the health of the host,
+     * so the attempts of its calls must be recorded in the scoreboard
+     */
+    public boolean usesHostHealth() {
+        return usesHostHealth;
+    }
+
+    /**
+     * Compiles the policy from properties, e.g. read by
+     * {@link com.rzagorski.retrofiterrorhandler.config.PolicyFileWatcher}:
+     * <pre>
+     * strategies=server,timeouts
+     * strategy.server.type=simple
+     * strategy.server.httpCodes=500,503
+     * strategy.server.maxRetries=3
+     * strategy.timeouts.type=exponential
+     * strategy.timeouts.throwables=java.net.SocketTimeoutException
+     * strategy.timeouts.base=2
+     * maxConsecutiveFailures=10
+     * loggingEnabled=false
+     * </pre>
+     * Strategies are checked in order they are listed. Every strategy can also be {@code exclusive=true}.
+     *
+     * @param properties the properties
+     * @return the policy
+     * @throws IllegalArgumentException when the properties do not describe a valid policy
+     */
+    public static RetryPolicy fromProperties(Properties properties) {
+        Builder builder = new Builder()
+                .setMaxConsecutiveFailures(getInt(properties, "maxConsecutiveFailures", Integer.MAX_VALUE))
+                .setLoggingEnabled(Boolean.parseBoolean(properties.getProperty("loggingEnabled")));
+        for (String name : split(properties.getProperty("strategies"))) {
+            builder.addBackoffStrategy(compileStrategy(properties, "strategy." + name + "."));
+        }
+        return builder.build();
+    }
+
+    private static BackoffStrategy compileStrategy(Properties properties, String prefix) {
+        String type = properties.getProperty(prefix + "type", "simple");
+        int maxRetries = getInt(properties, prefix + "maxRetries", 3);
+        if ("simple".equals(type)) {
+            return react(Simple.init(), properties, prefix).setMaxRetries(maxRetries).build();
+        } else if ("exponential".equals(type)) {
+            return react(Exponential.init(), properties, prefix)
+                    .setBase(getInt(properties, prefix + "base", 2))
+                    .setMaxRetries(maxRetries)
+                    .build();
+        }
+        throw new IllegalArgumentException("Unknown strategy type: " + type);
+    }
+
+    private static <T extends AddReaction<T>> T react(AddReaction<T> reaction, Properties properties, String prefix) {
+        List<Integer> httpCodes = new ArrayList<>();
+        for (String code : split(properties.getProperty(prefix + "httpCodes"))) {
+            httpCodes.add(parseInt(prefix + "httpCodes", code));
+        }
+        List<Class<? extends Throwable>> throwables = new ArrayList<>();
+        for (String className : split(properties.getProperty(prefix + "throwables"))) {
+            throwables.add(loadThrowable(className));
+        }
+        T builder = reaction.setHttpCodeList(httpCodes).setThrowable(throwables);
+        return Boolean.parseBoolean(properties.getProperty(prefix + "exclusive")) ? builder.exclusive() : builder;
+    }
+
+    private static Class<? extends Throwable> loadThrowable(String className) {
+        Class<?> loaded;
+        try {
+            loaded = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown class: " + className, e);
+        }
+        if (!Throwable.class.isAssignableFrom(loaded)) {
+            throw new IllegalArgumentException("Not a Throwable: " + className);
+        }
+        return loaded.asSubclass(Throwable.class);
+    }
+
+    private static int getInt(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : parseInt(key, value.trim());
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of " + key + ": " + value, e);
+        }
+    }
+
+    private static List<String> split(String value) {
+        List<String> parts = new ArrayList<>();
+        if (value == null) {
+            return parts;
+        }
+        for (String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                parts.add(part.trim());
+            }
+        }
+        return parts;
+    }
+
+    public static final class Builder {
+        private List<BackoffStrategy> backoffStrategyList;
+        private int maxConsecutiveFailures = Integer.MAX_VALUE;
+        private boolean loggingEnabled;
+
+        public Builder() {
+            backoffStrategyList = new ArrayList<>();
+        }
+
+        public Builder setBackoffStrategy(List<BackoffStrategy> backoffStrategies) {
+            this.backoffStrategyList = new ArrayList<>(backoffStrategies);
+            return this;
+        }
+
+        public Builder addBackoffStrategy(BackoffStrategy backoffStrategy) {
+            this.backoffStrategyList.add(backoffStrategy);
+            return this;
+        }
+
+        /**
+         * @param maxConsecutiveFailures the number of failures, unlimited by default
+         * @return the Builder to add more parameters
+         * @see RxCallAdapter.Builder#setMaxConsecutiveFailures(int)
+         */
+        public Builder setMaxConsecutiveFailures(int maxConsecutiveFailures) {
+            if (maxConsecutiveFailures < 1) {
+                throw new IllegalArgumentException("Max consecutive failures must be positive");
+            }
+            this.maxConsecutiveFailures = maxConsecutiveFailures;
+            return this;
+        }
+
+        public Builder setLoggingEnabled(boolean loggingEnabled) {
+            this.loggingEnabled = loggingEnabled;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
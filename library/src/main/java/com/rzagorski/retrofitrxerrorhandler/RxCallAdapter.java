@@ -15,40 +15,153 @@
  */
 package com.rzagorski.retrofitrxerrorhandler;
 
+import com.rzagorski.retrofiterrorhandler.durable.RetryLog;
+import com.rzagorski.retrofiterrorhandler.health.HealthScoreboard;
+import com.rzagorski.retrofiterrorhandler.limit.ConcurrencyLimit;
+import com.rzagorski.retrofiterrorhandler.limit.RateLimit;
+import com.rzagorski.retrofiterrorhandler.offline.OfflineMode;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryCoalescer;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryScheduler;
+import com.rzagorski.retrofiterrorhandler.tracing.Tracer;
 import com.rzagorski.retrofitrxerrorhandler.backoff.BackoffStrategy;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * A builder for <a href="https://github.com/square/retrofit/blob/master/retrofit/src/main/java/retrofit2/CallAdapter.java#L62">CallAdapter.Factory</a>
- * Allows for adding {@link BackoffStrategy backoffStrategies} and logging feature.
+ * Allows for adding {@link BackoffStrategy backoffStrategies}, {@link ConcurrencyLimit concurrency limit},
+ * {@link RateLimit rate limits}, {@link RetryScheduler retry scheduler} and logging feature.
  * <br>
  * Created by Robert Zagórski on 2016-09-28.
  */
 public class RxCallAdapter {
-    private List<BackoffStrategy> backoffStrategyList;
-    private boolean loggingEnabled;
+    private final RetryPolicy retryPolicy;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final List<RateLimit> rateLimitList;
+    private final RetryScheduler retryScheduler;
+    private final int maxPendingRetries;
+    private final int maxDownloadResumes;
+    private final HealthScoreboard healthScoreboard;
+    private final boolean healthScoreboardSet;
+    private final RetryLog retryLog;
+    private final OfflineMode offlineMode;
+    private final RetryCoalescer retryCoalescer;
+    private final boolean interceptorRetries;
+    private final Tracer tracer;
 
     private RxCallAdapter(Builder builder) {
-        this.backoffStrategyList = builder.backoffStrategyList;
-        this.loggingEnabled = builder.loggingEnabled;
+        this.retryPolicy = new RetryPolicy.Builder()
+                .setBackoffStrategy(builder.backoffStrategyList)
+                .setMaxConsecutiveFailures(builder.maxConsecutiveFailures)
+                .setLoggingEnabled(builder.loggingEnabled)
+                .build();
+        this.concurrencyLimit = builder.concurrencyLimit;
+        this.rateLimitList = Collections.unmodifiableList(new ArrayList<>(builder.rateLimitList));
+        this.retryScheduler = builder.retryScheduler;
+        this.maxPendingRetries = builder.maxPendingRetries;
+        this.maxDownloadResumes = builder.maxDownloadResumes;
+        this.healthScoreboard = builder.healthScoreboard != null
+                ? builder.healthScoreboard
+                : HealthScoreboard.getDefault();
+        this.healthScoreboardSet = builder.healthScoreboard != null;
+        this.retryLog = builder.retryLog;
+        this.offlineMode = builder.offlineMode;
+        this.retryCoalescer = builder.retryCoalescer;
+        this.interceptorRetries = builder.interceptorRetries;
+        this.tracer = builder.tracer;
+    }
+
+    /**
+     * @return the policy {@link RxErrorHandingFactory} starts with
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
     }
 
     public List<BackoffStrategy> getBackoffStrategies() {
-        return backoffStrategyList;
+        return retryPolicy.getBackoffStrategies();
     }
 
     public boolean isLoggingEnabled() {
-        return loggingEnabled;
+        return retryPolicy.isLoggingEnabled();
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public List<RateLimit> getRateLimits() {
+        return rateLimitList;
+    }
+
+    public RetryScheduler getRetryScheduler() {
+        return retryScheduler;
+    }
+
+    public int getMaxPendingRetries() {
+        return maxPendingRetries;
+    }
+
+    public int getMaxDownloadResumes() {
+        return maxDownloadResumes;
+    }
+
+    public HealthScoreboard getHealthScoreboard() {
+        return healthScoreboard;
+    }
+
+    /**
+     * @return {@code true} when the scoreboard was set, so the attempts of every call are recorded in it
+     */
+    public boolean isHealthScoreboardSet() {
+        return healthScoreboardSet;
+    }
+
+    public int getMaxConsecutiveFailures() {
+        return retryPolicy.getMaxConsecutiveFailures();
+    }
+
+    public RetryLog getRetryLog() {
+        return retryLog;
+    }
+
+    public OfflineMode getOfflineMode() {
+        return offlineMode;
+    }
+
+    public RetryCoalescer getRetryCoalescer() {
+        return retryCoalescer;
+    }
+
+    public boolean isInterceptorRetries() {
+        return interceptorRetries;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
     }
 
     public static final class Builder {
         private List<BackoffStrategy> backoffStrategyList;
         private boolean loggingEnabled;
+        private ConcurrencyLimit concurrencyLimit;
+        private List<RateLimit> rateLimitList;
+        private RetryScheduler retryScheduler;
+        private int maxPendingRetries = Integer.MAX_VALUE;
+        private int maxDownloadResumes;
+        private HealthScoreboard healthScoreboard;
+        private int maxConsecutiveFailures = Integer.MAX_VALUE;
+        private RetryLog retryLog;
+        private OfflineMode offlineMode;
+        private RetryCoalescer retryCoalescer;
+        private boolean interceptorRetries;
+        private Tracer tracer;
 
         public Builder() {
             backoffStrategyList = new ArrayList<>();
+            rateLimitList = new ArrayList<>();
         }
 
         public Builder setBackoffStrategy(List<BackoffStrategy> backoffStrategies) {
@@ -66,6 +179,176 @@ public class RxCallAdapter {
             return this;
         }
 
+        /**
+         * Limits the number of concurrent calls to every host. Retries count against the limit
+         * the same as the first attempts.
+         *
+         * @param concurrencyLimit the limit built with {@link ConcurrencyLimit.Builder}
+         * @return the Builder to add more parameters
+         */
+        public Builder setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+            this.concurrencyLimit = concurrencyLimit;
+            return this;
+        }
+
+        /**
+         * Adds a client side rate limit. Every attempt of a matching call waits for a token,
+         * before it is sent.
+         *
+         * @param rateLimit the limit built with {@link RateLimit#forHost(String)},
+         *                  {@link RateLimit#forEndpoint(String, String)} or {@link RateLimit#forEveryHost()}
+         * @return the Builder to add more parameters
+         */
+        public Builder addRateLimit(RateLimit rateLimit) {
+            this.rateLimitList.add(rateLimit);
+            return this;
+        }
+
+        /**
+         * Makes all retries go through the scheduler, which caps the number of retries running at once
+         * and releases waiting ones in order of their {@link com.rzagorski.retrofiterrorhandler.scheduler.Priority}.
+         *
+         * @param retryScheduler the scheduler built with {@link RetryScheduler.Builder}, can be shared
+         *                       between many adapters
+         * @return the Builder to add more parameters
+         */
+        public Builder setRetryScheduler(RetryScheduler retryScheduler) {
+            this.retryScheduler = retryScheduler;
+            return this;
+        }
+
+        /**
+         * Limits the number of calls waiting for a retry at once. When the cap is reached,
+         * a failed call is not retried and ends with
+         * {@link com.rzagorski.retrofiterrorhandler.scheduler.RetryQueueFullException} immediately.
+         * The current number is exposed by {@link RxErrorHandingFactory#getPendingRetryCount()}.
+         *
+         * @param maxPendingRetries the cap, unlimited by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setMaxPendingRetries(int maxPendingRetries) {
+            if (maxPendingRetries < 0) {
+                throw new IllegalArgumentException("Max pending retries must not be negative");
+            }
+            this.maxPendingRetries = maxPendingRetries;
+            return this;
+        }
+
+        /**
+         * Makes downloads of {@link retrofit2.http.Streaming} methods returning {@code Observable<ResponseBody>}
+         * resumable. When the connection breaks while the body is read, the rest is requested with
+         * {@code Range} header, instead of downloading the whole body again.
+         *
+         * @param maxDownloadResumes number of times a single download can be resumed, 0 (disabled) by default
+         * @return the Builder to add more parameters
+         * @see com.rzagorski.retrofiterrorhandler.download.ResumableResponseBody
+         */
+        public Builder setMaxDownloadResumes(int maxDownloadResumes) {
+            if (maxDownloadResumes < 0) {
+                throw new IllegalArgumentException("Max download resumes must not be negative");
+            }
+            this.maxDownloadResumes = maxDownloadResumes;
+            return this;
+        }
+
+        /**
+         * Sets the scoreboard every attempt is recorded in and the backoff strategies read
+         * the health of the host from. Unless it is set, the attempts are recorded in the default scoreboard
+         * only, when the retry policy stops retrying failing hosts or has a strategy reading the health.
+         *
+         * @param healthScoreboard the scoreboard, {@link HealthScoreboard#getDefault()} shared by the process by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setHealthScoreboard(HealthScoreboard healthScoreboard) {
+            if (healthScoreboard == null) {
+                throw new IllegalArgumentException("Health scoreboard must not be null");
+            }
+            this.healthScoreboard = healthScoreboard;
+            return this;
+        }
+
+        /**
+         * Stops retrying calls to a host, when its attempts, made by any call, failed this many times in a row.
+         * The failed call ends with its error immediately, until an attempt to the host succeeds again.
+         *
+         * @param maxConsecutiveFailures the number of failures, unlimited by default
+         * @return the Builder to add more parameters
+         * @see com.rzagorski.retrofiterrorhandler.health.HostHealth#getConsecutiveFailures()
+         */
+        public Builder setMaxConsecutiveFailures(int maxConsecutiveFailures) {
+            if (maxConsecutiveFailures < 1) {
+                throw new IllegalArgumentException("Max consecutive failures must be positive");
+            }
+            this.maxConsecutiveFailures = maxConsecutiveFailures;
+            return this;
+        }
+
+        /**
+         * Makes the calls of methods annotated with {@link com.rzagorski.retrofiterrorhandler.durable.Durable}
+         * durable. Their requests are kept in the log, until they succeed, and can be sent again after
+         * the restart of the process with {@link RxErrorHandingFactory#replayDurable(okhttp3.Call.Factory)}.
+         *
+         * @param retryLog the log built with {@link RetryLog.Builder}, one per directory
+         * @return the Builder to add more parameters
+         */
+        public Builder setRetryLog(RetryLog retryLog) {
+            this.retryLog = retryLog;
+            return this;
+        }
+
+        /**
+         * Parks the calls failing with connectivity failures, while the network is down, instead of retrying them.
+         * They are released by the probe of the network and do not use the retries of the backoff strategies.
+         *
+         * @param offlineMode the mode built with {@link OfflineMode.Builder}, can be shared between many adapters
+         * @return the Builder to add more parameters
+         */
+        public Builder setOfflineMode(OfflineMode offlineMode) {
+            this.offlineMode = offlineMode;
+            return this;
+        }
+
+        /**
+         * Coalesces the retries of calls to the same endpoint: only one of them goes to the server
+         * and the others wait for its outcome. Methods returning {@code Response<T>} or {@code Result<T>}
+         * are not coalesced.
+         *
+         * @param retryCoalescer the coalescer built with {@link RetryCoalescer.Builder}, can be shared
+         *                       between many adapters
+         * @return the Builder to add more parameters
+         */
+        public Builder setRetryCoalescer(RetryCoalescer retryCoalescer) {
+            this.retryCoalescer = retryCoalescer;
+            return this;
+        }
+
+        /**
+         * Moves the retries of the attempts failing in the transport, with an {@link java.io.IOException}
+         * or an HTTP code of a strategy, to {@link RetryInterceptor}, which must be added to the client
+         * with {@link RxErrorHandingFactory#getRetryInterceptor()}. The calls retry only the errors raised
+         * after the conversion of the response.
+         *
+         * @param interceptorRetries {@code true} to retry in the interceptor, {@code false} by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setInterceptorRetries(boolean interceptorRetries) {
+            this.interceptorRetries = interceptorRetries;
+            return this;
+        }
+
+        /**
+         * Traces every call with a span, which has child spans for every attempt, backoff wait
+         * and execution of the backup observable. Retries made by {@link RetryInterceptor} are traced as the attempts
+         * and the backoff waits of the call.
+         *
+         * @param tracer the tracer exporting the spans, e.g. {@code new Tracer(new InMemorySpanExporter())}
+         * @return the Builder to add more parameters
+         */
+        public Builder setTracer(Tracer tracer) {
+            this.tracer = tracer;
+            return this;
+        }
+
         public RxCallAdapter build() {
             return new RxCallAdapter(this);
         }
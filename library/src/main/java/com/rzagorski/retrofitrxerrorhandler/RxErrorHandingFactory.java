@@ -15,12 +15,43 @@
  */
 package com.rzagorski.retrofitrxerrorhandler;
 
+import com.rzagorski.retrofiterrorhandler.backoff.CallRetries;
+import com.rzagorski.retrofiterrorhandler.config.PolicyFileWatcher;
+import com.rzagorski.retrofiterrorhandler.durable.DurableRequest;
+import com.rzagorski.retrofiterrorhandler.durable.RetryLog;
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+import com.rzagorski.retrofiterrorhandler.scheduler.PendingRetries;
+import com.rzagorski.retrofiterrorhandler.scheduler.Priority;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryScheduler;
+import com.rzagorski.retrofiterrorhandler.tracing.Tracer;
 import com.rzagorski.retrofitrxerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitrxerrorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrxerrorhandler.tracing.CallTrace;
 
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.HttpException;
+import retrofit2.adapter.rxjava.Result;
 import rx.Observable;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.subjects.AsyncSubject;
 
 /**
  * Main class for reacting to errors that were thrown during making a
@@ -30,79 +61,380 @@ import rx.functions.Func1;
  */
 public class RxErrorHandingFactory extends BaseRxCallAdapterFactory {
     RxCallAdapter info;
+    private final AtomicReference<RetryPolicy> retryPolicy;
+    private final PendingRetries pendingRetries;
+    private final Set<String> replaying;
+    private final RetryInterceptor retryInterceptor;
 
     public RxErrorHandingFactory(RxCallAdapter callAdapter) {
-        super();
+        super(callAdapter.getConcurrencyLimit(), callAdapter.getRateLimits(), callAdapter.getMaxDownloadResumes(),
+                callAdapter.getHealthScoreboard(), callAdapter.isHealthScoreboardSet(), callAdapter.getRetryLog(),
+                callAdapter.getOfflineMode(), callAdapter.getRetryCoalescer());
         this.info = callAdapter;
-        for (BackoffStrategy strategy : info.getBackoffStrategies()) {
-            strategy.setLoggingEnabled(info.isLoggingEnabled());
+        this.retryPolicy = new AtomicReference<>(activate(callAdapter.getRetryPolicy()));
+        this.pendingRetries = new PendingRetries(callAdapter.getMaxPendingRetries());
+        this.replaying = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.retryInterceptor = callAdapter.isInterceptorRetries()
+                ? new RetryInterceptor(this, callAdapter, pendingRetries)
+                : null;
+    }
+
+    //the policy copies the strategies extending BaseBackoffStrategy with its logging, others cannot be copied
+    private static RetryPolicy activate(RetryPolicy policy) {
+        for (BackoffStrategy strategy : policy.getBackoffStrategies()) {
+            if (!(strategy instanceof BaseBackoffStrategy)) {
+                strategy.setLoggingEnabled(policy.isLoggingEnabled());
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * @return the policy new subscriptions are retried with
+     */
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy.get();
+    }
+
+    /**
+     * Makes the calls subscribed from now on retry with the policy, without rebuilding Retrofit.
+     * The subscriptions made before keep retrying with the policy they started with.
+     *
+     * @param policy the new policy, built with {@link RetryPolicy.Builder} or {@link RetryPolicy#fromProperties}
+     * @return the policy used until now
+     */
+    public RetryPolicy swapRetryPolicy(RetryPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Retry policy must not be null");
         }
+        return retryPolicy.getAndSet(activate(policy));
     }
 
-    protected <T> Observable.Transformer<T, T> transformRequest() {
+    /**
+     * Reads the policy from the properties file, in format of {@link RetryPolicy#fromProperties(Properties)},
+     * and swaps it again every time the file is changed. A changed file, which is not valid, is ignored.
+     *
+     * @param file the properties file
+     * @return the watcher, close it to stop watching
+     * @throws IOException              when the file cannot be read or watched
+     * @throws IllegalArgumentException when the file does not describe a valid policy
+     */
+    public PolicyFileWatcher watchRetryPolicy(File file) throws IOException {
+        PolicyFileWatcher watcher = new PolicyFileWatcher(file, new PolicyFileWatcher.Listener() {
+            @Override
+            public void onChanged(Properties properties) {
+                swapRetryPolicy(RetryPolicy.fromProperties(properties));
+            }
+        });
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * Gauge of the retry queue.
+     *
+     * @return number of calls of this factory waiting for a retry right now
+     */
+    public int getPendingRetryCount() {
+        return pendingRetries.getDepth();
+    }
+
+    /**
+     * Returns the interceptor, which retries the attempts failing in the transport with the backoff strategies
+     * of this factory, sharing the pending retries with it. Add it to the client used by Retrofit.
+     *
+     * @return the interceptor
+     * @see RxCallAdapter.Builder#setInterceptorRetries(boolean)
+     */
+    public RetryInterceptor getRetryInterceptor() {
+        if (retryInterceptor == null) {
+            throw new IllegalStateException("Interceptor retries are not enabled");
+        }
+        return retryInterceptor;
+    }
+
+    /**
+     * Sends again the requests of {@link com.rzagorski.retrofiterrorhandler.durable.Durable} calls,
+     * which were left in {@link RxCallAdapter.Builder#setRetryLog(RetryLog) the retry log}, e.g. by the process,
+     * which ended before their retries were finished. Meant to be called once, at startup.
+     * <br>
+     * The requests are sent one by one, in order they were written, and retried by the same backoff strategies
+     * as the calls. A request is removed from the log, when it succeeds or fails with an error, which
+     * is not retried. A request, which is being replayed already, is skipped.
+     *
+     * @param callFactory the factory sending the requests, usually {@link retrofit2.Retrofit#callFactory()}
+     * @return the requests sent successfully
+     */
+    public Observable<DurableRequest> replayDurable(final okhttp3.Call.Factory callFactory) {
+        final RetryLog retryLog = info.getRetryLog();
+        if (retryLog == null) {
+            throw new IllegalStateException("Retry log is not set");
+        }
+        return Observable.defer(new Func0<Observable<DurableRequest>>() {
+            @Override
+            public Observable<DurableRequest> call() {
+                return Observable.from(retryLog.getPending());
+            }
+        }).concatMap(new Func1<DurableRequest, Observable<DurableRequest>>() {
+            @Override
+            public Observable<DurableRequest> call(DurableRequest request) {
+                if (!replaying.add(request.getKey())) {
+                    return Observable.empty();
+                }
+                return replay(callFactory, retryLog, request);
+            }
+        });
+    }
+
+    private Observable<DurableRequest> replay(final okhttp3.Call.Factory callFactory, final RetryLog retryLog,
+                                              final DurableRequest request) {
+        final RetryPolicy policy = retryPolicy.get();
+        final HostHealth health = getHealth(policy, HttpUrl.parse(request.getUrl()).host());
+        Action0 release = new Action0() {
+            @Override
+            public void call() {
+                replaying.remove(request.getKey());
+            }
+        };
+        return Observable.fromCallable(new Callable<DurableRequest>() {
+            @Override
+            public DurableRequest call() throws Exception {
+                okhttp3.Response response = callFactory.newCall(request.toRequest()).execute();
+                if (!response.isSuccessful()) {
+                    //buffered, so the connection is released before the retry
+                    ResponseBody body = response.body();
+                    throw new HttpException(Response.error(ResponseBody.create(body.contentType(), body.bytes()),
+                            response));
+                }
+                response.close();
+                return request;
+            }
+        })
+                .compose(new Observable.Transformer<DurableRequest, DurableRequest>() {
+                    @Override
+                    public Observable<DurableRequest> call(final Observable<DurableRequest> attempts) {
+                        return Observable.defer(new Func0<Observable<DurableRequest>>() {
+                            @Override
+                            public Observable<DurableRequest> call() {
+                                return retry(attempts, false, health, null, policy, null);
+                            }
+                        });
+                    }
+                })
+                .doOnNext(new Action1<DurableRequest>() {
+                    @Override
+                    public void call(DurableRequest replayed) {
+                        try {
+                            retryLog.remove(replayed.getKey());
+                        } catch (IOException e) {
+                            throw Exceptions.propagate(e);
+                        }
+                    }
+                })
+                .onErrorResumeNext(new Func1<Throwable, Observable<DurableRequest>>() {
+                    @Override
+                    public Observable<DurableRequest> call(Throwable throwable) {
+                        if (!isRetryable(policy, throwable)) {
+                            try {
+                                retryLog.remove(request.getKey());
+                            } catch (IOException ignored) {
+                                //the request is replayed again next time
+                            }
+                        }
+                        //the request stays in the log for the next replay
+                        return Observable.empty();
+                    }
+                })
+                .doOnTerminate(release)
+                .doOnUnsubscribe(release);
+    }
+
+    //the interceptor finds the trace of the call through the call sending the request
+    @Override
+    protected <R> Call<R> attemptsCall(Call<R> call) {
+        return retryInterceptor != null && info.getTracer() != null ? new TracedCall<>(call) : call;
+    }
+
+    protected <T> Observable.Transformer<T, T> transformRequest(final Call<?> call, final Type returnType,
+                                                                final Annotation[] annotations,
+                                                                final RetryPolicy policy) {
+        final HostHealth health = getHealth(policy, call.request().url().host());
+        final Tracer tracer = info.getTracer();
+        if (tracer == null) {
+            return retry(call, returnType, annotations, health, null, policy);
+        }
         return new Observable.Transformer<T, T>() {
             @Override
-            public Observable<T> call(Observable<T> request) {
-                return (Observable<T>) request
-                        .compose(returnProperBackStrategy());
+            public Observable<T> call(final Observable<T> request) {
+                return Observable.defer(new Func0<Observable<T>>() {
+                    @Override
+                    public Observable<T> call() {
+                        CallTrace trace = new CallTrace(tracer, call.request(), annotations);
+                        if (call instanceof TracedCall) {
+                            ((TracedCall<?>) call).setTrace(trace);
+                        }
+                        return request
+                                .compose(trace.<T>attempts())
+                                .compose(RxErrorHandingFactory.this.<T>retry(call, returnType, annotations, health,
+                                        trace, policy))
+                                .compose(trace.<T>call());
+                    }
+                });
             }
         };
     }
 
-    private <T> Observable.Transformer<T, T> returnProperBackStrategy() {
+    private <T> Observable.Transformer<T, T> retry(Call<?> call, Type returnType, Annotation[] annotations,
+                                                   final HostHealth health, final CallTrace trace,
+                                                   final RetryPolicy policy) {
+        final RetryScheduler scheduler = info.getRetryScheduler();
+        final Priority priority = scheduler == null ? null : Priority.of(annotations, call.request());
+        final boolean emitsResponse = emitsResponse(returnType);
         return new Observable.Transformer<T, T>() {
             @Override
-            public Observable<T> call(Observable<T> observable) {
-                return observable.retryWhen(new Func1<Observable<? extends Throwable>, Observable<?>>() {
+            public Observable<T> call(final Observable<T> request) {
+                return Observable.defer(new Func0<Observable<T>>() {
                     @Override
-                    public Observable<?> call(final Observable<? extends Throwable> error) {
-                        return error
-                                .flatMap(new IsRepeatableError(info.getBackoffStrategies()))
-                                .compose(new PassErrorToBackoffStrategies<T>(info.getBackoffStrategies()));
+                    public Observable<T> call() {
+                        RetryScheduler.Ticket ticket = scheduler == null ? null : scheduler.newTicket(priority);
+                        return retry(request, emitsResponse, health, trace, policy, ticket);
                     }
                 });
             }
         };
     }
 
-    private class IsRepeatableError implements Func1<Throwable, Observable<? extends Throwable>> {
-        List<BackoffStrategy> backoffStrategyList;
+    /**
+     * Retries a single subscription to the call with {@link CallRetries}.
+     */
+    private <T> Observable<T> retry(Observable<T> request, boolean emitsResponse, HostHealth health,
+                                    CallTrace trace, RetryPolicy policy, RetryScheduler.Ticket ticket) {
+        final BackoffBinding binding = new BackoffBinding(health, trace, retryInterceptor);
+        final CallRetries<BackoffStrategy> retries = new CallRetries<>(
+                new Attempts(policy.getBackoffStrategies(), true), binding, health,
+                policy.getMaxConsecutiveFailures(), pendingRetries, ticket);
+        Action0 dispose = new Action0() {
+            @Override
+            public void call() {
+                retries.dispose();
+                binding.dispose();
+            }
+        };
+        //unsuccessful responses are retried on emission, errors thrown by the call still go through retryWhen
+        Observable<T> attempts = emitsResponse ? request.compose(new RetryOnResponse<T>(retries)) : request;
+        return attempts
+                .retryWhen(new RetryOnError(retries))
+                .doOnTerminate(dispose)
+                .doOnUnsubscribe(dispose);
+    }
+
+    @Override
+    protected boolean isRetryable(RetryPolicy policy, int httpCode) {
+        return new Attempts(policy.getBackoffStrategies(), true).isRetryable(httpCode);
+    }
+
+    @Override
+    protected boolean isRetryable(RetryPolicy policy, Throwable throwable) {
+        return new Attempts(policy.getBackoffStrategies(), true).isRetryable(throwable);
+    }
+
+    /**
+     * Emits {@code true}, when the retry decided by {@link CallRetries} is due, {@code false}, when
+     * the unsuccessful response should be emitted, and passes on the error otherwise.
+     */
+    private static final class Decision implements CallRetries.Callback {
+        private final AsyncSubject<Boolean> outcome = AsyncSubject.create();
 
-        public IsRepeatableError(List<BackoffStrategy> backoffStrategyList) {
-            this.backoffStrategyList = backoffStrategyList;
+        @Override
+        public void retry() {
+            outcome.onNext(Boolean.TRUE);
+            outcome.onCompleted();
         }
 
         @Override
-        public Observable<? extends Throwable> call(Throwable throwable) {
-            boolean isRepeatable = false;
-            for (BackoffStrategy strategy : backoffStrategyList) {
-                if (strategy.isApplicable(throwable)) {
-                    isRepeatable = true;
-                }
-            }
-            if (!isRepeatable) {
-                return Observable.error(throwable);
+        public void giveUp(Throwable error) {
+            if (error != null) {
+                outcome.onError(error);
+                return;
             }
-            return Observable.just(throwable);
+            outcome.onNext(Boolean.FALSE);
+            outcome.onCompleted();
         }
     }
 
-    private class PassErrorToBackoffStrategies<T> implements Observable.Transformer<Throwable, T> {
-        List<BackoffStrategy> backoffStrategyList;
+    private static class RetryOnError implements Func1<Observable<? extends Throwable>, Observable<?>> {
+        private final CallRetries<BackoffStrategy> retries;
 
-        public PassErrorToBackoffStrategies(List<BackoffStrategy> backoffStrategyList) {
-            this.backoffStrategyList = backoffStrategyList;
+        RetryOnError(CallRetries<BackoffStrategy> retries) {
+            this.retries = retries;
         }
 
         @Override
-        public Observable<T> call(final Observable<Throwable> error) {
-            return Observable.from(backoffStrategyList)
-                    .flatMap(new Func1<BackoffStrategy, Observable<T>>() {
-                        @Override
-                        public Observable<T> call(BackoffStrategy backoffStrategy) {
-                            return (Observable<T>) backoffStrategy.call(error);
-                        }
-                    });
+        public Observable<?> call(Observable<? extends Throwable> errors) {
+            return errors.concatMap(new Func1<Throwable, Observable<Boolean>>() {
+                @Override
+                public Observable<Boolean> call(Throwable throwable) {
+                    Decision decision = new Decision();
+                    retries.onError(throwable, decision);
+                    return decision.outcome;
+                }
+            });
+        }
+    }
+
+    /**
+     * Retries {@code Response<T>} and {@code Result<T>} emitted for unsuccessful responses,
+     * by checking their code, without creating exceptions. When no retry is left,
+     * the last response is emitted.
+     */
+    private static class RetryOnResponse<T> implements Observable.Transformer<T, T> {
+        private final CallRetries<BackoffStrategy> retries;
+
+        RetryOnResponse(CallRetries<BackoffStrategy> retries) {
+            this.retries = retries;
+        }
+
+        @Override
+        public Observable<T> call(final Observable<T> request) {
+            return request.concatMap(new Func1<T, Observable<T>>() {
+                @Override
+                public Observable<T> call(final T emitted) {
+                    Response<?> response;
+                    final Throwable error;
+                    if (emitted instanceof Result) {
+                        response = ((Result<?>) emitted).response();
+                        error = ((Result<?>) emitted).error();
+                    } else {
+                        response = (Response<?>) emitted;
+                        error = null;
+                    }
+                    if (response != null && response.isSuccessful()) {
+                        return Observable.just(emitted);
+                    }
+                    Decision decision = new Decision();
+                    if (response != null) {
+                        retries.onResponse(response.code(), emitted, decision);
+                    } else {
+                        retries.onError(error, decision);
+                    }
+                    return decision.outcome
+                            .onErrorResumeNext(new Func1<Throwable, Observable<Boolean>>() {
+                                @Override
+                                public Observable<Boolean> call(Throwable throwable) {
+                                    //the error of the result, which is not retried, is emitted in the result
+                                    return throwable == error ? Observable.just(Boolean.FALSE)
+                                            : Observable.<Boolean>error(throwable);
+                                }
+                            })
+                            .concatMap(new Func1<Boolean, Observable<T>>() {
+                                @Override
+                                public Observable<T> call(Boolean retry) {
+                                    return retry ? RetryOnResponse.this.call(request) : Observable.just(emitted);
+                                }
+                            });
+                }
+            });
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofitrxerrorhandler.tracing.CallTrace;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * The call of a single subscription, which tells {@link RetryInterceptor} the trace of the call, while it sends
+ * the request, so the retries made inside the client are traced as the attempts of the call. The adapter
+ * of Retrofit executes the call on the thread subscribing to it, which runs the interceptors of the client too.
+ */
+final class TracedCall<T> implements Call<T> {
+    private final Call<T> call;
+    private final AtomicReference<CallTrace> trace;
+
+    TracedCall(Call<T> call) {
+        this(call, new AtomicReference<CallTrace>());
+    }
+
+    private TracedCall(Call<T> call, AtomicReference<CallTrace> trace) {
+        this.call = call;
+        this.trace = trace;
+    }
+
+    /**
+     * @param trace the trace of the subscription, shared with the clones of the call
+     */
+    void setTrace(CallTrace trace) {
+        this.trace.set(trace);
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        RetryInterceptor.TRACE.set(trace.get());
+        try {
+            return call.execute();
+        } finally {
+            RetryInterceptor.TRACE.remove();
+        }
+    }
+
+    //the calls enqueued by the adapter are sent on the threads of the client, their retries are not traced
+    @Override
+    public void enqueue(Callback<T> callback) {
+        call.enqueue(callback);
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return call.isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+        call.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return call.isCanceled();
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new TracedCall<>(call.clone(), trace);
+    }
+
+    @Override
+    public Request request() {
+        return call.request();
+    }
+}
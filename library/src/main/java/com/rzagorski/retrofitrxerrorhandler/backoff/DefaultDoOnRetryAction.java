@@ -15,6 +15,8 @@
  */
 package com.rzagorski.retrofitrxerrorhandler.backoff;
 
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.HttpException;
 import rx.functions.Action2;
 
 /**
@@ -26,4 +28,15 @@ public class DefaultDoOnRetryAction implements Action2<Throwable, Integer> {
     public void call(Throwable throwable, Integer retry) {
         System.out.println(throwable + " occurred on " + retry + " retry");
     }
+
+    /**
+     * Logs the unsuccessful response the same as its {@link HttpException}, without creating it.
+     *
+     * @param response the unsuccessful response
+     * @param retry    number of the retry, starting from 1
+     */
+    public void call(Response<?> response, Integer retry) {
+        System.out.println(HttpException.class.getName() + ": HTTP " + response.code() + " " + response.message()
+                + " occurred on " + retry + " retry");
+    }
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.backoff.retryBehavior;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import retrofit2.adapter.rxjava.HttpException;
+import rx.functions.Func1;
+
+/**
+ * Decides about the retry by looking at the beginning of the error body of {@link HttpException},
+ * e.g. for {@code {"code":"THROTTLED"}} sent with code 400.
+ * <br>
+ * Only the first {@link Builder#setPeekLimit(int)} bytes are loaded into the buffer of the body
+ * and they are searched in place, without reading them, so the body can still be read
+ * by the subscriber. Set it with {@code setRetryFunction(...)} of the backoff strategy.
+ */
+public class ErrorBodyRetryIfBehavior implements Func1<Throwable, Boolean> {
+    private final int peekLimit;
+    private final List<Integer> httpCodeList;
+    private final List<ByteString> patternList;
+    private final List<ByteString> fieldNameList;
+    private final List<ByteString> fieldValueList;
+
+    private ErrorBodyRetryIfBehavior(Builder builder) {
+        this.peekLimit = builder.peekLimit;
+        this.httpCodeList = new ArrayList<>(builder.httpCodeList);
+        this.patternList = new ArrayList<>(builder.patternList);
+        this.fieldNameList = new ArrayList<>(builder.fieldNameList);
+        this.fieldValueList = new ArrayList<>(builder.fieldValueList);
+    }
+
+    public static Builder init() {
+        return new Builder();
+    }
+
+    @Override
+    public Boolean call(Throwable throwable) {
+        if (!(throwable instanceof HttpException)) {
+            return false;
+        }
+        HttpException httpException = (HttpException) throwable;
+        if (!httpCodeList.isEmpty() && !httpCodeList.contains(httpException.code())) {
+            return false;
+        }
+        ResponseBody errorBody = httpException.response() == null ? null : httpException.response().errorBody();
+        if (errorBody == null) {
+            return false;
+        }
+        BufferedSource source = errorBody.source();
+        boolean wholeBody;
+        try {
+            wholeBody = !source.request(peekLimit);
+        } catch (IOException e) {
+            return false;
+        }
+        Buffer buffer = source.buffer();
+        long limit = Math.min(buffer.size(), peekLimit);
+        return containsPattern(buffer, limit) || containsJsonField(buffer, limit, wholeBody);
+    }
+
+    private boolean containsPattern(Buffer buffer, long limit) {
+        for (ByteString pattern : patternList) {
+            long end = limit - pattern.size();
+            if (end < 0) {
+                continue;
+            }
+            for (long i = buffer.indexOf(pattern.getByte(0), 0, end + 1); i != -1;
+                 i = buffer.indexOf(pattern.getByte(0), i + 1, end + 1)) {
+                if (buffer.rangeEquals(i, pattern)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks the JSON tokens once and compares every value with the fields it is looked for.
+     * The field is found at any depth. Tokens cut by the peek limit are never matched.
+     */
+    private boolean containsJsonField(Buffer buffer, long limit, boolean wholeBody) {
+        if (fieldNameList.isEmpty()) {
+            return false;
+        }
+        long nameStart = -1;
+        long nameEnd = -1;
+        boolean valueExpected = false;
+        long i = 0;
+        while (i < limit) {
+            byte b = buffer.getByte(i);
+            if (b == '"') {
+                long start = i + 1;
+                long end = skipString(buffer, start, limit);
+                if (end == -1) {
+                    return false;
+                }
+                if (valueExpected) {
+                    if (matchesField(buffer, nameStart, nameEnd, start, end)) {
+                        return true;
+                    }
+                    valueExpected = false;
+                    nameStart = -1;
+                } else {
+                    nameStart = start;
+                    nameEnd = end;
+                }
+                i = end + 1;
+            } else if (b == ':') {
+                valueExpected = nameStart != -1;
+                i++;
+            } else if (isStructural(b)) {
+                valueExpected = false;
+                nameStart = -1;
+                i++;
+            } else if (isWhitespace(b)) {
+                i++;
+            } else {
+                long start = i;
+                while (i < limit && !isDelimiter(buffer.getByte(i))) {
+                    i++;
+                }
+                //the byte after the limit may already be in the buffer, then it tells if the value is complete
+                boolean complete = i < buffer.size() ? isDelimiter(buffer.getByte(i)) : wholeBody;
+                if (!complete) {
+                    return false;
+                }
+                if (valueExpected && matchesField(buffer, nameStart, nameEnd, start, i)) {
+                    return true;
+                }
+                valueExpected = false;
+                nameStart = -1;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesField(Buffer buffer, long nameStart, long nameEnd, long valueStart, long valueEnd) {
+        for (int i = 0; i < fieldNameList.size(); i++) {
+            if (rangeEquals(buffer, nameStart, nameEnd, fieldNameList.get(i))
+                    && rangeEquals(buffer, valueStart, valueEnd, fieldValueList.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean rangeEquals(Buffer buffer, long start, long end, ByteString bytes) {
+        return end - start == bytes.size() && buffer.rangeEquals(start, bytes);
+    }
+
+    //returns the index of the closing quote or -1, when the string does not end before the limit
+    private static long skipString(Buffer buffer, long start, long limit) {
+        for (long i = start; i < limit; i++) {
+            byte b = buffer.getByte(i);
+            if (b == '\\') {
+                i++;
+            } else if (b == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return isStructural(b) || isWhitespace(b);
+    }
+
+    private static boolean isStructural(byte b) {
+        return b == '{' || b == '}' || b == '[' || b == ']' || b == ',' || b == ':';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    public static class Builder {
+        private int peekLimit = 1024;
+        private List<Integer> httpCodeList;
+        private List<ByteString> patternList;
+        private List<ByteString> fieldNameList;
+        private List<ByteString> fieldValueList;
+
+        private Builder() {
+            httpCodeList = new ArrayList<>();
+            patternList = new ArrayList<>();
+            fieldNameList = new ArrayList<>();
+            fieldValueList = new ArrayList<>();
+        }
+
+        /**
+         * Sets the number of bytes at the beginning of the body, that are searched.
+         *
+         * @param peekLimit number of bytes, 1024 by default
+         * @return the Builder to add more parameters
+         */
+        public Builder setPeekLimit(int peekLimit) {
+            if (peekLimit < 1) {
+                throw new IllegalArgumentException("Peek limit must be positive");
+            }
+            this.peekLimit = peekLimit;
+            return this;
+        }
+
+        /**
+         * Limits the search to responses with given code. When no code is added, every
+         * {@link HttpException} is checked.
+         *
+         * @param code the HTTP code
+         * @return the Builder to add more parameters
+         */
+        public Builder addHttpCode(int code) {
+            this.httpCodeList.add(code);
+            return this;
+        }
+
+        /**
+         * Retries, when the bytes are found anywhere within the peek limit.
+         *
+         * @param pattern the bytes to find
+         * @return the Builder to add more parameters
+         */
+        public Builder addPattern(ByteString pattern) {
+            if (pattern.size() == 0) {
+                throw new IllegalArgumentException("Pattern must not be empty");
+            }
+            this.patternList.add(pattern);
+            return this;
+        }
+
+        /**
+         * Retries, when the UTF-8 encoded text is found anywhere within the peek limit.
+         *
+         * @param text the text to find
+         * @return the Builder to add more parameters
+         */
+        public Builder addPattern(String text) {
+            return addPattern(ByteString.encodeUtf8(text));
+        }
+
+        /**
+         * Retries, when the body is a JSON with the field of given value, e.g.
+         * {@code addJsonField("code", "THROTTLED")} or {@code addJsonField("retryable", "true")}.
+         * String values are compared without the quotes, other values as they are written.
+         *
+         * @param name  name of the field
+         * @param value value of the field
+         * @return the Builder to add more parameters
+         */
+        public Builder addJsonField(String name, String value) {
+            this.fieldNameList.add(ByteString.encodeUtf8(name));
+            this.fieldValueList.add(ByteString.encodeUtf8(value));
+            return this;
+        }
+
+        public ErrorBodyRetryIfBehavior build() {
+            return new ErrorBodyRetryIfBehavior(this);
+        }
+    }
+}
@@ -17,41 +17,24 @@ package com.rzagorski.retrofitrxerrorhandler.backoff.retryBehavior;
 
 import java.util.List;
 
-import retrofit2.adapter.rxjava.HttpException;
-
 public class InclusiveRetryIfBehaviour extends BaseRetryIfBehavior {
 
     public InclusiveRetryIfBehaviour(List<Class<? extends Throwable>> throwableList, List<Integer> httpCodesList) {
         super(throwableList, httpCodesList);
     }
 
-    @Override
-    public Boolean call(Throwable throwable) {
-        boolean result = false;
-        if (httpCodesList != null) {
-            if (HttpException.class.isInstance(throwable)) {
-                result = checkHttpCodes((HttpException) throwable);
-            }
-        }
-        return result || checkError(throwable);
+    public InclusiveRetryIfBehaviour(List<Class<? extends Throwable>> throwableList, List<Integer> httpCodesList,
+                                     RetryPredicate retryPredicate) {
+        super(throwableList, httpCodesList, retryPredicate);
     }
 
-    private boolean checkHttpCodes(HttpException httpException) {
-        int errorCode = httpException.code();
-        for (Integer httpCode : httpCodesList) {
-            if (httpCode.equals(errorCode)) {
-                return true;
-            }
-        }
-        return false;
+    @Override
+    public Boolean call(Throwable throwable) {
+        return matches(throwable) || checkPredicate(throwable);
     }
 
-    private boolean checkError(Throwable throwable) {
-        for (Class<? extends Throwable> throwableFromList : throwableList) {
-            if (throwableFromList.isInstance(throwable)) {
-                return true;
-            }
-        }
-        return false;
+    @Override
+    public boolean isRetryable(int httpCode) {
+        return matcher.matchesResponse(httpCode);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.backoff.retryBehavior;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.HttpException;
+import rx.exceptions.CompositeException;
+import rx.functions.Func1;
+
+/**
+ * Immutable condition of the retry, built from simple checks combined with {@link #and(RetryPredicate)},
+ * {@link #or(RetryPredicate)} and {@link #not(RetryPredicate)}, e.g.
+ * <pre>
+ * RetryPredicate.causedBy(SocketTimeoutException.class)
+ *         .or(RetryPredicate.httpCodeBetween(500, 599).and(RetryPredicate.not(RetryPredicate.httpCode(501))))
+ *         .or(RetryPredicate.httpCode(429).and(RetryPredicate.hasHeader("Retry-After")));
+ * </pre>
+ * Combining compiles the tree: nested conditions of the same kind are flattened, HTTP codes
+ * are merged into one set, classes are merged into one lookup cached per class of the error,
+ * and the cheapest checks are evaluated first.
+ * <br>
+ * The cause chain is walked at most {@link #MAX_CAUSE_DEPTH} levels deep, looking also into
+ * every exception of {@link CompositeException}.
+ */
+public abstract class RetryPredicate implements Func1<Throwable, Boolean> {
+    public static final int MAX_CAUSE_DEPTH = 8;
+    private static final int MAX_HTTP_CODE = 999;
+
+    RetryPredicate() {
+    }
+
+    /**
+     * @param throwable the error
+     * @return {@code true} when the retry should be made
+     */
+    public abstract boolean test(Throwable throwable);
+
+    @Override
+    public final Boolean call(Throwable throwable) {
+        return test(throwable);
+    }
+
+    //used to evaluate the cheapest conditions first
+    abstract int cost();
+
+    /**
+     * Matches the error or any of its causes of the class, including subclasses.
+     *
+     * @param throwable class of the error, e.g. {@code SocketTimeoutException.class}
+     * @return the predicate
+     */
+    public static RetryPredicate causedBy(Class<? extends Throwable> throwable) {
+        return new ClassPredicate(Collections.<Class<?>>singletonList(throwable), MAX_CAUSE_DEPTH);
+    }
+
+    /**
+     * Matches the error or any of its causes of one of the classes, including subclasses.
+     *
+     * @param throwables classes of the error, e.g. {@code SocketTimeoutException.class}
+     * @return the predicate
+     */
+    @SafeVarargs
+    public static RetryPredicate causedBy(Class<? extends Throwable>... throwables) {
+        return new ClassPredicate(Arrays.<Class<?>>asList(throwables), MAX_CAUSE_DEPTH);
+    }
+
+    /**
+     * Matches the error of the class, including subclasses, without looking into its causes.
+     *
+     * @param throwable class of the error
+     * @return the predicate
+     */
+    public static RetryPredicate instanceOf(Class<? extends Throwable> throwable) {
+        return new ClassPredicate(Collections.<Class<?>>singletonList(throwable), 0);
+    }
+
+    /**
+     * Matches the error of one of the classes, including subclasses, without looking into its causes.
+     *
+     * @param throwables classes of the error
+     * @return the predicate
+     */
+    @SafeVarargs
+    public static RetryPredicate instanceOf(Class<? extends Throwable>... throwables) {
+        return new ClassPredicate(Arrays.<Class<?>>asList(throwables), 0);
+    }
+
+    /**
+     * Matches {@link HttpException} with one of the codes, found in the cause chain.
+     *
+     * @param codes the HTTP codes
+     * @return the predicate
+     */
+    public static RetryPredicate httpCode(int... codes) {
+        BitSet codeSet = new BitSet();
+        for (int code : codes) {
+            checkHttpCode(code);
+            codeSet.set(code);
+        }
+        return new HttpCodePredicate(codeSet);
+    }
+
+    /**
+     * Matches {@link HttpException} with the code from the range, found in the cause chain.
+     *
+     * @param from the lowest code, inclusive
+     * @param to   the highest code, inclusive
+     * @return the predicate
+     */
+    public static RetryPredicate httpCodeBetween(int from, int to) {
+        checkHttpCode(from);
+        checkHttpCode(to);
+        BitSet codeSet = new BitSet();
+        codeSet.set(from, to + 1);
+        return new HttpCodePredicate(codeSet);
+    }
+
+    /**
+     * Matches {@link HttpException} with the response containing the header, found in the cause chain.
+     *
+     * @param name name of the header
+     * @return the predicate
+     */
+    public static RetryPredicate hasHeader(String name) {
+        return new HeaderPredicate(name, null);
+    }
+
+    /**
+     * Matches {@link HttpException} with the response containing the header of given value,
+     * found in the cause chain.
+     *
+     * @param name  name of the header
+     * @param value value of the header, compared ignoring case
+     * @return the predicate
+     */
+    public static RetryPredicate header(String name, String value) {
+        return new HeaderPredicate(name, value);
+    }
+
+    /**
+     * Uses the function, e.g. {@link ErrorBodyRetryIfBehavior}, as the condition. The function
+     * is always evaluated after the other conditions.
+     *
+     * @param retryIf the function
+     * @return the predicate
+     */
+    public static RetryPredicate matching(Func1<Throwable, Boolean> retryIf) {
+        return new FunctionPredicate(retryIf);
+    }
+
+    public static RetryPredicate not(RetryPredicate predicate) {
+        if (predicate instanceof NotPredicate) {
+            return ((NotPredicate) predicate).predicate;
+        }
+        return new NotPredicate(predicate);
+    }
+
+    public static RetryPredicate allOf(RetryPredicate... predicates) {
+        return AllPredicate.create(Arrays.asList(predicates));
+    }
+
+    public static RetryPredicate anyOf(RetryPredicate... predicates) {
+        return AnyPredicate.create(Arrays.asList(predicates));
+    }
+
+    public RetryPredicate and(RetryPredicate other) {
+        return allOf(this, other);
+    }
+
+    public RetryPredicate or(RetryPredicate other) {
+        return anyOf(this, other);
+    }
+
+    private static void checkHttpCode(int code) {
+        if (code < 0 || code > MAX_HTTP_CODE) {
+            throw new IllegalArgumentException("Invalid HTTP code: " + code);
+        }
+    }
+
+    private static List<RetryPredicate> sortByCost(List<RetryPredicate> predicates) {
+        Collections.sort(predicates, new Comparator<RetryPredicate>() {
+            @Override
+            public int compare(RetryPredicate first, RetryPredicate second) {
+                return first.cost() - second.cost();
+            }
+        });
+        return predicates;
+    }
+
+    /**
+     * Checks the error and its causes, until {@link #matches(Throwable)} is {@code true}.
+     */
+    private abstract static class CausePredicate extends RetryPredicate {
+        final int maxDepth;
+
+        CausePredicate(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+
+        abstract boolean matches(Throwable throwable);
+
+        @Override
+        public boolean test(Throwable throwable) {
+            return walk(throwable, 0);
+        }
+
+        private boolean walk(Throwable throwable, int depth) {
+            if (throwable == null) {
+                return false;
+            }
+            if (matches(throwable)) {
+                return true;
+            }
+            if (depth >= maxDepth) {
+                return false;
+            }
+            if (throwable instanceof CompositeException) {
+                //getCause() of CompositeException builds a new chain, the list is enough
+                for (Throwable inner : ((CompositeException) throwable).getExceptions()) {
+                    if (walk(inner, depth + 1)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            Throwable cause = throwable.getCause();
+            return cause != throwable && walk(cause, depth + 1);
+        }
+    }
+
+    /**
+     * Caches the result for the classes of the errors, up to {@link #MAX_CACHED_CLASSES} of them,
+     * so the classes loaded by the application do not pile up in the predicate kept by the strategy.
+     */
+    private static final class ClassPredicate extends CausePredicate {
+        private static final int MAX_CACHED_CLASSES = 64;
+        private final Class<?>[] classes;
+        private final ConcurrentMap<Class<?>, Boolean> lookups;
+
+        ClassPredicate(List<Class<?>> classes, int maxDepth) {
+            super(maxDepth);
+            this.classes = classes.toArray(new Class<?>[classes.size()]);
+            this.lookups = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        boolean matches(Throwable throwable) {
+            Class<?> throwableClass = throwable.getClass();
+            Boolean result = lookups.get(throwableClass);
+            if (result == null) {
+                result = Boolean.FALSE;
+                for (Class<?> matched : classes) {
+                    if (matched.isAssignableFrom(throwableClass)) {
+                        result = Boolean.TRUE;
+                        break;
+                    }
+                }
+                if (lookups.size() < MAX_CACHED_CLASSES) {
+                    lookups.put(throwableClass, result);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static final class HttpCodePredicate extends CausePredicate {
+        private final BitSet codes;
+
+        HttpCodePredicate(BitSet codes) {
+            super(MAX_CAUSE_DEPTH);
+            this.codes = codes;
+        }
+
+        @Override
+        boolean matches(Throwable throwable) {
+            return throwable instanceof HttpException && codes.get(((HttpException) throwable).code());
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+    }
+
+    private static final class HeaderPredicate extends CausePredicate {
+        private final String name;
+        private final String value;
+
+        HeaderPredicate(String name, String value) {
+            super(MAX_CAUSE_DEPTH);
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(Throwable throwable) {
+            if (!(throwable instanceof HttpException)) {
+                return false;
+            }
+            Response<?> response = ((HttpException) throwable).response();
+            String header = response == null ? null : response.headers().get(name);
+            return header != null && (value == null || value.equalsIgnoreCase(header));
+        }
+
+        @Override
+        int cost() {
+            return 2;
+        }
+    }
+
+    private static final class FunctionPredicate extends RetryPredicate {
+        private final Func1<Throwable, Boolean> retryIf;
+
+        FunctionPredicate(Func1<Throwable, Boolean> retryIf) {
+            this.retryIf = retryIf;
+        }
+
+        @Override
+        public boolean test(Throwable throwable) {
+            return Boolean.TRUE.equals(retryIf.call(throwable));
+        }
+
+        @Override
+        int cost() {
+            return 10;
+        }
+    }
+
+    private static final class NotPredicate extends RetryPredicate {
+        private final RetryPredicate predicate;
+
+        NotPredicate(RetryPredicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public boolean test(Throwable throwable) {
+            return !predicate.test(throwable);
+        }
+
+        @Override
+        int cost() {
+            return predicate.cost();
+        }
+    }
+
+    private static final class AllPredicate extends RetryPredicate {
+        private final RetryPredicate[] predicates;
+        private final int cost;
+
+        private AllPredicate(List<RetryPredicate> predicates) {
+            this.predicates = predicates.toArray(new RetryPredicate[predicates.size()]);
+            int sum = 0;
+            for (RetryPredicate predicate : predicates) {
+                sum += predicate.cost();
+            }
+            this.cost = sum;
+        }
+
+        static RetryPredicate create(List<RetryPredicate> predicates) {
+            List<RetryPredicate> flattened = new ArrayList<>();
+            for (RetryPredicate predicate : predicates) {
+                if (predicate instanceof AllPredicate) {
+                    flattened.addAll(Arrays.asList(((AllPredicate) predicate).predicates));
+                } else {
+                    flattened.add(predicate);
+                }
+            }
+            if (flattened.size() == 1) {
+                return flattened.get(0);
+            }
+            return new AllPredicate(sortByCost(flattened));
+        }
+
+        @Override
+        public boolean test(Throwable throwable) {
+            for (RetryPredicate predicate : predicates) {
+                if (!predicate.test(throwable)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+    }
+
+    private static final class AnyPredicate extends RetryPredicate {
+        private final RetryPredicate[] predicates;
+        private final int cost;
+
+        private AnyPredicate(List<RetryPredicate> predicates) {
+            this.predicates = predicates.toArray(new RetryPredicate[predicates.size()]);
+            int sum = 0;
+            for (RetryPredicate predicate : predicates) {
+                sum += predicate.cost();
+            }
+            this.cost = sum;
+        }
+
+        static RetryPredicate create(List<RetryPredicate> predicates) {
+            List<RetryPredicate> flattened = new ArrayList<>();
+            BitSet codes = null;
+            List<Class<?>> classes = new ArrayList<>();
+            List<Class<?>> causes = new ArrayList<>();
+            for (RetryPredicate predicate : predicates) {
+                List<RetryPredicate> inner = predicate instanceof AnyPredicate
+                        ? Arrays.asList(((AnyPredicate) predicate).predicates)
+                        : Collections.singletonList(predicate);
+                for (RetryPredicate single : inner) {
+                    if (single instanceof HttpCodePredicate) {
+                        if (codes == null) {
+                            codes = new BitSet();
+                        }
+                        codes.or(((HttpCodePredicate) single).codes);
+                    } else if (single instanceof ClassPredicate) {
+                        ClassPredicate classPredicate = (ClassPredicate) single;
+                        (classPredicate.maxDepth == 0 ? classes : causes).addAll(Arrays.asList(classPredicate.classes));
+                    } else {
+                        flattened.add(single);
+                    }
+                }
+            }
+            if (codes != null) {
+                flattened.add(new HttpCodePredicate(codes));
+            }
+            if (!classes.isEmpty()) {
+                flattened.add(new ClassPredicate(classes, 0));
+            }
+            if (!causes.isEmpty()) {
+                flattened.add(new ClassPredicate(causes, MAX_CAUSE_DEPTH));
+            }
+            if (flattened.size() == 1) {
+                return flattened.get(0);
+            }
+            return new AnyPredicate(sortByCost(flattened));
+        }
+
+        @Override
+        public boolean test(Throwable throwable) {
+            for (RetryPredicate predicate : predicates) {
+                if (predicate.test(throwable)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.rzagorski.retrofitrxerrorhandler.backoff.strategies;
 
+import com.rzagorski.retrofitrxerrorhandler.backoff.retryBehavior.RetryPredicate;
+
 import java.util.List;
 
 import rx.Observable;
@@ -65,6 +67,17 @@ public interface AddReaction<T> {
      */
     public T addHttpCode(int code);
 
+    /**
+     * Adds a condition built with {@link RetryPredicate}, e.g. a cause of the error or HTTP code together
+     * with a header. It is checked together with added {@code Throwables} and HTTP codes.
+     * <br>
+     * Predicates added before are combined with this one using {@link RetryPredicate#or(RetryPredicate)}.
+     *
+     * @param predicate the condition
+     * @return the Builder to add more parameters
+     */
+    public T addRetryPredicate(RetryPredicate predicate);
+
     /**
      * Add observable to be executed in case of error.
      * After successful execution of this observable, the reactive sequence will be repeated.
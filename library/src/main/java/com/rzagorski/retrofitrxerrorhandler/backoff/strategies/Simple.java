@@ -16,6 +16,7 @@
 package com.rzagorski.retrofitrxerrorhandler.backoff.strategies;
 
 import com.rzagorski.retrofitrxerrorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrxerrorhandler.backoff.retryBehavior.RetryPredicate;
 
 import java.util.List;
 
@@ -88,6 +89,12 @@ public class Simple extends BaseBackoffStrategy {
             return this;
         }
 
+        @Override
+        public Builder addRetryPredicate(RetryPredicate predicate) {
+            baseBuilder.addRetryPredicate(predicate);
+            return this;
+        }
+
         @Override
         public Builder addObservable(Observable<?> observable) {
             baseBuilder.addObservable(observable);
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.download;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+import retrofit2.http.Streaming;
+
+/**
+ * Recognizes Retrofit methods, which download with {@link ResumableResponseBody}.
+ */
+public final class ResumableDownload {
+
+    private ResumableDownload() {
+    }
+
+    /**
+     * @param returnType  return type of the Retrofit method
+     * @param annotations annotations of the Retrofit method
+     * @return {@code true} for methods annotated with {@link Streaming} and returning {@code ResponseBody}
+     * wrapped in a single reactive type, e.g. {@code Observable<ResponseBody>}
+     */
+    public static boolean isResumable(Type returnType, Annotation[] annotations) {
+        if (!(returnType instanceof ParameterizedType)) {
+            return false;
+        }
+        Type[] arguments = ((ParameterizedType) returnType).getActualTypeArguments();
+        if (arguments.length != 1 || arguments[0] != ResponseBody.class) {
+            return false;
+        }
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Streaming) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Turns e.g. {@code Observable<ResponseBody>} into {@code Observable<Response<ResponseBody>>},
+     * so the headers of the response are available.
+     *
+     * @param returnType type accepted by {@link #isResumable(Type, Annotation[])}
+     * @return the type with {@code ResponseBody} wrapped in {@link Response}
+     */
+    public static Type withResponse(Type returnType) {
+        Type rawType = ((ParameterizedType) returnType).getRawType();
+        return new SimpleParameterizedType(rawType,
+                new SimpleParameterizedType(Response.class, ResponseBody.class));
+    }
+
+    private static final class SimpleParameterizedType implements ParameterizedType {
+        private final Type rawType;
+        private final Type argument;
+
+        SimpleParameterizedType(Type rawType, Type argument) {
+            this.rawType = rawType;
+            this.argument = argument;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return new Type[]{argument};
+        }
+
+        @Override
+        public Type getRawType() {
+            return rawType;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ParameterizedType
+                    && rawType.equals(((ParameterizedType) other).getRawType())
+                    && ((ParameterizedType) other).getOwnerType() == null
+                    && Arrays.equals(getActualTypeArguments(), ((ParameterizedType) other).getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            return rawType.hashCode() ^ argument.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return rawType + "<" + argument + ">";
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.durable;
+
+import com.rzagorski.retrofiterrorhandler.durable.DurableRequest;
+import com.rzagorski.retrofiterrorhandler.durable.RetryLog;
+
+import java.io.IOException;
+
+import okhttp3.Request;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.Result;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+
+/**
+ * Writes the request of a {@link com.rzagorski.retrofiterrorhandler.durable.Durable} call to {@link RetryLog},
+ * when its attempt fails with an error, which will be retried, and removes it, when an attempt succeeds
+ * or fails with an error, which will not.
+ * <br>
+ * It is applied below the backoff strategies, so it sees every attempt. The request carries its idempotency key
+ * since the first attempt (see {@link DurableCall}); the snapshot of the request is taken once, when the first
+ * attempt fails.
+ */
+public class DurableTransformer<T> implements Observable.Transformer<T, T> {
+    private final RetryLog retryLog;
+    private final Request request;
+    private final Retryable retryable;
+    private DurableRequest snapshot;
+
+    /**
+     * @param retryLog  the log the request is written to
+     * @param request   the request of the call
+     * @param retryable tells, whether the error or the response will be retried by the backoff strategies
+     */
+    public DurableTransformer(RetryLog retryLog, Request request, Retryable retryable) {
+        this.retryLog = retryLog;
+        this.request = request;
+        this.retryable = retryable;
+    }
+
+    @Override
+    public Observable<T> call(Observable<T> upstream) {
+        return upstream
+                .doOnNext(new Action1<T>() {
+                    @Override
+                    public void call(T emitted) {
+                        emitted(emitted);
+                    }
+                })
+                .doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        failed(throwable);
+                    }
+                })
+                .doOnCompleted(new Action0() {
+                    @Override
+                    public void call() {
+                        succeeded();
+                    }
+                });
+    }
+
+    //Response<T> and Result<T> carry unsuccessful responses without an error
+    private void emitted(Object emitted) {
+        Response<?> response;
+        if (emitted instanceof Result) {
+            Result<?> result = (Result<?>) emitted;
+            if (result.isError()) {
+                failed(result.error());
+                return;
+            }
+            response = result.response();
+        } else if (emitted instanceof Response) {
+            response = (Response<?>) emitted;
+        } else {
+            succeeded();
+            return;
+        }
+        if (response.isSuccessful() || !retryable.isRetryable(response.code())) {
+            succeeded();
+        } else {
+            append();
+        }
+    }
+
+    private void failed(Throwable throwable) {
+        if (!retryable.isRetryable(throwable)) {
+            succeeded();
+        } else {
+            append();
+        }
+    }
+
+    private void append() {
+        try {
+            retryLog.append(snapshot());
+        } catch (IOException ignored) {
+            //the call is still retried, only it does not survive the restart of the process
+        }
+    }
+
+    private void succeeded() {
+        DurableRequest durableRequest = getSnapshot();
+        if (durableRequest == null) {
+            return;
+        }
+        try {
+            retryLog.remove(durableRequest.getKey());
+        } catch (IOException ignored) {
+            //the request is replayed once more after the restart, the server recognizes it by the key
+        }
+    }
+
+    private synchronized DurableRequest snapshot() throws IOException {
+        if (snapshot == null) {
+            snapshot = DurableRequest.of(request);
+        }
+        return snapshot;
+    }
+
+    private synchronized DurableRequest getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Tells, whether the backoff strategies of the call will retry it.
+     */
+    public interface Retryable {
+
+        /**
+         * @param throwable the error of the attempt
+         * @return {@code true} when the error will be retried
+         */
+        boolean isRetryable(Throwable throwable);
+
+        /**
+         * @param httpCode code of the unsuccessful response emitted by the attempt
+         * @return {@code true} when the response will be retried
+         */
+        boolean isRetryable(int httpCode);
+    }
+}
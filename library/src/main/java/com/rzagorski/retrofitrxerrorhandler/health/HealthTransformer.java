@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.health;
+
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.HttpException;
+import retrofit2.adapter.rxjava.Result;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * Records the time and result of every subscription to the call in {@link HostHealth},
+ * so every retry made by backoff strategies is recorded as a separate attempt.
+ * <br>
+ * Network errors, HTTP 5xx and 429 codes count as failures, also when the response is emitted
+ * as {@code Response<T>} or {@code Result<T>}. Unsubscribed attempts are not recorded.
+ */
+public class HealthTransformer<T> implements Observable.Transformer<T, T> {
+    private final HostHealth health;
+
+    public HealthTransformer(HostHealth health) {
+        this.health = health;
+    }
+
+    @Override
+    public Observable<T> call(final Observable<T> upstream) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                final Attempt attempt = new Attempt(health);
+                return upstream
+                        .doOnNext(attempt)
+                        .doOnError(new Action1<Throwable>() {
+                            @Override
+                            public void call(Throwable throwable) {
+                                attempt.finish(isFailure(throwable));
+                            }
+                        })
+                        .doOnCompleted(attempt);
+            }
+        });
+    }
+
+    static boolean isFailure(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return true;
+        }
+        return throwable instanceof HttpException && isFailure(((HttpException) throwable).code());
+    }
+
+    private static boolean isFailure(int code) {
+        return code >= 500 || code == 429;
+    }
+
+    private static final class Attempt implements Action1<Object>, Action0 {
+        private final HostHealth health;
+        private final long startTime;
+        private final AtomicBoolean finished;
+
+        Attempt(HostHealth health) {
+            this.health = health;
+            this.startTime = System.nanoTime();
+            this.finished = new AtomicBoolean();
+        }
+
+        @Override
+        public void call(Object emitted) {
+            if (emitted instanceof Response) {
+                finish(isFailure(((Response<?>) emitted).code()));
+            } else if (emitted instanceof Result) {
+                Result<?> result = (Result<?>) emitted;
+                finish(result.isError() ? isFailure(result.error()) : isFailure(result.response().code()));
+            } else {
+                finish(false);
+            }
+        }
+
+        @Override
+        public void call() {
+            finish(false);
+        }
+
+        void finish(boolean failed) {
+            if (finished.compareAndSet(false, true)) {
+                health.record(System.nanoTime() - startTime, failed);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.limit;
+
+import com.rzagorski.retrofiterrorhandler.limit.ConcurrencyLimiter;
+import com.rzagorski.retrofiterrorhandler.limit.LimitExceededException;
+import com.rzagorski.retrofiterrorhandler.limit.Permit;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.HttpException;
+import retrofit2.adapter.rxjava.Result;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Takes a {@link Permit} from {@link ConcurrencyLimiter} for every subscription to the call,
+ * so every retry made by backoff strategies is limited the same as the first attempt.
+ * <br>
+ * Calls waiting in the queue are started on {@link Schedulers#io()} instead of the thread
+ * that released the slot.
+ */
+public class ConcurrencyLimitTransformer<T> implements Observable.Transformer<T, T> {
+    private final String host;
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitTransformer(String host, ConcurrencyLimiter limiter) {
+        this.host = host;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Observable<T> call(final Observable<T> upstream) {
+        return Observable.using(new Func0<Acquisition>() {
+            @Override
+            public Acquisition call() {
+                return new Acquisition(limiter);
+            }
+        }, new Func1<Acquisition, Observable<T>>() {
+            @Override
+            public Observable<T> call(final Acquisition acquisition) {
+                if (acquisition.permit == null) {
+                    return Observable.error(new LimitExceededException(host));
+                }
+                if (acquisition.granted.hasCompleted()) {
+                    return measure(upstream, acquisition.permit);
+                }
+                return acquisition.granted
+                        .observeOn(Schedulers.io())
+                        .flatMap(new Func1<Object, Observable<T>>() {
+                            @Override
+                            public Observable<T> call(Object o) {
+                                return measure(upstream, acquisition.permit);
+                            }
+                        });
+            }
+        }, new Action1<Acquisition>() {
+            @Override
+            public void call(Acquisition acquisition) {
+                if (acquisition.permit != null) {
+                    acquisition.permit.release();
+                }
+            }
+        }, true);
+    }
+
+    private Observable<T> measure(Observable<T> upstream, final Permit permit) {
+        //unsuccessful responses emitted as Response<T> or Result<T> do not end the call with an error
+        final AtomicBoolean dropped = new AtomicBoolean();
+        return upstream
+                .doOnNext(new Action1<T>() {
+                    @Override
+                    public void call(T value) {
+                        if (isDropped(value)) {
+                            dropped.set(true);
+                        }
+                    }
+                })
+                .doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        permit.setOutcome(isDropped(throwable));
+                    }
+                })
+                .doOnCompleted(new Action0() {
+                    @Override
+                    public void call() {
+                        permit.setOutcome(dropped.get());
+                    }
+                });
+    }
+
+    private static boolean isDropped(Object value) {
+        if (value instanceof Response) {
+            Response<?> response = (Response<?>) value;
+            return !response.isSuccessful() && isDropped(response.code());
+        }
+        if (value instanceof Result) {
+            Result<?> result = (Result<?>) value;
+            return result.isError() ? isDropped(result.error()) : isDropped(result.response());
+        }
+        return false;
+    }
+
+    private static boolean isDropped(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return true;
+        }
+        if (throwable instanceof HttpException) {
+            return isDropped(((HttpException) throwable).code());
+        }
+        return false;
+    }
+
+    private static boolean isDropped(int code) {
+        return code >= 500 || code == 429;
+    }
+
+    private static final class Acquisition {
+        final AsyncSubject<Object> granted;
+        final Permit permit;
+
+        Acquisition(ConcurrencyLimiter limiter) {
+            granted = AsyncSubject.create();
+            permit = limiter.acquire(new Runnable() {
+                @Override
+                public void run() {
+                    granted.onNext(Boolean.TRUE);
+                    granted.onCompleted();
+                }
+            });
+        }
+    }
+}
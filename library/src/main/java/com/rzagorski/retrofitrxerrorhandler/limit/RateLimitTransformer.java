@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.limit;
+
+import com.rzagorski.retrofiterrorhandler.limit.RateLimit;
+import com.rzagorski.retrofiterrorhandler.limit.RateLimitExceededException;
+import com.rzagorski.retrofiterrorhandler.limit.TokenBucket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+/**
+ * Delays every subscription to the call until a token from {@link RateLimit} is available.
+ * Resubscriptions made by backoff strategies take their own tokens. The token of the subscription
+ * cancelled during the wait is given back to the bucket.
+ */
+public class RateLimitTransformer<T> implements Observable.Transformer<T, T> {
+    private final String host;
+    private final TokenBucket bucket;
+    private final long maxWaitNanos;
+
+    public RateLimitTransformer(String host, RateLimit rateLimit) {
+        this.host = host;
+        this.bucket = rateLimit.getBucket(host);
+        this.maxWaitNanos = rateLimit.getMaxWaitNanos();
+    }
+
+    @Override
+    public Observable<T> call(final Observable<T> upstream) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                long waitNanos = bucket.tryReserve(maxWaitNanos);
+                if (waitNanos < 0) {
+                    return Observable.error(new RateLimitExceededException(host));
+                }
+                if (waitNanos == 0) {
+                    return upstream;
+                }
+                //the token is given back, when the subscription is unsubscribed before the wait is over
+                final AtomicBoolean used = new AtomicBoolean();
+                return upstream
+                        .doOnSubscribe(new Action0() {
+                            @Override
+                            public void call() {
+                                used.set(true);
+                            }
+                        })
+                        .delaySubscription(waitNanos, TimeUnit.NANOSECONDS)
+                        .doOnUnsubscribe(new Action0() {
+                            @Override
+                            public void call() {
+                                if (used.compareAndSet(false, true)) {
+                                    bucket.release();
+                                }
+                            }
+                        });
+            }
+        });
+    }
+}
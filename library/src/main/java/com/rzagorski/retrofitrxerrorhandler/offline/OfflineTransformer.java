@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.offline;
+
+import com.rzagorski.retrofiterrorhandler.offline.OfflineMode;
+import com.rzagorski.retrofiterrorhandler.offline.OfflineQueueFullException;
+
+import retrofit2.HttpException;
+import retrofit2.adapter.rxjava.Result;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Records the result of every attempt in {@link OfflineMode}. While it is offline, the attempt failed
+ * with a connectivity failure is parked and the call is subscribed to again, when it is released.
+ * <br>
+ * It is applied below the backoff strategies, so the parked call does not schedule retries and
+ * does not use the retries of the strategies. Other errors go to the strategies, as without it.
+ */
+public class OfflineTransformer<T> implements Observable.Transformer<T, T> {
+    private final OfflineMode offlineMode;
+
+    public OfflineTransformer(OfflineMode offlineMode) {
+        this.offlineMode = offlineMode;
+    }
+
+    @Override
+    public Observable<T> call(Observable<T> upstream) {
+        return upstream
+                .doOnNext(new Action1<T>() {
+                    @Override
+                    public void call(T emitted) {
+                        if (emitted instanceof Result && ((Result<?>) emitted).isError()) {
+                            offlineMode.recordFailure(((Result<?>) emitted).error());
+                        } else {
+                            offlineMode.recordSuccess();
+                        }
+                    }
+                })
+                .doOnError(new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        if (throwable instanceof HttpException) {
+                            //the server was reached
+                            offlineMode.recordSuccess();
+                        } else {
+                            offlineMode.recordFailure(throwable);
+                        }
+                    }
+                })
+                .retryWhen(new Func1<Observable<? extends Throwable>, Observable<?>>() {
+                    @Override
+                    public Observable<?> call(Observable<? extends Throwable> errors) {
+                        return errors.concatMap(new Park());
+                    }
+                });
+    }
+
+    private class Park implements Func1<Throwable, Observable<Object>> {
+
+        @Override
+        public Observable<Object> call(Throwable throwable) {
+            if (!OfflineMode.isConnectivityFailure(throwable) || !offlineMode.isOffline()) {
+                return Observable.error(throwable);
+            }
+            final AsyncSubject<Object> released = AsyncSubject.create();
+            final OfflineMode.ParkedCall parkedCall = offlineMode.park(new Runnable() {
+                @Override
+                public void run() {
+                    released.onNext(Boolean.TRUE);
+                    released.onCompleted();
+                }
+            });
+            if (parkedCall == null) {
+                return Observable.error(new OfflineQueueFullException(offlineMode.getMaxParkedCalls(), throwable));
+            }
+            //released calls are not made on the thread of the probe
+            return released
+                    .doOnUnsubscribe(new Action0() {
+                        @Override
+                        public void call() {
+                            parkedCall.cancel();
+                        }
+                    })
+                    .observeOn(Schedulers.io());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.scheduler;
+
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryCoalescer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Sends the retries of a single subscription to the call through {@link RetryCoalescer}.
+ * The first attempt goes to the server directly. A retry, which is the leader, goes to the server
+ * and reports its outcome. Other retries wait for the outcome of the leader: they are sent after its success
+ * and fail with its error after its failure.
+ * <br>
+ * It is applied below the backoff strategies, so a retry failed with the error of the leader uses
+ * the retry and waits for the next one, as if it reached the server.
+ */
+public class CoalescingTransformer<T> implements Observable.Transformer<T, T> {
+    private static final Object REJOIN = new Object();
+
+    private final RetryCoalescer coalescer;
+    private final String endpoint;
+    private final AtomicBoolean firstAttempt;
+
+    /**
+     * @param coalescer the coalescer of the retries
+     * @param endpoint  the endpoint of the call from {@link RetryCoalescer#endpointOf(okhttp3.Request)}
+     */
+    public CoalescingTransformer(RetryCoalescer coalescer, String endpoint) {
+        this.coalescer = coalescer;
+        this.endpoint = endpoint;
+        this.firstAttempt = new AtomicBoolean(true);
+    }
+
+    @Override
+    public Observable<T> call(final Observable<T> upstream) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                if (firstAttempt.compareAndSet(true, false)) {
+                    return upstream;
+                }
+                return retry(upstream);
+            }
+        });
+    }
+
+    private Observable<T> retry(final Observable<T> upstream) {
+        final RetryCoalescer.Retry retry = coalescer.join(endpoint);
+        Action0 cancel = new Action0() {
+            @Override
+            public void call() {
+                retry.cancel();
+            }
+        };
+        if (retry.isLeader()) {
+            Action0 succeeded = new Action0() {
+                @Override
+                public void call() {
+                    retry.succeeded();
+                }
+            };
+            return upstream
+                    .doOnNext(new Action1<T>() {
+                        @Override
+                        public void call(T emitted) {
+                            retry.succeeded();
+                        }
+                    })
+                    .doOnError(new Action1<Throwable>() {
+                        @Override
+                        public void call(Throwable throwable) {
+                            retry.failed(throwable);
+                        }
+                    })
+                    .doOnCompleted(succeeded)
+                    .doOnUnsubscribe(cancel);
+        }
+        final AsyncSubject<Object> outcome = AsyncSubject.create();
+        //the waiting retries are not made on the thread of the leader
+        retry.await(new RetryCoalescer.Listener() {
+            @Override
+            public void onLeaderSucceeded(final long delayNanos) {
+                deliver(new Action0() {
+                    @Override
+                    public void call() {
+                        outcome.onNext(delayNanos);
+                        outcome.onCompleted();
+                    }
+                });
+            }
+
+            @Override
+            public void onLeaderFailed(final Throwable error) {
+                deliver(new Action0() {
+                    @Override
+                    public void call() {
+                        outcome.onError(error);
+                    }
+                });
+            }
+
+            @Override
+            public void onLeaderAbandoned() {
+                deliver(new Action0() {
+                    @Override
+                    public void call() {
+                        outcome.onNext(REJOIN);
+                        outcome.onCompleted();
+                    }
+                });
+            }
+        });
+        return outcome
+                .doOnUnsubscribe(cancel)
+                .concatMap(new Func1<Object, Observable<T>>() {
+                    @Override
+                    public Observable<T> call(Object signal) {
+                        if (signal == REJOIN) {
+                            return retry(upstream);
+                        }
+                        long delayNanos = (Long) signal;
+                        if (delayNanos > 0) {
+                            return upstream.delaySubscription(delayNanos, TimeUnit.NANOSECONDS);
+                        }
+                        return upstream;
+                    }
+                });
+    }
+
+    private static void deliver(final Action0 action) {
+        final Scheduler.Worker worker = Schedulers.io().createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    action.call();
+                } finally {
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+}
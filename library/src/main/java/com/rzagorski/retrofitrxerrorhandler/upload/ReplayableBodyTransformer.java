@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.upload;
+
+import com.rzagorski.retrofiterrorhandler.upload.ReplayableRequestBody;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * {@link ReplayableRequestBody#retain() Retains} the body for the whole subscription to the call,
+ * so all retries write it from the same open file.
+ */
+public class ReplayableBodyTransformer<T> implements Observable.Transformer<T, T> {
+    private final ReplayableRequestBody body;
+
+    public ReplayableBodyTransformer(ReplayableRequestBody body) {
+        this.body = body;
+    }
+
+    @Override
+    public Observable<T> call(final Observable<T> upstream) {
+        return Observable.using(new Func0<ReplayableRequestBody>() {
+            @Override
+            public ReplayableRequestBody call() {
+                body.retain();
+                return body;
+            }
+        }, new Func1<ReplayableRequestBody, Observable<T>>() {
+            @Override
+            public Observable<T> call(ReplayableRequestBody body) {
+                return upstream;
+            }
+        }, new Action1<ReplayableRequestBody>() {
+            @Override
+            public void call(ReplayableRequestBody body) {
+                body.release();
+            }
+        });
+    }
+}
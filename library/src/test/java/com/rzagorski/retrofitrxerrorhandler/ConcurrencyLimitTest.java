@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.limit.ConcurrencyLimit;
+import com.rzagorski.retrofiterrorhandler.limit.ConcurrencyLimiter;
+import com.rzagorski.retrofiterrorhandler.limit.LimitExceededException;
+import com.rzagorski.retrofiterrorhandler.limit.Permit;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrxerrorhandler.limit.ConcurrencyLimitTransformer;
+import com.rzagorski.retrofitrxerrorhandler.model.GitHub;
+import com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConcurrencyLimitTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that when the limit of concurrent calls is reached and the queue is disabled,
+     * the next call ends with {@link LimitExceededException} without reaching the server.
+     */
+    @Test
+    public void testRejectedOverLimit() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return MockWebServerUtils.getSuccessfulResponse().setBodyDelay(1, TimeUnit.SECONDS);
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .setConcurrencyLimit(new ConcurrencyLimit.Builder()
+                        .setLimitRange(1, 1)
+                        .setMaxQueueSize(0)
+                        .build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestSubscriber first = new TestSubscriber();
+        github.repos("square").subscribeOn(Schedulers.io()).subscribe(first);
+        mockWebServer.takeRequest();
+        TestSubscriber second = new TestSubscriber();
+        github.repos("square").subscribe(second);
+        second.awaitTerminalEvent();
+        second.assertError(LimitExceededException.class);
+        first.awaitTerminalEvent();
+        first.assertCompleted();
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that calls over the limit wait in the queue and are never sent to the server
+     * at the same time. Retries of the first call are limited the same way.
+     */
+    @Test
+    public void testQueuedOverLimit() throws Exception {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int current = concurrent.incrementAndGet();
+                maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+                Thread.sleep(100);
+                concurrent.decrementAndGet();
+                if (mockWebServer.getRequestCount() == 1) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .setConcurrencyLimit(new ConcurrencyLimit.Builder()
+                        .setLimitRange(1, 1)
+                        .setMaxQueueSize(10)
+                        .build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        Observable observable = Observable.merge(
+                github.repos("square").subscribeOn(Schedulers.io()),
+                github.repos("square").subscribeOn(Schedulers.io()),
+                github.repos("square").subscribeOn(Schedulers.io()));
+        TestSubscriber testSubscriber = new TestSubscriber();
+        observable.subscribe(testSubscriber);
+        testSubscriber.awaitTerminalEvent();
+        testSubscriber.assertCompleted();
+        assertEquals(3, testSubscriber.getOnNextEvents().size());
+        assertEquals(4, mockWebServer.getRequestCount());
+        assertEquals(1, maxConcurrent.get());
+    }
+
+    /**
+     * Test shows, that the limit shrinks after failure and that the call waiting in the queue
+     * is started as soon as the slot is released.
+     */
+    @Test
+    public void testLimitAdjusted() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimit.Builder()
+                .setInitialLimit(4)
+                .setBackoffRatio(0.5)
+                .setMaxQueueSize(1)
+                .build()
+                .getLimiter("localhost");
+        Runnable noAction = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        Permit failed = limiter.acquire(noAction);
+        assertTrue(failed.isGranted());
+        failed.setOutcome(true);
+        failed.release();
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+
+        Permit first = limiter.acquire(noAction);
+        Permit second = limiter.acquire(noAction);
+        Permit waiting = limiter.acquire(noAction);
+        assertTrue(first.isGranted() && second.isGranted());
+        assertEquals(1, limiter.getQueued());
+        assertNull(limiter.acquire(noAction));
+
+        first.setOutcome(false);
+        first.release();
+        assertTrue(waiting.isGranted());
+        assertEquals(0, limiter.getQueued());
+        second.release();
+        waiting.release();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    /**
+     * Test shows, that the unsuccessful response emitted as {@code Response<T>} shrinks the limit
+     * the same as the error of the call.
+     */
+    @Test
+    public void testUnsuccessfulResponseDropped() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimit.Builder()
+                .setInitialLimit(4)
+                .setBackoffRatio(0.5)
+                .build()
+                .getLimiter("localhost");
+
+        TestSubscriber<Response<Object>> testSubscriber = new TestSubscriber<>();
+        Observable.just(Response.error(503, ResponseBody.create(MediaType.parse("text/plain"), "")))
+                .compose(new ConcurrencyLimitTransformer<Response<Object>>("localhost", limiter))
+                .subscribe(testSubscriber);
+        testSubscriber.assertCompleted();
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofitrxerrorhandler.backoff.retryBehavior.ErrorBodyRetryIfBehavior;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.adapter.rxjava.HttpException;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ErrorBodyRetryTest {
+
+    private static final String THROTTLED = "{\"error\": {\"message\": \"Slow \\\"down\\\"\", \"code\": \"THROTTLED\"}, \"retryable\": true}";
+
+    /**
+     * Test shows, that the JSON field is found at any depth and the error body can be read afterwards.
+     */
+    @Test
+    public void testJsonFieldLeavesBodyReadable() throws Exception {
+        ErrorBodyRetryIfBehavior retryIf = ErrorBodyRetryIfBehavior.init()
+                .addHttpCode(400)
+                .addJsonField("code", "THROTTLED")
+                .build();
+        HttpException exception = createHttpException(400, THROTTLED);
+
+        assertTrue(retryIf.call(exception));
+        assertTrue(retryIf.call(exception));
+        assertEquals(THROTTLED, exception.response().errorBody().string());
+        assertFalse(retryIf.call(createHttpException(500, THROTTLED)));
+        assertFalse(retryIf.call(new IOException()));
+    }
+
+    /**
+     * Test shows, that only values of the field are compared and literals are compared as written.
+     */
+    @Test
+    public void testJsonFieldValues() throws Exception {
+        assertTrue(ErrorBodyRetryIfBehavior.init()
+                .addJsonField("retryable", "true")
+                .build()
+                .call(createHttpException(503, THROTTLED)));
+        assertFalse(ErrorBodyRetryIfBehavior.init()
+                .addJsonField("message", "THROTTLED")
+                .build()
+                .call(createHttpException(503, THROTTLED)));
+        assertFalse(ErrorBodyRetryIfBehavior.init()
+                .addJsonField("error", "THROTTLED")
+                .build()
+                .call(createHttpException(503, "[\"error\", \"THROTTLED\"]")));
+    }
+
+    /**
+     * Test shows, that nothing after the peek limit is matched, also the value cut by the limit.
+     */
+    @Test
+    public void testPeekLimit() throws Exception {
+        String body = "{\"retryAfter\": 100}";
+        assertTrue(ErrorBodyRetryIfBehavior.init()
+                .addPattern("retryAfter")
+                .setPeekLimit(12)
+                .build()
+                .call(createHttpException(429, body)));
+        assertFalse(ErrorBodyRetryIfBehavior.init()
+                .addPattern("retryAfter")
+                .setPeekLimit(11)
+                .build()
+                .call(createHttpException(429, body)));
+        assertFalse(ErrorBodyRetryIfBehavior.init()
+                .addJsonField("retryAfter", "1")
+                .setPeekLimit(16)
+                .build()
+                .call(createHttpException(429, body)));
+        assertTrue(ErrorBodyRetryIfBehavior.init()
+                .addJsonField("retryAfter", "100")
+                .setPeekLimit(18)
+                .build()
+                .call(createHttpException(429, body)));
+    }
+
+    private static HttpException createHttpException(int code, String body) {
+        return new HttpException(Response.error(code, ResponseBody.create(MediaType.parse("application/json"), body)));
+    }
+}
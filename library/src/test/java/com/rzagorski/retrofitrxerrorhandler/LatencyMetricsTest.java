@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.metrics.EndpointSnapshot;
+import com.rzagorski.retrofiterrorhandler.metrics.HistogramSnapshot;
+import com.rzagorski.retrofiterrorhandler.metrics.LatencyMetrics;
+import com.rzagorski.retrofiterrorhandler.tracing.Tracer;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrxerrorhandler.model.GitHub;
+import com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Map;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import rx.observers.TestSubscriber;
+
+import static com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LatencyMetricsTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that calls of different owners are recorded under the path template of the Retrofit method,
+     * with the retried call counted as 3 attempts and its 2 waits recorded for {@link Simple} strategy.
+     * The next snapshot is empty.
+     */
+    @Test
+    public void testIntervalSnapshot() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        LatencyMetrics metrics = new LatencyMetrics();
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(503)
+                        .setMaxRetries(3).build())
+                .setTracer(new Tracer(metrics))
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestSubscriber retried = new TestSubscriber();
+        github.repos("square").subscribe(retried);
+        retried.awaitTerminalEvent();
+        retried.assertCompleted();
+        TestSubscriber single = new TestSubscriber();
+        github.repos("google").subscribe(single);
+        single.awaitTerminalEvent();
+        single.assertCompleted();
+
+        Map<String, EndpointSnapshot> snapshots = metrics.intervalSnapshot();
+        assertEquals(1, snapshots.size());
+        EndpointSnapshot endpoint = snapshots.get("GET /users/{owner}/repos");
+        assertEquals(2, endpoint.getFirstAttempt().getCount());
+        assertEquals(2, endpoint.getTotal().getCount());
+        assertTrue(endpoint.getTotal().getMax() >= endpoint.getFirstAttempt().getMax());
+        HistogramSnapshot attempts = endpoint.getAttempts();
+        assertEquals(1, attempts.getP50());
+        assertEquals(3, attempts.getMax());
+        assertEquals(2, attempts.getMean(), 0.001);
+        assertEquals(2, endpoint.getBackoff().get("Simple").getCount());
+
+        EndpointSnapshot next = metrics.intervalSnapshot().get("GET /users/{owner}/repos");
+        assertEquals(0, next.getTotal().getCount());
+        assertEquals(0, next.getBackoff().get("Simple").getCount());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryQueueFullException;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitrxerrorhandler.model.GitHub;
+import com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import rx.observers.TestSubscriber;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.adapter.rxjava.HttpException;
+
+import static com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PendingRetriesTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that when one call waits for the retry and the cap is 1, the failure of the second call
+     * is not retried and ends with {@link RetryQueueFullException} caused by the original error.
+     */
+    @Test
+    public void testFailFastWhenQueueFull() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Exponential.init()
+                        .addHttpCode(500)
+                        .setBase(1)
+                        .setMaxRetries(3).build())
+                .setMaxPendingRetries(1)
+                .build();
+        RxErrorHandingFactory factory = new RxErrorHandingFactory(rxCallAdapter);
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(), factory);
+
+        TestSubscriber first = new TestSubscriber();
+        github.repos("square").subscribe(first);
+        awaitPendingRetries(factory, 1);
+        TestSubscriber second = new TestSubscriber();
+        github.repos("square").subscribe(second);
+        second.awaitTerminalEvent();
+        second.assertError(RetryQueueFullException.class);
+        assertTrue(((Throwable) second.getOnErrorEvents().get(0)).getCause() instanceof HttpException);
+        first.awaitTerminalEvent();
+        first.assertCompleted();
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(0, factory.getPendingRetryCount());
+    }
+
+    /**
+     * Test shows, that the call unsubscribed while waiting for the retry leaves the queue.
+     */
+    @Test
+    public void testDisposedCallLeavesQueue() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Exponential.init()
+                        .addHttpCode(500)
+                        .setBase(2)
+                        .setMaxRetries(3).build())
+                .setMaxPendingRetries(1)
+                .build();
+        RxErrorHandingFactory factory = new RxErrorHandingFactory(rxCallAdapter);
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(), factory);
+
+        TestSubscriber testSubscriber = new TestSubscriber();
+        github.repos("square").subscribe(testSubscriber);
+        awaitPendingRetries(factory, 1);
+        testSubscriber.unsubscribe();
+        assertEquals(0, factory.getPendingRetryCount());
+    }
+
+    private static void awaitPendingRetries(RxErrorHandingFactory factory, int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && factory.getPendingRetryCount() != expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, factory.getPendingRetryCount());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.download.ResumableResponseBody;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrxerrorhandler.model.GitHub;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResumableDownloadTest {
+    private static final String CONTENT = createContent();
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that when the connection breaks in the middle of the body, only the rest is requested
+     * with {@code Range} header and the reader gets the whole content in one stream.
+     */
+    @Test
+    public void testDownloadResumed() throws Exception {
+        mockWebServer.setDispatcher(new RangeDispatcher("\"v1\""));
+        ResponseBody body = createGitHub().download().toBlocking().first();
+
+        assertEquals(CONTENT, body.string());
+        assertEquals(2, mockWebServer.getRequestCount());
+        mockWebServer.takeRequest();
+        RecordedRequest resumed = mockWebServer.takeRequest();
+        assertTrue(resumed.getHeader("Range").startsWith("bytes="));
+        assertEquals("\"v1\"", resumed.getHeader("If-Range"));
+        assertEquals(1, ((ResumableResponseBody) body).getResumeCount());
+    }
+
+    /**
+     * Test shows, that the download is not stitched, when the resource has changed
+     * and the server sends the whole new resource.
+     */
+    @Test
+    public void testChangedResourceNotResumed() throws Exception {
+        mockWebServer.setDispatcher(new RangeDispatcher("\"v2\""));
+        ResponseBody body = createGitHub().download().toBlocking().first();
+
+        try {
+            body.string();
+            fail("Reading should fail");
+        } catch (IOException expected) {
+            assertEquals(2, mockWebServer.getRequestCount());
+        }
+    }
+
+    private GitHub createGitHub() {
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .setMaxDownloadResumes(3)
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+    }
+
+    private static String createContent() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < 256 * 1024; i++) {
+            builder.append(i).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Breaks the first response in the middle, answers to range requests when {@code If-Range}
+     * matches {@code currentETag}.
+     */
+    private class RangeDispatcher extends Dispatcher {
+        private final String currentETag;
+
+        RangeDispatcher(String currentETag) {
+            this.currentETag = currentETag;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            String range = request.getHeader("Range");
+            if (range == null) {
+                return new MockResponse()
+                        .setHeader("ETag", "\"v1\"")
+                        .setBody(CONTENT)
+                        .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+            }
+            if (!currentETag.equals(request.getHeader("If-Range"))) {
+                return new MockResponse()
+                        .setHeader("ETag", currentETag)
+                        .setBody(CONTENT);
+            }
+            int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            return new MockResponse()
+                    .setResponseCode(206)
+                    .setHeader("ETag", currentETag)
+                    .setHeader("Content-Range", "bytes " + start + "-" + (CONTENT.length() - 1) + "/" + CONTENT.length())
+                    .setBody(CONTENT.substring(start));
+        }
+    }
+}
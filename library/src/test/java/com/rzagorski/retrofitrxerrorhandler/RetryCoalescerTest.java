@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryCoalescer;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrxerrorhandler.model.GitHub;
+import com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+import static com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetryCoalescerTest {
+    private static final int CALLS = 10;
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that only the leader retry goes to the server, while the other calls wait,
+     * and they are all retried, when it succeeds.
+     */
+    @Test
+    public void testWaitingRetriesSentAfterLeaderSucceeded() throws Exception {
+        final CountDownLatch firstAttempts = new CountDownLatch(CALLS);
+        final AtomicInteger requests = new AtomicInteger();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int number = requests.incrementAndGet();
+                if (number <= CALLS) {
+                    failTogether(firstAttempts);
+                    return new MockResponse().setResponseCode(503);
+                }
+                if (number == CALLS + 1) {
+                    //the leader is slow, so the other retries wait for it
+                    Thread.sleep(300);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RetryCoalescer retryCoalescer = new RetryCoalescer.Builder()
+                .setReleaseRate(3, 100, TimeUnit.MILLISECONDS)
+                .build();
+        List<TestSubscriber> subscribers = subscribe(retryCoalescer);
+
+        for (TestSubscriber testSubscriber : subscribers) {
+            testSubscriber.awaitTerminalEvent();
+            testSubscriber.assertCompleted();
+        }
+        assertEquals(CALLS - 1, retryCoalescer.getCoalescedRetries());
+        assertEquals(2 * CALLS, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the retries waiting for the leader fail with its error without reaching the server,
+     * so the server gets far fewer requests than from independent retries.
+     */
+    @Test
+    public void testWaitingRetriesFailedWithLeader() throws Exception {
+        final CountDownLatch firstAttempts = new CountDownLatch(CALLS);
+        final AtomicInteger requests = new AtomicInteger();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (requests.incrementAndGet() <= CALLS) {
+                    failTogether(firstAttempts);
+                } else {
+                    Thread.sleep(100);
+                }
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        RetryCoalescer retryCoalescer = new RetryCoalescer.Builder().build();
+        List<TestSubscriber> subscribers = subscribe(retryCoalescer);
+
+        for (TestSubscriber testSubscriber : subscribers) {
+            testSubscriber.awaitTerminalEvent();
+            testSubscriber.assertError(retrofit2.adapter.rxjava.HttpException.class);
+        }
+        assertTrue(retryCoalescer.getCoalescedRetries() > 0);
+        //3 retries of 10 calls would make 30 more requests
+        assertTrue(mockWebServer.getRequestCount() < 2 * CALLS);
+    }
+
+    private List<TestSubscriber> subscribe(RetryCoalescer retryCoalescer) {
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(503)
+                        .setMaxRetries(3).build())
+                .setRetryCoalescer(retryCoalescer)
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+        List<TestSubscriber> subscribers = new ArrayList<>();
+        for (int i = 0; i < CALLS; i++) {
+            TestSubscriber testSubscriber = new TestSubscriber();
+            github.repos("square").subscribeOn(Schedulers.io()).subscribe(testSubscriber);
+            subscribers.add(testSubscriber);
+        }
+        return subscribers;
+    }
+
+    //the first attempts of all calls fail at once, so their retries are due together
+    private static void failTogether(CountDownLatch firstAttempts) throws InterruptedException {
+        firstAttempts.countDown();
+        firstAttempts.await(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.config.PolicyFileWatcher;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrxerrorhandler.model.GitHub;
+import com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.adapter.rxjava.HttpException;
+import rx.observers.TestSubscriber;
+
+import static com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetryPolicyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that the call, which failed before the policy was swapped, is retried with its original policy,
+     * and the call subscribed after the swap is not.
+     */
+    @Test
+    public void testSwapKeepsPolicyOfSubscribedCall() throws Exception {
+        final RxErrorHandingFactory factory = new RxErrorHandingFactory(new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(503)
+                        .setMaxRetries(1).build())
+                .build());
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() == 1) {
+                    factory.swapRetryPolicy(new RetryPolicy.Builder().build());
+                    return new MockResponse().setResponseCode(503);
+                }
+                if (mockWebServer.getRequestCount() == 2) {
+                    return MockWebServerUtils.getSuccessfulResponse();
+                }
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(), factory);
+
+        TestSubscriber first = new TestSubscriber();
+        github.repos("square").subscribe(first);
+        first.awaitTerminalEvent();
+        first.assertCompleted();
+        assertEquals(2, mockWebServer.getRequestCount());
+
+        TestSubscriber second = new TestSubscriber();
+        github.repos("square").subscribe(second);
+        second.awaitTerminalEvent();
+        second.assertError(HttpException.class);
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertTrue(factory.getRetryPolicy().getBackoffStrategies().isEmpty());
+    }
+
+    /**
+     * Test shows, that swapping in the policy with other logging copies the strategy it shares with the policy
+     * used until now, so the calls subscribed before keep logging as they did.
+     */
+    @Test
+    public void testSwapKeepsLoggingOfSharedStrategy() throws Exception {
+        Simple strategy = Simple.init()
+                .addHttpCode(503)
+                .setMaxRetries(1).build();
+        RxErrorHandingFactory factory = new RxErrorHandingFactory(new RxCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .build());
+        RetryPolicy previous = factory.swapRetryPolicy(new RetryPolicy.Builder()
+                .addBackoffStrategy(strategy)
+                .setLoggingEnabled(true)
+                .build());
+
+        Simple logged = (Simple) factory.getRetryPolicy().getBackoffStrategies().get(0);
+        assertTrue(logged.isLoggingEnabled());
+        assertTrue(logged.isApplicable(503));
+        assertFalse(strategy.isLoggingEnabled());
+        assertSame(strategy, previous.getBackoffStrategies().get(0));
+    }
+
+    /**
+     * Test shows, that the policy is read from the file again, when the file is changed,
+     * and a changed file, which is not valid, is ignored.
+     */
+    @Test
+    public void testWatchRetryPolicy() throws Exception {
+        File file = new File(folder.getRoot(), "retry.properties");
+        write(file, "strategies=server\n"
+                + "strategy.server.type=simple\n"
+                + "strategy.server.httpCodes=503\n"
+                + "strategy.server.maxRetries=1\n");
+        RxErrorHandingFactory factory = new RxErrorHandingFactory(new RxCallAdapter.Builder().build());
+        PolicyFileWatcher watcher = factory.watchRetryPolicy(file);
+        try {
+            RetryPolicy loaded = factory.getRetryPolicy();
+            assertEquals(1, loaded.getBackoffStrategies().size());
+            assertTrue(((Simple) loaded.getBackoffStrategies().get(0)).isApplicable(503));
+
+            write(file, "strategies=server\n"
+                    + "strategy.server.type=unknown\n");
+            long deadline = System.currentTimeMillis() + 30 * MockWebServerUtils.ONE_SEC;
+            while (watcher.getLastFailure() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertNotNull(watcher.getLastFailure());
+            assertEquals(loaded, factory.getRetryPolicy());
+
+            write(file, "strategies=\n"
+                    + "maxConsecutiveFailures=5\n");
+            while (factory.getRetryPolicy().getMaxConsecutiveFailures() != 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(factory.getRetryPolicy().getBackoffStrategies().isEmpty());
+            assertEquals(5, factory.getRetryPolicy().getMaxConsecutiveFailures());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    //replaces the file atomically, so it is never read half written
+    private static void write(File file, String content) throws IOException {
+        File written = new File(file.getParentFile(), file.getName() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(written), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        Files.move(written.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
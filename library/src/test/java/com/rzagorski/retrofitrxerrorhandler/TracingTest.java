@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler;
+
+import com.rzagorski.retrofiterrorhandler.tracing.InMemorySpanExporter;
+import com.rzagorski.retrofiterrorhandler.tracing.JsonLinesSpanExporter;
+import com.rzagorski.retrofiterrorhandler.tracing.SemanticAttributes;
+import com.rzagorski.retrofiterrorhandler.tracing.Span;
+import com.rzagorski.retrofiterrorhandler.tracing.Tracer;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrxerrorhandler.model.GitHub;
+import com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.adapter.rxjava.HttpException;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+import static com.rzagorski.retrofitrxerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TracingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that the call retried once by {@link Simple} strategy with a backup observable
+     * gets the span of the call with child spans of both attempts, the backup observable and the backoff wait.
+     */
+    @Test
+    public void testSpansOfRetriedCall() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() == 1) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        InMemorySpanExporter exporter = new InMemorySpanExporter();
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(503)
+                        .addObservable(Observable.timer(100, TimeUnit.MILLISECONDS))
+                        .setMaxRetries(3).build())
+                .setTracer(new Tracer(exporter))
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestSubscriber testSubscriber = new TestSubscriber();
+        github.repos("square").subscribe(testSubscriber);
+        testSubscriber.awaitTerminalEvent();
+        testSubscriber.assertCompleted();
+
+        Span call = single(exporter.getFinishedSpans(), "GET /users/square/repos");
+        assertEquals(Span.Kind.CLIENT, call.getKind());
+        assertEquals(Span.StatusCode.OK, call.getStatusCode());
+        assertEquals(1, call.getAttribute(SemanticAttributes.RETRY_COUNT));
+        assertEquals("GET", call.getAttribute(SemanticAttributes.HTTP_METHOD));
+        List<Span> attempts = named(exporter.getFinishedSpans(), Tracer.ATTEMPT);
+        assertEquals(2, attempts.size());
+        assertEquals(1, attempts.get(0).getAttribute(SemanticAttributes.RETRY_ATTEMPT));
+        assertEquals(503, attempts.get(0).getAttribute(SemanticAttributes.HTTP_STATUS_CODE));
+        assertEquals(Span.StatusCode.ERROR, attempts.get(0).getStatusCode());
+        assertEquals(2, attempts.get(1).getAttribute(SemanticAttributes.RETRY_ATTEMPT));
+        assertEquals(Span.StatusCode.OK, attempts.get(1).getStatusCode());
+        Span backup = single(exporter.getFinishedSpans(), Tracer.BACKUP);
+        assertEquals("Simple", backup.getAttribute(SemanticAttributes.RETRY_STRATEGY));
+        assertTrue(backup.getEndEpochNanos() - backup.getStartEpochNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+        Span backoff = single(exporter.getFinishedSpans(), Tracer.BACKOFF);
+        assertEquals("Simple", backoff.getAttribute(SemanticAttributes.RETRY_STRATEGY));
+        assertEquals(1, backoff.getAttribute(SemanticAttributes.RETRY_ATTEMPT));
+        //Simple strategy retries immediately
+        assertTrue((Long) backoff.getAttribute(SemanticAttributes.RETRY_DELAY_MS) < 100);
+        for (Span span : exporter.getFinishedSpans()) {
+            assertEquals(call.getTraceId(), span.getTraceId());
+            if (span != call) {
+                assertEquals(call.getSpanId(), span.getParentSpanId());
+            }
+        }
+    }
+
+    /**
+     * Test shows, that {@link JsonLinesSpanExporter} writes a line for every span of the call,
+     * which fails after the retries, with the error on the span of the call.
+     */
+    @Test
+    public void testJsonLinesExporter() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        File file = new File(folder.getRoot(), "spans.jsonl");
+        Tracer tracer = new Tracer(new JsonLinesSpanExporter(file));
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(503)
+                        .setMaxRetries(1).build())
+                .setTracer(tracer)
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestSubscriber testSubscriber = new TestSubscriber();
+        github.repos("square").subscribe(testSubscriber);
+        testSubscriber.awaitTerminalEvent();
+        testSubscriber.assertError(HttpException.class);
+        tracer.shutdown();
+
+        List<String> lines = Files.readAllLines(file.toPath(), Charset.forName("UTF-8"));
+        //2 attempts, 1 backoff wait and the call
+        assertEquals(4, lines.size());
+        for (String line : lines) {
+            assertTrue(line, line.startsWith("{\"traceId\":\""));
+            assertTrue(line, line.endsWith("}}"));
+        }
+        String call = lines.get(3);
+        assertTrue(call, call.contains("\"name\":\"GET /users/square/repos\""));
+        assertFalse(call, call.contains("parentSpanId"));
+        assertTrue(lines.get(0), lines.get(0).contains("\"parentSpanId\":\""));
+        assertTrue(call, call.contains("\"http.status_code\":503"));
+        assertTrue(call, call.contains("\"retry.count\":1"));
+        assertTrue(call, call.contains("\"status\":{\"code\":\"ERROR\""));
+    }
+
+    private static Span single(List<Span> spans, String name) {
+        List<Span> found = named(spans, name);
+        assertEquals(1, found.size());
+        return found.get(0);
+    }
+
+    private static List<Span> named(List<Span> spans, String name) {
+        List<Span> found = new ArrayList<>();
+        for (Span span : spans) {
+            if (span.getName().equals(name)) {
+                found.add(span);
+            }
+        }
+        return found;
+    }
+}
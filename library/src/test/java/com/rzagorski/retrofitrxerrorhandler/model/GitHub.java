@@ -1,13 +1,53 @@
 package com.rzagorski.retrofitrxerrorhandler.model;
 
+import com.rzagorski.retrofiterrorhandler.durable.Durable;
+import com.rzagorski.retrofiterrorhandler.durable.DurableRequest;
+import com.rzagorski.retrofiterrorhandler.scheduler.Priority;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryPriority;
+
 import java.util.List;
 
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava.Result;
+import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.POST;
 import retrofit2.http.Path;
+import retrofit2.http.Streaming;
 import rx.Observable;
 
 public interface GitHub {
     @GET("/users/{owner}/repos")
     Observable<List<Repository>> repos(
             @Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Observable<Response<List<Repository>>> reposResponse(
+            @Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Observable<Result<List<Repository>>> reposResult(
+            @Path("owner") String owner);
+
+    @RetryPriority(Priority.LOW)
+    @GET("/users/{owner}/repos")
+    Observable<List<Repository>> repos(
+            @Path("owner") String owner,
+            @Header(RetryPriority.HEADER) Priority priority);
+
+    @Streaming
+    @GET("/download")
+    Observable<ResponseBody> download();
+
+    @POST("/upload")
+    Observable<ResponseBody> upload(@Body RequestBody body);
+
+    @Durable
+    @POST("/orders")
+    Observable<ResponseBody> order(
+            @Body RequestBody body,
+            @Header(DurableRequest.IDEMPOTENCY_KEY_HEADER) String key);
 }
\ No newline at end of file
@@ -22,6 +22,7 @@ import com.rzagorski.retrofitrxerrorhandler.model.Repository;
 import java.io.IOException;
 import java.util.List;
 
+import okhttp3.OkHttpClient;
 import okhttp3.mockwebserver.MockResponse;
 import retrofit2.CallAdapter;
 import retrofit2.Retrofit;
@@ -44,6 +45,16 @@ public class MockWebServerUtils {
         return retrofit.create(GitHub.class);
     }
 
+    public static GitHub createRetrofitInstance(String url, CallAdapter.Factory factory, OkHttpClient client) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(url)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create())
+                .addCallAdapterFactory(factory)
+                .build();
+        return retrofit.create(GitHub.class);
+    }
+
     public static MockResponse getSuccessfulResponse() throws InterruptedException {
         try {
             String repositories = new FileUtils().loadJSON("src/test/resources/response.json",
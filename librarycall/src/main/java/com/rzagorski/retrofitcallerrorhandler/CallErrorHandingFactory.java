@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitcallerrorhandler.retry.BackoffExecutor;
+import com.rzagorski.retrofitcallerrorhandler.retry.RetryingCall;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/**
+ * Main class for communication with <a href="https://github.com/square/retrofit/blob/master/retrofit/src/main/java/retrofit2/CallAdapter.java#L62">CallAdapter.Factory</a>
+ * for synchronous calls, without any reactive library.
+ * <br>
+ * Handles {@code Call<T>} return types with {@link RetryingCall}, {@code T} or {@code Response<T>}
+ * return types, which are executed with retries on the thread invoking the service method,
+ * and {@code CompletableFuture<T>} or {@code CompletableFuture<Response<T>>} return types,
+ * which are enqueued with retries.
+ * Return types handled by the call adapter factories added after this one, like {@code Observable},
+ * are left for them.
+ * <br>
+ * An {@link IOException} of a {@code T} or {@code Response<T>} method is thrown as it is,
+ * so the method should declare it, like {@code List<Repo> repos() throws IOException}.
+ * Unsuccessful response of a {@code T} method ends with {@link HttpException}.
+ */
+public class CallErrorHandingFactory extends CallAdapter.Factory {
+    //compared by name, as the class is missing on Android before API 24
+    private static final String COMPLETABLE_FUTURE = "java.util.concurrent.CompletableFuture";
+
+    private final List<BackoffStrategy> backoffStrategies;
+    private final ScheduledExecutorService backoffExecutor;
+
+    /**
+     * Waits for the asynchronous retries on {@link BackoffExecutor#getDefault()}.
+     */
+    public CallErrorHandingFactory(RetryCallAdapter callAdapter) {
+        this(callAdapter, BackoffExecutor.getDefault());
+    }
+
+    /**
+     * @param backoffExecutor the executor waiting for the asynchronous retries, shared by all calls
+     */
+    public CallErrorHandingFactory(RetryCallAdapter callAdapter, ScheduledExecutorService backoffExecutor) {
+        this.backoffStrategies = callAdapter.getBackoffStrategies();
+        this.backoffExecutor = backoffExecutor;
+        for (BackoffStrategy strategy : backoffStrategies) {
+            strategy.setLoggingEnabled(callAdapter.isLoggingEnabled());
+        }
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Class<?> rawType = getRawType(returnType);
+        if (rawType == Call.class) {
+            return new RetryingCallAdapter<>(getResponseType(returnType, "Call"));
+        }
+        if (COMPLETABLE_FUTURE.equals(rawType.getName())) {
+            Type futureType = getResponseType(returnType, "CompletableFuture");
+            if (getRawType(futureType) == Response.class) {
+                return new CompletableFutureCallAdapter<>(getResponseType(futureType, "Response"), true);
+            }
+            return new CompletableFutureCallAdapter<>(futureType, false);
+        }
+        if (isHandledByNextFactory(returnType, annotations, retrofit)) {
+            return null;
+        }
+        if (rawType == Response.class) {
+            return new ResponseCallAdapter<>(getResponseType(returnType, "Response"));
+        }
+        return new BodyCallAdapter<>(returnType);
+    }
+
+    private static Type getResponseType(Type returnType, String name) {
+        if (!(returnType instanceof ParameterizedType)) {
+            throw new IllegalStateException(name + " return type must be parameterized as "
+                    + name + "<Foo> or " + name + "<? extends Foo>");
+        }
+        return getParameterUpperBound(0, (ParameterizedType) returnType);
+    }
+
+    private boolean isHandledByNextFactory(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        try {
+            retrofit.nextCallAdapter(this, returnType, annotations);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Throws the checked exception without declaring it, as the service method invoking
+     * {@link CallAdapter#adapt(Call)} does.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> RuntimeException sneakyThrow(Throwable throwable) throws E {
+        throw (E) throwable;
+    }
+
+    private class RetryingCallAdapter<R> implements CallAdapter<R, Call<R>> {
+        private final Type responseType;
+
+        RetryingCallAdapter(Type responseType) {
+            this.responseType = responseType;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public Call<R> adapt(Call<R> call) {
+            return new RetryingCall<>(call, backoffStrategies, backoffExecutor);
+        }
+    }
+
+    private class ResponseCallAdapter<R> implements CallAdapter<R, Response<R>> {
+        private final Type responseType;
+
+        ResponseCallAdapter(Type responseType) {
+            this.responseType = responseType;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public Response<R> adapt(Call<R> call) {
+            try {
+                return new RetryingCall<>(call, backoffStrategies, backoffExecutor).execute();
+            } catch (IOException e) {
+                throw CallErrorHandingFactory.<RuntimeException>sneakyThrow(e);
+            }
+        }
+    }
+
+    private class BodyCallAdapter<R> implements CallAdapter<R, R> {
+        private final Type responseType;
+
+        BodyCallAdapter(Type responseType) {
+            this.responseType = responseType;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public R adapt(Call<R> call) {
+            Response<R> response;
+            try {
+                response = new RetryingCall<>(call, backoffStrategies, backoffExecutor).execute();
+            } catch (IOException e) {
+                throw CallErrorHandingFactory.<RuntimeException>sneakyThrow(e);
+            }
+            if (!response.isSuccessful()) {
+                throw new HttpException(response);
+            }
+            return response.body();
+        }
+    }
+
+    private class CompletableFutureCallAdapter<R> implements CallAdapter<R, CompletableFuture<Object>> {
+        private final Type responseType;
+        private final boolean isResponse;
+
+        CompletableFutureCallAdapter(Type responseType, boolean isResponse) {
+            this.responseType = responseType;
+            this.isResponse = isResponse;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public CompletableFuture<Object> adapt(Call<R> call) {
+            final RetryingCall<R> retryingCall = new RetryingCall<>(call, backoffStrategies, backoffExecutor);
+            final CompletableFuture<Object> future = new CompletableFuture<Object>() {
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    if (mayInterruptIfRunning) {
+                        retryingCall.cancel();
+                    }
+                    return super.cancel(mayInterruptIfRunning);
+                }
+            };
+            retryingCall.enqueue(new Callback<R>() {
+                @Override
+                public void onResponse(Call<R> call, Response<R> response) {
+                    if (isResponse) {
+                        future.complete(response);
+                    } else if (response.isSuccessful()) {
+                        future.complete(response.body());
+                    } else {
+                        future.completeExceptionally(new HttpException(response));
+                    }
+                }
+
+                @Override
+                public void onFailure(Call<R> call, Throwable throwable) {
+                    future.completeExceptionally(throwable);
+                }
+            });
+            return future;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.backoff;
+
+/**
+ * The base interface for all backoff strategies.
+ * <br>
+ * The strategy holds no reactive types. It only decides about the retry and returns the wait
+ * before it, so the retry loop can block the calling thread for the time of the backoff.
+ */
+public interface BackoffStrategy {
+
+    /**
+     * Defines, whether the specified throwable should be handled by this {@link BackoffStrategy}
+     *
+     * @param throwable the error of the call
+     * @return {@code true} when the error should be retried
+     */
+    boolean isApplicable(Throwable throwable) throws Exception;
+
+    /**
+     * @return the maximum number of retries made by this strategy for a single call
+     */
+    int getMaxRetries();
+
+    /**
+     * Called before every retry made by this strategy.
+     *
+     * @param throwable the error of the call
+     * @param retry     number of the retry, starting from 1
+     * @return the wait before the retry in milliseconds, 0 to retry immediately
+     */
+    long getRetryDelay(Throwable throwable, int retry) throws Exception;
+
+    /**
+     * Enabling logging feature for this {@link BackoffStrategy}
+     *
+     * @param logging {@code true} to print the retries to the standard output
+     */
+    void setLoggingEnabled(boolean logging);
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.backoff;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.retryBehavior.BaseRetryIfBehavior;
+import com.rzagorski.retrofitcallerrorhandler.backoff.retryBehavior.ExclusiveRetryIfBehaviour;
+import com.rzagorski.retrofitcallerrorhandler.backoff.retryBehavior.InclusiveRetryIfBehaviour;
+import com.rzagorski.retrofitcallerrorhandler.backoff.strategies.AddReaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+public abstract class BaseBackoffStrategy implements BackoffStrategy {
+    private final RetryIfFunction retryIfFunc;
+    private final OnRetryAction doOnRetryAction;
+    private final boolean hasRetryFunction;
+    private volatile boolean isLoggingEnabled;
+
+    protected BaseBackoffStrategy(Builder builder) {
+        if (builder.retryIfFunction != null) {
+            this.retryIfFunc = builder.retryIfFunction;
+        } else if (builder.isExclusive) {
+            this.retryIfFunc = new ExclusiveRetryIfBehaviour(builder.throwableList, builder.httpCodeList);
+        } else {
+            this.retryIfFunc = new InclusiveRetryIfBehaviour(builder.throwableList, builder.httpCodeList);
+        }
+        this.hasRetryFunction = builder.retryIfFunction != null;
+        this.doOnRetryAction = builder.doOnRetryAction != null
+                ? builder.doOnRetryAction
+                : new DefaultDoOnRetryAction();
+    }
+
+    /**
+     * @param retry number of the retry, starting from 1
+     * @return the wait before the retry in milliseconds, 0 to retry immediately
+     */
+    protected abstract long getWaitTime(int retry);
+
+    public RetryIfFunction getRetryIfFunction() {
+        return retryIfFunc;
+    }
+
+    @Override
+    public boolean isApplicable(Throwable throwable) throws Exception {
+        if (isLoggingEnabled) {
+            System.out.println("Checking against: "
+                    + throwable.getClass().getSimpleName()
+                    + " for strategy: "
+                    + getClass().getSimpleName());
+        }
+        return retryIfFunc.apply(throwable);
+    }
+
+    /**
+     * Defines, whether the unsuccessful response should be retried by this strategy, without creating
+     * {@link HttpException} for it. Strategies with {@link Optional#setRetryFunction(RetryIfFunction)}
+     * never retry the response by its code, see {@link #hasRetryFunction()}.
+     *
+     * @param httpCode code of the response
+     * @return {@code true} when the response should be retried
+     */
+    public boolean isApplicable(int httpCode) {
+        return retryIfFunc instanceof BaseRetryIfBehavior && ((BaseRetryIfBehavior) retryIfFunc).isRetryable(httpCode);
+    }
+
+    /**
+     * @return {@code true} when the errors are passed to the retry function of the application,
+     * so the unsuccessful responses must be checked as {@link HttpException}
+     */
+    public boolean hasRetryFunction() {
+        return hasRetryFunction;
+    }
+
+    @Override
+    public long getRetryDelay(Throwable throwable, int retry) throws Exception {
+        logMatch(throwable.getClass(), retry);
+        doOnRetryAction.accept(throwable, retry);
+        return getWaitTime(retry);
+    }
+
+    /**
+     * The same as {@link #getRetryDelay(Throwable, int)}, for the unsuccessful response. The {@link HttpException}
+     * is created only for the action set with {@code setOnRetryAction(...)}, the default action logs
+     * the response without it.
+     *
+     * @param response the unsuccessful response
+     * @param retry    number of the retry, starting from 1
+     * @return the wait before the retry in milliseconds, 0 to retry immediately
+     */
+    public long getRetryDelay(Response<?> response, int retry) throws Exception {
+        if (doOnRetryAction.getClass() != DefaultDoOnRetryAction.class) {
+            return getRetryDelay(new HttpException(response), retry);
+        }
+        logMatch(HttpException.class, retry);
+        ((DefaultDoOnRetryAction) doOnRetryAction).accept(response, retry);
+        return getWaitTime(retry);
+    }
+
+    private void logMatch(Class<?> matched, int retry) {
+        if (isLoggingEnabled) {
+            System.out.println("Found match: "
+                    + matched.getSimpleName()
+                    + " for strategy: "
+                    + getClass().getSimpleName()
+                    + " for "
+                    + retry + " retry");
+        }
+    }
+
+    @Override
+    public void setLoggingEnabled(boolean logging) {
+        isLoggingEnabled = logging;
+    }
+
+    public static class Builder implements Optional, AddReaction<Builder> {
+        private boolean isExclusive = false;
+        private List<Class<? extends Throwable>> throwableList;
+        private List<Integer> httpCodeList;
+        private RetryIfFunction retryIfFunction;
+        private OnRetryAction doOnRetryAction;
+
+        public Builder() {
+            throwableList = new ArrayList<>();
+            httpCodeList = new ArrayList<>();
+        }
+
+        @Override
+        public Builder exclusive() {
+            isExclusive = true;
+            return this;
+        }
+
+        @Override
+        public Builder addThrowable(Class<? extends Throwable> throwableForBackoff) {
+            this.throwableList.add(throwableForBackoff);
+            return this;
+        }
+
+        @Override
+        public Builder setThrowable(List<Class<? extends Throwable>> throwableForBackoffList) {
+            this.throwableList = new ArrayList<>(throwableForBackoffList);
+            return this;
+        }
+
+        @Override
+        public Builder setHttpCodeList(List<Integer> codes) {
+            this.httpCodeList = new ArrayList<>(codes);
+            return this;
+        }
+
+        @Override
+        public Builder addHttpCode(int code) {
+            this.httpCodeList.add(code);
+            return this;
+        }
+
+        @Override
+        public Builder setRetryFunction(RetryIfFunction retryIf) {
+            this.retryIfFunction = retryIf;
+            return this;
+        }
+
+        @Override
+        public Builder setOnRetryAction(OnRetryAction onRetryAction) {
+            this.doOnRetryAction = onRetryAction;
+            return this;
+        }
+    }
+
+    public interface Optional {
+
+        public Optional setOnRetryAction(OnRetryAction onRetryAction);
+
+        public Optional setRetryFunction(RetryIfFunction retryIf);
+    }
+}
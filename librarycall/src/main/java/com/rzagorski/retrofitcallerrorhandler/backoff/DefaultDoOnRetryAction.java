@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.backoff;
+
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+public class DefaultDoOnRetryAction implements OnRetryAction {
+    @Override
+    public void accept(Throwable throwable, int retry) {
+        System.out.println(throwable + " occurred on " + retry + " retry");
+    }
+
+    /**
+     * Logs the unsuccessful response the same as its {@link HttpException}, without creating it.
+     *
+     * @param response the unsuccessful response
+     * @param retry    number of the retry, starting from 1
+     */
+    public void accept(Response<?> response, int retry) {
+        System.out.println(HttpException.class.getName() + ": HTTP " + response.code() + " " + response.message()
+                + " occurred on " + retry + " retry");
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.backoff;
+
+/**
+ * Executed before every retry of the call.
+ */
+public interface OnRetryAction {
+
+    /**
+     * @param throwable the error of the call
+     * @param retry     number of the retry, starting from 1
+     */
+    void accept(Throwable throwable, int retry) throws Exception;
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.backoff;
+
+/**
+ * Decides, whether the error of the call should be retried.
+ */
+public interface RetryIfFunction {
+
+    /**
+     * @param throwable the error of the call
+     * @return {@code true} when the call should be retried
+     */
+    boolean apply(Throwable throwable) throws Exception;
+}
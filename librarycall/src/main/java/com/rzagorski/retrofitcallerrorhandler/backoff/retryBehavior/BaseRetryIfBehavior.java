@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.backoff.retryBehavior;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.RetryIfFunction;
+import com.rzagorski.retrofiterrorhandler.backoff.RetryMatcher;
+
+import java.util.List;
+
+import retrofit2.HttpException;
+
+public abstract class BaseRetryIfBehavior implements RetryIfFunction {
+    protected final RetryMatcher matcher;
+
+    public BaseRetryIfBehavior(List<Class<? extends Throwable>> throwableList, List<Integer> httpCodesList) {
+        this.matcher = new RetryMatcher(throwableList, httpCodesList, HttpException.class);
+    }
+
+    /**
+     * @param throwable the error of the call
+     * @return {@code true} when the code of the HTTP error or the class of the error was set on the strategy
+     */
+    protected boolean matches(Throwable throwable) {
+        int httpCode = throwable instanceof HttpException
+                ? ((HttpException) throwable).code()
+                : RetryMatcher.NO_HTTP_CODE;
+        return matcher.matches(throwable, httpCode);
+    }
+
+    /**
+     * Decides about the retry of an unsuccessful response by its code, the same as if it was checked
+     * as {@link HttpException}.
+     *
+     * @param httpCode code of the response
+     * @return {@code true} when the response should be retried
+     */
+    public boolean isRetryable(int httpCode) {
+        return false;
+    }
+}
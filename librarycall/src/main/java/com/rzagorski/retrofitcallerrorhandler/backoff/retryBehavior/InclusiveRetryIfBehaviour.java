@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.backoff.retryBehavior;
+
+import java.util.List;
+
+public class InclusiveRetryIfBehaviour extends BaseRetryIfBehavior {
+
+    public InclusiveRetryIfBehaviour(List<Class<? extends Throwable>> throwableList, List<Integer> httpCodesList) {
+        super(throwableList, httpCodesList);
+    }
+
+    @Override
+    public boolean apply(Throwable throwable) {
+        return matches(throwable);
+    }
+
+    @Override
+    public boolean isRetryable(int httpCode) {
+        return matcher.matchesResponse(httpCode);
+    }
+}
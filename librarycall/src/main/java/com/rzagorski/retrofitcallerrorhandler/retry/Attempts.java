@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.retry;
+
+import com.rzagorski.retrofiterrorhandler.backoff.RetryAttempts;
+import com.rzagorski.retrofitcallerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitcallerrorhandler.backoff.BaseBackoffStrategy;
+
+import java.util.List;
+
+/**
+ * Retries made for a single execution of the call, counted for every strategy separately.
+ * <br>
+ * The attempts of one execution never overlap, so the counters need no synchronization.
+ */
+final class Attempts extends RetryAttempts<BackoffStrategy, Exception> {
+
+    Attempts(List<BackoffStrategy> strategies) {
+        super(strategies);
+    }
+
+    /**
+     * @param strategies the strategies of the call
+     * @return {@code true}, when all of the strategies decide about the unsuccessful responses by their codes,
+     * so no {@link retrofit2.HttpException} has to be created for them
+     */
+    static boolean decideByCode(List<BackoffStrategy> strategies) {
+        for (BackoffStrategy strategy : strategies) {
+            if (!(strategy instanceof BaseBackoffStrategy) || ((BaseBackoffStrategy) strategy).hasRetryFunction()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean canRetry(BackoffStrategy strategy, int retry) {
+        return retry <= strategy.getMaxRetries();
+    }
+
+    @Override
+    protected boolean isApplicable(BackoffStrategy strategy, Throwable error) throws Exception {
+        return strategy.isApplicable(error);
+    }
+
+    @Override
+    protected boolean isApplicable(BackoffStrategy strategy, int httpCode) {
+        return ((BaseBackoffStrategy) strategy).isApplicable(httpCode);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.retry;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The shared executor waiting for the asynchronous retries.
+ * <br>
+ * The single thread only enqueues the retried call, when the wait is over, the call itself is executed
+ * by the OkHttp dispatcher. Immediate retries are enqueued without it.
+ */
+public final class BackoffExecutor {
+
+    private BackoffExecutor() {
+    }
+
+    /**
+     * @return the executor created on first use, with a single daemon thread
+     */
+    public static ScheduledExecutorService getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "RetrofitErrorHandler backoff");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            //canceled calls should not keep their waits in the queue
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.retry;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitcallerrorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofiterrorhandler.backoff.CallRetries;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * <a href="https://github.com/square/retrofit/blob/master/retrofit/src/main/java/retrofit2/Call.java">Call</a>
+ * retrying both {@link #execute()} and {@link #enqueue(Callback)}.
+ * <br>
+ * Every retry executes a clone of the original call. The retries are decided by {@link CallRetries},
+ * the same way as in the other bindings. Unsuccessful responses are retried by their codes, and the last
+ * response is returned, when no strategy retries it. Only when a strategy has a retry function set with
+ * {@code setRetryFunction(...)}, they are checked against the strategies as {@link HttpException}.
+ * <br>
+ * The waits before the retries are timed by the {@link ScheduledExecutorService}, immediate retries
+ * are made without it. {@link #execute()} makes the attempts on the calling thread, which waits
+ * for the decision about every failed attempt, until the wait is over or the call is canceled.
+ * <br>
+ * {@link #enqueue(Callback)} decides about the retry in the callback of the attempt, on the OkHttp dispatcher
+ * thread. Immediate retries are enqueued from there, the other ones are enqueued by the executor, when the wait
+ * is over. The callback is invoked on the OkHttp dispatcher thread as well, or on the thread canceling the call
+ * during the wait.
+ */
+public final class RetryingCall<T> implements Call<T> {
+    private static final CallRetries.Wait NO_WAIT = new CallRetries.Wait() {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final Call<T> original;
+    private final List<BackoffStrategy> strategies;
+    private final ScheduledExecutorService backoffExecutor;
+    private final boolean decideByCode;
+    private final AtomicBoolean executed = new AtomicBoolean();
+    private volatile boolean canceled;
+    private volatile Call<T> current;
+    private volatile CallRetries<BackoffStrategy> retries;
+    private volatile Decision decision;
+    private volatile Callback<T> callback;
+
+    public RetryingCall(Call<T> original, List<BackoffStrategy> strategies) {
+        this(original, strategies, BackoffExecutor.getDefault());
+    }
+
+    public RetryingCall(Call<T> original, List<BackoffStrategy> strategies,
+                        ScheduledExecutorService backoffExecutor) {
+        this.original = original;
+        this.strategies = strategies;
+        this.backoffExecutor = backoffExecutor;
+        this.decideByCode = Attempts.decideByCode(strategies);
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        if (!executed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already executed.");
+        }
+        retries = newRetries();
+        try {
+            return executeWithRetries();
+        } finally {
+            retries.dispose();
+        }
+    }
+
+    private Response<T> executeWithRetries() throws IOException {
+        Call<T> call = original;
+        while (true) {
+            if (canceled) {
+                throw new IOException("Canceled");
+            }
+            current = call;
+            Response<T> response = null;
+            Throwable error = null;
+            try {
+                response = call.execute();
+                if (response.isSuccessful()) {
+                    return response;
+                }
+            } catch (IOException | RuntimeException e) {
+                error = e;
+            }
+            Latch latch = new Latch();
+            decide(response, error, latch);
+            latch.await();
+            if (latch.retry) {
+                call = original.clone();
+                continue;
+            }
+            if (latch.error == null) {
+                return response;
+            }
+            if (latch.error instanceof IOException) {
+                throw (IOException) latch.error;
+            }
+            if (latch.error instanceof RuntimeException) {
+                throw (RuntimeException) latch.error;
+            }
+            if (latch.error instanceof Error) {
+                throw (Error) latch.error;
+            }
+            throw new IOException(latch.error);
+        }
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+        if (!executed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already executed.");
+        }
+        this.callback = callback;
+        retries = newRetries();
+        enqueue(original);
+    }
+
+    private void enqueue(Call<T> call) {
+        current = call;
+        if (canceled) {
+            //canceled between the check of the previous attempt and now, fails in the callback
+            call.cancel();
+        }
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                if (response.isSuccessful()) {
+                    retries.dispose();
+                    callback.onResponse(RetryingCall.this, response);
+                    return;
+                }
+                decide(response, null, new Outcome(response));
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable throwable) {
+                decide(null, throwable, new Outcome(null));
+            }
+        });
+    }
+
+    private CallRetries<BackoffStrategy> newRetries() {
+        return new CallRetries<>(new Attempts(strategies), new Binding(backoffExecutor), null, 0, null, null);
+    }
+
+    /**
+     * Passes the failed attempt to {@link CallRetries}. The unsuccessful response is checked as
+     * {@link HttpException} only for the strategies with a retry function, and is returned, when they
+     * give up with that exception.
+     */
+    private void decide(Response<T> response, Throwable error, final Decision decision) {
+        this.decision = decision;
+        if (canceled) {
+            //the attempt failed, because the call was canceled, or the call was canceled since then
+            decision.giveUp(error);
+            return;
+        }
+        if (error != null) {
+            retries.onError(error, decision);
+            return;
+        }
+        if (decideByCode) {
+            retries.onResponse(response.code(), response, decision);
+            return;
+        }
+        final HttpException httpError = new HttpException(response);
+        retries.onError(httpError, new CallRetries.Callback() {
+            @Override
+            public void retry() {
+                decision.retry();
+            }
+
+            @Override
+            public void giveUp(Throwable failure) {
+                decision.giveUp(failure == httpError ? null : failure);
+            }
+        });
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return executed.get();
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        Call<T> call = current;
+        if (call != null) {
+            call.cancel();
+        }
+        CallRetries<BackoffStrategy> started = retries;
+        if (started != null) {
+            started.dispose();
+        }
+        Decision pending = decision;
+        if (pending != null) {
+            //ends the wait for the retry, nothing happens, when the attempt was already decided
+            pending.giveUp(new IOException("Canceled"));
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new RetryingCall<>(original.clone(), strategies, backoffExecutor);
+    }
+
+    @Override
+    public Request request() {
+        return original.request();
+    }
+
+    /**
+     * The decision about a single failed attempt, made once: by {@link CallRetries} or by {@link #cancel()}.
+     */
+    private abstract static class Decision implements CallRetries.Callback {
+        private final AtomicBoolean decided = new AtomicBoolean();
+
+        @Override
+        public final void retry() {
+            if (decided.compareAndSet(false, true)) {
+                onRetry();
+            }
+        }
+
+        @Override
+        public final void giveUp(Throwable error) {
+            if (decided.compareAndSet(false, true)) {
+                onGiveUp(error);
+            }
+        }
+
+        abstract void onRetry();
+
+        /**
+         * @param error the error, {@code null} when the unsuccessful response should be returned
+         */
+        abstract void onGiveUp(Throwable error);
+    }
+
+    /**
+     * The decision, which the thread executing the call waits for.
+     */
+    private static final class Latch extends Decision {
+        private final CountDownLatch decided = new CountDownLatch(1);
+        private volatile boolean retry;
+        private volatile Throwable error;
+
+        @Override
+        void onRetry() {
+            retry = true;
+            decided.countDown();
+        }
+
+        @Override
+        void onGiveUp(Throwable error) {
+            this.error = error;
+            decided.countDown();
+        }
+
+        void await() throws InterruptedIOException {
+            try {
+                decided.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the retry");
+            }
+        }
+    }
+
+    /**
+     * The decision about the enqueued attempt, which enqueues the retry or invokes the callback.
+     */
+    private final class Outcome extends Decision {
+        private final Response<T> response;
+
+        Outcome(Response<T> response) {
+            this.response = response;
+        }
+
+        @Override
+        void onRetry() {
+            enqueue(original.clone());
+        }
+
+        @Override
+        void onGiveUp(Throwable error) {
+            retries.dispose();
+            if (error == null) {
+                callback.onResponse(RetryingCall.this, response);
+            } else {
+                callback.onFailure(RetryingCall.this, error);
+            }
+        }
+    }
+
+    /**
+     * Waits for the retries on the executor. The strategies run their retry action, when they return
+     * the wait before the retry.
+     */
+    private static final class Binding implements CallRetries.Binding<BackoffStrategy> {
+        private final ScheduledExecutorService backoffExecutor;
+
+        Binding(ScheduledExecutorService backoffExecutor) {
+            this.backoffExecutor = backoffExecutor;
+        }
+
+        @Override
+        public boolean hasRetried(Object cause) {
+            return false;
+        }
+
+        @Override
+        public void onRetry(BackoffStrategy strategy, Object cause, int retry) {
+        }
+
+        @Override
+        public CallRetries.Wait schedule(BackoffStrategy strategy, Object cause, int retry,
+                                         final CallRetries.Callback callback) {
+            long waitMillis;
+            try {
+                waitMillis = cause instanceof Response
+                        ? ((BaseBackoffStrategy) strategy).getRetryDelay((Response<?>) cause, retry)
+                        : strategy.getRetryDelay((Throwable) cause, retry);
+            } catch (Exception e) {
+                callback.giveUp(e);
+                return NO_WAIT;
+            }
+            if (waitMillis <= 0) {
+                callback.retry();
+                return NO_WAIT;
+            }
+            final Future<?> wait = backoffExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    callback.retry();
+                }
+            }, waitMillis, TimeUnit.MILLISECONDS);
+            return new CallRetries.Wait() {
+                @Override
+                public void cancel() {
+                    wait.cancel(false);
+                }
+            };
+        }
+
+        @Override
+        public void resume(Runnable retry) {
+            backoffExecutor.execute(retry);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitcallerrorhandler.backoff.OnRetryAction;
+import com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitcallerrorhandler.model.GitHub;
+import com.rzagorski.retrofitcallerrorhandler.model.Repository;
+import com.rzagorski.retrofitcallerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import static com.rzagorski.retrofitcallerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncRetryTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    /**
+     * Test shows, that {@code Call.enqueue()} retries every 500 server error immediately
+     * and calls back with the response, when the server answers.
+     */
+    @Test
+    public void testEnqueueRetried() throws Exception {
+        succeedAfter(2, 500);
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(3).build());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Response<List<Repository>>> result = new AtomicReference<>();
+        github.reposCall("square").enqueue(new Callback<List<Repository>>() {
+            @Override
+            public void onResponse(Call<List<Repository>> call, Response<List<Repository>> response) {
+                result.set(response);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<List<Repository>> call, Throwable throwable) {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(result.get().isSuccessful());
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that {@code CompletableFuture} waits for the retries made by
+     * {@link com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Exponential} strategy
+     * and completes exceptionally with {@link HttpException}, when the retries are run out.
+     */
+    @Test
+    public void testCompletableFutureBackoff() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        GitHub github = createGitHub(Exponential.init()
+                .addHttpCode(503)
+                .setBase(1)
+                .setMaxRetries(2).build());
+
+        long startTime = System.currentTimeMillis();
+        try {
+            github.reposFuture("square").get(10, TimeUnit.SECONDS);
+            fail("ExecutionException expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpException);
+        }
+        long endTime = System.currentTimeMillis();
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertTrue((endTime - startTime) >= 2 * MockWebServerUtils.ONE_SEC);
+    }
+
+    /**
+     * Test shows, that canceling the call waiting for the retry calls back with {@link IOException}
+     * without making the retry.
+     */
+    @Test
+    public void testCancelDuringBackoff() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        final CountDownLatch retryLatch = new CountDownLatch(1);
+        GitHub github = createGitHub(Exponential.init()
+                .addHttpCode(503)
+                .setBase(10)
+                .setMaxRetries(3)
+                .setOnRetryAction(new OnRetryAction() {
+                    @Override
+                    public void accept(Throwable throwable, int retry) {
+                        retryLatch.countDown();
+                    }
+                }).build());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Call<List<Repository>> call = github.reposCall("square");
+        call.enqueue(new Callback<List<Repository>>() {
+            @Override
+            public void onResponse(Call<List<Repository>> call, Response<List<Repository>> response) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<List<Repository>> call, Throwable throwable) {
+                error.set(throwable);
+                latch.countDown();
+            }
+        });
+        assertTrue(retryLatch.await(10, TimeUnit.SECONDS));
+        //the wait is scheduled right after the retry action
+        Thread.sleep(100);
+        call.cancel();
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(error.get() instanceof IOException);
+        assertTrue(call.isCanceled());
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Answers with {@code code}, until {@code failures} requests are made.
+     */
+    private void succeedAfter(final int failures, final int code) {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= failures) {
+                    return new MockResponse().setResponseCode(code);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+    }
+
+    private GitHub createGitHub(BackoffStrategy strategy) {
+        RetryCallAdapter retryCallAdapter = new RetryCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new CallErrorHandingFactory(retryCallAdapter));
+    }
+}
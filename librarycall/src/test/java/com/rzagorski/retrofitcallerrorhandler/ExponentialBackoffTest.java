@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.OnRetryAction;
+import com.rzagorski.retrofitcallerrorhandler.backoff.RetryIfFunction;
+import com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitcallerrorhandler.model.GitHub;
+import com.rzagorski.retrofitcallerrorhandler.model.Repository;
+import com.rzagorski.retrofitcallerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import static com.rzagorski.retrofitcallerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ExponentialBackoffTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    /**
+     * Test shows, that the calling thread waits for the retries made by
+     * {@link com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Exponential} strategy,
+     * so two retries with base of 1 second take at least 2 seconds.
+     */
+    @Test
+    public void testBackoffWaits() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        final List<Integer> retries = new ArrayList<>();
+        GitHub github = createGitHub(Exponential.init()
+                .addHttpCode(503)
+                .setBase(1)
+                .setMaxRetries(3)
+                .setOnRetryAction(new OnRetryAction() {
+                    @Override
+                    public void accept(Throwable throwable, int retry) {
+                        retries.add(retry);
+                    }
+                }).build());
+
+        long startTime = System.currentTimeMillis();
+        List<Repository> repositories = github.repos("square");
+        long endTime = System.currentTimeMillis();
+        assertTrue(!repositories.isEmpty());
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(2, retries.size());
+        assertEquals(1, (int) retries.get(0));
+        assertEquals(2, (int) retries.get(1));
+        assertTrue((endTime - startTime) >= 2 * MockWebServerUtils.ONE_SEC);
+    }
+
+    /**
+     * Test shows, that canceling the call wakes up the thread waiting for the retry,
+     * which ends with {@link IOException} without making the retry.
+     */
+    @Test
+    public void testCancelDuringBackoff() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        final CountDownLatch retryLatch = new CountDownLatch(1);
+        GitHub github = createGitHub(Exponential.init()
+                .addHttpCode(503)
+                .setBase(10)
+                .setMaxRetries(3)
+                .setOnRetryAction(new OnRetryAction() {
+                    @Override
+                    public void accept(Throwable throwable, int retry) {
+                        retryLatch.countDown();
+                    }
+                }).build());
+        final Call<List<Repository>> call = github.reposCall("square");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    retryLatch.await();
+                    call.cancel();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).start();
+
+        long startTime = System.currentTimeMillis();
+        try {
+            call.execute();
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(call.isCanceled());
+        }
+        long endTime = System.currentTimeMillis();
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertTrue((endTime - startTime) < 5 * MockWebServerUtils.ONE_SEC);
+    }
+
+    /**
+     * Test shows, that the retry function of the strategy gets the unsuccessful response
+     * as {@link HttpException} and {@code Call} returns the last response, when the retries are run out.
+     */
+    @Test
+    public void testRetryFunctionGetsHttpException() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        final List<Integer> codes = new ArrayList<>();
+        GitHub github = createGitHub(Exponential.init()
+                .addHttpCode(503)
+                .setBase(1)
+                .setMaxRetries(1)
+                .setRetryFunction(new RetryIfFunction() {
+                    @Override
+                    public boolean apply(Throwable throwable) {
+                        codes.add(((HttpException) throwable).code());
+                        return true;
+                    }
+                }).build());
+
+        Response<List<Repository>> response = github.reposCall("square").execute();
+        assertEquals(503, response.code());
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertEquals(2, codes.size());
+        assertEquals(503, (int) codes.get(0));
+    }
+
+    private GitHub createGitHub(Exponential strategy) {
+        RetryCallAdapter retryCallAdapter = new RetryCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new CallErrorHandingFactory(retryCallAdapter));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitcallerrorhandler.model.GitHub;
+import com.rzagorski.retrofitcallerrorhandler.model.Repository;
+import com.rzagorski.retrofitcallerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.List;
+
+import io.reactivex.observers.TestObserver;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static com.rzagorski.retrofitcallerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SimpleBackoffTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    /**
+     * Test shows, that the method returning the body is executed again after every 500 server error
+     * and returns the body, when the server answers.
+     */
+    @Test
+    public void testBodyRetried() throws Exception {
+        succeedEvery(3);
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(3).build());
+
+        List<Repository> repositories = github.repos("square");
+        assertFalse(repositories.isEmpty());
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that {@code Call.execute()} and the method returning {@code Response} retry
+     * the network errors, every call with its own count of retries.
+     */
+    @Test
+    public void testCallAndResponseRetried() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() % 2 != 0) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        GitHub github = createGitHub(Simple.init()
+                .addThrowable(IOException.class)
+                .setMaxRetries(1).build());
+
+        assertTrue(github.reposCall("square").execute().isSuccessful());
+        assertTrue(github.reposResponse("square").isSuccessful());
+        assertEquals(4, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the method returning the body ends with {@link HttpException} and {@code Call}
+     * returns the last response, when
+     * {@link com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Simple.Builder#setMaxRetries(int)}
+     * is run out.
+     */
+    @Test
+    public void testRetriesExhausted() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(2).build());
+
+        try {
+            github.repos("square");
+            fail("HttpException expected");
+        } catch (HttpException e) {
+            assertEquals(500, e.code());
+        }
+        Response<List<Repository>> response = github.reposCall("square").execute();
+        assertEquals(500, response.code());
+        assertEquals(6, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the return types handled by the factories added after
+     * {@link CallErrorHandingFactory} are left for them.
+     */
+    @Test
+    public void testOtherReturnTypesLeft() throws Exception {
+        succeedEvery(2);
+        RetryCallAdapter retryCallAdapter = new RetryCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(1).build())
+                .build();
+        GitHub github = new Retrofit.Builder()
+                .baseUrl(mockWebServer.url("/").toString())
+                .addConverterFactory(GsonConverterFactory.create())
+                .addCallAdapterFactory(new CallErrorHandingFactory(retryCallAdapter))
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+                .build()
+                .create(GitHub.class);
+
+        TestObserver testObserver = github.reposObservable("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(retrofit2.adapter.rxjava2.HttpException.class);
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Answers with 500 server error, unless the number of the request is divisible by {@code period}.
+     */
+    private void succeedEvery(final int period) {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() % period != 0) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+    }
+
+    private GitHub createGitHub(Simple strategy) {
+        RetryCallAdapter retryCallAdapter = new RetryCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new CallErrorHandingFactory(retryCallAdapter));
+    }
+}
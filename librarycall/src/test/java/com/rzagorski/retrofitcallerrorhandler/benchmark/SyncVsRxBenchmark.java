@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitcallerrorhandler.benchmark;
+
+import com.rzagorski.retrofitcallerrorhandler.CallErrorHandingFactory;
+import com.rzagorski.retrofitcallerrorhandler.RetryCallAdapter;
+import com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitcallerrorhandler.model.GitHub;
+import com.rzagorski.retrofitcallerrorhandler.model.Repository;
+import com.rzagorski.retrofitcallerrorhandler.utils.MockWebServerUtils;
+import com.rzagorski.retrofitrx2errorhandler.RxCallAdapter;
+import com.rzagorski.retrofitrx2errorhandler.RxErrorHandingFactory;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.reactivestreams.Publisher;
+
+/**
+ * Compares {@link CallErrorHandingFactory} executing calls on virtual threads with
+ * {@link RxErrorHandingFactory} subscribing on {@link Schedulers#io()}, both with the same
+ * {@link Simple} strategy retrying every 4th request answered with 503.
+ * <br>
+ * Not a test, run it from the module directory with the test classpath:
+ * <pre>
+ * java -cp ... com.rzagorski.retrofitcallerrorhandler.benchmark.SyncVsRxBenchmark [calls] [concurrency]
+ * </pre>
+ * Defaults to 10000 calls, all of them in flight at once. Virtual threads need Java 21,
+ * on older runtimes the synchronous path runs on a fixed pool of {@code concurrency} threads.
+ * The peak thread count includes the thread per connection of {@link MockWebServer}.
+ */
+public class SyncVsRxBenchmark {
+    private static final int WARMUP_CALLS = 1000;
+    //the attempts of concurrent calls interleave, so a call may get several 503 in a row
+    private static final int MAX_RETRIES = 10;
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : calls;
+
+        //the server logs every request and the default retry action prints every retry,
+        //which would be measured instead of the calls
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+        PrintStream out = System.out;
+        final MockWebServer mockWebServer = new MockWebServer();
+        final MockResponse success = MockWebServerUtils.getSuccessfulResponse();
+        final AtomicInteger requestCount = new AtomicInteger();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (requestCount.incrementAndGet() % 4 == 0) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return success;
+            }
+        });
+        mockWebServer.start();
+        final OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(concurrency, 1, TimeUnit.MINUTES))
+                .readTimeout(1, TimeUnit.MINUTES)
+                .build();
+        String url = mockWebServer.url("/").toString();
+
+        GitHub syncGitHub = MockWebServerUtils.createRetrofitInstance(url,
+                new CallErrorHandingFactory(new RetryCallAdapter.Builder()
+                        .addBackoffStrategy(Simple.init()
+                                .addHttpCode(503)
+                                .setMaxRetries(MAX_RETRIES).build())
+                        .build()),
+                client);
+        GitHub rxGitHub = MockWebServerUtils.createRetrofitInstance(url,
+                new RxErrorHandingFactory(new RxCallAdapter.Builder()
+                        .addBackoffStrategy(com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple.init()
+                                .addHttpCode(503)
+                                .setMaxRetries(MAX_RETRIES).build())
+                        .build()),
+                client);
+
+        ExecutorService executor = newExecutor(concurrency);
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        try {
+            runSync(syncGitHub, executor, WARMUP_CALLS);
+            runRx(rxGitHub, concurrency, WARMUP_CALLS);
+
+            //both runs open their connections, instead of the second one reusing the pooled ones
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            client.connectionPool().evictAll();
+            threads.resetPeakThreadCount();
+            long syncMillis = runSync(syncGitHub, executor, calls);
+            int syncPeakThreads = threads.getPeakThreadCount();
+            client.connectionPool().evictAll();
+            threads.resetPeakThreadCount();
+            long rxMillis = runRx(rxGitHub, concurrency, calls);
+            int rxPeakThreads = threads.getPeakThreadCount();
+            System.setOut(out);
+
+            print("sync", calls, syncMillis, syncPeakThreads);
+            print("rx", calls, rxMillis, rxPeakThreads);
+        } finally {
+            System.setOut(out);
+            executor.shutdownNow();
+            client.connectionPool().evictAll();
+            mockWebServer.shutdown();
+        }
+    }
+
+    private static long runSync(final GitHub github, ExecutorService executor, int calls) throws Exception {
+        long start = System.nanoTime();
+        List<Future<List<Repository>>> results = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            results.add(executor.submit(new Callable<List<Repository>>() {
+                @Override
+                public List<Repository> call() throws Exception {
+                    return github.repos("square");
+                }
+            }));
+        }
+        for (Future<List<Repository>> result : results) {
+            result.get();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static long runRx(final GitHub github, int concurrency, int calls) {
+        long start = System.nanoTime();
+        Flowable.range(0, calls)
+                .flatMap(new Function<Integer, Publisher<List<Repository>>>() {
+                    @Override
+                    public Publisher<List<Repository>> apply(Integer call) {
+                        return github.reposObservable("square")
+                                .subscribeOn(Schedulers.io())
+                                .toFlowable(BackpressureStrategy.BUFFER);
+                    }
+                }, concurrency)
+                .blockingLast();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * @return executor starting a virtual thread per task, when the runtime has them
+     */
+    private static ExecutorService newExecutor(int concurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            System.out.println("Virtual threads not available, using " + concurrency + " platform threads");
+            return Executors.newFixedThreadPool(concurrency);
+        }
+    }
+
+    private static void print(String name, int calls, long millis, int peakThreads) {
+        System.out.println(name + ": " + calls + " calls in " + millis + " ms, "
+                + (calls * 1000L / Math.max(1, millis)) + " calls/s, peak threads " + peakThreads);
+    }
+}
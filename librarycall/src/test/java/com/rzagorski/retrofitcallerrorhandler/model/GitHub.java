@@ -0,0 +1,28 @@
+package com.rzagorski.retrofitcallerrorhandler.model;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import io.reactivex.Observable;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+
+public interface GitHub {
+    @GET("/users/{owner}/repos")
+    List<Repository> repos(@Path("owner") String owner) throws IOException;
+
+    @GET("/users/{owner}/repos")
+    Response<List<Repository>> reposResponse(@Path("owner") String owner) throws IOException;
+
+    @GET("/users/{owner}/repos")
+    Call<List<Repository>> reposCall(@Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    CompletableFuture<List<Repository>> reposFuture(@Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Observable<List<Repository>> reposObservable(@Path("owner") String owner);
+}
@@ -0,0 +1,11 @@
+package com.rzagorski.retrofitcallerrorhandler.model;
+
+public class Repository {
+    public final String name;
+    public final String description;
+
+    public Repository(String name, String description) {
+        this.name = name;
+        this.description = description;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitreactorerrorhandler;
+
+import com.rzagorski.retrofitcallerrorhandler.RetryCallAdapter;
+import com.rzagorski.retrofitcallerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitreactorerrorhandler.retry.BackoffRetry;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Callback;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+
+/**
+ * Main class for communication with <a href="https://github.com/square/retrofit/blob/master/retrofit/src/main/java/retrofit2/CallAdapter.java#L62">CallAdapter.Factory</a>
+ * for <a href="https://projectreactor.io">Project Reactor</a> {@code Mono} and {@code Flux} return types.
+ * <br>
+ * Uses the {@link BackoffStrategy backoff strategies} of {@code retrofitcallerrorhandler}, built with the same
+ * {@code Simple} and {@code Exponential} builders, and retries with {@link BackoffRetry}.
+ * Every subscription enqueues a clone of the call, which OkHttp executes on its dispatcher, and cancels it,
+ * when the subscription is cancelled. No RxJava is involved.
+ * <br>
+ * {@code Mono<T>} and {@code Flux<T>} emit the body and end with {@link HttpException} for unsuccessful responses,
+ * which are checked against the strategies. {@code Mono<Response<T>>} and {@code Flux<Response<T>>}
+ * emit every response, so only the errors of the call are retried.
+ */
+public class ReactorErrorHandingFactory extends CallAdapter.Factory {
+    private final BackoffRetry retry;
+
+    /**
+     * Waits for the retries on {@link Schedulers#parallel()}.
+     */
+    public ReactorErrorHandingFactory(RetryCallAdapter callAdapter) {
+        this(callAdapter, Schedulers.parallel());
+    }
+
+    /**
+     * @param timerScheduler the scheduler waiting for the retries
+     */
+    public ReactorErrorHandingFactory(RetryCallAdapter callAdapter, Scheduler timerScheduler) {
+        //the retry keeps no state between subscriptions, so all calls share it
+        this.retry = new BackoffRetry(callAdapter.getBackoffStrategies(), timerScheduler);
+        for (BackoffStrategy strategy : callAdapter.getBackoffStrategies()) {
+            strategy.setLoggingEnabled(callAdapter.isLoggingEnabled());
+        }
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Class<?> rawType = getRawType(returnType);
+        boolean isFlux = rawType == Flux.class;
+        if (rawType != Mono.class && !isFlux) {
+            return null;
+        }
+        String name = isFlux ? "Flux" : "Mono";
+        Type observableType = getParameterType(returnType, name);
+        if (getRawType(observableType) == Response.class) {
+            return new ReactorCallAdapter<>(getParameterType(observableType, "Response"), isFlux, true);
+        }
+        return new ReactorCallAdapter<>(observableType, isFlux, false);
+    }
+
+    private static Type getParameterType(Type type, String name) {
+        if (!(type instanceof ParameterizedType)) {
+            throw new IllegalStateException(name + " return type must be parameterized as "
+                    + name + "<Foo> or " + name + "<? extends Foo>");
+        }
+        return getParameterUpperBound(0, (ParameterizedType) type);
+    }
+
+    private class ReactorCallAdapter<R> implements CallAdapter<R, Object> {
+        private final Type responseType;
+        private final boolean isFlux;
+        private final boolean isResponse;
+
+        ReactorCallAdapter(Type responseType, boolean isFlux, boolean isResponse) {
+            this.responseType = responseType;
+            this.isFlux = isFlux;
+            this.isResponse = isResponse;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public Object adapt(final Call<R> call) {
+            Mono<Response<R>> responses = Mono.create(new Consumer<MonoSink<Response<R>>>() {
+                @Override
+                public void accept(final MonoSink<Response<R>> sink) {
+                    final Call<R> attempt = call.clone();
+                    sink.onCancel(new Disposable() {
+                        @Override
+                        public void dispose() {
+                            attempt.cancel();
+                        }
+                    });
+                    attempt.enqueue(new Callback<R>() {
+                        @Override
+                        public void onResponse(Call<R> call, Response<R> response) {
+                            sink.success(response);
+                        }
+
+                        @Override
+                        public void onFailure(Call<R> call, Throwable throwable) {
+                            sink.error(throwable);
+                        }
+                    });
+                }
+            });
+            Mono<?> mono = isResponse ? responses : responses.handle(new BodyHandler<R>());
+            mono = mono.retryWhen(retry);
+            return isFlux ? mono.flux() : mono;
+        }
+    }
+
+    private static class BodyHandler<R> implements BiConsumer<Response<R>, SynchronousSink<R>> {
+
+        @Override
+        public void accept(Response<R> response, SynchronousSink<R> sink) {
+            if (!response.isSuccessful()) {
+                sink.error(new HttpException(response));
+                return;
+            }
+            R body = response.body();
+            if (body != null) {
+                sink.next(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitreactorerrorhandler.retry;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofiterrorhandler.backoff.RetryAttempts;
+
+import java.util.List;
+
+/**
+ * Retries made for a single subscription, counted for every strategy separately.
+ */
+final class Attempts extends RetryAttempts<BackoffStrategy, Exception> {
+
+    Attempts(List<BackoffStrategy> strategies) {
+        super(strategies);
+    }
+
+    @Override
+    protected boolean canRetry(BackoffStrategy strategy, int retry) {
+        return retry <= strategy.getMaxRetries();
+    }
+
+    @Override
+    protected boolean isApplicable(BackoffStrategy strategy, Throwable error) throws Exception {
+        return strategy.isApplicable(error);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitreactorerrorhandler.retry;
+
+import com.rzagorski.retrofitcallerrorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofiterrorhandler.backoff.CallRetries;
+
+import org.reactivestreams.Publisher;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
+
+/**
+ * Reactor {@link Retry} spec driven by {@link BackoffStrategy backoff strategies}.
+ * <br>
+ * The companion is generated for every subscription, so every subscription has its own {@link CallRetries},
+ * which decides about the retries the same way as in the other bindings. Immediate retries are signalled
+ * without a timer, the waits are {@link Mono#delay(Duration, Scheduler)} on the given scheduler.
+ */
+public class BackoffRetry extends Retry {
+    private static final CallRetries.Wait NO_WAIT = new CallRetries.Wait() {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final List<BackoffStrategy> strategies;
+    private final Scheduler timerScheduler;
+
+    public BackoffRetry(List<BackoffStrategy> strategies, Scheduler timerScheduler) {
+        this.strategies = strategies;
+        this.timerScheduler = timerScheduler;
+    }
+
+    @Override
+    public Publisher<?> generateCompanion(Flux<RetrySignal> retrySignals) {
+        final CallRetries<BackoffStrategy> retries = new CallRetries<>(new Attempts(strategies),
+                new Binding(timerScheduler), null, 0, null, null);
+        return retrySignals.concatMap(new Function<RetrySignal, Publisher<Boolean>>() {
+            @Override
+            public Publisher<Boolean> apply(RetrySignal retrySignal) {
+                //the signal is reused for the next error, so the error is read now
+                final Throwable error = retrySignal.failure();
+                return Mono.create(new Consumer<MonoSink<Boolean>>() {
+                    @Override
+                    public void accept(final MonoSink<Boolean> sink) {
+                        retries.onError(error, new CallRetries.Callback() {
+                            @Override
+                            public void retry() {
+                                sink.success(Boolean.TRUE);
+                            }
+
+                            @Override
+                            public void giveUp(Throwable throwable) {
+                                sink.error(throwable);
+                            }
+                        });
+                    }
+                });
+            }
+        }).doFinally(new Consumer<SignalType>() {
+            @Override
+            public void accept(SignalType signalType) {
+                retries.dispose();
+            }
+        });
+    }
+
+    /**
+     * Waits for the retries on the timer scheduler. The strategies of {@code retrofitcallerrorhandler}
+     * run their retry action, when they return the wait before the retry.
+     */
+    private static class Binding implements CallRetries.Binding<BackoffStrategy> {
+        private final Scheduler timerScheduler;
+
+        Binding(Scheduler timerScheduler) {
+            this.timerScheduler = timerScheduler;
+        }
+
+        @Override
+        public boolean hasRetried(Object cause) {
+            return false;
+        }
+
+        @Override
+        public void onRetry(BackoffStrategy strategy, Object cause, int retry) {
+        }
+
+        @Override
+        public CallRetries.Wait schedule(BackoffStrategy strategy, Object cause, int retry,
+                                         final CallRetries.Callback callback) {
+            long waitMillis;
+            try {
+                waitMillis = strategy.getRetryDelay((Throwable) cause, retry);
+            } catch (Exception e) {
+                callback.giveUp(e);
+                return NO_WAIT;
+            }
+            if (waitMillis <= 0) {
+                callback.retry();
+                return NO_WAIT;
+            }
+            final Disposable delay = Mono.delay(Duration.ofMillis(waitMillis), timerScheduler)
+                    .subscribe(new Consumer<Long>() {
+                        @Override
+                        public void accept(Long tick) {
+                            callback.retry();
+                        }
+                    });
+            return new CallRetries.Wait() {
+                @Override
+                public void cancel() {
+                    delay.dispose();
+                }
+            };
+        }
+
+        @Override
+        public void resume(Runnable retry) {
+            timerScheduler.schedule(retry);
+        }
+    }
+}
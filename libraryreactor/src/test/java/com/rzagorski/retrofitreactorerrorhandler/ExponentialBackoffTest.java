@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitreactorerrorhandler;
+
+import com.rzagorski.retrofitcallerrorhandler.RetryCallAdapter;
+import com.rzagorski.retrofitcallerrorhandler.backoff.OnRetryAction;
+import com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitreactorerrorhandler.model.GitHub;
+import com.rzagorski.retrofitreactorerrorhandler.model.Repository;
+import com.rzagorski.retrofitreactorerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static com.rzagorski.retrofitreactorerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ExponentialBackoffTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    /**
+     * Test shows, that the retries made by
+     * {@link com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Exponential} strategy wait on the timer
+     * scheduler, so two retries with base of 1 second take at least 2 seconds.
+     */
+    @Test
+    public void testBackoffWaits() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        final List<Integer> retries = new CopyOnWriteArrayList<>();
+        RetryCallAdapter retryCallAdapter = new RetryCallAdapter.Builder()
+                .addBackoffStrategy(Exponential.init()
+                        .addHttpCode(503)
+                        .setBase(1)
+                        .setMaxRetries(3)
+                        .setOnRetryAction(new OnRetryAction() {
+                            @Override
+                            public void accept(Throwable throwable, int retry) {
+                                retries.add(retry);
+                            }
+                        }).build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new ReactorErrorHandingFactory(retryCallAdapter));
+
+        long startTime = System.currentTimeMillis();
+        List<Repository> repositories = github.repos("square").block(Duration.ofSeconds(10));
+        long endTime = System.currentTimeMillis();
+        assertFalse(repositories.isEmpty());
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(2, retries.size());
+        assertEquals(1, (int) retries.get(0));
+        assertEquals(2, (int) retries.get(1));
+        assertTrue((endTime - startTime) >= 2 * MockWebServerUtils.ONE_SEC);
+    }
+}
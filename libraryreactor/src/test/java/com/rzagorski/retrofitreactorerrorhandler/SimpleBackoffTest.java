@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitreactorerrorhandler;
+
+import com.rzagorski.retrofitcallerrorhandler.RetryCallAdapter;
+import com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitreactorerrorhandler.model.GitHub;
+import com.rzagorski.retrofitreactorerrorhandler.model.Repository;
+import com.rzagorski.retrofitreactorerrorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import reactor.core.Disposable;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import static com.rzagorski.retrofitreactorerrorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SimpleBackoffTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    /**
+     * Test shows, that {@code Mono} and {@code Flux} calls are subscribed again after every 500 server error
+     * and emit the body, when the server answers, every call with its own count of retries.
+     */
+    @Test
+    public void testMonoAndFluxRetried() throws Exception {
+        succeedEvery(3);
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(2).build());
+
+        List<Repository> repositories = github.repos("square").block(TIMEOUT);
+        assertFalse(repositories.isEmpty());
+        repositories = github.reposFlux("square").blockLast(TIMEOUT);
+        assertFalse(repositories.isEmpty());
+        assertEquals(6, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that {@code Mono<Response>} emits the unsuccessful response without retrying it,
+     * but retries the errors of the call.
+     */
+    @Test
+    public void testResponseRetriesErrorsOnly() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() == 1) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+                }
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .addThrowable(IOException.class)
+                .setMaxRetries(3).build());
+
+        Response<List<Repository>> response = github.reposResponse("square").block(TIMEOUT);
+        assertEquals(500, response.code());
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the error is passed to the subscriber, when
+     * {@link com.rzagorski.retrofitcallerrorhandler.backoff.strategies.Simple.Builder#setMaxRetries(int)}
+     * is run out.
+     */
+    @Test
+    public void testRetriesExhausted() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(2).build());
+
+        try {
+            github.repos("square").block(TIMEOUT);
+            fail("HttpException expected");
+        } catch (HttpException e) {
+            assertEquals(500, e.code());
+        }
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Answers with 500 server error, unless the number of the request is divisible by {@code period}.
+     */
+    private void succeedEvery(final int period) {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() % period != 0) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+    }
+
+    /**
+     * Test shows, that disposing the subscription cancels the call, which is waiting for the response.
+     */
+    @Test
+    public void testDisposeCancelsCall() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+            }
+        });
+        OkHttpClient client = new OkHttpClient.Builder()
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+        RetryCallAdapter retryCallAdapter = new RetryCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addThrowable(IOException.class)
+                        .setMaxRetries(3).build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new ReactorErrorHandingFactory(retryCallAdapter), client);
+
+        Disposable subscription = github.repos("square").subscribe();
+        mockWebServer.takeRequest();
+        assertEquals(1, client.dispatcher().runningCallsCount());
+        subscription.dispose();
+        long deadline = System.currentTimeMillis() + MockWebServerUtils.ONE_SEC;
+        while (client.dispatcher().runningCallsCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, client.dispatcher().runningCallsCount());
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    private GitHub createGitHub(Simple strategy) {
+        RetryCallAdapter retryCallAdapter = new RetryCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new ReactorErrorHandingFactory(retryCallAdapter));
+    }
+}
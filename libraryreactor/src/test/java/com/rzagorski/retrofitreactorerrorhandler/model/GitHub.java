@@ -0,0 +1,20 @@
+package com.rzagorski.retrofitreactorerrorhandler.model;
+
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import retrofit2.Response;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+
+public interface GitHub {
+    @GET("/users/{owner}/repos")
+    Mono<List<Repository>> repos(@Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Flux<List<Repository>> reposFlux(@Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Mono<Response<List<Repository>>> reposResponse(@Path("owner") String owner);
+}
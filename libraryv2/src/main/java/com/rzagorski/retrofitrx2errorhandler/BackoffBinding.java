@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.backoff.CallRetries;
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+import com.rzagorski.retrofitrx2errorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.tracing.CallTrace;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.observers.DisposableObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava2.Result;
+
+/**
+ * Waits for the retries of a single subscription to the call, decided by {@link CallRetries}.
+ * The strategies extending {@link BaseBackoffStrategy} wait with their backup observable and wait time.
+ * Other strategies get the errors, which they are applicable to, and the retry is made, when the observable
+ * they returned for them emits.
+ */
+final class BackoffBinding implements CallRetries.Binding<BackoffStrategy> {
+    private static final CallRetries.Wait NO_WAIT = new CallRetries.Wait() {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final HostHealth health;
+    private final CallTrace trace;
+    private final RetryInterceptor retryInterceptor;
+    private final Map<BackoffStrategy, Relay> relays;
+
+    /**
+     * @param health           health of the host the call is made to
+     * @param trace            trace of the call, {@code null} when the call is not traced
+     * @param retryInterceptor the interceptor retrying the attempts, {@code null} when not enabled
+     */
+    BackoffBinding(HostHealth health, CallTrace trace, RetryInterceptor retryInterceptor) {
+        this.health = health;
+        this.trace = trace;
+        this.retryInterceptor = retryInterceptor;
+        this.relays = new IdentityHashMap<>();
+    }
+
+    @Override
+    public boolean hasRetried(Object cause) {
+        if (retryInterceptor == null) {
+            return false;
+        }
+        if (cause instanceof Throwable) {
+            return retryInterceptor.hasRetried((Throwable) cause);
+        }
+        return retryInterceptor.hasRetried(responseOf(cause));
+    }
+
+    @Override
+    public void onRetry(BackoffStrategy strategy, Object cause, int retry) throws Exception {
+        if (cause instanceof Throwable) {
+            if (strategy instanceof BaseBackoffStrategy) {
+                ((BaseBackoffStrategy) strategy).onRetry((Throwable) cause, retry);
+            }
+            return;
+        }
+        //the response is not emitted, the retry replaces it
+        Response<?> response = responseOf(cause);
+        if (strategy instanceof BaseBackoffStrategy) {
+            ((BaseBackoffStrategy) strategy).onRetry(response, retry);
+        }
+        if (response.errorBody() != null) {
+            response.errorBody().close();
+        }
+    }
+
+    @Override
+    public CallRetries.Wait schedule(BackoffStrategy strategy, Object cause, int retry,
+                                     CallRetries.Callback callback) {
+        if (strategy instanceof BaseBackoffStrategy) {
+            return ((BaseBackoffStrategy) strategy).awaitRetry(retry, health, trace, callback);
+        }
+        return relay(strategy).offer((Throwable) cause, callback);
+    }
+
+    @Override
+    public void resume(Runnable retry) {
+        Schedulers.io().scheduleDirect(retry);
+    }
+
+    /**
+     * Stops the strategies, which got the errors of the subscription, when it ends.
+     */
+    void dispose() {
+        List<Relay> started;
+        synchronized (relays) {
+            started = new ArrayList<>(relays.values());
+            relays.clear();
+        }
+        for (Relay relay : started) {
+            relay.dispose();
+        }
+    }
+
+    private Relay relay(BackoffStrategy strategy) {
+        synchronized (relays) {
+            Relay relay = relays.get(strategy);
+            if (relay == null) {
+                relay = new Relay();
+                relays.put(strategy, relay);
+                relay.start(strategy);
+            }
+            return relay;
+        }
+    }
+
+    private static Response<?> responseOf(Object cause) {
+        return cause instanceof Result ? ((Result<?>) cause).response() : (Response<?>) cause;
+    }
+
+    /**
+     * Passes the errors of the subscription to the strategy, which does not extend {@link BaseBackoffStrategy},
+     * through the observable it was applied to once, and makes the retry, when its observable emits.
+     * It passes on the error, when the strategy ends its observable.
+     */
+    private static class Relay extends DisposableObserver<Object> {
+        private final PublishSubject<Throwable> errors = PublishSubject.create();
+        private volatile boolean terminated;
+        private volatile Throwable failure;
+        private volatile Throwable offered;
+        private volatile CallRetries.Callback callback;
+
+        void start(BackoffStrategy strategy) {
+            try {
+                strategy.apply(errors).subscribe(this);
+            } catch (Exception e) {
+                onError(e);
+            }
+        }
+
+        CallRetries.Wait offer(Throwable throwable, final CallRetries.Callback callback) {
+            if (terminated) {
+                callback.giveUp(failure != null ? failure : throwable);
+                return NO_WAIT;
+            }
+            this.offered = throwable;
+            this.callback = callback;
+            errors.onNext(throwable);
+            return new CallRetries.Wait() {
+                @Override
+                public void cancel() {
+                    if (Relay.this.callback == callback) {
+                        Relay.this.callback = null;
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void onNext(Object signal) {
+            CallRetries.Callback current = callback;
+            callback = null;
+            if (current != null) {
+                current.retry();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable;
+            terminated = true;
+            CallRetries.Callback current = callback;
+            if (current != null) {
+                current.giveUp(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            terminated = true;
+            CallRetries.Callback current = callback;
+            if (current != null) {
+                current.giveUp(offered);
+            }
+        }
+    }
+}
@@ -15,15 +15,54 @@
  */
 package com.rzagorski.retrofitrx2errorhandler;
 
+import com.rzagorski.retrofiterrorhandler.download.ResumableResponseBody;
+import com.rzagorski.retrofiterrorhandler.durable.DurableRequest;
+import com.rzagorski.retrofiterrorhandler.durable.RetryLog;
+import com.rzagorski.retrofiterrorhandler.health.HealthScoreboard;
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+import com.rzagorski.retrofiterrorhandler.limit.ConcurrencyLimit;
+import com.rzagorski.retrofiterrorhandler.limit.RateLimit;
+import com.rzagorski.retrofiterrorhandler.offline.OfflineMode;
+import com.rzagorski.retrofiterrorhandler.offline.OfflineQueueFullException;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryCoalescer;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryQueueFullException;
+import com.rzagorski.retrofiterrorhandler.upload.ReplayableRequestBody;
+import com.rzagorski.retrofitrx2errorhandler.download.ResumableDownload;
+import com.rzagorski.retrofitrx2errorhandler.durable.DurableCall;
+import com.rzagorski.retrofitrx2errorhandler.durable.DurableTransformer;
+import com.rzagorski.retrofitrx2errorhandler.health.HealthTransformer;
+import com.rzagorski.retrofitrx2errorhandler.limit.ConcurrencyLimitTransformer;
+import com.rzagorski.retrofitrx2errorhandler.limit.RateLimitTransformer;
+import com.rzagorski.retrofitrx2errorhandler.offline.OfflineTransformer;
+import com.rzagorski.retrofitrx2errorhandler.scheduler.CoalescingTransformer;
+import com.rzagorski.retrofitrx2errorhandler.upload.ReplayableBodyTransformer;
+import com.rzagorski.retrofitrx2errorhandler.utils.TypeUtils;
+
 import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
 import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Function;
+import okhttp3.HttpUrl;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.CallAdapter;
+import retrofit2.Converter;
+import retrofit2.HttpException;
+import retrofit2.Response;
 import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.Result;
 import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.http.HTTP;
+import retrofit2.http.PATCH;
+import retrofit2.http.POST;
+import retrofit2.http.PUT;
 
 /**
  * Main class for communication with <a href="https://github.com/square/retrofit/blob/master/retrofit/src/main/java/retrofit2/CallAdapter.java#L62">CallAdapter.Factory</a>.
@@ -38,23 +77,92 @@ import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
 abstract class BaseRxCallAdapterFactory extends CallAdapter.Factory {
 
     private final RxJava2CallAdapterFactory original;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final List<RateLimit> rateLimits;
+    private final int maxDownloadResumes;
+    private final HealthScoreboard healthScoreboard;
+    private final boolean healthScoreboardSet;
+    private final RetryLog retryLog;
+    private final OfflineMode offlineMode;
+    private final RetryCoalescer retryCoalescer;
 
-    BaseRxCallAdapterFactory() {
+    BaseRxCallAdapterFactory(ConcurrencyLimit concurrencyLimit, List<RateLimit> rateLimits, int maxDownloadResumes,
+                             HealthScoreboard healthScoreboard, boolean healthScoreboardSet, RetryLog retryLog,
+                             OfflineMode offlineMode, RetryCoalescer retryCoalescer) {
         original = RxJava2CallAdapterFactory.create();
+        this.concurrencyLimit = concurrencyLimit;
+        this.rateLimits = rateLimits;
+        this.maxDownloadResumes = maxDownloadResumes;
+        this.healthScoreboard = healthScoreboard;
+        this.healthScoreboardSet = healthScoreboardSet;
+        this.retryLog = retryLog;
+        this.offlineMode = offlineMode;
+        this.retryCoalescer = retryCoalescer;
     }
 
     @Override
     public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
-        return new RxCallAdapterWrapper(retrofit, original.get(returnType, annotations, retrofit));
+        if (getRawType(returnType) != Observable.class || !(returnType instanceof ParameterizedType)
+                || emitsResponse(returnType)) {
+            return wrap(retrofit, original.get(returnType, annotations, retrofit), returnType, annotations,
+                    false, false);
+        }
+        //the response is turned into the body or the error here, so retryable errors can skip the stack trace
+        //and the headers of the response are available to resume the download
+        CallAdapter<?, ?> wrapped = original.get(TypeUtils.withResponse(returnType), annotations, retrofit);
+        boolean resumableDownload = maxDownloadResumes > 0 && ResumableDownload.isResumable(returnType, annotations);
+        return wrap(retrofit, wrapped, returnType, annotations, true, resumableDownload);
+    }
+
+    //the adapters of RxJava2CallAdapterFactory return Observable of the response type as Object
+    @SuppressWarnings("unchecked")
+    private <R> RxCallAdapterWrapper<R> wrap(Retrofit retrofit, CallAdapter<?, ?> wrapped, Type returnType,
+                                             Annotation[] annotations, boolean fromResponse,
+                                             boolean resumableDownload) {
+        return new RxCallAdapterWrapper<>(retrofit, (CallAdapter<R, R>) wrapped, returnType, annotations,
+                fromResponse, resumableDownload);
+    }
+
+    /**
+     * @param policy the retry policy of the call
+     * @param host   the host the call is made to
+     * @return health the attempts to the host are recorded in, {@code null} when neither the policy
+     * nor the application set the scoreboard to read it
+     */
+    final HostHealth getHealth(RetryPolicy policy, String host) {
+        return healthScoreboardSet || policy.usesHostHealth() ? healthScoreboard.get(host) : null;
+    }
+
+    static boolean emitsResponse(Type returnType) {
+        if (!(returnType instanceof ParameterizedType)) {
+            return false;
+        }
+        Class<?> emitted = getRawType(getParameterUpperBound(0, (ParameterizedType) returnType));
+        return emitted == Response.class || emitted == Result.class;
     }
 
     private class RxCallAdapterWrapper<R> implements CallAdapter<R, Object> {
         private final Retrofit retrofit;
         private final CallAdapter<R, R> wrapped;
+        private final Type returnType;
+        private final Annotation[] annotations;
+        private final boolean fromResponse;
+        private final boolean resumableDownload;
+        private final boolean hasBody;
+        private final boolean durable;
+        private final Converter<ResponseBody, R> converter;
 
-        RxCallAdapterWrapper(Retrofit retrofit, CallAdapter<R, R> wrapped) {
+        RxCallAdapterWrapper(Retrofit retrofit, CallAdapter<R, R> wrapped, Type returnType, Annotation[] annotations,
+                             boolean fromResponse, boolean resumableDownload) {
             this.retrofit = retrofit;
             this.wrapped = wrapped;
+            this.returnType = returnType;
+            this.annotations = annotations;
+            this.fromResponse = fromResponse;
+            this.resumableDownload = resumableDownload;
+            this.hasBody = hasBody(annotations);
+            this.durable = retryLog != null && DurableRequest.isDurable(annotations);
+            this.converter = durable ? retrofit.<R>responseBodyConverter(wrapped.responseType(), annotations) : null;
         }
 
         @Override
@@ -62,13 +170,233 @@ abstract class BaseRxCallAdapterFactory extends CallAdapter.Factory {
             return wrapped.responseType();
         }
 
-        @SuppressWarnings("unchecked")
         @Override
         public Object adapt(Call<R> call) {
-            return ((Observable<R>) wrapped.adapt(call))
-                    .compose(transformRequest());
+            //the key is given to the request of the call once, so all its subscriptions send the same one
+            final Call<R> sent = durable ? new DurableCall<>(call, retrofit.callFactory(), converter) : call;
+            //the subscription keeps the policy it started with, even when it is swapped before the retry
+            return Observable.defer(new Callable<ObservableSource<R>>() {
+                @Override
+                public ObservableSource<R> call() throws Exception {
+                    return adapt(attemptsCall(sent), getRetryPolicy());
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private Observable<R> adapt(Call<R> call, RetryPolicy policy) {
+            Observable<R> observable = (Observable<R>) wrapped.adapt(call);
+            if (resumableDownload) {
+                observable = (Observable<R>) ((Observable<Response<ResponseBody>>) (Observable<?>) observable)
+                        .flatMap(new ToResumableBody(retrofit.callFactory(), policy));
+            } else if (fromResponse) {
+                observable = ((Observable<Response<R>>) (Observable<?>) observable)
+                        .flatMap(new ToBody<R>(policy));
+            }
+            HostHealth health = getHealth(policy, call.request().url().host());
+            if (health != null) {
+                //health is recorded below the limits, so the time spent waiting for them is not counted
+                observable = observable.compose(new HealthTransformer<R>(health));
+            }
+            if (concurrencyLimit != null || !rateLimits.isEmpty()) {
+                observable = applyLimits(observable, call.request().url());
+            }
+            if (durable) {
+                //applied below transformRequest(), so the request is written to the log before it is retried
+                observable = observable.compose(
+                        new DurableTransformer<R>(retryLog, call.request(), new IsRetryable(policy)));
+            }
+            if (offlineMode != null) {
+                //parked attempts are subscribed to again below transformRequest(), without using the retries
+                observable = observable.compose(new OfflineTransformer<R>(offlineMode));
+            }
+            ObservableTransformer<R, R> transformer = transformRequest(call, returnType, annotations, policy);
+            if (retryCoalescer != null && !emitsResponse(returnType)) {
+                observable = coalesce(observable, transformer, RetryCoalescer.endpointOf(call.request()));
+            } else {
+                observable = observable.compose(transformer);
+            }
+            if (fromResponse) {
+                observable = observable.onErrorResumeNext(new WithStackTrace<R>());
+            }
+            RequestBody body = hasBody ? call.request().body() : null;
+            if (body instanceof ReplayableRequestBody) {
+                //the file stays open for all attempts of the call
+                observable = observable.compose(new ReplayableBodyTransformer<R>((ReplayableRequestBody) body));
+            }
+            return observable;
+        }
+
+        //every subscription gets its own transformer, so the first attempt of each one goes to the server
+        private Observable<R> coalesce(final Observable<R> attempts, final ObservableTransformer<R, R> transformer,
+                                       final String endpoint) {
+            return Observable.defer(new Callable<ObservableSource<R>>() {
+                @Override
+                public ObservableSource<R> call() throws Exception {
+                    return attempts
+                            .compose(new CoalescingTransformer<R>(retryCoalescer, endpoint))
+                            .compose(transformer);
+                }
+            });
+        }
+
+        //limits are applied below transformRequest(), so every retry takes its own permit and token
+        private Observable<R> applyLimits(Observable<R> observable, HttpUrl url) {
+            if (concurrencyLimit != null) {
+                observable = observable.compose(
+                        new ConcurrencyLimitTransformer<R>(url.host(), concurrencyLimit.getLimiter(url.host())));
+            }
+            for (RateLimit rateLimit : rateLimits) {
+                if (rateLimit.matches(url)) {
+                    observable = observable.compose(new RateLimitTransformer<R>(url.host(), rateLimit));
+                }
+            }
+            return observable;
+        }
+    }
+
+    private static boolean hasBody(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof POST || annotation instanceof PUT || annotation instanceof PATCH
+                    || (annotation instanceof HTTP && ((HTTP) annotation).hasBody())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class IsRetryable implements DurableTransformer.Retryable {
+        private final RetryPolicy policy;
+
+        IsRetryable(RetryPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public boolean isRetryable(Throwable throwable) throws Exception {
+            return BaseRxCallAdapterFactory.this.isRetryable(policy, throwable);
+        }
+
+        @Override
+        public boolean isRetryable(int httpCode) {
+            return BaseRxCallAdapterFactory.this.isRetryable(policy, httpCode);
+        }
+    }
+
+    private class ToResumableBody implements Function<Response<ResponseBody>, Observable<ResponseBody>> {
+        private final okhttp3.Call.Factory callFactory;
+        private final RetryPolicy policy;
+
+        ToResumableBody(okhttp3.Call.Factory callFactory, RetryPolicy policy) {
+            this.callFactory = callFactory;
+            this.policy = policy;
+        }
+
+        @Override
+        public Observable<ResponseBody> apply(Response<ResponseBody> response) throws Exception {
+            if (!response.isSuccessful()) {
+                return Observable.error(createHttpException(policy, response));
+            }
+            okhttp3.Response raw = response.raw().newBuilder().body(response.body()).build();
+            return Observable.<ResponseBody>just(new ResumableResponseBody(callFactory, raw, maxDownloadResumes));
+        }
+    }
+
+    private class ToBody<R> implements Function<Response<R>, Observable<R>> {
+        private final RetryPolicy policy;
+
+        ToBody(RetryPolicy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public Observable<R> apply(Response<R> response) throws Exception {
+            if (!response.isSuccessful()) {
+                return Observable.error(createHttpException(policy, response));
+            }
+            return Observable.just(response.body());
         }
     }
 
-    protected abstract <T> ObservableTransformer<T, T> transformRequest();
+    /**
+     * Filling the stack trace is the most expensive part of creating an exception, and exceptions
+     * that will be retried are never shown to anyone, so they are created without it.
+     */
+    private HttpException createHttpException(RetryPolicy policy, Response<?> response) {
+        if (policy.allowsStacklessHttpErrors() && isRetryable(policy, response.code())) {
+            return new RetryableHttpException(response);
+        }
+        return new retrofit2.adapter.rxjava2.HttpException(response);
+    }
+
+    /**
+     * When the retries are over, the subscriber gets the same exception as from RxJava2CallAdapterFactory,
+     * also as the cause of {@link RetryQueueFullException} and {@link OfflineQueueFullException}.
+     */
+    private static class WithStackTrace<R> implements Function<Throwable, Observable<R>> {
+
+        @Override
+        public Observable<R> apply(Throwable throwable) throws Exception {
+            return Observable.error(withStackTrace(throwable));
+        }
+
+        private static Throwable withStackTrace(Throwable throwable) {
+            if (throwable instanceof RetryableHttpException) {
+                Response<?> response = ((RetryableHttpException) throwable).response();
+                return new retrofit2.adapter.rxjava2.HttpException(response);
+            }
+            if (!(throwable.getCause() instanceof RetryableHttpException)) {
+                return throwable;
+            }
+            //the cause cannot be changed, so the exception wrapping it is created again
+            Throwable cause = withStackTrace(throwable.getCause());
+            RuntimeException wrapper;
+            if (throwable instanceof RetryQueueFullException) {
+                wrapper = new RetryQueueFullException(
+                        ((RetryQueueFullException) throwable).getMaxPendingRetries(), cause);
+            } else if (throwable instanceof OfflineQueueFullException) {
+                wrapper = new OfflineQueueFullException(
+                        ((OfflineQueueFullException) throwable).getMaxParkedCalls(), cause);
+            } else {
+                return throwable;
+            }
+            wrapper.setStackTrace(throwable.getStackTrace());
+            return wrapper;
+        }
+    }
+
+    /**
+     * @return the policy the calls subscribed now are retried with
+     */
+    protected abstract RetryPolicy getRetryPolicy();
+
+    /**
+     * @param policy   the policy the call is retried with
+     * @param httpCode code of the unsuccessful response
+     * @return {@code true} when the response with this code may be retried
+     */
+    protected abstract boolean isRetryable(RetryPolicy policy, int httpCode);
+
+    /**
+     * @param policy    the policy the call is retried with
+     * @param throwable the error of the call
+     * @return {@code true} when the call, which ended with this error, may be retried
+     */
+    protected abstract boolean isRetryable(RetryPolicy policy, Throwable throwable) throws Exception;
+
+    /**
+     * @param call the call of a single subscription
+     * @return the call sending the attempts of the subscription
+     */
+    protected abstract <R> Call<R> attemptsCall(Call<R> call);
+
+    /**
+     * @param call        the call being adapted
+     * @param returnType  return type of the Retrofit method the call was made with
+     * @param annotations annotations of the Retrofit method the call was made with
+     * @param policy      the policy the subscription is retried with
+     * @return the transformer applied to every call
+     */
+    protected abstract <T> ObservableTransformer<T, T> transformRequest(Call<?> call, Type returnType,
+                                                                        Annotation[] annotations, RetryPolicy policy);
 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.backoff.CallRetries;
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+import com.rzagorski.retrofiterrorhandler.limit.RateLimit;
+import com.rzagorski.retrofiterrorhandler.scheduler.PendingRetries;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryQueueFullException;
+import com.rzagorski.retrofitrx2errorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.tracing.CallTrace;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.HttpException;
+
+/**
+ * Retries the attempts of the calls inside {@code OkHttpClient}, before the response reaches Retrofit,
+ * with the backoff strategies of {@link RxCallAdapter}. Such retry only sends the request again,
+ * without cloning the {@link retrofit2.Call} and subscribing to the whole chain of the call again.
+ * <br>
+ * Attempts failing with an {@link IOException} or with an HTTP code, which a strategy extending
+ * {@link BaseBackoffStrategy} is applicable to, are retried here. The retries share the pending retries,
+ * the health of the hosts and the rate limits with {@link RxErrorHandingFactory}, which leaves
+ * to its own retries only the errors raised after the conversion of the response, e.g. matched by
+ * the predicates of the strategies. Add it to the client as the first interceptor:
+ * <pre>{@code
+ * new OkHttpClient.Builder().addInterceptor(factory.getRetryInterceptor())
+ * }</pre>
+ * The unsuccessful response, which the strategies have no more retries for, gets the {@link #EXHAUSTED_HEADER}.
+ * The response returned without the retry, because the host kept failing or the rate limit or the pending
+ * retries did not allow it, is left for the retries of the factory. The tokens of the rate limits are taken
+ * only for the retries, which the host and the pending retries allowed.
+ * <br>
+ * The waits before the retries and for the tokens block the thread of the client sending the request.
+ * They cannot be cancelled: {@code Call.cancel()} fails the call only, when the retry is sent, and only
+ * the interrupt of the thread ends the wait earlier. When the calls are traced, the attempts and the waits
+ * of the interceptor are recorded as the attempts and the backoff waits of the call.
+ */
+public class RetryInterceptor implements Interceptor {
+    /**
+     * Header of the unsuccessful response, which the interceptor retried, until no strategy had more retries for it.
+     */
+    public static final String EXHAUSTED_HEADER = "X-Retry-Exhausted";
+    /**
+     * The trace of the call sending the request on the thread, set by {@link TracedCall}.
+     */
+    static final ThreadLocal<CallTrace> TRACE = new ThreadLocal<>();
+
+    private final RxErrorHandingFactory factory;
+    private final RxCallAdapter info;
+    private final PendingRetries pendingRetries;
+    private final Map<Throwable, Boolean> exhausted;
+
+    RetryInterceptor(RxErrorHandingFactory factory, RxCallAdapter info, PendingRetries pendingRetries) {
+        this.factory = factory;
+        this.info = info;
+        this.pendingRetries = pendingRetries;
+        this.exhausted = Collections.synchronizedMap(new WeakHashMap<Throwable, Boolean>());
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        //the call keeps the policy, even when it is swapped before the retry
+        RetryPolicy policy = factory.getRetryPolicy();
+        HostHealth health = factory.getHealth(policy, request.url().host());
+        CallTrace trace = TRACE.get();
+        //the attempt is not recorded yet, the call would count it before checking
+        CallRetries<BackoffStrategy> retries = new CallRetries<>(new Attempts(policy.getBackoffStrategies(), false),
+                new Binding(health, trace), health, policy.getMaxConsecutiveFailures() - 1, pendingRetries, null);
+        while (true) {
+            long startTime = System.nanoTime();
+            Response response = null;
+            IOException error = null;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                error = e;
+            }
+            if (error == null && response.isSuccessful()) {
+                return response;
+            }
+            long latency = System.nanoTime() - startTime;
+            if (trace != null) {
+                if (error != null) {
+                    trace.attemptFailed(error);
+                } else {
+                    trace.attemptFailed(response.code(), response.message());
+                }
+            }
+            Outcome outcome = new Outcome();
+            if (error != null) {
+                retries.onError(error, outcome);
+            } else {
+                retries.onResponse(response.code(), response, outcome);
+            }
+            try {
+                outcome.await();
+            } catch (InterruptedException e) {
+                retries.dispose();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the retry");
+            }
+            if (!outcome.retry) {
+                return giveUp(retries, outcome.error, response, error);
+            }
+            //the tokens are taken after the host and the pending retries allowed the retry
+            long tokenTime = reserveTokens(request.url());
+            if (tokenTime < 0) {
+                return passOn(response, error);
+            }
+            if (health != null) {
+                health.record(latency, true);
+            }
+            if (response != null) {
+                response.close();
+            }
+            try {
+                long tokenWait = tokenTime - System.nanoTime();
+                if (tokenWait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(tokenWait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the retry");
+            }
+            if (trace != null) {
+                trace.attemptRetried();
+            }
+        }
+    }
+
+    private Response giveUp(CallRetries<BackoffStrategy> retries, Throwable failure, Response response,
+                            IOException error) throws IOException {
+        if (retries.isExhausted()) {
+            if (error != null) {
+                exhausted.put(error, Boolean.TRUE);
+                throw error;
+            }
+            //the last attempt is recorded by the call, the same as without the interceptor
+            return response.newBuilder().header(EXHAUSTED_HEADER, "true").build();
+        }
+        if (failure == null || failure == error || failure instanceof RetryQueueFullException) {
+            return passOn(response, error);
+        }
+        //the retry action or the wait failed
+        if (response != null) {
+            response.close();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        throw new IOException(failure);
+    }
+
+    //the attempt, which was not retried, is left for the retries of the factory
+    private static Response passOn(Response response, IOException error) throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        return response;
+    }
+
+    /**
+     * @param throwable the error the call ended with
+     * @return {@code true} when the attempts failing with the error were retried by the interceptor already
+     */
+    boolean hasRetried(Throwable throwable) {
+        if (throwable instanceof HttpException) {
+            return hasRetried(((HttpException) throwable).response());
+        }
+        return exhausted.containsKey(throwable);
+    }
+
+    /**
+     * @param response the unsuccessful response the call ended with
+     * @return {@code true} when the attempts ending with the response were retried by the interceptor already
+     */
+    boolean hasRetried(retrofit2.Response<?> response) {
+        return response != null && response.raw().header(EXHAUSTED_HEADER) != null;
+    }
+
+    //returns the time the tokens of all matching rate limits are available at, or -1 when one of them is not
+    private long reserveTokens(HttpUrl url) {
+        long tokenTime = System.nanoTime();
+        long now = tokenTime;
+        for (RateLimit rateLimit : info.getRateLimits()) {
+            if (!rateLimit.matches(url)) {
+                continue;
+            }
+            long waitNanos = rateLimit.getBucket(url.host()).tryReserve(rateLimit.getMaxWaitNanos());
+            if (waitNanos < 0) {
+                return -1;
+            }
+            tokenTime = Math.max(tokenTime, now + waitNanos);
+        }
+        return tokenTime;
+    }
+
+    /**
+     * Waits for the retries of the attempts inside the interceptor. The errors and the responses are passed
+     * to the strategies the same way, as the call passes them.
+     */
+    private static class Binding implements CallRetries.Binding<BackoffStrategy> {
+        private final HostHealth health;
+        private final CallTrace trace;
+
+        Binding(HostHealth health, CallTrace trace) {
+            this.health = health;
+            this.trace = trace;
+        }
+
+        @Override
+        public boolean hasRetried(Object cause) {
+            return false;
+        }
+
+        @Override
+        public void onRetry(BackoffStrategy strategy, Object cause, int retry) throws Exception {
+            if (cause instanceof Throwable) {
+                ((BaseBackoffStrategy) strategy).onRetry((Throwable) cause, retry);
+                return;
+            }
+            Response response = (Response) cause;
+            //the response is closed, when it is retried, or passed on
+            ((BaseBackoffStrategy) strategy).onRetry(retrofit2.Response.error(response.body(), response), retry);
+        }
+
+        @Override
+        public CallRetries.Wait schedule(BackoffStrategy strategy, Object cause, int retry,
+                                         CallRetries.Callback callback) {
+            return ((BaseBackoffStrategy) strategy).awaitRetry(retry, health, trace, callback);
+        }
+
+        @Override
+        public void resume(Runnable retry) {
+            retry.run();
+        }
+    }
+
+    /**
+     * Blocks the thread of the interceptor until {@link CallRetries} decides about the attempt.
+     */
+    private static class Outcome implements CallRetries.Callback {
+        private final CountDownLatch decided = new CountDownLatch(1);
+        private volatile boolean retry;
+        private volatile Throwable error;
+
+        @Override
+        public void retry() {
+            retry = true;
+            decided.countDown();
+        }
+
+        @Override
+        public void giveUp(Throwable error) {
+            this.error = error;
+            decided.countDown();
+        }
+
+        void await() throws InterruptedException {
+            decided.await();
+        }
+    }
+}
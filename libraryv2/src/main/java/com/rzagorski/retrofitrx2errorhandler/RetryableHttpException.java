@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ * {@link HttpException} without the stack trace, created for unsuccessful responses which backoff
+ * strategies will retry. When it reaches the subscriber, it is replaced with a regular exception,
+ * also as the cause of {@code RetryQueueFullException} and {@code OfflineQueueFullException}.
+ * <br>
+ * {@link retrofit2.adapter.rxjava2.HttpException} is final, so this one is used only when
+ * {@link RetryPolicy#allowsStacklessHttpErrors() no strategy can tell them apart}.
+ */
+final class RetryableHttpException extends HttpException {
+    private static final long serialVersionUID = 1L;
+
+    RetryableHttpException(Response<?> response) {
+        super(response);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    //logged by the default retry action the same as the exception of the adapter
+    @Override
+    public String toString() {
+        return retrofit2.adapter.rxjava2.HttpException.class.getName() + ": " + getMessage();
+    }
+}
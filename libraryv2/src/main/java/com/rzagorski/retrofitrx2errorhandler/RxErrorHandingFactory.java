@@ -15,14 +15,43 @@
  */
 package com.rzagorski.retrofitrx2errorhandler;
 
+import com.rzagorski.retrofiterrorhandler.backoff.CallRetries;
+import com.rzagorski.retrofiterrorhandler.config.PolicyFileWatcher;
+import com.rzagorski.retrofiterrorhandler.durable.DurableRequest;
+import com.rzagorski.retrofiterrorhandler.durable.RetryLog;
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+import com.rzagorski.retrofiterrorhandler.scheduler.PendingRetries;
+import com.rzagorski.retrofiterrorhandler.scheduler.Priority;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryScheduler;
+import com.rzagorski.retrofiterrorhandler.tracing.Tracer;
 import com.rzagorski.retrofitrx2errorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.tracing.CallTrace;
 
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.reactivex.Observable;
 import io.reactivex.ObservableSource;
 import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
+import io.reactivex.subjects.AsyncSubject;
+import okhttp3.HttpUrl;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava2.HttpException;
+import retrofit2.adapter.rxjava2.Result;
 
 /**
  * Main class for reacting to errors that were thrown during making a
@@ -32,79 +61,372 @@ import io.reactivex.functions.Function;
  */
 public class RxErrorHandingFactory extends BaseRxCallAdapterFactory {
     RxCallAdapter info;
+    private final AtomicReference<RetryPolicy> retryPolicy;
+    private final PendingRetries pendingRetries;
+    private final Set<String> replaying;
+    private final RetryInterceptor retryInterceptor;
 
     public RxErrorHandingFactory(RxCallAdapter callAdapter) {
-        super();
+        super(callAdapter.getConcurrencyLimit(), callAdapter.getRateLimits(), callAdapter.getMaxDownloadResumes(),
+                callAdapter.getHealthScoreboard(), callAdapter.isHealthScoreboardSet(), callAdapter.getRetryLog(),
+                callAdapter.getOfflineMode(), callAdapter.getRetryCoalescer());
         this.info = callAdapter;
-        for (BackoffStrategy strategy : info.getBackoffStrategies()) {
-            strategy.setLoggingEnabled(info.isLoggingEnabled());
+        this.retryPolicy = new AtomicReference<>(activate(callAdapter.getRetryPolicy()));
+        this.pendingRetries = new PendingRetries(callAdapter.getMaxPendingRetries());
+        this.replaying = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.retryInterceptor = callAdapter.isInterceptorRetries()
+                ? new RetryInterceptor(this, callAdapter, pendingRetries)
+                : null;
+    }
+
+    //the policy copies the strategies extending BaseBackoffStrategy with its logging, others cannot be copied
+    private static RetryPolicy activate(RetryPolicy policy) {
+        for (BackoffStrategy strategy : policy.getBackoffStrategies()) {
+            if (!(strategy instanceof BaseBackoffStrategy)) {
+                strategy.setLoggingEnabled(policy.isLoggingEnabled());
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * @return the policy new subscriptions are retried with
+     */
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy.get();
+    }
+
+    /**
+     * Makes the calls subscribed from now on retry with the policy, without rebuilding Retrofit.
+     * The subscriptions made before keep retrying with the policy they started with.
+     *
+     * @param policy the new policy, built with {@link RetryPolicy.Builder} or {@link RetryPolicy#fromProperties}
+     * @return the policy used until now
+     */
+    public RetryPolicy swapRetryPolicy(RetryPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Retry policy must not be null");
+        }
+        return retryPolicy.getAndSet(activate(policy));
+    }
+
+    /**
+     * Reads the policy from the properties file, in format of {@link RetryPolicy#fromProperties(Properties)},
+     * and swaps it again every time the file is changed. A changed file, which is not valid, is ignored.
+     *
+     * @param file the properties file
+     * @return the watcher, close it to stop watching
+     * @throws IOException              when the file cannot be read or watched
+     * @throws IllegalArgumentException when the file does not describe a valid policy
+     */
+    public PolicyFileWatcher watchRetryPolicy(File file) throws IOException {
+        PolicyFileWatcher watcher = new PolicyFileWatcher(file, new PolicyFileWatcher.Listener() {
+            @Override
+            public void onChanged(Properties properties) {
+                swapRetryPolicy(RetryPolicy.fromProperties(properties));
+            }
+        });
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * Gauge of the retry queue.
+     *
+     * @return number of calls of this factory waiting for a retry right now
+     */
+    public int getPendingRetryCount() {
+        return pendingRetries.getDepth();
+    }
+
+    /**
+     * Returns the interceptor, which retries the attempts failing in the transport with the backoff strategies
+     * of this factory, sharing the pending retries with it. Add it to the client used by Retrofit.
+     *
+     * @return the interceptor
+     * @see RxCallAdapter.Builder#setInterceptorRetries(boolean)
+     */
+    public RetryInterceptor getRetryInterceptor() {
+        if (retryInterceptor == null) {
+            throw new IllegalStateException("Interceptor retries are not enabled");
+        }
+        return retryInterceptor;
+    }
+
+    /**
+     * Sends again the requests of {@link com.rzagorski.retrofiterrorhandler.durable.Durable} calls,
+     * which were left in {@link RxCallAdapter.Builder#setRetryLog(RetryLog) the retry log}, e.g. by the process,
+     * which ended before their retries were finished. Meant to be called once, at startup.
+     * <br>
+     * The requests are sent one by one, in order they were written, and retried by the same backoff strategies
+     * as the calls. A request is removed from the log, when it succeeds or fails with an error, which
+     * is not retried. A request, which is being replayed already, is skipped.
+     *
+     * @param callFactory the factory sending the requests, usually {@link retrofit2.Retrofit#callFactory()}
+     * @return the requests sent successfully
+     */
+    public Observable<DurableRequest> replayDurable(final okhttp3.Call.Factory callFactory) {
+        final RetryLog retryLog = info.getRetryLog();
+        if (retryLog == null) {
+            throw new IllegalStateException("Retry log is not set");
         }
+        return Observable.defer(new Callable<ObservableSource<DurableRequest>>() {
+            @Override
+            public ObservableSource<DurableRequest> call() throws Exception {
+                return Observable.fromIterable(retryLog.getPending());
+            }
+        }).concatMap(new Function<DurableRequest, ObservableSource<DurableRequest>>() {
+            @Override
+            public ObservableSource<DurableRequest> apply(DurableRequest request) throws Exception {
+                if (!replaying.add(request.getKey())) {
+                    return Observable.empty();
+                }
+                return replay(callFactory, retryLog, request);
+            }
+        });
+    }
+
+    private Observable<DurableRequest> replay(final okhttp3.Call.Factory callFactory, final RetryLog retryLog,
+                                              final DurableRequest request) {
+        final RetryPolicy policy = retryPolicy.get();
+        final HostHealth health = getHealth(policy, HttpUrl.parse(request.getUrl()).host());
+        Action release = new Action() {
+            @Override
+            public void run() throws Exception {
+                replaying.remove(request.getKey());
+            }
+        };
+        return Observable.fromCallable(new Callable<DurableRequest>() {
+            @Override
+            public DurableRequest call() throws Exception {
+                okhttp3.Response response = callFactory.newCall(request.toRequest()).execute();
+                if (!response.isSuccessful()) {
+                    //buffered, so the connection is released before the retry
+                    ResponseBody body = response.body();
+                    throw new HttpException(Response.error(ResponseBody.create(body.contentType(), body.bytes()),
+                            response));
+                }
+                response.close();
+                return request;
+            }
+        })
+                .compose(new ObservableTransformer<DurableRequest, DurableRequest>() {
+                    @Override
+                    public ObservableSource<DurableRequest> apply(final Observable<DurableRequest> attempts) {
+                        return Observable.defer(new Callable<ObservableSource<DurableRequest>>() {
+                            @Override
+                            public ObservableSource<DurableRequest> call() throws Exception {
+                                return retry(attempts, false, health, null, policy, null);
+                            }
+                        });
+                    }
+                })
+                .doOnNext(new Consumer<DurableRequest>() {
+                    @Override
+                    public void accept(DurableRequest replayed) throws Exception {
+                        retryLog.remove(replayed.getKey());
+                    }
+                })
+                .onErrorResumeNext(new Function<Throwable, ObservableSource<DurableRequest>>() {
+                    @Override
+                    public ObservableSource<DurableRequest> apply(Throwable throwable) throws Exception {
+                        if (!isRetryable(policy, throwable)) {
+                            retryLog.remove(request.getKey());
+                        }
+                        //the request stays in the log for the next replay
+                        return Observable.empty();
+                    }
+                })
+                .doOnTerminate(release)
+                .doOnDispose(release);
     }
 
-    protected <T> ObservableTransformer<T, T> transformRequest() {
+    //the interceptor finds the trace of the call through the call sending the request
+    @Override
+    protected <R> Call<R> attemptsCall(Call<R> call) {
+        return retryInterceptor != null && info.getTracer() != null ? new TracedCall<>(call) : call;
+    }
+
+    protected <T> ObservableTransformer<T, T> transformRequest(final Call<?> call, final Type returnType,
+                                                               final Annotation[] annotations,
+                                                               final RetryPolicy policy) {
+        final HostHealth health = getHealth(policy, call.request().url().host());
+        final Tracer tracer = info.getTracer();
+        if (tracer == null) {
+            return retry(call, returnType, annotations, health, null, policy);
+        }
         return new ObservableTransformer<T, T>() {
             @Override
-            public ObservableSource<T> apply(Observable<T> request) {
-                return (Observable<T>) request
-                        .compose(returnProperBackStrategy());
+            public ObservableSource<T> apply(final Observable<T> request) {
+                return Observable.defer(new Callable<ObservableSource<T>>() {
+                    @Override
+                    public ObservableSource<T> call() throws Exception {
+                        CallTrace trace = new CallTrace(tracer, call.request(), annotations);
+                        if (call instanceof TracedCall) {
+                            ((TracedCall<?>) call).setTrace(trace);
+                        }
+                        return request
+                                .compose(trace.<T>attempts())
+                                .compose(RxErrorHandingFactory.this.<T>retry(call, returnType, annotations, health,
+                                        trace, policy))
+                                .compose(trace.<T>call());
+                    }
+                });
             }
         };
     }
 
-    private <T> ObservableTransformer<T, T> returnProperBackStrategy() {
+    private <T> ObservableTransformer<T, T> retry(Call<?> call, Type returnType, Annotation[] annotations,
+                                                  final HostHealth health, final CallTrace trace,
+                                                  final RetryPolicy policy) {
+        final RetryScheduler scheduler = info.getRetryScheduler();
+        final Priority priority = scheduler == null ? null : Priority.of(annotations, call.request());
+        final boolean emitsResponse = emitsResponse(returnType);
         return new ObservableTransformer<T, T>() {
             @Override
-            public ObservableSource<T> apply(Observable<T> observable) {
-                return observable.retryWhen(new Function<Observable<? extends Throwable>, Observable<?>>() {
+            public ObservableSource<T> apply(final Observable<T> request) {
+                return Observable.defer(new Callable<ObservableSource<T>>() {
                     @Override
-                    public Observable<?> apply(final Observable<? extends Throwable> error) {
-                        return error
-                                .flatMap(new IsRepeatableError(info.getBackoffStrategies()))
-                                .compose(new PassErrorToBackoffStrategies<T>(info.getBackoffStrategies()));
+                    public ObservableSource<T> call() throws Exception {
+                        RetryScheduler.Ticket ticket = scheduler == null ? null : scheduler.newTicket(priority);
+                        return retry(request, emitsResponse, health, trace, policy, ticket);
                     }
                 });
             }
         };
     }
 
-    private class IsRepeatableError implements Function<Throwable, Observable<? extends Throwable>> {
-        List<BackoffStrategy> backoffStrategyList;
+    /**
+     * Retries a single subscription to the call with {@link CallRetries}.
+     */
+    private <T> Observable<T> retry(Observable<T> request, boolean emitsResponse, HostHealth health,
+                                    CallTrace trace, RetryPolicy policy, RetryScheduler.Ticket ticket) {
+        final BackoffBinding binding = new BackoffBinding(health, trace, retryInterceptor);
+        final CallRetries<BackoffStrategy> retries = new CallRetries<>(
+                new Attempts(policy.getBackoffStrategies(), true), binding, health,
+                policy.getMaxConsecutiveFailures(), pendingRetries, ticket);
+        Action dispose = new Action() {
+            @Override
+            public void run() throws Exception {
+                retries.dispose();
+                binding.dispose();
+            }
+        };
+        //unsuccessful responses are retried on emission, errors thrown by the call still go through retryWhen
+        Observable<T> attempts = emitsResponse ? request.compose(new RetryOnResponse<T>(retries)) : request;
+        return attempts
+                .retryWhen(new RetryOnError(retries))
+                .doOnTerminate(dispose)
+                .doOnDispose(dispose);
+    }
+
+    @Override
+    protected boolean isRetryable(RetryPolicy policy, int httpCode) {
+        return new Attempts(policy.getBackoffStrategies(), true).isRetryable(httpCode);
+    }
+
+    @Override
+    protected boolean isRetryable(RetryPolicy policy, Throwable throwable) throws Exception {
+        return new Attempts(policy.getBackoffStrategies(), true).isRetryable(throwable);
+    }
+
+    /**
+     * Emits {@code true}, when the retry decided by {@link CallRetries} is due, {@code false}, when
+     * the unsuccessful response should be emitted, and passes on the error otherwise.
+     */
+    private static final class Decision implements CallRetries.Callback {
+        private final AsyncSubject<Boolean> outcome = AsyncSubject.create();
 
-        public IsRepeatableError(List<BackoffStrategy> backoffStrategyList) {
-            this.backoffStrategyList = backoffStrategyList;
+        @Override
+        public void retry() {
+            outcome.onNext(Boolean.TRUE);
+            outcome.onComplete();
         }
 
         @Override
-        public Observable<? extends Throwable> apply(Throwable throwable) throws Exception {
-            boolean isRepeatable = false;
-            for (BackoffStrategy strategy : backoffStrategyList) {
-                if (strategy.isApplicable(throwable)) {
-                    isRepeatable = true;
-                }
-            }
-            if (!isRepeatable) {
-                return Observable.error(throwable);
+        public void giveUp(Throwable error) {
+            if (error != null) {
+                outcome.onError(error);
+                return;
             }
-            return Observable.just(throwable);
+            outcome.onNext(Boolean.FALSE);
+            outcome.onComplete();
         }
     }
 
-    private class PassErrorToBackoffStrategies<T> implements ObservableTransformer<Throwable, T> {
-        List<BackoffStrategy> backoffStrategyList;
+    private static class RetryOnError implements Function<Observable<Throwable>, ObservableSource<?>> {
+        private final CallRetries<BackoffStrategy> retries;
 
-        public PassErrorToBackoffStrategies(List<BackoffStrategy> backoffStrategyList) {
-            this.backoffStrategyList = backoffStrategyList;
+        RetryOnError(CallRetries<BackoffStrategy> retries) {
+            this.retries = retries;
         }
 
         @Override
-        public Observable<T> apply(final Observable<Throwable> error) {
-            return Observable.fromIterable(backoffStrategyList)
-                    .flatMap(new Function<BackoffStrategy, Observable<T>>() {
-                        @Override
-                        public Observable<T> apply(BackoffStrategy backoffStrategy) throws Exception {
-                            return (Observable<T>) backoffStrategy.apply(error);
-                        }
-                    });
+        public ObservableSource<?> apply(Observable<Throwable> errors) {
+            return errors.concatMap(new Function<Throwable, ObservableSource<Boolean>>() {
+                @Override
+                public ObservableSource<Boolean> apply(Throwable throwable) {
+                    Decision decision = new Decision();
+                    retries.onError(throwable, decision);
+                    return decision.outcome;
+                }
+            });
+        }
+    }
+
+    /**
+     * Retries {@code Response<T>} and {@code Result<T>} emitted for unsuccessful responses,
+     * by checking their code, without creating exceptions. When no retry is left,
+     * the last response is emitted.
+     */
+    private static class RetryOnResponse<T> implements ObservableTransformer<T, T> {
+        private final CallRetries<BackoffStrategy> retries;
+
+        RetryOnResponse(CallRetries<BackoffStrategy> retries) {
+            this.retries = retries;
+        }
+
+        @Override
+        public ObservableSource<T> apply(final Observable<T> request) {
+            return request.concatMap(new Function<T, ObservableSource<T>>() {
+                @Override
+                public ObservableSource<T> apply(final T emitted) throws Exception {
+                    Response<?> response;
+                    final Throwable error;
+                    if (emitted instanceof Result) {
+                        response = ((Result<?>) emitted).response();
+                        error = ((Result<?>) emitted).error();
+                    } else {
+                        response = (Response<?>) emitted;
+                        error = null;
+                    }
+                    if (response != null && response.isSuccessful()) {
+                        return Observable.just(emitted);
+                    }
+                    Decision decision = new Decision();
+                    if (response != null) {
+                        retries.onResponse(response.code(), emitted, decision);
+                    } else {
+                        retries.onError(error, decision);
+                    }
+                    return decision.outcome
+                            .onErrorResumeNext(new Function<Throwable, ObservableSource<Boolean>>() {
+                                @Override
+                                public ObservableSource<Boolean> apply(Throwable throwable) {
+                                    //the error of the result, which is not retried, is emitted in the result
+                                    return throwable == error ? Observable.just(Boolean.FALSE)
+                                            : Observable.<Boolean>error(throwable);
+                                }
+                            })
+                            .concatMap(new Function<Boolean, ObservableSource<T>>() {
+                                @Override
+                                public ObservableSource<T> apply(Boolean retry) {
+                                    return retry ? RetryOnResponse.this.apply(request) : Observable.just(emitted);
+                                }
+                            });
+                }
+            });
         }
     }
-}
\ No newline at end of file
+}
@@ -15,54 +15,102 @@
  */
 package com.rzagorski.retrofitrx2errorhandler.backoff;
 
+import com.rzagorski.retrofiterrorhandler.backoff.CallRetries;
+import com.rzagorski.retrofiterrorhandler.backoff.RetryAttempts;
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+import com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.BaseRetryIfBehavior;
 import com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.ExclusiveRetryIfBehaviour;
 import com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.InclusiveRetryIfBehaviour;
+import com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate;
 import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.AddReaction;
-import com.rzagorski.retrofitrx2errorhandler.utils.ObservableUtils;
-import com.rzagorski.retrofitrx2errorhandler.utils.Pair;
+import com.rzagorski.retrofitrx2errorhandler.tracing.CallTrace;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import io.reactivex.Observable;
 import io.reactivex.ObservableSource;
 import io.reactivex.annotations.NonNull;
 import io.reactivex.functions.BiConsumer;
-import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
-import io.reactivex.functions.Predicate;
+import io.reactivex.observers.DisposableObserver;
+import io.reactivex.subjects.AsyncSubject;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava2.HttpException;
 
 /**
  * Created by Robert Zagórski on 2016-09-28.
  */
-public abstract class BaseBackoffStrategy implements BackoffStrategy {
-    private boolean isExclusive;
-    private List<Class<? extends Throwable>> throwableList;
-    private Function<Throwable, Boolean> retryIfFunc;
-    private BiConsumer<Throwable, Integer> doOnRetryAction;
-    private boolean isLoggingEnabled;
-    private Observable backupObservable;
+public abstract class BaseBackoffStrategy implements BackoffStrategy, Cloneable {
+    private final boolean isExclusive;
+    private final List<Class<? extends Throwable>> throwableList;
+    private final Function<Throwable, Boolean> retryIfFunc;
+    private final BiConsumer<Throwable, Integer> doOnRetryAction;
+    private volatile boolean isLoggingEnabled;
+    private final Observable backupObservable;
+    private final boolean needsAdapterHttpException;
 
+    /**
+     * The strategy copies the lists of the builder, so it can be shared between threads and subscriptions,
+     * even when the builder is changed after the strategy is built.
+     */
     protected BaseBackoffStrategy(Builder builder) {
+        List<Class<? extends Throwable>> throwables = builder.throwableList == null
+                ? new ArrayList<Class<? extends Throwable>>()
+                : new ArrayList<>(builder.throwableList);
+        List<Integer> httpCodes = builder.httpCodeList == null
+                ? new ArrayList<Integer>()
+                : new ArrayList<>(builder.httpCodeList);
         this.isExclusive = builder.isExclusive;
-        this.throwableList = builder.throwableList;
-        this.retryIfFunc = builder.retryIfFunction;
-        if (this.retryIfFunc == null) {
-            if (isExclusive) {
-                this.retryIfFunc = new ExclusiveRetryIfBehaviour(builder.throwableList, builder.httpCodeList);
-            } else {
-                this.retryIfFunc = new InclusiveRetryIfBehaviour(builder.throwableList, builder.httpCodeList);
-            }
-        }
-        this.doOnRetryAction = builder.doOnRetryAction;
-        if (this.doOnRetryAction == null) {
-            this.doOnRetryAction = new DefaultDoOnRetryAction();
+        this.throwableList = Collections.unmodifiableList(throwables);
+        if (builder.retryIfFunction != null) {
+            this.retryIfFunc = builder.retryIfFunction;
+        } else if (isExclusive) {
+            this.retryIfFunc = new ExclusiveRetryIfBehaviour(throwables, httpCodes, builder.retryPredicate);
+        } else {
+            this.retryIfFunc = new InclusiveRetryIfBehaviour(throwables, httpCodes, builder.retryPredicate);
         }
+        this.doOnRetryAction = builder.doOnRetryAction == null
+                ? new DefaultDoOnRetryAction()
+                : builder.doOnRetryAction;
         this.backupObservable = builder.observableToExecuteAfterError;
+        this.needsAdapterHttpException = builder.retryIfFunction != null || builder.retryPredicate != null
+                || builder.doOnRetryAction != null
+                || throwables.contains(HttpException.class);
     }
 
     protected abstract Observable<Long> getWaitTime(int retry);
 
+    /**
+     * Returns the wait before the retry. Strategies can override it to take the health of the host into account,
+     * e.g. to wait longer, when other calls to the host fail too.
+     *
+     * @param retry  number of the retry, starting from 1
+     * @param health health of the host the call is made to, {@code null} when unknown
+     * @return observable emitting, when the retry should be made
+     */
+    protected Observable<Long> getWaitTime(int retry, HostHealth health) {
+        return getWaitTime(retry);
+    }
+
+    /**
+     * @return {@code true} when the strategy overrides {@link #getWaitTime(int, HostHealth)}, so the health
+     * of the host must be recorded for its calls
+     */
+    public boolean usesHostHealth() {
+        for (Class<?> type = getClass(); type != BaseBackoffStrategy.class; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod("getWaitTime", int.class, HostHealth.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                //not overridden by this class, its superclass is checked next
+            }
+        }
+        return false;
+    }
+
     protected abstract int getMaxRetries();
 
     public Function<Throwable, Boolean> getRetryIfFunction() {
@@ -74,6 +122,71 @@ public abstract class BaseBackoffStrategy implements BackoffStrategy {
         return retryIfFunc.apply(throwable);
     }
 
+    /**
+     * Defines, whether the unsuccessful response emitted as {@code Response<T>} or {@code Result<T>}
+     * should be retried by this strategy. Strategies with {@link Optional#setRetryFunction(Function)}
+     * see only thrown errors and never retry such responses.
+     *
+     * @param httpCode code of the response
+     * @return {@code true} when the response should be retried
+     */
+    public boolean isApplicable(int httpCode) {
+        return retryIfFunc instanceof BaseRetryIfBehavior && ((BaseRetryIfBehavior) retryIfFunc).isRetryable(httpCode);
+    }
+
+    /**
+     * @return {@code true} when the errors are passed to the code of the application (retry function,
+     * retry predicate or retry action) or matched against {@link retrofit2.adapter.rxjava2.HttpException} class,
+     * so the strategy must get the same exception, as thrown by {@code RxJava2CallAdapterFactory}
+     */
+    public boolean needsAdapterHttpException() {
+        return needsAdapterHttpException;
+    }
+
+    /**
+     * @param retry number of the retry, starting from 1
+     * @return {@code true} when the strategy allows the retry
+     */
+    public final boolean canRetry(int retry) {
+        return retry <= getMaxRetries();
+    }
+
+    /**
+     * Returns the wait before the retry, preceded by the backup observable, if set.
+     *
+     * @param retry  number of the retry, starting from 1
+     * @param health health of the host the call is made to, {@code null} when unknown
+     * @return observable emitting, when the retry should be made
+     */
+    public Observable<?> getRetryDelay(int retry, HostHealth health) {
+        return getRetryDelay(retry, health, null);
+    }
+
+    /**
+     * The same as {@link #getRetryDelay(int, HostHealth)}, with the backup observable and the wait
+     * put in the spans of the call.
+     *
+     * @param retry  number of the retry, starting from 1
+     * @param health health of the host the call is made to, {@code null} when unknown
+     * @param trace  trace of the call, {@code null} when the call is not traced
+     * @return observable emitting, when the retry should be made
+     */
+    public Observable<?> getRetryDelay(int retry, HostHealth health, CallTrace trace) {
+        Observable<Long> waitTime = traceWait(getWaitTime(retry, health), retry, trace);
+        if (backupObservable == null) {
+            return waitTime;
+        }
+        return traceBackup((Observable<Object>) backupObservable, trace).ignoreElements().andThen(waitTime);
+    }
+
+    private Observable<Long> traceWait(Observable<Long> waitTime, int retry, CallTrace trace) {
+        return trace == null ? waitTime : waitTime.compose(trace.<Long>backoff(this, retry));
+    }
+
+    private Observable<Object> traceBackup(Observable<Object> backup, CallTrace trace) {
+        return trace == null ? backup : backup.compose(trace.backup(this));
+    }
+
     public BiConsumer<Throwable, Integer> doOnRetry(Throwable throwable, Integer retry) {
         return doOnRetryAction;
     }
@@ -83,11 +196,79 @@ public abstract class BaseBackoffStrategy implements BackoffStrategy {
         isLoggingEnabled = logging;
     }
 
+    /**
+     * @return {@code true} when the strategy logs the errors it checks, the flag is read by every subscription
+     */
+    public boolean isLoggingEnabled() {
+        return isLoggingEnabled;
+    }
+
+    /**
+     * Returns the strategy logging as requested, without changing this one, which subscriptions retried
+     * with another policy can still use. The strategies are immutable apart from the flag, so the copy
+     * shares everything else with this one.
+     *
+     * @param logging {@code true} to log the errors the strategy checks
+     * @return this strategy, when it logs as requested already, otherwise its copy
+     */
+    public BaseBackoffStrategy withLoggingEnabled(boolean logging) {
+        if (isLoggingEnabled == logging) {
+            return this;
+        }
+        try {
+            BaseBackoffStrategy copy = (BaseBackoffStrategy) clone();
+            copy.isLoggingEnabled = logging;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public Observable getBackupObservable() {
         return backupObservable;
     }
 
+    /**
+     * Logs the match and runs the action set with {@code setOnRetryAction(...)}. Called before every retry
+     * made with this strategy, whether the call failed with an error or emitted an unsuccessful response.
+     *
+     * @param throwable the error the call failed with, {@code HttpException} for an unsuccessful response
+     * @param retry     number of the retry, starting from 1
+     */
+    public void onRetry(Throwable throwable, int retry) throws Exception {
+        logMatch(throwable.getClass(), retry);
+        callAction(throwable, retry);
+    }
+
+    /**
+     * The same as {@link #onRetry(Throwable, int)}, for the unsuccessful response. The {@code HttpException}
+     * is created only for the action set with {@code setOnRetryAction(...)}, the default action logs
+     * the response without it.
+     *
+     * @param response the unsuccessful response
+     * @param retry    number of the retry, starting from 1
+     */
+    public void onRetry(Response<?> response, int retry) throws Exception {
+        if (doOnRetryAction.getClass() != DefaultDoOnRetryAction.class) {
+            onRetry(new HttpException(response), retry);
+            return;
+        }
+        logMatch(HttpException.class, retry);
+        ((DefaultDoOnRetryAction) doOnRetryAction).accept(response, retry);
+    }
+
+    private void logMatch(Class<?> matched, int retry) {
+        if (isLoggingEnabled) {
+            System.out.println("Found match: "
+                    + matched.getSimpleName()
+                    + " for strategy: "
+                    + getClass().getSimpleName()
+                    + " for "
+                    + retry + " retry");
+        }
+    }
+
     private void callAction(Throwable throwable, Integer retry) throws Exception {
         BiConsumer<Throwable, Integer> action = doOnRetry(throwable, retry);
         if (action == null) {
@@ -98,78 +279,165 @@ public abstract class BaseBackoffStrategy implements BackoffStrategy {
 
     @Override
     public Observable<?> apply(@NonNull Observable<? extends Throwable> attempts) throws Exception {
-        return attempts
-                .filter(new Predicate<Throwable>() {
-                    @Override
-                    public boolean test(@NonNull Throwable throwable) throws Exception {
-                        if (isLoggingEnabled) {
-                            System.out.println("Checking against: "
-                                    + throwable.getClass().getSimpleName()
-                                    + " for strategy: "
-                                    + BaseBackoffStrategy.this.getClass().getSimpleName());
-                        }
-                        return getRetryIfFunction().apply(throwable);
-                    }
-                })
-                .flatMap(new Function<Throwable, ObservableSource<? extends Throwable>>() {
-                    @Override
-                    public Observable<? extends Throwable> apply(final Throwable throwable) throws Exception {
-                        if (backupObservable == null) {
-                            return Observable.just(throwable);
-                        }
-                        if (isLoggingEnabled) {
-                            System.out.println("Invoking backup observable");
-                        }
-                        return ((Observable<Object>) backupObservable)
-                                .switchIfEmpty(Observable.just(throwable))
-                                .flatMap(new Function<Object, Observable<? extends Throwable>>() {
-                                    @Override
-                                    public Observable<? extends Throwable> apply(Object o) {
-                                        return Observable.just(throwable);
-                                    }
-                                });
-                    }
-                })
-                .zipWith(Observable.range(1, getMaxRetries() + 1),
-                        new ObservableUtils.RxPair<Throwable, Integer>())
-                .doOnNext(new Consumer<Pair<Throwable, Integer>>() {
-                    @Override
-                    public void accept(Pair<Throwable, Integer> ti) throws Exception {
-                        if (isLoggingEnabled) {
-                            System.out.println("Found match: "
-                                    + ti.first.getClass().getSimpleName()
-                                    + " for strategy: "
-                                    + BaseBackoffStrategy.this.getClass().getSimpleName()
-                                    + " for "
-                                    + ti.second + " retry");
-                        }
-                        callAction(ti.first, ti.second);
-                    }
-                })
-                .flatMap(new Function<Pair<Throwable, Integer>, ObservableSource<?>>() {
-                    @Override
-                    public ObservableSource<?> apply(Pair<Throwable, Integer> ti) {
-                        if (ti.second <= getMaxRetries()) {
-                            return getWaitTime(ti.second);
-                        } else {
-                            return Observable.error(ti.first);
-                        }
-                    }
-                })
-                .doOnError(new Consumer<Throwable>() {
+        return apply(attempts, null);
+    }
+
+    /**
+     * The same as {@link #apply(Observable)}, with the health of the host passed to
+     * {@link #getWaitTime(int, HostHealth)}.
+     *
+     * @param attempts errors of the call
+     * @param health   health of the host the call is made to, {@code null} when unknown
+     * @return observable emitting, when the retry should be made
+     */
+    public Observable<?> apply(@NonNull Observable<? extends Throwable> attempts, final HostHealth health)
+            throws Exception {
+        return apply(attempts, health, null);
+    }
+
+    /**
+     * The same as {@link #apply(Observable, HostHealth)}, with the backup observable and every wait
+     * put in the spans of the call. The retries are counted by {@link CallRetries}, the same as for the calls
+     * of {@code RxErrorHandingFactory}, and the errors the strategy is not applicable to are passed on.
+     *
+     * @param attempts errors of the call
+     * @param health   health of the host the call is made to, {@code null} when unknown
+     * @param trace    trace of the call, {@code null} when the call is not traced
+     * @return observable emitting, when the retry should be made
+     */
+    public Observable<?> apply(@NonNull final Observable<? extends Throwable> attempts, final HostHealth health,
+                               final CallTrace trace) throws Exception {
+        return Observable.defer(new Callable<ObservableSource<Boolean>>() {
+            @Override
+            public ObservableSource<Boolean> call() throws Exception {
+                final CallRetries<BaseBackoffStrategy> retries = new CallRetries<>(
+                        new Attempts(BaseBackoffStrategy.this), new Binding(health, trace), null, 0, null, null);
+                return attempts.concatMap(new Function<Throwable, ObservableSource<Boolean>>() {
                     @Override
-                    public void accept(Throwable throwable) {
-                        if (isLoggingEnabled) {
-                            throwable.printStackTrace();
-                        }
+                    public ObservableSource<Boolean> apply(Throwable throwable) {
+                        final AsyncSubject<Boolean> due = AsyncSubject.create();
+                        retries.onError(throwable, new CallRetries.Callback() {
+                            @Override
+                            public void retry() {
+                                due.onNext(Boolean.TRUE);
+                                due.onComplete();
+                            }
+
+                            @Override
+                            public void giveUp(Throwable error) {
+                                due.onError(error);
+                            }
+                        });
+                        return due;
                     }
                 });
+            }
+        });
+    }
+
+    /**
+     * Starts the wait before the retry decided by {@link CallRetries}, preceded by the backup observable, if set.
+     *
+     * @param retry    number of the retry, starting from 1
+     * @param health   health of the host the call is made to, {@code null} when unknown
+     * @param trace    trace of the call, {@code null} when the call is not traced
+     * @param callback told, when the retry should be made
+     * @return the wait
+     */
+    public CallRetries.Wait awaitRetry(int retry, HostHealth health, CallTrace trace, CallRetries.Callback callback) {
+        Delay delay = new Delay(callback);
+        getRetryDelay(retry, health, trace).subscribe(delay);
+        return delay;
+    }
+
+    /**
+     * The wait, which is over with the first signal of the delay.
+     */
+    private static class Delay extends DisposableObserver<Object> implements CallRetries.Wait {
+        private final CallRetries.Callback callback;
+
+        Delay(CallRetries.Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onNext(Object signal) {
+            dispose();
+            callback.retry();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            callback.giveUp(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            callback.retry();
+        }
+
+        @Override
+        public void cancel() {
+            dispose();
+        }
+    }
+
+    /**
+     * Retries of the strategy used on its own, in {@link #apply(Observable, HostHealth, CallTrace)}.
+     */
+    private static class Attempts extends RetryAttempts<BaseBackoffStrategy, Exception> {
+
+        Attempts(BaseBackoffStrategy strategy) {
+            super(Collections.singletonList(strategy));
+        }
+
+        @Override
+        protected boolean canRetry(BaseBackoffStrategy strategy, int retry) {
+            return strategy.canRetry(retry);
+        }
+
+        @Override
+        protected boolean isApplicable(BaseBackoffStrategy strategy, Throwable error) throws Exception {
+            return strategy.isApplicable(error);
+        }
+    }
+
+    private static class Binding implements CallRetries.Binding<BaseBackoffStrategy> {
+        private final HostHealth health;
+        private final CallTrace trace;
+
+        Binding(HostHealth health, CallTrace trace) {
+            this.health = health;
+            this.trace = trace;
+        }
+
+        @Override
+        public boolean hasRetried(Object cause) {
+            return false;
+        }
+
+        @Override
+        public void onRetry(BaseBackoffStrategy strategy, Object cause, int retry) throws Exception {
+            strategy.onRetry((Throwable) cause, retry);
+        }
+
+        @Override
+        public CallRetries.Wait schedule(BaseBackoffStrategy strategy, Object cause, int retry,
+                                         CallRetries.Callback callback) {
+            return strategy.awaitRetry(retry, health, trace, callback);
+        }
+
+        @Override
+        public void resume(Runnable retry) {
+            retry.run();
+        }
     }
 
     public static class Builder implements Optional, AddReaction<Builder> {
         private boolean isExclusive = false;
         private List<Class<? extends Throwable>> throwableList;
         private List<Integer> httpCodeList;
+        private RetryPredicate retryPredicate;
         private Function<Throwable, Boolean> retryIfFunction;
         private BiConsumer<Throwable, Integer> doOnRetryAction;
         private Observable<?> observableToExecuteAfterError;
@@ -209,6 +477,12 @@ public abstract class BaseBackoffStrategy implements BackoffStrategy {
             return this;
         }
 
+        @Override
+        public Builder addRetryPredicate(RetryPredicate predicate) {
+            this.retryPredicate = retryPredicate == null ? predicate : retryPredicate.or(predicate);
+            return this;
+        }
+
         @Override
         public Builder addObservable(Observable<?> observable) {
             this.observableToExecuteAfterError = observable;
@@ -16,6 +16,8 @@
 package com.rzagorski.retrofitrx2errorhandler.backoff;
 
 import io.reactivex.functions.BiConsumer;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava2.HttpException;
 
 /**
  * Created by Robert Zagórski on 2016-10-06.
@@ -26,4 +28,15 @@ public class DefaultDoOnRetryAction implements BiConsumer<Throwable, Integer> {
     public void accept(Throwable throwable, Integer retry) throws Exception {
         System.out.println(throwable + " occurred on " + retry + " retry");
     }
+
+    /**
+     * Logs the unsuccessful response the same as its {@link HttpException}, without creating it.
+     *
+     * @param response the unsuccessful response
+     * @param retry    number of the retry, starting from 1
+     */
+    public void accept(Response<?> response, Integer retry) {
+        System.out.println(HttpException.class.getName() + ": HTTP " + response.code() + " " + response.message()
+                + " occurred on " + retry + " retry");
+    }
 }
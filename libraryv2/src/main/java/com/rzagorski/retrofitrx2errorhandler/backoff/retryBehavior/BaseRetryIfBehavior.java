@@ -15,10 +15,13 @@
  */
 package com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior;
 
+import com.rzagorski.retrofiterrorhandler.backoff.RetryMatcher;
+
 import java.util.ArrayList;
 import java.util.List;
 
 import io.reactivex.functions.Function;
+import retrofit2.HttpException;
 
 /**
  * <br>
@@ -27,9 +30,52 @@ import io.reactivex.functions.Function;
 public abstract class BaseRetryIfBehavior implements Function<Throwable, Boolean> {
     protected List<Class<? extends Throwable>> throwableList = new ArrayList<>();
     protected List<Integer> httpCodesList = new ArrayList<>();
+    protected RetryPredicate retryPredicate;
+    protected final RetryMatcher matcher;
 
     public BaseRetryIfBehavior(List<Class<? extends Throwable>> throwableList, List<Integer> httpCodesList) {
+        this(throwableList, httpCodesList, null);
+    }
+
+    public BaseRetryIfBehavior(List<Class<? extends Throwable>> throwableList, List<Integer> httpCodesList,
+                               RetryPredicate retryPredicate) {
         this.throwableList = throwableList;
         this.httpCodesList = httpCodesList;
+        this.retryPredicate = retryPredicate;
+        this.matcher = new RetryMatcher(throwableList, httpCodesList, HttpException.class);
+    }
+
+    /**
+     * Decides about the retry of an unsuccessful response emitted as {@code Response<T>}
+     * or {@code Result<T>}, the same as if it was thrown as {@code HttpException}.
+     *
+     * @param httpCode code of the response
+     * @return {@code true} when the response should be retried
+     */
+    public boolean isRetryable(int httpCode) {
+        return false;
+    }
+
+    protected boolean containsHttpCode(int httpCode) {
+        return matcher.containsHttpCode(httpCode);
+    }
+
+    protected boolean checkPredicate(Throwable throwable) throws Exception {
+        return retryPredicate != null && retryPredicate.test(throwable);
+    }
+
+    protected boolean containsHttpException() {
+        return matcher.containsHttpException();
+    }
+
+    /**
+     * @param throwable the error of the call
+     * @return {@code true} when the code of the HTTP error or the class of the error was set on the strategy
+     */
+    protected boolean matches(Throwable throwable) {
+        int httpCode = throwable instanceof HttpException
+                ? ((HttpException) throwable).code()
+                : RetryMatcher.NO_HTTP_CODE;
+        return matcher.matches(throwable, httpCode);
     }
 }
@@ -15,7 +15,10 @@
  */
 package com.rzagorski.retrofitrx2errorhandler.backoff.strategies;
 
+import com.rzagorski.retrofiterrorhandler.backoff.DelayFunction;
+import com.rzagorski.retrofiterrorhandler.backoff.ExponentialDelay;
 import com.rzagorski.retrofitrx2errorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -37,12 +40,12 @@ import io.reactivex.functions.Function;
  */
 public class Exponential extends BaseBackoffStrategy {
     private final int maxRetries;
-    private final int base;
+    private final DelayFunction delay;
 
     private Exponential(Builder builder) {
         super(builder.baseBuilder);
         this.maxRetries = builder.maxRetries;
-        this.base = builder.base;
+        this.delay = new ExponentialDelay(builder.base, TimeUnit.SECONDS);
     }
 
     public static AddReaction<Builder> init() {
@@ -51,7 +54,7 @@ public class Exponential extends BaseBackoffStrategy {
 
     @Override
     protected Observable<Long> getWaitTime(int retry) {
-        return Observable.timer((long) Math.pow(base, retry), TimeUnit.SECONDS);
+        return Observable.timer(delay.getDelayMillis(retry), TimeUnit.MILLISECONDS);
     }
 
     protected int getMaxRetries() {
@@ -110,6 +113,12 @@ public class Exponential extends BaseBackoffStrategy {
             return this;
         }
 
+        @Override
+        public Builder addRetryPredicate(RetryPredicate predicate) {
+            baseBuilder.addRetryPredicate(predicate);
+            return this;
+        }
+
         @Override
         public Builder addObservable(Observable<?> observable) {
             baseBuilder.addObservable(observable);
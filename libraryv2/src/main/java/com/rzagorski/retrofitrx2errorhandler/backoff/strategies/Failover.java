@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.backoff.strategies;
+
+import com.rzagorski.retrofiterrorhandler.failover.FailoverInterceptor;
+import com.rzagorski.retrofiterrorhandler.failover.ReplicaSet;
+import com.rzagorski.retrofitrx2errorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.functions.BiConsumer;
+import io.reactivex.functions.Function;
+
+/**
+ * Failover strategy. Retries calls that could not reach the host, which
+ * {@link FailoverInterceptor} sends to another replica of the {@link ReplicaSet}.
+ * <br>
+ * The retry is made immediately, when any replica can be used. When all of them are ejected,
+ * the retry waits for the ejection time, so the replicas can be probed.
+ * <br>
+ * Connection failures are retried by default, other {@code Throwables} and http codes can be added.
+ * By default the number of retries equals the number of replicas.
+ * <br>
+ * Only connection failures eject the replica. Other errors, e.g. timeouts, and http codes are retried
+ * on the same replica immediately, so retry them with another strategy, which waits between the retries.
+ */
+public class Failover extends BaseBackoffStrategy {
+    private final ReplicaSet replicaSet;
+    private final int maxRetries;
+
+    private Failover(Builder builder) {
+        super(builder.baseBuilder);
+        this.replicaSet = builder.replicaSet;
+        this.maxRetries = builder.maxRetries;
+    }
+
+    public static Builder init(ReplicaSet replicaSet) {
+        return new Builder(replicaSet);
+    }
+
+    @Override
+    protected Observable<Long> getWaitTime(int retry) {
+        if (replicaSet.hasAvailable()) {
+            return Observable.just(0L);
+        }
+        return Observable.timer(replicaSet.getEjectionTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    protected int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public static class Builder implements AddReaction<Builder>, Optional {
+        private BaseBackoffStrategy.Builder baseBuilder;
+        private final ReplicaSet replicaSet;
+        private int maxRetries;
+
+        private Builder(ReplicaSet replicaSet) {
+            this.replicaSet = replicaSet;
+            this.maxRetries = replicaSet.getReplicas().size();
+            baseBuilder = new BaseBackoffStrategy.Builder()
+                    .addThrowable(ConnectException.class)
+                    .addThrowable(NoRouteToHostException.class)
+                    .addThrowable(UnknownHostException.class);
+        }
+
+        @Override
+        public Builder setOnRetryAction(BiConsumer<Throwable, Integer> onRetryAction) {
+            baseBuilder.setOnRetryAction(onRetryAction);
+            return this;
+        }
+
+        @Override
+        public Builder setRetryFunction(Function<Throwable, Boolean> retryIf) {
+            baseBuilder.setRetryFunction(retryIf);
+            return this;
+        }
+
+        @Override
+        public Builder exclusive() {
+            baseBuilder.exclusive();
+            return this;
+        }
+
+        @Override
+        public Builder addThrowable(Class<? extends Throwable> throwableForBackoff) {
+            baseBuilder.addThrowable(throwableForBackoff);
+            return this;
+        }
+
+        @Override
+        public Builder setThrowable(List<Class<? extends Throwable>> throwableForBackoffList) {
+            baseBuilder.setThrowable(throwableForBackoffList);
+            return this;
+        }
+
+        @Override
+        public Builder setHttpCodeList(List<Integer> codes) {
+            baseBuilder.setHttpCodeList(codes);
+            return this;
+        }
+
+        @Override
+        public Builder addHttpCode(int code) {
+            baseBuilder.addHttpCode(code);
+            return this;
+        }
+
+        @Override
+        public Builder addRetryPredicate(RetryPredicate predicate) {
+            baseBuilder.addRetryPredicate(predicate);
+            return this;
+        }
+
+        @Override
+        public Builder addObservable(Observable<?> observable) {
+            baseBuilder.addObservable(observable);
+            return this;
+        }
+
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Failover build() {
+            return new Failover(this);
+        }
+    }
+
+    public interface Optional extends BaseBackoffStrategy.Optional {
+
+        /**
+         * Sets the maximum number of retries of original request.
+         *
+         * @param maxRetries {@link java.lang.Integer Integer} indicating maximum number of retries.
+         * @return the Builder to add more parameters
+         */
+        public Builder setMaxRetries(int maxRetries);
+
+        /**
+         * Builds the Backoff strategy taking previously set parameters.
+         *
+         * @return backoff strategy of type {@link com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Failover}
+         */
+        public Failover build();
+    }
+}
@@ -16,6 +16,7 @@
 package com.rzagorski.retrofitrx2errorhandler.backoff.strategies;
 
 import com.rzagorski.retrofitrx2errorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate;
 
 import java.util.List;
 
@@ -88,6 +89,12 @@ public class Simple extends BaseBackoffStrategy {
             return this;
         }
 
+        @Override
+        public Builder addRetryPredicate(RetryPredicate predicate) {
+            baseBuilder.addRetryPredicate(predicate);
+            return this;
+        }
+
         @Override
         public Builder addObservable(Observable<?> observable) {
             baseBuilder.addObservable(observable);
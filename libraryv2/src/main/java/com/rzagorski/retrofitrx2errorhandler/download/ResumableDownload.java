@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.download;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import okhttp3.ResponseBody;
+import retrofit2.http.Streaming;
+
+/**
+ * Recognizes Retrofit methods, which download with {@link ResumableResponseBody}.
+ */
+public final class ResumableDownload {
+
+    private ResumableDownload() {
+    }
+
+    /**
+     * @param returnType  return type of the Retrofit method
+     * @param annotations annotations of the Retrofit method
+     * @return {@code true} for methods annotated with {@link Streaming} and returning {@code ResponseBody}
+     * wrapped in a single reactive type, e.g. {@code Observable<ResponseBody>}
+     */
+    public static boolean isResumable(Type returnType, Annotation[] annotations) {
+        if (!(returnType instanceof ParameterizedType)) {
+            return false;
+        }
+        Type[] arguments = ((ParameterizedType) returnType).getActualTypeArguments();
+        if (arguments.length != 1 || arguments[0] != ResponseBody.class) {
+            return false;
+        }
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Streaming) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
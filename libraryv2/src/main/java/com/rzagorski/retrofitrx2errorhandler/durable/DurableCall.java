@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.durable;
+
+import com.rzagorski.retrofiterrorhandler.durable.DurableRequest;
+
+import java.io.IOException;
+
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Converter;
+import retrofit2.Response;
+
+/**
+ * The call of a {@link com.rzagorski.retrofiterrorhandler.durable.Durable} method, which sends its request
+ * with the idempotency key from the first attempt.
+ * <br>
+ * The key is minted, when the call is created, unless the request has one already, and is kept by the clones
+ * of the call, so all its attempts and subscriptions carry the same key as its replays. The request is sent
+ * by the call factory of Retrofit and the body is converted as Retrofit does it.
+ */
+public final class DurableCall<T> implements Call<T> {
+    private final Request request;
+    private final okhttp3.Call.Factory callFactory;
+    private final Converter<ResponseBody, T> converter;
+    private final okhttp3.Call rawCall;
+
+    /**
+     * @param call        the call created by Retrofit
+     * @param callFactory the factory sending the request, {@link retrofit2.Retrofit#callFactory()}
+     * @param converter   the converter of the response body
+     */
+    public DurableCall(Call<T> call, okhttp3.Call.Factory callFactory, Converter<ResponseBody, T> converter) {
+        this(DurableRequest.withIdempotencyKey(call.request()), callFactory, converter);
+    }
+
+    private DurableCall(Request request, okhttp3.Call.Factory callFactory, Converter<ResponseBody, T> converter) {
+        this.request = request;
+        this.callFactory = callFactory;
+        this.converter = converter;
+        this.rawCall = callFactory.newCall(request);
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        return parse(rawCall.execute());
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        rawCall.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(okhttp3.Call call, IOException e) {
+                callback.onFailure(DurableCall.this, e);
+            }
+
+            @Override
+            public void onResponse(okhttp3.Call call, okhttp3.Response rawResponse) {
+                Response<T> response;
+                try {
+                    response = parse(rawResponse);
+                } catch (Throwable t) {
+                    callback.onFailure(DurableCall.this, t);
+                    return;
+                }
+                callback.onResponse(DurableCall.this, response);
+            }
+        });
+    }
+
+    private Response<T> parse(okhttp3.Response rawResponse) throws IOException {
+        ResponseBody body = rawResponse.body();
+        int code = rawResponse.code();
+        if (code < 200 || code >= 300) {
+            //buffered, so the connection is released
+            return Response.error(ResponseBody.create(body.contentType(), body.bytes()), rawResponse);
+        }
+        if (code == 204 || code == 205) {
+            body.close();
+            return Response.success(null, rawResponse);
+        }
+        try {
+            return Response.success(converter.convert(body), rawResponse);
+        } catch (IOException | RuntimeException e) {
+            body.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return rawCall.isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+        rawCall.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return rawCall.isCanceled();
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new DurableCall<>(request, callFactory, converter);
+    }
+
+    @Override
+    public Request request() {
+        return request;
+    }
+}
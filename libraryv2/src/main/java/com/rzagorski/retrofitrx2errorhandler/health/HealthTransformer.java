@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.health;
+
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava2.Result;
+
+/**
+ * Records the time and result of every subscription to the call in {@link HostHealth},
+ * so every retry made by backoff strategies is recorded as a separate attempt.
+ * <br>
+ * Network errors, HTTP 5xx and 429 codes count as failures, also when the response is emitted
+ * as {@code Response<T>} or {@code Result<T>}. Disposed attempts are not recorded.
+ */
+public class HealthTransformer<T> implements ObservableTransformer<T, T> {
+    private final HostHealth health;
+
+    public HealthTransformer(HostHealth health) {
+        this.health = health;
+    }
+
+    @Override
+    public ObservableSource<T> apply(final Observable<T> upstream) {
+        return Observable.defer(new Callable<ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> call() {
+                final Attempt attempt = new Attempt(health);
+                return upstream
+                        .doOnNext(attempt)
+                        .doOnError(new Consumer<Throwable>() {
+                            @Override
+                            public void accept(Throwable throwable) {
+                                attempt.finish(isFailure(throwable));
+                            }
+                        })
+                        .doOnComplete(attempt);
+            }
+        });
+    }
+
+    static boolean isFailure(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return true;
+        }
+        return throwable instanceof HttpException && isFailure(((HttpException) throwable).code());
+    }
+
+    private static boolean isFailure(int code) {
+        return code >= 500 || code == 429;
+    }
+
+    private static final class Attempt implements Consumer<Object>, Action {
+        private final HostHealth health;
+        private final long startTime;
+        private final AtomicBoolean finished;
+
+        Attempt(HostHealth health) {
+            this.health = health;
+            this.startTime = System.nanoTime();
+            this.finished = new AtomicBoolean();
+        }
+
+        @Override
+        public void accept(Object emitted) {
+            if (emitted instanceof Response) {
+                finish(isFailure(((Response<?>) emitted).code()));
+            } else if (emitted instanceof Result) {
+                Result<?> result = (Result<?>) emitted;
+                finish(result.isError() ? isFailure(result.error()) : isFailure(result.response().code()));
+            } else {
+                finish(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            finish(false);
+        }
+
+        void finish(boolean failed) {
+            if (finished.compareAndSet(false, true)) {
+                health.record(System.nanoTime() - startTime, failed);
+            }
+        }
+    }
+}
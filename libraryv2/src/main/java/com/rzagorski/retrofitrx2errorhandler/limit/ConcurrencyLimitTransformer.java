@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.limit;
+
+import com.rzagorski.retrofiterrorhandler.limit.ConcurrencyLimiter;
+import com.rzagorski.retrofiterrorhandler.limit.LimitExceededException;
+import com.rzagorski.retrofiterrorhandler.limit.Permit;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.AsyncSubject;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava2.Result;
+
+/**
+ * Takes a {@link Permit} from {@link ConcurrencyLimiter} for every subscription to the call,
+ * so every retry made by backoff strategies is limited the same as the first attempt.
+ * <br>
+ * Calls waiting in the queue are started on {@link Schedulers#io()} instead of the thread
+ * that released the slot.
+ */
+public class ConcurrencyLimitTransformer<T> implements ObservableTransformer<T, T> {
+    private final String host;
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitTransformer(String host, ConcurrencyLimiter limiter) {
+        this.host = host;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public ObservableSource<T> apply(final Observable<T> upstream) {
+        return Observable.using(new Callable<Acquisition>() {
+            @Override
+            public Acquisition call() {
+                return new Acquisition(limiter);
+            }
+        }, new Function<Acquisition, ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> apply(final Acquisition acquisition) {
+                if (acquisition.permit == null) {
+                    return Observable.error(new LimitExceededException(host));
+                }
+                if (acquisition.granted.hasComplete()) {
+                    return measure(upstream, acquisition.permit);
+                }
+                return acquisition.granted
+                        .observeOn(Schedulers.io())
+                        .flatMap(new Function<Object, ObservableSource<T>>() {
+                            @Override
+                            public ObservableSource<T> apply(Object o) {
+                                return measure(upstream, acquisition.permit);
+                            }
+                        });
+            }
+        }, new Consumer<Acquisition>() {
+            @Override
+            public void accept(Acquisition acquisition) {
+                if (acquisition.permit != null) {
+                    acquisition.permit.release();
+                }
+            }
+        }, true);
+    }
+
+    private Observable<T> measure(Observable<T> upstream, final Permit permit) {
+        //unsuccessful responses emitted as Response<T> or Result<T> do not end the call with an error
+        final AtomicBoolean dropped = new AtomicBoolean();
+        return upstream
+                .doOnNext(new Consumer<T>() {
+                    @Override
+                    public void accept(T value) {
+                        if (isDropped(value)) {
+                            dropped.set(true);
+                        }
+                    }
+                })
+                .doOnError(new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) {
+                        permit.setOutcome(isDropped(throwable));
+                    }
+                })
+                .doOnComplete(new Action() {
+                    @Override
+                    public void run() {
+                        permit.setOutcome(dropped.get());
+                    }
+                });
+    }
+
+    private static boolean isDropped(Object value) {
+        if (value instanceof Response) {
+            Response<?> response = (Response<?>) value;
+            return !response.isSuccessful() && isDropped(response.code());
+        }
+        if (value instanceof Result) {
+            Result<?> result = (Result<?>) value;
+            return result.isError() ? isDropped(result.error()) : isDropped(result.response());
+        }
+        return false;
+    }
+
+    private static boolean isDropped(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return true;
+        }
+        if (throwable instanceof HttpException) {
+            return isDropped(((HttpException) throwable).code());
+        }
+        return false;
+    }
+
+    private static boolean isDropped(int code) {
+        return code >= 500 || code == 429;
+    }
+
+    private static final class Acquisition {
+        final AsyncSubject<Object> granted;
+        final Permit permit;
+
+        Acquisition(ConcurrencyLimiter limiter) {
+            granted = AsyncSubject.create();
+            permit = limiter.acquire(new Runnable() {
+                @Override
+                public void run() {
+                    granted.onNext(Boolean.TRUE);
+                    granted.onComplete();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.limit;
+
+import com.rzagorski.retrofiterrorhandler.limit.RateLimit;
+import com.rzagorski.retrofiterrorhandler.limit.RateLimitExceededException;
+import com.rzagorski.retrofiterrorhandler.limit.TokenBucket;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Delays every subscription to the call until a token from {@link RateLimit} is available.
+ * Resubscriptions made by backoff strategies take their own tokens. The token of the subscription
+ * cancelled during the wait is given back to the bucket.
+ */
+public class RateLimitTransformer<T> implements ObservableTransformer<T, T> {
+    private final String host;
+    private final TokenBucket bucket;
+    private final long maxWaitNanos;
+
+    public RateLimitTransformer(String host, RateLimit rateLimit) {
+        this.host = host;
+        this.bucket = rateLimit.getBucket(host);
+        this.maxWaitNanos = rateLimit.getMaxWaitNanos();
+    }
+
+    @Override
+    public ObservableSource<T> apply(final Observable<T> upstream) {
+        return Observable.defer(new Callable<ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> call() {
+                long waitNanos = bucket.tryReserve(maxWaitNanos);
+                if (waitNanos < 0) {
+                    return Observable.error(new RateLimitExceededException(host));
+                }
+                if (waitNanos == 0) {
+                    return upstream;
+                }
+                //the token is given back, when the subscription is disposed before the wait is over
+                final AtomicBoolean used = new AtomicBoolean();
+                return upstream
+                        .doOnSubscribe(new Consumer<Disposable>() {
+                            @Override
+                            public void accept(Disposable disposable) {
+                                used.set(true);
+                            }
+                        })
+                        .delaySubscription(waitNanos, TimeUnit.NANOSECONDS)
+                        .doOnDispose(new Action() {
+                            @Override
+                            public void run() {
+                                if (used.compareAndSet(false, true)) {
+                                    bucket.release();
+                                }
+                            }
+                        });
+            }
+        });
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.offline;
+
+import com.rzagorski.retrofiterrorhandler.offline.OfflineMode;
+import com.rzagorski.retrofiterrorhandler.offline.OfflineQueueFullException;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.AsyncSubject;
+import retrofit2.HttpException;
+import retrofit2.adapter.rxjava2.Result;
+
+/**
+ * Records the result of every attempt in {@link OfflineMode}. While it is offline, the attempt failed
+ * with a connectivity failure is parked and the call is subscribed to again, when it is released.
+ * <br>
+ * It is applied below the backoff strategies, so the parked call does not schedule retries and
+ * does not use the retries of the strategies. Other errors go to the strategies, as without it.
+ */
+public class OfflineTransformer<T> implements ObservableTransformer<T, T> {
+    private final OfflineMode offlineMode;
+
+    public OfflineTransformer(OfflineMode offlineMode) {
+        this.offlineMode = offlineMode;
+    }
+
+    @Override
+    public ObservableSource<T> apply(Observable<T> upstream) {
+        return upstream
+                .doOnNext(new Consumer<T>() {
+                    @Override
+                    public void accept(T emitted) throws Exception {
+                        if (emitted instanceof Result && ((Result<?>) emitted).isError()) {
+                            offlineMode.recordFailure(((Result<?>) emitted).error());
+                        } else {
+                            offlineMode.recordSuccess();
+                        }
+                    }
+                })
+                .doOnError(new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        if (throwable instanceof HttpException) {
+                            //the server was reached
+                            offlineMode.recordSuccess();
+                        } else {
+                            offlineMode.recordFailure(throwable);
+                        }
+                    }
+                })
+                .retryWhen(new Function<Observable<Throwable>, ObservableSource<?>>() {
+                    @Override
+                    public ObservableSource<?> apply(Observable<Throwable> errors) throws Exception {
+                        return errors.concatMap(new Park());
+                    }
+                });
+    }
+
+    private class Park implements Function<Throwable, ObservableSource<Object>> {
+
+        @Override
+        public ObservableSource<Object> apply(Throwable throwable) throws Exception {
+            if (!OfflineMode.isConnectivityFailure(throwable) || !offlineMode.isOffline()) {
+                return Observable.error(throwable);
+            }
+            final AsyncSubject<Object> released = AsyncSubject.create();
+            final OfflineMode.ParkedCall parkedCall = offlineMode.park(new Runnable() {
+                @Override
+                public void run() {
+                    released.onNext(Boolean.TRUE);
+                    released.onComplete();
+                }
+            });
+            if (parkedCall == null) {
+                return Observable.error(new OfflineQueueFullException(offlineMode.getMaxParkedCalls(), throwable));
+            }
+            //released calls are not made on the thread of the probe
+            return released
+                    .doOnDispose(new Action() {
+                        @Override
+                        public void run() throws Exception {
+                            parkedCall.cancel();
+                        }
+                    })
+                    .observeOn(Schedulers.io());
+        }
+    }
+}
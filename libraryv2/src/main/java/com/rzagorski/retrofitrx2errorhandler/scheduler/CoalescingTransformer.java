@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.scheduler;
+
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryCoalescer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.AsyncSubject;
+
+/**
+ * Sends the retries of a single subscription to the call through {@link RetryCoalescer}.
+ * The first attempt goes to the server directly. A retry, which is the leader, goes to the server
+ * and reports its outcome. Other retries wait for the outcome of the leader: they are sent after its success
+ * and fail with its error after its failure.
+ * <br>
+ * It is applied below the backoff strategies, so a retry failed with the error of the leader uses
+ * the retry and waits for the next one, as if it reached the server.
+ */
+public class CoalescingTransformer<T> implements ObservableTransformer<T, T> {
+    private static final Object REJOIN = new Object();
+
+    private final RetryCoalescer coalescer;
+    private final String endpoint;
+    private final AtomicBoolean firstAttempt;
+
+    /**
+     * @param coalescer the coalescer of the retries
+     * @param endpoint  the endpoint of the call from {@link RetryCoalescer#endpointOf(okhttp3.Request)}
+     */
+    public CoalescingTransformer(RetryCoalescer coalescer, String endpoint) {
+        this.coalescer = coalescer;
+        this.endpoint = endpoint;
+        this.firstAttempt = new AtomicBoolean(true);
+    }
+
+    @Override
+    public ObservableSource<T> apply(final Observable<T> upstream) {
+        return Observable.defer(new Callable<ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> call() throws Exception {
+                if (firstAttempt.compareAndSet(true, false)) {
+                    return upstream;
+                }
+                return retry(upstream);
+            }
+        });
+    }
+
+    private Observable<T> retry(final Observable<T> upstream) {
+        final RetryCoalescer.Retry retry = coalescer.join(endpoint);
+        Action cancel = new Action() {
+            @Override
+            public void run() throws Exception {
+                retry.cancel();
+            }
+        };
+        if (retry.isLeader()) {
+            Action succeeded = new Action() {
+                @Override
+                public void run() throws Exception {
+                    retry.succeeded();
+                }
+            };
+            return upstream
+                    .doOnNext(new Consumer<T>() {
+                        @Override
+                        public void accept(T emitted) throws Exception {
+                            retry.succeeded();
+                        }
+                    })
+                    .doOnError(new Consumer<Throwable>() {
+                        @Override
+                        public void accept(Throwable throwable) throws Exception {
+                            retry.failed(throwable);
+                        }
+                    })
+                    .doOnComplete(succeeded)
+                    .doOnDispose(cancel);
+        }
+        final AsyncSubject<Object> outcome = AsyncSubject.create();
+        //the waiting retries are not made on the thread of the leader
+        retry.await(new RetryCoalescer.Listener() {
+            @Override
+            public void onLeaderSucceeded(final long delayNanos) {
+                Schedulers.io().scheduleDirect(new Runnable() {
+                    @Override
+                    public void run() {
+                        outcome.onNext(delayNanos);
+                        outcome.onComplete();
+                    }
+                });
+            }
+
+            @Override
+            public void onLeaderFailed(final Throwable error) {
+                Schedulers.io().scheduleDirect(new Runnable() {
+                    @Override
+                    public void run() {
+                        outcome.onError(error);
+                    }
+                });
+            }
+
+            @Override
+            public void onLeaderAbandoned() {
+                Schedulers.io().scheduleDirect(new Runnable() {
+                    @Override
+                    public void run() {
+                        outcome.onNext(REJOIN);
+                        outcome.onComplete();
+                    }
+                });
+            }
+        });
+        return outcome
+                .doOnDispose(cancel)
+                .concatMap(new Function<Object, ObservableSource<T>>() {
+                    @Override
+                    public ObservableSource<T> apply(Object signal) throws Exception {
+                        if (signal == REJOIN) {
+                            return retry(upstream);
+                        }
+                        long delayNanos = (Long) signal;
+                        if (delayNanos > 0) {
+                            return upstream.delaySubscription(delayNanos, TimeUnit.NANOSECONDS);
+                        }
+                        return upstream;
+                    }
+                });
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.tracing;
+
+import com.rzagorski.retrofiterrorhandler.tracing.SemanticAttributes;
+import com.rzagorski.retrofiterrorhandler.tracing.Span;
+import com.rzagorski.retrofiterrorhandler.tracing.Tracer;
+
+import java.util.concurrent.Callable;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import okhttp3.Request;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava2.Result;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.HEAD;
+import retrofit2.http.HTTP;
+import retrofit2.http.OPTIONS;
+import retrofit2.http.PATCH;
+import retrofit2.http.POST;
+import retrofit2.http.PUT;
+
+/**
+ * Traces a single subscription of the call. Starts the span of the call and gives the transformers,
+ * which put every attempt, backoff wait and backup observable in its child span.
+ */
+public class CallTrace {
+    private final Span span;
+    private final String method;
+    private final String route;
+    private final AtomicInteger attempts;
+    //the attempt of the latest subscription, its span is replaced, when RetryInterceptor retries it
+    private volatile CurrentSpan current;
+
+    /**
+     * Starts the span of the call.
+     *
+     * @param tracer  the tracer set with {@link com.rzagorski.retrofitrx2errorhandler.RxCallAdapter.Builder#setTracer}
+     * @param request     the request of the call
+     * @param annotations annotations of the Retrofit method, giving the path template
+     */
+    public CallTrace(Tracer tracer, Request request, Annotation[] annotations) {
+        this.method = request.method();
+        this.route = route(request, annotations);
+        this.span = tracer.startSpan(method + " " + request.url().encodedPath())
+                .setAttribute(SemanticAttributes.HTTP_METHOD, method)
+                .setAttribute(SemanticAttributes.HTTP_URL, request.url().toString())
+                .setAttribute(SemanticAttributes.HTTP_ROUTE, route);
+        this.attempts = new AtomicInteger();
+    }
+
+    public Span getSpan() {
+        return span;
+    }
+
+    /**
+     * Ends the span of the call, when the call ends. Applied above the backoff strategies.
+     */
+    public <T> ObservableTransformer<T, T> call() {
+        return new ObservableTransformer<T, T>() {
+            @Override
+            public ObservableSource<T> apply(Observable<T> upstream) {
+                return upstream
+                        .doOnError(new Consumer<Throwable>() {
+                            @Override
+                            public void accept(Throwable throwable) throws Exception {
+                                fail(span, throwable);
+                                end(span, false);
+                            }
+                        })
+                        .doOnComplete(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                end(span, true);
+                            }
+                        })
+                        .doOnDispose(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                end(span, false);
+                            }
+                        });
+            }
+        };
+    }
+
+    /**
+     * Starts the span of the attempt on every subscription. Applied below the backoff strategies.
+     */
+    public <T> ObservableTransformer<T, T> attempts() {
+        return new ObservableTransformer<T, T>() {
+            @Override
+            public ObservableSource<T> apply(final Observable<T> upstream) {
+                return Observable.defer(new Callable<ObservableSource<T>>() {
+                    @Override
+                    public ObservableSource<T> call() throws Exception {
+                        //the next attempt can start, before this one completes
+                        final CurrentSpan attempt = new CurrentSpan(startAttempt());
+                        current = attempt;
+                        return upstream
+                                .doOnNext(new Consumer<T>() {
+                                    @Override
+                                    public void accept(T emitted) throws Exception {
+                                        respond(attempt.span, emitted);
+                                    }
+                                })
+                                .compose(CallTrace.this.<T>endWith(attempt));
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Ends the span of the current attempt, which failed inside the client, before the retry interceptor
+     * decides about its retry. The attempt, which is not retried, is passed on with its span ended already.
+     *
+     * @param error the error of the attempt
+     */
+    public void attemptFailed(Throwable error) {
+        Span attempt = current.span;
+        fail(attempt, error);
+        attempt.end();
+    }
+
+    /**
+     * The same as {@link #attemptFailed(Throwable)}, for the unsuccessful response.
+     *
+     * @param httpCode code of the response
+     * @param message  message of the response
+     */
+    public void attemptFailed(int httpCode, String message) {
+        current.span
+                .setAttribute(SemanticAttributes.HTTP_STATUS_CODE, httpCode)
+                .setStatus(Span.StatusCode.ERROR, message)
+                .end();
+    }
+
+    /**
+     * Starts the span of the retry, which the retry interceptor makes inside the client. It is counted
+     * as the next attempt of the call and ends, when the current attempt ends.
+     */
+    public void attemptRetried() {
+        current.span = startAttempt();
+    }
+
+    /**
+     * Puts the execution of the backup observable in a span.
+     *
+     * @param strategy the strategy executing the backup observable
+     */
+    public <T> ObservableTransformer<T, T> backup(Object strategy) {
+        return child(Tracer.BACKUP, strategy, 0);
+    }
+
+    /**
+     * Puts the wait before the retry in a span. The span ends, when the retry is due.
+     *
+     * @param strategy the strategy, which waits
+     * @param retry    number of the retry, starting from 1
+     */
+    public <T> ObservableTransformer<T, T> backoff(Object strategy, int retry) {
+        return child(Tracer.BACKOFF, strategy, retry);
+    }
+
+    private <T> ObservableTransformer<T, T> child(final String name, final Object strategy, final int retry) {
+        return new ObservableTransformer<T, T>() {
+            @Override
+            public ObservableSource<T> apply(final Observable<T> upstream) {
+                return Observable.defer(new Callable<ObservableSource<T>>() {
+                    @Override
+                    public ObservableSource<T> call() throws Exception {
+                        final long startNanos = System.nanoTime();
+                        final Span child = startChild(name)
+                                .setAttribute(SemanticAttributes.RETRY_STRATEGY, strategy.getClass().getSimpleName());
+                        if (retry > 0) {
+                            child.setAttribute(SemanticAttributes.RETRY_ATTEMPT, retry);
+                        }
+                        return upstream
+                                .doOnNext(new Consumer<T>() {
+                                    @Override
+                                    public void accept(T emitted) throws Exception {
+                                        if (retry > 0) {
+                                            child.setAttribute(SemanticAttributes.RETRY_DELAY_MS,
+                                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                                            end(child, true);
+                                        }
+                                    }
+                                })
+                                .compose(CallTrace.this.<T>endWith(new CurrentSpan(child)));
+                    }
+                });
+            }
+        };
+    }
+
+    private <T> ObservableTransformer<T, T> endWith(final CurrentSpan ended) {
+        return new ObservableTransformer<T, T>() {
+            @Override
+            public ObservableSource<T> apply(Observable<T> upstream) {
+                return upstream
+                        .doOnError(new Consumer<Throwable>() {
+                            @Override
+                            public void accept(Throwable throwable) throws Exception {
+                                fail(ended.span, throwable);
+                                end(ended.span, false);
+                            }
+                        })
+                        .doOnComplete(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                end(ended.span, true);
+                            }
+                        })
+                        .doOnDispose(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                end(ended.span, false);
+                            }
+                        });
+            }
+        };
+    }
+
+    private Span startAttempt() {
+        return startChild(Tracer.ATTEMPT).setAttribute(SemanticAttributes.RETRY_ATTEMPT, attempts.incrementAndGet());
+    }
+
+    //children carry the endpoint, so their latencies can be recorded without the span of the call
+    private Span startChild(String name) {
+        return span.startChild(name)
+                .setAttribute(SemanticAttributes.HTTP_METHOD, method)
+                .setAttribute(SemanticAttributes.HTTP_ROUTE, route);
+    }
+
+    //the relative URL of the HTTP annotation, the path of the request for the methods taking @Url
+    private static String route(Request request, Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            String relativeUrl = relativeUrl(annotation);
+            if (relativeUrl == null) {
+                continue;
+            }
+            if (relativeUrl.isEmpty() || relativeUrl.contains("://")) {
+                break;
+            }
+            return relativeUrl.startsWith("/") ? relativeUrl : "/" + relativeUrl;
+        }
+        return request.url().encodedPath();
+    }
+
+    private static String relativeUrl(Annotation annotation) {
+        if (annotation instanceof GET) {
+            return ((GET) annotation).value();
+        } else if (annotation instanceof POST) {
+            return ((POST) annotation).value();
+        } else if (annotation instanceof PUT) {
+            return ((PUT) annotation).value();
+        } else if (annotation instanceof PATCH) {
+            return ((PATCH) annotation).value();
+        } else if (annotation instanceof DELETE) {
+            return ((DELETE) annotation).value();
+        } else if (annotation instanceof HEAD) {
+            return ((HEAD) annotation).value();
+        } else if (annotation instanceof OPTIONS) {
+            return ((OPTIONS) annotation).value();
+        } else if (annotation instanceof HTTP) {
+            return ((HTTP) annotation).path();
+        }
+        return null;
+    }
+
+    //Response<T> and Result<T> carry the code of unsuccessful responses without an error
+    private static void respond(Span attempt, Object emitted) {
+        Response<?> response;
+        if (emitted instanceof Result) {
+            Result<?> result = (Result<?>) emitted;
+            if (result.isError()) {
+                fail(attempt, result.error());
+                return;
+            }
+            response = result.response();
+        } else if (emitted instanceof Response) {
+            response = (Response<?>) emitted;
+        } else {
+            return;
+        }
+        attempt.setAttribute(SemanticAttributes.HTTP_STATUS_CODE, response.code());
+        if (!response.isSuccessful()) {
+            attempt.setStatus(Span.StatusCode.ERROR, response.message());
+        }
+    }
+
+    private static void fail(Span span, Throwable throwable) {
+        if (throwable instanceof HttpException) {
+            span.setAttribute(SemanticAttributes.HTTP_STATUS_CODE, ((HttpException) throwable).code());
+        }
+        span.setAttribute(SemanticAttributes.EXCEPTION_TYPE, throwable.getClass().getName())
+                .setStatus(Span.StatusCode.ERROR, throwable.getMessage());
+    }
+
+    //the status of completed spans is set, unless an unsuccessful response set it already,
+    //disposed spans are left unset
+    private void end(Span ended, boolean completed) {
+        if (ended == span) {
+            span.setAttribute(SemanticAttributes.RETRY_COUNT, Math.max(0, attempts.get() - 1));
+        }
+        if (completed && ended.getStatusCode() == Span.StatusCode.UNSET) {
+            ended.setStatus(Span.StatusCode.OK, null);
+        }
+        ended.end();
+    }
+
+    /**
+     * The span ended by the chain of the call. The span of the attempt is replaced, when the interceptor
+     * retries it.
+     */
+    private static final class CurrentSpan {
+        volatile Span span;
+
+        CurrentSpan(Span span) {
+            this.span = span;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.upload;
+
+import com.rzagorski.retrofiterrorhandler.upload.ReplayableRequestBody;
+
+import java.util.concurrent.Callable;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+
+/**
+ * {@link ReplayableRequestBody#retain() Retains} the body for the whole subscription to the call,
+ * so all retries write it from the same open file.
+ */
+public class ReplayableBodyTransformer<T> implements ObservableTransformer<T, T> {
+    private final ReplayableRequestBody body;
+
+    public ReplayableBodyTransformer(ReplayableRequestBody body) {
+        this.body = body;
+    }
+
+    @Override
+    public ObservableSource<T> apply(final Observable<T> upstream) {
+        return Observable.using(new Callable<ReplayableRequestBody>() {
+            @Override
+            public ReplayableRequestBody call() throws Exception {
+                body.retain();
+                return body;
+            }
+        }, new Function<ReplayableRequestBody, ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> apply(ReplayableRequestBody body) throws Exception {
+                return upstream;
+            }
+        }, new Consumer<ReplayableRequestBody>() {
+            @Override
+            public void accept(ReplayableRequestBody body) throws Exception {
+                body.release();
+            }
+        });
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.utils;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+import retrofit2.Response;
+
+/**
+ * Helpers for return types of Retrofit methods.
+ */
+public final class TypeUtils {
+
+    private TypeUtils() {
+    }
+
+    /**
+     * Turns e.g. {@code Observable<T>} into {@code Observable<Response<T>>},
+     * so the whole response is available to the call adapter.
+     *
+     * @param returnType type with a single type argument
+     * @return the type with its argument wrapped in {@link Response}
+     */
+    public static Type withResponse(Type returnType) {
+        ParameterizedType parameterizedType = (ParameterizedType) returnType;
+        return new SimpleParameterizedType(parameterizedType.getRawType(),
+                new SimpleParameterizedType(Response.class, parameterizedType.getActualTypeArguments()[0]));
+    }
+
+    private static final class SimpleParameterizedType implements ParameterizedType {
+        private final Type rawType;
+        private final Type argument;
+
+        SimpleParameterizedType(Type rawType, Type argument) {
+            this.rawType = rawType;
+            this.argument = argument;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return new Type[]{argument};
+        }
+
+        @Override
+        public Type getRawType() {
+            return rawType;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ParameterizedType
+                    && rawType.equals(((ParameterizedType) other).getRawType())
+                    && ((ParameterizedType) other).getOwnerType() == null
+                    && Arrays.equals(getActualTypeArguments(), ((ParameterizedType) other).getActualTypeArguments());
+        }
+
+        @Override
+        public int hashCode() {
+            return rawType.hashCode() ^ argument.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return rawType + "<" + argument + ">";
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.durable.DurableRequest;
+import com.rzagorski.retrofiterrorhandler.durable.RetryLog;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.observers.TestObserver;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DurableRetryTest {
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    MockWebServer mockWebServer;
+    File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        directory = File.createTempFile("retrylog", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Test shows, that the request of the call, whose retries are over, stays in the log and is sent
+     * with the same body and idempotency key by the factory created after the restart.
+     */
+    @Test
+    public void testFailedCallReplayed() throws Exception {
+        final AtomicBoolean serverUp = new AtomicBoolean();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (!serverUp.get()) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RetryLog retryLog = new RetryLog.Builder(directory).build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(createCallAdapter(retryLog)));
+
+        TestObserver testObserver = github.order(RequestBody.create(JSON, "{\"id\":1}"), "order-1").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(retrofit2.HttpException.class);
+        assertEquals(3, mockWebServer.getRequestCount());
+        retryLog.close();
+
+        serverUp.set(true);
+        retryLog = new RetryLog.Builder(directory).build();
+        assertTrue(retryLog.contains("order-1"));
+        RxErrorHandingFactory factory = new RxErrorHandingFactory(createCallAdapter(retryLog));
+        TestObserver<DurableRequest> replayObserver = factory.replayDurable(new OkHttpClient()).test();
+        replayObserver.awaitTerminalEvent();
+        replayObserver.assertComplete();
+        replayObserver.assertValueCount(1);
+        assertFalse(retryLog.contains("order-1"));
+        assertEquals(4, mockWebServer.getRequestCount());
+        mockWebServer.takeRequest();
+        mockWebServer.takeRequest();
+        mockWebServer.takeRequest();
+        RecordedRequest replayed = mockWebServer.takeRequest();
+        assertEquals("POST", replayed.getMethod());
+        assertEquals("/orders", replayed.getPath());
+        assertEquals("order-1", replayed.getHeader(DurableRequest.IDEMPOTENCY_KEY_HEADER));
+        assertEquals("{\"id\":1}", replayed.getBody().readUtf8());
+        retryLog.close();
+    }
+
+    /**
+     * Test shows, that the request is in the log, while the call is retried, and is removed,
+     * when the retry succeeds.
+     */
+    @Test
+    public void testSucceededCallRemoved() throws Exception {
+        final RetryLog retryLog = new RetryLog.Builder(directory).build();
+        final AtomicBoolean writtenBeforeRetry = new AtomicBoolean();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() == 1) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                writtenBeforeRetry.set(retryLog.contains("order-2"));
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(createCallAdapter(retryLog)));
+
+        TestObserver testObserver = github.order(RequestBody.create(JSON, "{\"id\":2}"), "order-2").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertTrue(writtenBeforeRetry.get());
+        assertFalse(retryLog.contains("order-2"));
+        retryLog.close();
+    }
+
+    /**
+     * Test shows, that the call without the idempotency key gets one before the first attempt
+     * and sends the same key with the retry.
+     */
+    @Test
+    public void testKeyMintedBeforeFirstAttempt() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() == 1) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RetryLog retryLog = new RetryLog.Builder(directory).build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(createCallAdapter(retryLog)));
+
+        TestObserver testObserver = github.order(RequestBody.create(JSON, "{\"id\":4}"), null).test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        String key = mockWebServer.takeRequest().getHeader(DurableRequest.IDEMPOTENCY_KEY_HEADER);
+        assertNotNull(key);
+        assertEquals(key, mockWebServer.takeRequest().getHeader(DurableRequest.IDEMPOTENCY_KEY_HEADER));
+        retryLog.close();
+    }
+
+    /**
+     * Test shows, that the request of the call failed with the code, which is not retried,
+     * is not written to the log.
+     */
+    @Test
+    public void testNotRetryableErrorNotWritten() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(400);
+            }
+        });
+        RetryLog retryLog = new RetryLog.Builder(directory).build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(createCallAdapter(retryLog)));
+
+        TestObserver testObserver = github.order(RequestBody.create(JSON, "{\"id\":3}"), "order-3").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(retrofit2.HttpException.class);
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertTrue(retryLog.getPending().isEmpty());
+        retryLog.close();
+    }
+
+    private static RxCallAdapter createCallAdapter(RetryLog retryLog) {
+        return new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(503)
+                        .setMaxRetries(2).build())
+                .setRetryLog(retryLog)
+                .build();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.failover.FailoverInterceptor;
+import com.rzagorski.retrofiterrorhandler.failover.Replica;
+import com.rzagorski.retrofiterrorhandler.failover.ReplicaSet;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Failover;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.functions.BiConsumer;
+import io.reactivex.observers.TestObserver;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FailoverTest {
+
+    MockWebServer primary;
+    MockWebServer replica;
+
+    @Before
+    public void setUp() throws Exception {
+        primary = new MockWebServer();
+        primary.start();
+        replica = new MockWebServer();
+        replica.start();
+        replica.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        replica.shutdown();
+        primary = null;
+        replica = null;
+    }
+
+    /**
+     * Test shows, that after the host refused the connection, the retry is sent to the replica
+     * and the host is ejected.
+     */
+    @Test
+    public void testFailoverToReplica() throws Exception {
+        String primaryUrl = primary.url("/").toString();
+        primary.shutdown();
+        ReplicaSet replicaSet = new ReplicaSet.Builder()
+                .addReplica(primaryUrl)
+                .addReplica(replica.url("/").toString())
+                .build();
+        GitHub github = createGitHub(primaryUrl, replicaSet, new OkHttpClient.Builder());
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(1, replica.getRequestCount());
+        Replica ejected = replicaSet.getReplicas().get(0);
+        assertTrue(ejected.isEjected());
+        assertSame(replicaSet.getReplicas().get(1), replicaSet.select(HttpUrl.parse(primaryUrl)));
+        assertNull(replicaSet.select(HttpUrl.parse("http://example.com/")));
+    }
+
+    /**
+     * Test shows, that the retry action set on the failover strategy is run before the retry sent to the replica.
+     */
+    @Test
+    public void testRetryAction() throws Exception {
+        String primaryUrl = primary.url("/").toString();
+        primary.shutdown();
+        ReplicaSet replicaSet = new ReplicaSet.Builder()
+                .addReplica(primaryUrl)
+                .addReplica(replica.url("/").toString())
+                .build();
+        final AtomicInteger retries = new AtomicInteger();
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Failover.init(replicaSet)
+                        .setOnRetryAction(new BiConsumer<Throwable, Integer>() {
+                            @Override
+                            public void accept(Throwable throwable, Integer retry) throws Exception {
+                                retries.incrementAndGet();
+                            }
+                        })
+                        .build())
+                .build();
+        GitHub github = createRetrofitInstance(primaryUrl, new RxErrorHandingFactory(rxCallAdapter),
+                new OkHttpClient.Builder().addInterceptor(new FailoverInterceptor(replicaSet)).build());
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(1, retries.get());
+        assertEquals(1, replica.getRequestCount());
+        replicaSet.close();
+    }
+
+    /**
+     * Test shows, that the ejected host is probed in the background and restored, when the probe succeeds.
+     */
+    @Test
+    public void testProbeRestoresHost() throws Exception {
+        primary.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(204);
+            }
+        });
+        final int primaryPort = primary.getPort();
+        ReplicaSet replicaSet = new ReplicaSet.Builder()
+                .addReplica(primary.url("/").toString())
+                .addReplica(replica.url("/").toString())
+                .setEjectionTime(100, TimeUnit.MILLISECONDS)
+                .setProbePath("/health")
+                .build();
+        //the call fails to connect to the host, while the probe, sent with its own client, reaches it
+        GitHub github = createGitHub(primary.url("/").toString(), replicaSet, new OkHttpClient.Builder()
+                .addNetworkInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        if (chain.request().url().port() == primaryPort) {
+                            throw new ConnectException("Connection refused");
+                        }
+                        return chain.proceed(chain.request());
+                    }
+                }));
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(1, replica.getRequestCount());
+
+        Replica restored = replicaSet.getReplicas().get(0);
+        long deadline = System.currentTimeMillis() + 5 * MockWebServerUtils.ONE_SEC;
+        while (restored.isEjected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(restored.isEjected());
+        assertEquals("/health", primary.takeRequest().getPath());
+        assertTrue(restored.getHealth().getErrorRate() > 0);
+        replicaSet.close();
+    }
+
+    /**
+     * Test shows, that the host, which did not respond in time, is not ejected and the call is not retried
+     * by default, as the retry would go to the same host.
+     */
+    @Test
+    public void testTimeoutDoesNotEject() throws Exception {
+        primary.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+            }
+        });
+        ReplicaSet replicaSet = new ReplicaSet.Builder()
+                .addReplica(primary.url("/").toString())
+                .addReplica(replica.url("/").toString())
+                .build();
+        GitHub github = createGitHub(primary.url("/").toString(), replicaSet, new OkHttpClient.Builder()
+                .readTimeout(200, TimeUnit.MILLISECONDS));
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(SocketTimeoutException.class);
+        assertFalse(replicaSet.getReplicas().get(0).isEjected());
+        assertEquals(1, primary.getRequestCount());
+        assertEquals(0, replica.getRequestCount());
+        replicaSet.close();
+    }
+
+    /**
+     * Test shows, that closing the replica set leaves the executor set in the builder running.
+     */
+    @Test
+    public void testCloseKeepsProbeExecutor() throws Exception {
+        ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+        ReplicaSet replicaSet = new ReplicaSet.Builder()
+                .addReplica(primary.url("/").toString())
+                .setProbeExecutor(executor)
+                .build();
+
+        replicaSet.close();
+        assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    private GitHub createGitHub(String url, ReplicaSet replicaSet, OkHttpClient.Builder client) {
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Failover.init(replicaSet).build())
+                .build();
+        return createRetrofitInstance(url, new RxErrorHandingFactory(rxCallAdapter),
+                client.addInterceptor(new FailoverInterceptor(replicaSet)).build());
+    }
+}
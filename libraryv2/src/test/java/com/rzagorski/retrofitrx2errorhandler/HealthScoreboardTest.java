@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.health.HealthScoreboard;
+import com.rzagorski.retrofiterrorhandler.health.HostHealth;
+import com.rzagorski.retrofitrx2errorhandler.backoff.BaseBackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.HttpException;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HealthScoreboardTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that the first attempt and the retry are both recorded in the health of the host.
+     */
+    @Test
+    public void testAttemptsRecorded() throws Exception {
+        failFirstRequests(1);
+        HealthScoreboard scoreboard = new HealthScoreboard(0.5);
+        GitHub github = createGitHub(scoreboard, Integer.MAX_VALUE, Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(3).build());
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        HostHealth health = scoreboard.getHosts().get(mockWebServer.getHostName());
+        assertEquals(0.25, health.getErrorRate(), 0.001);
+        assertEquals(0, health.getConsecutiveFailures());
+        assertTrue(health.getLastSuccessTime() > 0);
+        assertTrue(health.getLatencyNanos() > 0);
+    }
+
+    /**
+     * Test shows, that factories sharing the scoreboard stop retrying, when the host failed
+     * the given number of times in a row, no matter which call made the attempts.
+     */
+    @Test
+    public void testMaxConsecutiveFailures() throws Exception {
+        failFirstRequests(Integer.MAX_VALUE);
+        HealthScoreboard scoreboard = new HealthScoreboard(0.2);
+        GitHub first = createGitHub(scoreboard, 2, Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(5).build());
+        GitHub second = createGitHub(scoreboard, 2, Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(5).build());
+
+        TestObserver firstObserver = first.repos("square").test();
+        firstObserver.awaitTerminalEvent();
+        firstObserver.assertError(HttpException.class);
+        assertEquals(2, mockWebServer.getRequestCount());
+        TestObserver secondObserver = second.repos("square").test();
+        secondObserver.awaitTerminalEvent();
+        secondObserver.assertError(HttpException.class);
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the strategy gets the health of the host to compute the wait time.
+     */
+    @Test
+    public void testStrategyReadsHealth() throws Exception {
+        failFirstRequests(1);
+        HealthScoreboard scoreboard = new HealthScoreboard(0.2);
+        final List<HostHealth> seen = new ArrayList<>();
+        BaseBackoffStrategy strategy = new BaseBackoffStrategy(new BaseBackoffStrategy.Builder().addHttpCode(500)) {
+            @Override
+            protected Observable<Long> getWaitTime(int retry) {
+                return Observable.just(0L);
+            }
+
+            @Override
+            protected Observable<Long> getWaitTime(int retry, HostHealth health) {
+                seen.add(health);
+                return getWaitTime(retry);
+            }
+
+            @Override
+            protected int getMaxRetries() {
+                return 1;
+            }
+        };
+        GitHub github = createGitHub(scoreboard, Integer.MAX_VALUE, strategy);
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(1, seen.size());
+        assertSame(scoreboard.get(mockWebServer.getHostName()), seen.get(0));
+    }
+
+    /**
+     * Test shows, that the attempts are not recorded in the default scoreboard, when the policy does not read
+     * the health of the host.
+     */
+    @Test
+    public void testHealthNotRecordedWhenUnused() throws Exception {
+        failFirstRequests(1);
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .build();
+        //the default scoreboard is shared with the other tests, which call the server by its host name
+        GitHub github = createRetrofitInstance("http://127.0.0.1:" + mockWebServer.getPort() + "/",
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertFalse(HealthScoreboard.getDefault().getHosts().containsKey("127.0.0.1"));
+    }
+
+    /**
+     * Test shows, that the policy reads the health of the host, when it stops retrying failing hosts
+     * or a strategy overrides the wait time taking the health.
+     */
+    @Test
+    public void testPolicyUsesHostHealth() throws Exception {
+        BaseBackoffStrategy readingHealth = new BaseBackoffStrategy(new BaseBackoffStrategy.Builder()) {
+            @Override
+            protected Observable<Long> getWaitTime(int retry) {
+                return Observable.just(0L);
+            }
+
+            @Override
+            protected Observable<Long> getWaitTime(int retry, HostHealth health) {
+                return getWaitTime(retry);
+            }
+
+            @Override
+            protected int getMaxRetries() {
+                return 1;
+            }
+        };
+
+        assertFalse(new RetryPolicy.Builder()
+                .addBackoffStrategy(Simple.init().addHttpCode(500).build())
+                .build().usesHostHealth());
+        assertTrue(new RetryPolicy.Builder()
+                .addBackoffStrategy(Simple.init().addHttpCode(500).build())
+                .setMaxConsecutiveFailures(5)
+                .build().usesHostHealth());
+        assertTrue(new RetryPolicy.Builder()
+                .addBackoffStrategy(readingHealth)
+                .build().usesHostHealth());
+    }
+
+    private void failFirstRequests(final int count) {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= count) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+    }
+
+    private GitHub createGitHub(HealthScoreboard scoreboard, int maxConsecutiveFailures,
+                                BaseBackoffStrategy strategy) {
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .setHealthScoreboard(scoreboard)
+                .setMaxConsecutiveFailures(maxConsecutiveFailures)
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.offline.ConnectivityProbe;
+import com.rzagorski.retrofiterrorhandler.offline.OfflineMode;
+import com.rzagorski.retrofiterrorhandler.offline.OfflineQueueFullException;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OfflineModeTest {
+
+    MockWebServer mockWebServer;
+    AtomicBoolean networkUp;
+    AtomicInteger attempts;
+    OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        networkUp = new AtomicBoolean();
+        attempts = new AtomicInteger();
+        client = new OkHttpClient.Builder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        attempts.incrementAndGet();
+                        if (!networkUp.get()) {
+                            throw new ConnectException("Network is unreachable");
+                        }
+                        return chain.proceed(chain.request());
+                    }
+                })
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that the calls failing, while the network is down, are parked without retrying,
+     * and are released in batches, when the probe finds the network again.
+     */
+    @Test
+    public void testParkedCallsReleasedInBatches() throws Exception {
+        final AtomicInteger probes = new AtomicInteger();
+        OfflineMode offlineMode = new OfflineMode.Builder(new ConnectivityProbe() {
+            @Override
+            public boolean isConnected() throws Exception {
+                probes.incrementAndGet();
+                return networkUp.get();
+            }
+        })
+                .setFailureThreshold(1)
+                .setProbeDelay(50, 100, TimeUnit.MILLISECONDS)
+                .setReleaseBatch(2, 200, TimeUnit.MILLISECONDS)
+                .build();
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addThrowable(ConnectException.class)
+                        .setMaxRetries(3).build())
+                .setOfflineMode(offlineMode)
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter), client);
+
+        List<TestObserver> observers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            observers.add(github.repos("square").subscribeOn(Schedulers.io()).test());
+        }
+        Thread.sleep(500);
+        assertTrue(offlineMode.isOffline());
+        assertEquals(5, offlineMode.getParkedCount());
+        assertEquals(5, attempts.get());
+        assertTrue(probes.get() >= 2);
+
+        long startTime = System.currentTimeMillis();
+        networkUp.set(true);
+        for (TestObserver observer : observers) {
+            observer.awaitTerminalEvent();
+            observer.assertComplete();
+        }
+        long endTime = System.currentTimeMillis();
+        assertFalse(offlineMode.isOffline());
+        assertEquals(0, offlineMode.getParkedCount());
+        assertEquals(5, mockWebServer.getRequestCount());
+        //3 batches of 2 calls, 200 ms apart
+        assertTrue((endTime - startTime) >= 400);
+    }
+
+    /**
+     * Test shows, that the call ends with {@link OfflineQueueFullException}, when there is no place
+     * to park it.
+     */
+    @Test
+    public void testQueueFull() throws Exception {
+        OfflineMode offlineMode = new OfflineMode.Builder(new ConnectivityProbe() {
+            @Override
+            public boolean isConnected() throws Exception {
+                return false;
+            }
+        })
+                .setFailureThreshold(1)
+                .setMaxParkedCalls(0)
+                .build();
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addThrowable(ConnectException.class)
+                        .setMaxRetries(3).build())
+                .setOfflineMode(offlineMode)
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter), client);
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(OfflineQueueFullException.class);
+        assertEquals(1, attempts.get());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryQueueFullException;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import io.reactivex.observers.TestObserver;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PendingRetriesTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that when one call waits for the retry and the cap is 1, the failure of the second call
+     * is not retried and ends with {@link RetryQueueFullException} caused by the original error.
+     */
+    @Test
+    public void testFailFastWhenQueueFull() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Exponential.init()
+                        .addHttpCode(500)
+                        .setBase(1)
+                        .setMaxRetries(3).build())
+                .setMaxPendingRetries(1)
+                .build();
+        RxErrorHandingFactory factory = new RxErrorHandingFactory(rxCallAdapter);
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(), factory);
+
+        TestObserver first = github.repos("square").test();
+        awaitPendingRetries(factory, 1);
+        TestObserver second = github.repos("square").test();
+        second.awaitTerminalEvent();
+        second.assertError(RetryQueueFullException.class);
+        //the cause is the exception of the adapter, not the one created without the stack trace for the retries
+        Throwable cause = ((Throwable) second.errors().get(0)).getCause();
+        assertTrue(cause instanceof retrofit2.adapter.rxjava2.HttpException);
+        assertTrue(cause.getStackTrace().length > 0);
+        first.awaitTerminalEvent();
+        first.assertComplete();
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(0, factory.getPendingRetryCount());
+    }
+
+    /**
+     * Test shows, that the call disposed while waiting for the retry leaves the queue.
+     */
+    @Test
+    public void testDisposedCallLeavesQueue() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Exponential.init()
+                        .addHttpCode(500)
+                        .setBase(2)
+                        .setMaxRetries(3).build())
+                .setMaxPendingRetries(1)
+                .build();
+        RxErrorHandingFactory factory = new RxErrorHandingFactory(rxCallAdapter);
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(), factory);
+
+        TestObserver testObserver = github.repos("square").test();
+        awaitPendingRetries(factory, 1);
+        testObserver.dispose();
+        assertEquals(0, factory.getPendingRetryCount());
+    }
+
+    private static void awaitPendingRetries(RxErrorHandingFactory factory, int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && factory.getPendingRetryCount() != expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, factory.getPendingRetryCount());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.limit.RateLimit;
+import com.rzagorski.retrofiterrorhandler.limit.RateLimitExceededException;
+import com.rzagorski.retrofiterrorhandler.limit.TokenBucket;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.limit.RateLimitTransformer;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RateLimitTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that the bucket gives away the whole burst at once and then a token per interval.
+     */
+    @Test
+    public void testTokenBucket() throws Exception {
+        TokenBucket bucket = new TokenBucket(TimeUnit.SECONDS.toNanos(1), 2);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertEquals(-1, bucket.tryReserve(TimeUnit.MILLISECONDS.toNanos(500)));
+        long waitNanos = bucket.reserve();
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(waitNanos <= TimeUnit.SECONDS.toNanos(1));
+        assertTrue(bucket.reserve() > TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Test shows, that the first attempt and the retry made by
+     * {@link com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple} strategy both wait for the token,
+     * so 2 requests with rate of 1 request per second take at least 1 second.
+     */
+    @Test
+    public void testRetryWaitsForToken() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() == 1) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .addRateLimit(RateLimit.forHost(mockWebServer.getHostName())
+                        .setRate(1, 1, TimeUnit.SECONDS)
+                        .build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        long startTime = System.currentTimeMillis();
+        Observable observable = github.repos("square");
+        TestObserver testObserver = observable.test();
+        testObserver.awaitTerminalEvent();
+        long endTime = System.currentTimeMillis();
+        testObserver.assertComplete();
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertTrue((endTime - startTime) >= MockWebServerUtils.ONE_SEC);
+    }
+
+    /**
+     * Test shows, that the call ends with {@link RateLimitExceededException} without reaching the server,
+     * when the token would be available later than the maximum wait time.
+     */
+    @Test
+    public void testMaxWaitExceeded() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .addRateLimit(RateLimit.forEndpoint(mockWebServer.getHostName(), "/users/")
+                        .setRate(1, 1, TimeUnit.MINUTES)
+                        .setMaxWait(1, TimeUnit.SECONDS)
+                        .build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestObserver first = github.repos("square").test();
+        first.awaitTerminalEvent();
+        first.assertComplete();
+        TestObserver second = github.repos("square").test();
+        second.awaitTerminalEvent();
+        second.assertError(RateLimitExceededException.class);
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the call cancelled during the wait for the token gives the token back,
+     * so the next call does not wait for it.
+     */
+    @Test
+    public void testCancelledWaitReleasesToken() throws Exception {
+        RateLimit rateLimit = RateLimit.forHost("localhost")
+                .setRate(1, 1, TimeUnit.SECONDS)
+                .build();
+        TokenBucket bucket = rateLimit.getBucket("localhost");
+        assertTrue(bucket.tryAcquire());
+
+        Observable.just(1)
+                .compose(new RateLimitTransformer<Integer>("localhost", rateLimit))
+                .test()
+                .dispose();
+        long waitNanos = bucket.reserve();
+        assertTrue(waitNanos <= TimeUnit.SECONDS.toNanos(1));
+    }
+}
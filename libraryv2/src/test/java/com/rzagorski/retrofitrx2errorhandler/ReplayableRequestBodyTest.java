@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.upload.ReplayableRequestBody;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import io.reactivex.observers.TestObserver;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReplayableRequestBodyTest {
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    MockWebServer mockWebServer;
+    File file;
+    byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        content = new byte[1024 * 1024];
+        new Random(0).nextBytes(content);
+        file = File.createTempFile("upload", ".bin");
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(content);
+        outputStream.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+        file.delete();
+    }
+
+    /**
+     * Test shows, that the body read with {@link java.nio.channels.FileChannel} is sent whole
+     * by the first attempt and by the retry.
+     */
+    @Test
+    public void testFileChannelBodyRetried() throws Exception {
+        assertUploadRetried(ReplayableRequestBody.create(OCTET_STREAM, file));
+    }
+
+    /**
+     * Test shows, that the memory mapped body is sent whole by the first attempt and by the retry.
+     */
+    @Test
+    public void testMappedBodyRetried() throws Exception {
+        assertUploadRetried(ReplayableRequestBody.createMapped(OCTET_STREAM, file));
+    }
+
+    /**
+     * Test shows, that the body, which is not retained, can be written by many threads at once,
+     * e.g. by the attempt and by a logging interceptor, and each of them gets the whole file.
+     */
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final RequestBody body = ReplayableRequestBody.create(OCTET_STREAM, file);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int write = 0; write < 5; write++) {
+                            Buffer buffer = new Buffer();
+                            body.writeTo(buffer);
+                            assertTrue(Arrays.equals(content, buffer.readByteArray()));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), errors);
+    }
+
+    private void assertUploadRetried(RequestBody body) throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() == 1) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return new MockResponse().setBody("OK");
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestObserver testObserver = github.upload(body).test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(2, mockWebServer.getRequestCount());
+        for (int i = 0; i < 2; i++) {
+            RecordedRequest request = mockWebServer.takeRequest();
+            assertEquals(content.length, request.getBodySize());
+            assertTrue(Arrays.equals(content, request.getBody().readByteArray()));
+        }
+    }
+}
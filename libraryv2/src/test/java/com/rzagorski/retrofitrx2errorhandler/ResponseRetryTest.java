@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofitrx2errorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.model.Repository;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.reactivex.functions.BiConsumer;
+import io.reactivex.observers.TestObserver;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+import retrofit2.adapter.rxjava2.HttpException;
+import retrofit2.adapter.rxjava2.Result;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResponseRetryTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that {@code Response<T>} with retryable code is retried and only the successful
+     * response is emitted, without the call ending with an error.
+     */
+    @Test
+    public void testResponseRetried() throws Exception {
+        failFirstRequests(2);
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(503)
+                .setMaxRetries(3).build());
+
+        TestObserver<Response<List<Repository>>> testObserver = github.reposResponse("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        testObserver.assertValueCount(1);
+        assertEquals(200, testObserver.values().get(0).code());
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that when no retry is left, the last unsuccessful response is emitted.
+     */
+    @Test
+    public void testLastResponseEmitted() throws Exception {
+        failFirstRequests(Integer.MAX_VALUE);
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(503)
+                .setMaxRetries(2).build());
+
+        TestObserver<Response<List<Repository>>> testObserver = github.reposResponse("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        testObserver.assertValueCount(1);
+        assertEquals(503, testObserver.values().get(0).code());
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that {@code Result<T>} with retryable code is retried.
+     */
+    @Test
+    public void testResultRetried() throws Exception {
+        failFirstRequests(1);
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(503)
+                .setMaxRetries(3).build());
+
+        TestObserver<Result<List<Repository>>> testObserver = github.reposResult("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        testObserver.assertValueCount(1);
+        assertTrue(testObserver.values().get(0).response().isSuccessful());
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the retry action of the strategy is run before every retry of unsuccessful response,
+     * the same as before retries of errors, with {@code HttpException} of the response.
+     */
+    @Test
+    public void testRetryActionInvoked() throws Exception {
+        failFirstRequests(2);
+        final List<String> retries = new ArrayList<>();
+        Exponential.Builder builder = Exponential.init()
+                .addHttpCode(503)
+                .setBase(0)
+                .setMaxRetries(3);
+        builder.setOnRetryAction(new BiConsumer<Throwable, Integer>() {
+            @Override
+            public void accept(Throwable throwable, Integer retry) {
+                retries.add(((HttpException) throwable).code() + ":" + retry);
+            }
+        });
+        GitHub github = createGitHub(builder.build());
+
+        TestObserver<Response<List<Repository>>> testObserver = github.reposResponse("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(Arrays.asList("503:1", "503:2"), retries);
+    }
+
+    private void failFirstRequests(final int count) {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= count) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+    }
+
+    private GitHub createGitHub(BackoffStrategy strategy) {
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+    }
+}
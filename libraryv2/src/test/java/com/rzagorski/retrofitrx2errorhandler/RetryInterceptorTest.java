@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.tracing.InMemorySpanExporter;
+import com.rzagorski.retrofiterrorhandler.tracing.SemanticAttributes;
+import com.rzagorski.retrofiterrorhandler.tracing.Span;
+import com.rzagorski.retrofiterrorhandler.tracing.Tracer;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.observers.TestObserver;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.HttpException;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetryInterceptorTest {
+
+    MockWebServer mockWebServer;
+    AtomicInteger calls;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        calls = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that unsuccessful responses are retried by the interceptor, so the call
+     * is executed by Retrofit only once.
+     */
+    @Test
+    public void testRetriedBelowRetrofit() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RxErrorHandingFactory factory = createFactory(Simple.init()
+                .addHttpCode(503)
+                .setMaxRetries(3).build());
+        GitHub github = createGitHub(factory);
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(1, calls.get());
+        assertEquals(0, factory.getPendingRetryCount());
+    }
+
+    /**
+     * Test shows, that the call does not retry again the response, which the interceptor has run out
+     * of retries for.
+     */
+    @Test
+    public void testExhaustedResponseNotRetriedByCall() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        GitHub github = createGitHub(createFactory(Simple.init()
+                .addHttpCode(503)
+                .setMaxRetries(2).build()));
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(HttpException.class);
+        assertEquals(503, ((HttpException) testObserver.errors().get(0)).code());
+        assertEquals("true", ((HttpException) testObserver.errors().get(0)).response().headers()
+                .get(RetryInterceptor.EXHAUSTED_HEADER));
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(1, calls.get());
+    }
+
+    /**
+     * Test shows, that the call retries the unsuccessful responses itself, when the interceptor retries
+     * are set, but the interceptor is not added to the client.
+     */
+    @Test
+    public void testNotAddedInterceptorLeavesRetriesToCall() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(503);
+            }
+        });
+        RxErrorHandingFactory factory = createFactory(Simple.init()
+                .addHttpCode(503)
+                .setMaxRetries(2).build());
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(), factory);
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(HttpException.class);
+        assertEquals(503, ((HttpException) testObserver.errors().get(0)).code());
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the connection failures are retried by the interceptor and the last one
+     * reaches the subscriber without retrying the call.
+     */
+    @Test
+    public void testConnectionFailureRetriedBelowRetrofit() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        GitHub github = createGitHub(createFactory(Simple.init()
+                .addThrowable(ConnectException.class)
+                .setMaxRetries(2).build()), new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                attempts.incrementAndGet();
+                throw new ConnectException("Connection refused");
+            }
+        });
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(ConnectException.class);
+        assertEquals(3, attempts.get());
+        assertEquals(1, calls.get());
+        assertEquals(0, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the attempts and the waits of the interceptor are traced as the attempts
+     * and the backoff waits of the call.
+     */
+    @Test
+    public void testRetriesTraced() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        InMemorySpanExporter exporter = new InMemorySpanExporter();
+        GitHub github = createGitHub(new RxErrorHandingFactory(new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(503)
+                        .setMaxRetries(3).build())
+                .setInterceptorRetries(true)
+                .setTracer(new Tracer(exporter))
+                .build()));
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(1, calls.get());
+        int attempts = 0;
+        int backoffs = 0;
+        for (Span span : exporter.getFinishedSpans()) {
+            if (Tracer.ATTEMPT.equals(span.getName())) {
+                attempts++;
+                assertEquals(attempts, span.getAttribute(SemanticAttributes.RETRY_ATTEMPT));
+                assertEquals(attempts < 3 ? Span.StatusCode.ERROR : Span.StatusCode.OK, span.getStatusCode());
+            } else if (Tracer.BACKOFF.equals(span.getName())) {
+                backoffs++;
+                assertNotNull(span.getAttribute(SemanticAttributes.RETRY_DELAY_MS));
+            } else {
+                assertEquals(2, span.getAttribute(SemanticAttributes.RETRY_COUNT));
+            }
+        }
+        assertEquals(3, attempts);
+        assertEquals(2, backoffs);
+    }
+
+    private RxErrorHandingFactory createFactory(Simple strategy) {
+        return new RxErrorHandingFactory(new RxCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .setInterceptorRetries(true)
+                .build());
+    }
+
+    //counts the executions of the call above the interceptor, and then runs the attempts through the others
+    private GitHub createGitHub(RxErrorHandingFactory factory, Interceptor... attemptInterceptors) {
+        OkHttpClient.Builder client = new OkHttpClient.Builder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        calls.incrementAndGet();
+                        return chain.proceed(chain.request());
+                    }
+                })
+                .addInterceptor(factory.getRetryInterceptor());
+        for (Interceptor interceptor : attemptInterceptors) {
+            client.addInterceptor(interceptor);
+        }
+        return createRetrofitInstance(mockWebServer.url("/").toString(), factory, client.build());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import io.reactivex.exceptions.CompositeException;
+import io.reactivex.exceptions.UndeliverableException;
+import io.reactivex.observers.TestObserver;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import static com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate.causedBy;
+import static com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate.hasHeader;
+import static com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate.header;
+import static com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate.httpCode;
+import static com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate.httpCodeBetween;
+import static com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate.instanceOf;
+import static com.rzagorski.retrofitrx2errorhandler.backoff.retryBehavior.RetryPredicate.not;
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetryPredicateTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that the cause is found inside {@link CompositeException} and {@link UndeliverableException},
+     * but not deeper than {@link RetryPredicate#MAX_CAUSE_DEPTH}.
+     */
+    @Test
+    public void testCauseChain() throws Exception {
+        RetryPredicate timeout = causedBy(SocketTimeoutException.class);
+        Throwable composite = new CompositeException(new IllegalStateException(),
+                new IOException(new SocketTimeoutException()));
+
+        assertTrue(timeout.test(composite));
+        assertTrue(timeout.test(new UndeliverableException(composite)));
+        assertFalse(instanceOf(SocketTimeoutException.class).test(composite));
+        assertFalse(timeout.test(new CompositeException(new IllegalStateException(), new IOException())));
+
+        Throwable deep = new SocketTimeoutException();
+        for (int i = 0; i < RetryPredicate.MAX_CAUSE_DEPTH; i++) {
+            deep = new RuntimeException(deep);
+        }
+        assertTrue(timeout.test(deep));
+        assertFalse(timeout.test(new RuntimeException(deep)));
+    }
+
+    /**
+     * Test shows, that codes, ranges, headers and negation can be combined.
+     */
+    @Test
+    public void testCombinedConditions() throws Exception {
+        RetryPredicate predicate = httpCodeBetween(500, 599).and(not(httpCode(501)))
+                .or(httpCode(429).and(hasHeader("Retry-After")))
+                .or(httpCode(403).and(header("X-Reason", "throttled")));
+
+        assertTrue(predicate.test(createHttpException(503, null, null)));
+        assertFalse(predicate.test(createHttpException(501, null, null)));
+        assertTrue(predicate.test(createHttpException(429, "Retry-After", "1")));
+        assertFalse(predicate.test(createHttpException(429, null, null)));
+        assertTrue(predicate.test(createHttpException(403, "X-Reason", "Throttled")));
+        assertFalse(predicate.test(createHttpException(403, "X-Reason", "forbidden")));
+        assertFalse(predicate.test(new IOException()));
+        assertTrue(predicate.test(new CompositeException(new IOException(), createHttpException(500, null, null))));
+    }
+
+    /**
+     * Test shows, that the predicate added to {@link Simple} strategy decides about the retry.
+     */
+    @Test
+    public void testPredicateInStrategy() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                switch (mockWebServer.getRequestCount()) {
+                    case 1:
+                        return new MockResponse().setResponseCode(429).addHeader("Retry-After", "0");
+                    case 2:
+                        return new MockResponse().setResponseCode(429);
+                    default:
+                        return MockWebServerUtils.getSuccessfulResponse();
+                }
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addRetryPredicate(httpCode(429).and(hasHeader("Retry-After")))
+                        .setMaxRetries(3).build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(HttpException.class);
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
+
+    private static HttpException createHttpException(int code, String headerName, String headerValue) {
+        okhttp3.Response.Builder rawResponse = new okhttp3.Response.Builder()
+                .code(code)
+                .message("Error")
+                .protocol(Protocol.HTTP_1_1)
+                .request(new Request.Builder().url("http://localhost/").build());
+        if (headerName != null) {
+            rawResponse.addHeader(headerName, headerValue);
+        }
+        ResponseBody body = ResponseBody.create(MediaType.parse("text/plain"), "");
+        return new HttpException(Response.error(body, rawResponse.build()));
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofiterrorhandler.scheduler.Priority;
+import com.rzagorski.retrofiterrorhandler.scheduler.PriorityHeaderInterceptor;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryPriority;
+import com.rzagorski.retrofiterrorhandler.scheduler.RetryScheduler;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetrySchedulerTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that when the cap is reached, waiting retries are released in order of their priority,
+     * not in order they became due.
+     */
+    @Test
+    public void testReleasedInPriorityOrder() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler.Builder()
+                .setMaxConcurrentRetries(1)
+                .setStarvationTimeout(1, TimeUnit.MINUTES)
+                .build();
+        List<Priority> released = new ArrayList<>();
+        RetryScheduler.Ticket running = scheduler.newTicket(Priority.NORMAL);
+        running.schedule(record(released, Priority.NORMAL));
+        RetryScheduler.Ticket low = scheduler.newTicket(Priority.LOW);
+        low.schedule(record(released, Priority.LOW));
+        RetryScheduler.Ticket high = scheduler.newTicket(Priority.HIGH);
+        high.schedule(record(released, Priority.HIGH));
+        assertEquals(2, scheduler.getQueued());
+
+        running.attemptFinished();
+        high.release();
+        low.release();
+        assertEquals(3, released.size());
+        assertEquals(Priority.NORMAL, released.get(0));
+        assertEquals(Priority.HIGH, released.get(1));
+        assertEquals(Priority.LOW, released.get(2));
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    /**
+     * Test shows, that the retry of the call unsubscribed while waiting in the queue leaves the queue
+     * and the next retry gets the slot.
+     */
+    @Test
+    public void testReleasedWhileQueued() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler.Builder()
+                .setMaxConcurrentRetries(1)
+                .build();
+        List<Priority> released = new ArrayList<>();
+        RetryScheduler.Ticket running = scheduler.newTicket(Priority.NORMAL);
+        running.schedule(record(released, Priority.NORMAL));
+        RetryScheduler.Ticket cancelled = scheduler.newTicket(Priority.HIGH);
+        cancelled.schedule(record(released, Priority.HIGH));
+        RetryScheduler.Ticket low = scheduler.newTicket(Priority.LOW);
+        low.schedule(record(released, Priority.LOW));
+        assertEquals(2, scheduler.getQueued());
+
+        cancelled.release();
+        assertEquals(1, scheduler.getQueued());
+        running.release();
+        assertEquals(0, scheduler.getQueued());
+        assertEquals(2, released.size());
+        assertEquals(Priority.LOW, released.get(1));
+        low.release();
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    /**
+     * Test shows, that a retry waiting longer than the starvation timeout is released before retries
+     * of higher priority.
+     */
+    @Test
+    public void testStarvationPrevented() throws Exception {
+        RetryScheduler scheduler = new RetryScheduler.Builder()
+                .setMaxConcurrentRetries(1)
+                .setStarvationTimeout(100, TimeUnit.MILLISECONDS)
+                .build();
+        List<Priority> released = new ArrayList<>();
+        RetryScheduler.Ticket running = scheduler.newTicket(Priority.HIGH);
+        running.schedule(record(released, Priority.HIGH));
+        RetryScheduler.Ticket low = scheduler.newTicket(Priority.LOW);
+        low.schedule(record(released, Priority.LOW));
+        Thread.sleep(200);
+        RetryScheduler.Ticket high = scheduler.newTicket(Priority.HIGH);
+        high.schedule(record(released, Priority.HIGH));
+
+        running.release();
+        assertEquals(2, released.size());
+        assertEquals(Priority.LOW, released.get(1));
+    }
+
+    /**
+     * Test shows, that the priority set for a single call with the header wins over
+     * {@link RetryPriority} annotation of the method.
+     */
+    @Test
+    public void testPriorityOfCall() throws Exception {
+        Annotation[] annotations = GitHub.class
+                .getMethod("repos", String.class, Priority.class).getAnnotations();
+        Request request = new Request.Builder().url(mockWebServer.url("/")).build();
+        assertEquals(Priority.LOW, Priority.of(annotations, request));
+        assertEquals(Priority.NORMAL, Priority.of(new Annotation[0], request));
+        Request withHeader = request.newBuilder().header(RetryPriority.HEADER, "high").build();
+        assertEquals(Priority.HIGH, Priority.of(annotations, withHeader));
+    }
+
+    /**
+     * Test shows, that retries made through the scheduler reach the server without the priority header
+     * and the slot is given back, when the call completes.
+     */
+    @Test
+    public void testRetryThroughScheduler() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        RetryScheduler scheduler = new RetryScheduler.Builder()
+                .setMaxConcurrentRetries(1)
+                .build();
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .setRetryScheduler(scheduler)
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter), new OkHttpClient.Builder()
+                        .addInterceptor(new PriorityHeaderInterceptor())
+                        .build());
+
+        Observable observable = github.repos("square", Priority.HIGH);
+        TestObserver testObserver = observable.test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertComplete();
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertNull(mockWebServer.takeRequest().getHeader(RetryPriority.HEADER));
+        assertEquals(0, scheduler.getRunning());
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    private static Runnable record(final List<Priority> released, final Priority priority) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                released.add(priority);
+            }
+        };
+    }
+}
@@ -151,4 +151,33 @@ public class SimpleBackoffTest {
         testObserver.awaitTerminalEvent();
         assertEquals(1, testObserver.errorCount());
     }
+
+    /**
+     * Test shows, that the error is passed to every applicable strategy, each of them counts the retry,
+     * and the call ends, when one of them is run out.
+     */
+    @Test
+    public void testEveryApplicableStrategyCountsRetry() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(1).build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(HttpException.class);
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler;
+
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx2errorhandler.model.GitHub;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.functions.BiConsumer;
+import io.reactivex.observers.TestObserver;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import static com.rzagorski.retrofitrx2errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StacklessHttpExceptionTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer = null;
+    }
+
+    /**
+     * Test shows, that the exception created for retryable response has no stack trace.
+     */
+    @Test
+    public void testRetryableExceptionHasNoStackTrace() throws Exception {
+        Response<?> response = Response.error(503, ResponseBody.create(MediaType.parse("text/plain"), ""));
+        HttpException exception = new RetryableHttpException(response);
+        assertEquals(0, exception.getStackTrace().length);
+        assertEquals(503, exception.code());
+    }
+
+    /**
+     * Test shows, that when the retries are over, the subscriber gets
+     * {@link retrofit2.adapter.rxjava2.HttpException} with the stack trace.
+     */
+    @Test
+    public void testExhaustedRetriesEndWithStackTrace() throws Exception {
+        respondWith(503);
+        GitHub github = createGitHub(503);
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(retrofit2.adapter.rxjava2.HttpException.class);
+        Throwable error = (Throwable) testObserver.errors().get(0);
+        assertEquals(503, ((HttpException) error).code());
+        assertTrue(error.getStackTrace().length > 0);
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that response with code no strategy handles ends with
+     * {@link retrofit2.adapter.rxjava2.HttpException} at once.
+     */
+    @Test
+    public void testNotRetryableCode() throws Exception {
+        respondWith(404);
+        GitHub github = createGitHub(503);
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(retrofit2.adapter.rxjava2.HttpException.class);
+        Throwable error = (Throwable) testObserver.errors().get(0);
+        assertEquals(404, ((HttpException) error).code());
+        assertTrue(error.getStackTrace().length > 0);
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that strategy matching {@link retrofit2.adapter.rxjava2.HttpException} retries
+     * the response and its action gets the exception of this class, even when the other
+     * strategy matches the code only.
+     */
+    @Test
+    public void testStrategyMatchingAdapterHttpException() throws Exception {
+        respondWith(503);
+        final List<Class<?>> retried = Collections.synchronizedList(new ArrayList<Class<?>>());
+        Exponential.Builder adapterExceptionStrategy = Exponential.init()
+                .addThrowable(retrofit2.adapter.rxjava2.HttpException.class)
+                .setBase(0)
+                .setMaxRetries(2);
+        adapterExceptionStrategy.setOnRetryAction(new BiConsumer<Throwable, Integer>() {
+            @Override
+            public void accept(Throwable throwable, Integer retry) throws Exception {
+                retried.add(throwable.getClass());
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(404)
+                        .setMaxRetries(2).build())
+                .addBackoffStrategy(adapterExceptionStrategy.build())
+                .build();
+        RxErrorHandingFactory factory = new RxErrorHandingFactory(rxCallAdapter);
+        assertFalse(factory.getRetryPolicy().allowsStacklessHttpErrors());
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(), factory);
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitTerminalEvent();
+        testObserver.assertError(retrofit2.adapter.rxjava2.HttpException.class);
+        assertEquals(3, mockWebServer.getRequestCount());
+        //the action runs for the error ending the retries too
+        assertEquals(3, retried.size());
+        for (Class<?> retriedClass : retried) {
+            assertEquals(retrofit2.adapter.rxjava2.HttpException.class, retriedClass);
+        }
+    }
+
+    private void respondWith(final int code) {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(code);
+            }
+        });
+    }
+
+    private GitHub createGitHub(int retriedCode) {
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(retriedCode)
+                        .setMaxRetries(2).build())
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+    }
+}
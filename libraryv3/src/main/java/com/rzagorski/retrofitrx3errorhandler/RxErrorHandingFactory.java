@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx3errorhandler;
+
+import com.rzagorski.retrofitrx3errorhandler.backoff.BackoffStrategy;
+import com.rzagorski.retrofitrx3errorhandler.retry.RetryTransformer;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava3.RxJava3CallAdapterFactory;
+
+/**
+ * Main class for communication with <a href="https://github.com/square/retrofit/blob/master/retrofit/src/main/java/retrofit2/CallAdapter.java#L62">CallAdapter.Factory</a>.
+ * Wraps the call made by
+ * <a href="https://github.com/square/retrofit/blob/master/retrofit-adapters/rxjava3/src/main/java/retrofit2/adapter/rxjava3/RxJava3CallAdapterFactory.java">RxJava3CallAdapterFactory</a>
+ * and retries {@code Observable}, {@code Flowable}, {@code Single}, {@code Maybe} and {@code Completable}
+ * calls with {@link RetryTransformer}.
+ */
+public class RxErrorHandingFactory extends CallAdapter.Factory {
+    private final RxJava3CallAdapterFactory original;
+    private final RetryTransformer<Object> retryTransformer;
+
+    public RxErrorHandingFactory(RxCallAdapter callAdapter) {
+        this.original = RxJava3CallAdapterFactory.create();
+        //the transformer keeps no state between subscriptions, so all calls share it
+        this.retryTransformer = new RetryTransformer<>(callAdapter.getBackoffStrategies());
+        for (BackoffStrategy strategy : callAdapter.getBackoffStrategies()) {
+            strategy.setLoggingEnabled(callAdapter.isLoggingEnabled());
+        }
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        CallAdapter<?, ?> wrapped = original.get(returnType, annotations, retrofit);
+        if (wrapped == null) {
+            return null;
+        }
+        return new RxCallAdapterWrapper<>(wrapped);
+    }
+
+    private class RxCallAdapterWrapper<R> implements CallAdapter<R, Object> {
+        private final CallAdapter<R, ?> wrapped;
+
+        RxCallAdapterWrapper(CallAdapter<R, ?> wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        @Override
+        public Type responseType() {
+            return wrapped.responseType();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object adapt(Call<R> call) {
+            Object adapted = wrapped.adapt(call);
+            if (adapted instanceof Observable) {
+                return ((Observable<Object>) adapted).compose(retryTransformer);
+            }
+            if (adapted instanceof Flowable) {
+                return ((Flowable<Object>) adapted).compose(retryTransformer);
+            }
+            if (adapted instanceof Single) {
+                return ((Single<Object>) adapted).compose(retryTransformer);
+            }
+            if (adapted instanceof Maybe) {
+                return ((Maybe<Object>) adapted).compose(retryTransformer);
+            }
+            if (adapted instanceof Completable) {
+                return ((Completable) adapted).compose(retryTransformer);
+            }
+            return adapted;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx3errorhandler.backoff;
+
+import io.reactivex.rxjava3.core.Completable;
+
+/**
+ * The base interface for all backoff strategies.
+ * <br>
+ * Unlike the RxJava and RxJava2 bindings, the strategy is not a {@code retryWhen} handler.
+ * It only decides about the retry and returns the wait before it, so a single
+ * {@link com.rzagorski.retrofitrx3errorhandler.retry.RetryTransformer} can resubscribe
+ * {@code Observable}, {@code Flowable}, {@code Single}, {@code Maybe} and {@code Completable} calls.
+ */
+public interface BackoffStrategy {
+
+    /**
+     * Defines, whether the specified throwable should be handled by this {@link BackoffStrategy}
+     *
+     * @param throwable the error of the call
+     * @return {@code true} when the error should be retried
+     */
+    boolean isApplicable(Throwable throwable) throws Throwable;
+
+    /**
+     * @return the maximum number of retries made by this strategy for a single call
+     */
+    int getMaxRetries();
+
+    /**
+     * Called before every retry made by this strategy.
+     *
+     * @param throwable the error of the call
+     * @param retry     number of the retry, starting from 1
+     * @return completable completing, when the retry should be made
+     */
+    Completable getRetryDelay(Throwable throwable, int retry) throws Throwable;
+
+    /**
+     * Enabling logging feature for this {@link BackoffStrategy}
+     *
+     * @param logging {@code true} to print the retries to the standard output
+     */
+    void setLoggingEnabled(boolean logging);
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx3errorhandler.backoff;
+
+import com.rzagorski.retrofitrx3errorhandler.backoff.retryBehavior.ExclusiveRetryIfBehaviour;
+import com.rzagorski.retrofitrx3errorhandler.backoff.retryBehavior.InclusiveRetryIfBehaviour;
+import com.rzagorski.retrofitrx3errorhandler.backoff.strategies.AddReaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.functions.BiConsumer;
+import io.reactivex.rxjava3.functions.Function;
+
+public abstract class BaseBackoffStrategy implements BackoffStrategy {
+    private final Function<Throwable, Boolean> retryIfFunc;
+    private final BiConsumer<Throwable, Integer> doOnRetryAction;
+    private final Observable<?> backupObservable;
+    private volatile boolean isLoggingEnabled;
+
+    protected BaseBackoffStrategy(Builder builder) {
+        if (builder.retryIfFunction != null) {
+            this.retryIfFunc = builder.retryIfFunction;
+        } else if (builder.isExclusive) {
+            this.retryIfFunc = new ExclusiveRetryIfBehaviour(builder.throwableList, builder.httpCodeList);
+        } else {
+            this.retryIfFunc = new InclusiveRetryIfBehaviour(builder.throwableList, builder.httpCodeList);
+        }
+        this.doOnRetryAction = builder.doOnRetryAction != null
+                ? builder.doOnRetryAction
+                : new DefaultDoOnRetryAction();
+        this.backupObservable = builder.observableToExecuteAfterError;
+    }
+
+    /**
+     * @param retry number of the retry, starting from 1
+     * @return the wait before the retry in milliseconds, 0 to retry immediately
+     */
+    protected abstract long getWaitTime(int retry);
+
+    public Function<Throwable, Boolean> getRetryIfFunction() {
+        return retryIfFunc;
+    }
+
+    @Override
+    public boolean isApplicable(Throwable throwable) throws Throwable {
+        if (isLoggingEnabled) {
+            System.out.println("Checking against: "
+                    + throwable.getClass().getSimpleName()
+                    + " for strategy: "
+                    + getClass().getSimpleName());
+        }
+        return retryIfFunc.apply(throwable);
+    }
+
+    /**
+     * Returns the wait before the retry, preceded by the backup observable, if set.
+     * Immediate retries without the backup observable do not schedule anything.
+     */
+    @Override
+    public Completable getRetryDelay(Throwable throwable, int retry) throws Throwable {
+        if (isLoggingEnabled) {
+            System.out.println("Found match: "
+                    + throwable.getClass().getSimpleName()
+                    + " for strategy: "
+                    + getClass().getSimpleName()
+                    + " for "
+                    + retry + " retry");
+        }
+        doOnRetryAction.accept(throwable, retry);
+        long waitTime = getWaitTime(retry);
+        Completable delay = waitTime > 0 ? Completable.timer(waitTime, TimeUnit.MILLISECONDS) : null;
+        if (backupObservable == null) {
+            return delay;
+        }
+        Completable backup = backupObservable.ignoreElements();
+        return delay == null ? backup : backup.andThen(delay);
+    }
+
+    @Override
+    public void setLoggingEnabled(boolean logging) {
+        isLoggingEnabled = logging;
+    }
+
+    public static class Builder implements Optional, AddReaction<Builder> {
+        private boolean isExclusive = false;
+        private List<Class<? extends Throwable>> throwableList;
+        private List<Integer> httpCodeList;
+        private Function<Throwable, Boolean> retryIfFunction;
+        private BiConsumer<Throwable, Integer> doOnRetryAction;
+        private Observable<?> observableToExecuteAfterError;
+
+        public Builder() {
+            throwableList = new ArrayList<>();
+            httpCodeList = new ArrayList<>();
+        }
+
+        @Override
+        public Builder exclusive() {
+            isExclusive = true;
+            return this;
+        }
+
+        @Override
+        public Builder addThrowable(Class<? extends Throwable> throwableForBackoff) {
+            this.throwableList.add(throwableForBackoff);
+            return this;
+        }
+
+        @Override
+        public Builder setThrowable(List<Class<? extends Throwable>> throwableForBackoffList) {
+            this.throwableList = new ArrayList<>(throwableForBackoffList);
+            return this;
+        }
+
+        @Override
+        public Builder setHttpCodeList(List<Integer> codes) {
+            this.httpCodeList = new ArrayList<>(codes);
+            return this;
+        }
+
+        @Override
+        public Builder addHttpCode(int code) {
+            this.httpCodeList.add(code);
+            return this;
+        }
+
+        @Override
+        public Builder addObservable(Observable<?> observable) {
+            this.observableToExecuteAfterError = observable;
+            return this;
+        }
+
+        @Override
+        public Builder setRetryFunction(Function<Throwable, Boolean> retryIf) {
+            this.retryIfFunction = retryIf;
+            return this;
+        }
+
+        @Override
+        public Builder setOnRetryAction(BiConsumer<Throwable, Integer> onRetryAction) {
+            this.doOnRetryAction = onRetryAction;
+            return this;
+        }
+    }
+
+    public interface Optional {
+
+        public Optional setOnRetryAction(BiConsumer<Throwable, Integer> onRetryAction);
+
+        public Optional setRetryFunction(Function<Throwable, Boolean> retryIf);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx3errorhandler.backoff.strategies;
+
+import com.rzagorski.retrofitrx3errorhandler.backoff.BaseBackoffStrategy;
+
+import java.util.List;
+
+import io.reactivex.rxjava3.core.Observable;
+
+/**
+ * Simple backoff strategy. Executes retry immediately.
+ * <br>
+ * Enables setting of {@code Throwables}, http codes checked, when retry is needed,
+ * maximum number of retries.
+ */
+public class Simple extends BaseBackoffStrategy {
+    private final int maxRetries;
+
+    private Simple(Builder builder) {
+        super(builder.baseBuilder);
+        this.maxRetries = builder.maxRetries;
+    }
+
+    public static AddReaction<Builder> init() {
+        return new Builder();
+    }
+
+    @Override
+    protected long getWaitTime(int retry) {
+        return 0;
+    }
+
+    @Override
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public static class Builder implements AddReaction<Builder>, Optional {
+        private BaseBackoffStrategy.Builder baseBuilder;
+        private int maxRetries = 3;
+
+        private Builder() {
+            baseBuilder = new BaseBackoffStrategy.Builder();
+        }
+
+        @Override
+        public Builder exclusive() {
+            baseBuilder.exclusive();
+            return this;
+        }
+
+        @Override
+        public Builder addThrowable(Class<? extends Throwable> throwableForBackoff) {
+            baseBuilder.addThrowable(throwableForBackoff);
+            return this;
+        }
+
+        @Override
+        public Builder setThrowable(List<Class<? extends Throwable>> throwableForBackoffList) {
+            baseBuilder.setThrowable(throwableForBackoffList);
+            return this;
+        }
+
+        @Override
+        public Builder setHttpCodeList(List<Integer> codes) {
+            baseBuilder.setHttpCodeList(codes);
+            return this;
+        }
+
+        @Override
+        public Builder addHttpCode(int code) {
+            baseBuilder.addHttpCode(code);
+            return this;
+        }
+
+        @Override
+        public Builder addObservable(Observable<?> observable) {
+            baseBuilder.addObservable(observable);
+            return this;
+        }
+
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Simple build() {
+            return new Simple(this);
+        }
+    }
+
+    public interface Optional {
+
+        /**
+         * Sets the maximum number of retries of original request.
+         *
+         * @param maxRetries {@link java.lang.Integer Integer} indicating maximum number of retries.
+         * @return the Builder to add more parameters
+         */
+        public Builder setMaxRetries(int maxRetries);
+
+        /**
+         * Builds the Backoff strategy taking previously set parameters.
+         *
+         * @return backoff strategy of type {@link com.rzagorski.retrofitrx3errorhandler.backoff.strategies.Simple}
+         */
+        public Simple build();
+    }
+}
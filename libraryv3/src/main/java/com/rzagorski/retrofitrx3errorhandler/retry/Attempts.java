@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx3errorhandler.retry;
+
+import com.rzagorski.retrofiterrorhandler.backoff.RetryAttempts;
+import com.rzagorski.retrofitrx3errorhandler.backoff.BackoffStrategy;
+
+import java.util.List;
+
+import io.reactivex.rxjava3.exceptions.Exceptions;
+
+/**
+ * Retries made for a single subscription to the call, counted for every strategy separately.
+ * <br>
+ * The attempts of one subscription never overlap, so the counters need no synchronization.
+ */
+final class Attempts extends RetryAttempts<BackoffStrategy, Exception> {
+
+    Attempts(List<BackoffStrategy> strategies) {
+        super(strategies);
+    }
+
+    @Override
+    protected boolean canRetry(BackoffStrategy strategy, int retry) {
+        return retry <= strategy.getMaxRetries();
+    }
+
+    @Override
+    protected boolean isApplicable(BackoffStrategy strategy, Throwable error) throws Exception {
+        try {
+            return strategy.isApplicable(error);
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            throw Exceptions.propagate(t);
+        }
+    }
+}
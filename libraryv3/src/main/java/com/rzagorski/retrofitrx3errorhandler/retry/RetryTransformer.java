@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx3errorhandler.retry;
+
+import com.rzagorski.retrofiterrorhandler.backoff.CallRetries;
+import com.rzagorski.retrofitrx3errorhandler.backoff.BackoffStrategy;
+
+import org.reactivestreams.Publisher;
+
+import java.util.List;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.CompletableSource;
+import io.reactivex.rxjava3.core.CompletableTransformer;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.FlowableTransformer;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.MaybeEmitter;
+import io.reactivex.rxjava3.core.MaybeOnSubscribe;
+import io.reactivex.rxjava3.core.MaybeSource;
+import io.reactivex.rxjava3.core.MaybeTransformer;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.ObservableSource;
+import io.reactivex.rxjava3.core.ObservableTransformer;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleSource;
+import io.reactivex.rxjava3.core.SingleTransformer;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Action;
+import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.functions.Supplier;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Retries the call with {@link BackoffStrategy backoff strategies}, whatever reactive type it returns.
+ * <br>
+ * Every subscription gets its own {@link CallRetries}, which decides about the retries the same way as
+ * in the other bindings. The call is subscribed again by {@code retryWhen}, which resubscribes in a loop,
+ * so a long run of retries does not nest the subscriptions. Immediate retries do not schedule anything.
+ */
+public class RetryTransformer<T> implements ObservableTransformer<T, T>, FlowableTransformer<T, T>,
+        SingleTransformer<T, T>, MaybeTransformer<T, T>, CompletableTransformer {
+    private static final CallRetries.Wait NO_WAIT = new CallRetries.Wait() {
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final List<BackoffStrategy> strategies;
+
+    public RetryTransformer(List<BackoffStrategy> strategies) {
+        this.strategies = strategies;
+    }
+
+    @Override
+    public ObservableSource<T> apply(final Observable<T> upstream) {
+        return Observable.defer(new Supplier<ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> get() {
+                final Retries retries = new Retries();
+                return upstream.retryWhen(new Function<Observable<Throwable>, ObservableSource<?>>() {
+                    @Override
+                    public ObservableSource<?> apply(Observable<Throwable> errors) {
+                        return errors.concatMapMaybe(retries);
+                    }
+                }).doFinally(retries);
+            }
+        });
+    }
+
+    @Override
+    public Publisher<T> apply(final Flowable<T> upstream) {
+        return Flowable.defer(new Supplier<Publisher<T>>() {
+            @Override
+            public Publisher<T> get() {
+                Retries retries = new Retries();
+                return upstream.retryWhen(retries.handler()).doFinally(retries);
+            }
+        });
+    }
+
+    @Override
+    public SingleSource<T> apply(final Single<T> upstream) {
+        return Single.defer(new Supplier<SingleSource<T>>() {
+            @Override
+            public SingleSource<T> get() {
+                Retries retries = new Retries();
+                return upstream.retryWhen(retries.handler()).doFinally(retries);
+            }
+        });
+    }
+
+    @Override
+    public MaybeSource<T> apply(final Maybe<T> upstream) {
+        return Maybe.defer(new Supplier<MaybeSource<T>>() {
+            @Override
+            public MaybeSource<T> get() {
+                Retries retries = new Retries();
+                return upstream.retryWhen(retries.handler()).doFinally(retries);
+            }
+        });
+    }
+
+    @Override
+    public CompletableSource apply(final Completable upstream) {
+        return Completable.defer(new Supplier<CompletableSource>() {
+            @Override
+            public CompletableSource get() {
+                Retries retries = new Retries();
+                return upstream.retryWhen(retries.handler()).doFinally(retries);
+            }
+        });
+    }
+
+    /**
+     * The retries of a single subscription. Every error is turned into a {@code Maybe}, which emits,
+     * when the retry is due, and fails with the error, which is passed on.
+     */
+    private final class Retries implements Function<Throwable, MaybeSource<Boolean>>, Action {
+        private final CallRetries<BackoffStrategy> retries = new CallRetries<>(new Attempts(strategies),
+                new Binding(), null, 0, null, null);
+
+        @Override
+        public MaybeSource<Boolean> apply(final Throwable error) {
+            return Maybe.create(new MaybeOnSubscribe<Boolean>() {
+                @Override
+                public void subscribe(final MaybeEmitter<Boolean> emitter) {
+                    retries.onError(error, new CallRetries.Callback() {
+                        @Override
+                        public void retry() {
+                            emitter.onSuccess(Boolean.TRUE);
+                        }
+
+                        @Override
+                        public void giveUp(Throwable throwable) {
+                            emitter.onError(throwable);
+                        }
+                    });
+                }
+            });
+        }
+
+        Function<Flowable<Throwable>, Publisher<?>> handler() {
+            return new Function<Flowable<Throwable>, Publisher<?>>() {
+                @Override
+                public Publisher<?> apply(Flowable<Throwable> errors) {
+                    return errors.concatMapMaybe(Retries.this);
+                }
+            };
+        }
+
+        //the subscription ended or was disposed, the wait for the retry is not needed anymore
+        @Override
+        public void run() {
+            retries.dispose();
+        }
+    }
+
+    /**
+     * Waits for the retries with the completables returned by the strategies, which run their retry action,
+     * when they return the wait before the retry.
+     */
+    private static final class Binding implements CallRetries.Binding<BackoffStrategy> {
+
+        @Override
+        public boolean hasRetried(Object cause) {
+            return false;
+        }
+
+        @Override
+        public void onRetry(BackoffStrategy strategy, Object cause, int retry) {
+        }
+
+        @Override
+        public CallRetries.Wait schedule(BackoffStrategy strategy, Object cause, int retry,
+                                         final CallRetries.Callback callback) {
+            Completable delay;
+            try {
+                delay = strategy.getRetryDelay((Throwable) cause, retry);
+            } catch (Throwable t) {
+                callback.giveUp(t);
+                return NO_WAIT;
+            }
+            if (delay == null) {
+                callback.retry();
+                return NO_WAIT;
+            }
+            final Disposable wait = delay.subscribe(new Action() {
+                @Override
+                public void run() {
+                    callback.retry();
+                }
+            }, new Consumer<Throwable>() {
+                @Override
+                public void accept(Throwable throwable) {
+                    callback.giveUp(throwable);
+                }
+            });
+            return new CallRetries.Wait() {
+                @Override
+                public void cancel() {
+                    wait.dispose();
+                }
+            };
+        }
+
+        @Override
+        public void resume(Runnable retry) {
+            Schedulers.computation().scheduleDirect(retry);
+        }
+    }
+}
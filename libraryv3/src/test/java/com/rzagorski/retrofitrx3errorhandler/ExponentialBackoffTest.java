@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx3errorhandler;
+
+import com.rzagorski.retrofitrx3errorhandler.backoff.strategies.Exponential;
+import com.rzagorski.retrofitrx3errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx3errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.functions.BiConsumer;
+import io.reactivex.rxjava3.observers.TestObserver;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static com.rzagorski.retrofitrx3errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ExponentialBackoffTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    /**
+     * Test shows, that every retry of {@link Exponential} strategy waits base to the power of the retry
+     * number seconds, so 2 retries with base 1 take at least 2 seconds, and the retry action
+     * gets the number of every retry.
+     */
+    @Test
+    public void testRetryWaits() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() <= 2) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+        final List<Integer> retries = new ArrayList<>();
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Exponential.init()
+                        .addHttpCode(503)
+                        .setBase(1)
+                        .setMaxRetries(3)
+                        .setOnRetryAction(new BiConsumer<Throwable, Integer>() {
+                            @Override
+                            public void accept(Throwable throwable, Integer retry) {
+                                retries.add(retry);
+                            }
+                        })
+                        .build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        long startTime = System.currentTimeMillis();
+        TestObserver testObserver = github.reposMaybe("square").test();
+        testObserver.awaitDone(10, TimeUnit.SECONDS);
+        long endTime = System.currentTimeMillis();
+        testObserver.assertComplete();
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(Arrays.asList(1, 2), retries);
+        assertTrue((endTime - startTime) >= 2 * MockWebServerUtils.ONE_SEC);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx3errorhandler;
+
+import com.rzagorski.retrofitrx3errorhandler.backoff.strategies.Simple;
+import com.rzagorski.retrofitrx3errorhandler.model.GitHub;
+import com.rzagorski.retrofitrx3errorhandler.utils.MockWebServerUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.HttpException;
+
+import static com.rzagorski.retrofitrx3errorhandler.utils.MockWebServerUtils.createRetrofitInstance;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SimpleBackoffTest {
+
+    MockWebServer mockWebServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+    }
+
+    /**
+     * Test shows, that the {@code Observable} call is subscribed again after every 500 server error
+     * and completes, when the server answers.
+     */
+    @Test
+    public void testObservableRetried() throws Exception {
+        succeedEvery(3);
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(3).build());
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitDone(10, TimeUnit.SECONDS);
+        testObserver.assertComplete();
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that {@code Flowable}, {@code Single}, {@code Maybe} and {@code Completable} calls
+     * are retried the same as {@code Observable}, every call with its own count of retries.
+     */
+    @Test
+    public void testAllReactiveTypesRetried() throws Exception {
+        succeedEvery(2);
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(1).build());
+
+        TestSubscriber flowable = github.reposFlowable("square").test();
+        flowable.awaitDone(10, TimeUnit.SECONDS);
+        flowable.assertComplete();
+        TestObserver single = github.reposSingle("square").test();
+        single.awaitDone(10, TimeUnit.SECONDS);
+        single.assertComplete();
+        TestObserver maybe = github.reposMaybe("square").test();
+        maybe.awaitDone(10, TimeUnit.SECONDS);
+        maybe.assertComplete();
+        TestObserver completable = github.reposCompletable("square").test();
+        completable.awaitDone(10, TimeUnit.SECONDS);
+        completable.assertComplete();
+        assertEquals(8, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the error is passed to the subscriber, when
+     * {@link com.rzagorski.retrofitrx3errorhandler.backoff.strategies.Simple.Builder#setMaxRetries(int)}
+     * is run out.
+     */
+    @Test
+    public void testRetriesExhausted() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        GitHub github = createGitHub(Simple.init()
+                .addHttpCode(500)
+                .setMaxRetries(2).build());
+
+        TestObserver testObserver = github.reposSingle("square").test();
+        testObserver.awaitDone(10, TimeUnit.SECONDS);
+        testObserver.assertError(HttpException.class);
+        assertEquals(3, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Test shows, that the error is passed to every applicable strategy, each of them counts the retry,
+     * and the call ends, when one of them is run out, the same as in the RxJava2 binding.
+     */
+    @Test
+    public void testEveryApplicableStrategyCountsRetry() throws Exception {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(3).build())
+                .addBackoffStrategy(Simple.init()
+                        .addHttpCode(500)
+                        .setMaxRetries(1).build())
+                .build();
+        GitHub github = createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+
+        TestObserver testObserver = github.repos("square").test();
+        testObserver.awaitDone(10, TimeUnit.SECONDS);
+        testObserver.assertError(HttpException.class);
+        assertEquals(2, mockWebServer.getRequestCount());
+    }
+
+    /**
+     * Answers with 500 server error, unless the number of the request is divisible by {@code period}.
+     */
+    private void succeedEvery(final int period) {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (mockWebServer.getRequestCount() % period != 0) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return MockWebServerUtils.getSuccessfulResponse();
+            }
+        });
+    }
+
+    private GitHub createGitHub(Simple strategy) {
+        RxCallAdapter rxCallAdapter = new RxCallAdapter.Builder()
+                .addBackoffStrategy(strategy)
+                .build();
+        return createRetrofitInstance(mockWebServer.url("/").toString(),
+                new RxErrorHandingFactory(rxCallAdapter));
+    }
+}
@@ -0,0 +1,28 @@
+package com.rzagorski.retrofitrx3errorhandler.model;
+
+import java.util.List;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import retrofit2.http.GET;
+import retrofit2.http.Path;
+
+public interface GitHub {
+    @GET("/users/{owner}/repos")
+    Observable<List<Repository>> repos(@Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Flowable<List<Repository>> reposFlowable(@Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Single<List<Repository>> reposSingle(@Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Maybe<List<Repository>> reposMaybe(@Path("owner") String owner);
+
+    @GET("/users/{owner}/repos")
+    Completable reposCompletable(@Path("owner") String owner);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.stress;
+
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Mode;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.Signal;
+import org.openjdk.jcstress.annotations.State;
+
+/**
+ * The logging flag is set on strategies shared by all subscriptions, which read it on their own threads.
+ */
+@JCStressTest(Mode.Termination)
+@Description("Subscriptions see the logging flag set on the shared strategy.")
+@Outcome(id = "TERMINATED", expect = Expect.ACCEPTABLE, desc = "The flag was seen.")
+@Outcome(id = "STALE", expect = Expect.FORBIDDEN, desc = "The flag was never seen.")
+@State
+public class LoggingFlagStressTest {
+    private final Simple strategy = Simple.init().addHttpCode(503).build();
+
+    @Actor
+    public void subscription() {
+        while (!strategy.isLoggingEnabled()) {
+            //spins until the flag is seen
+        }
+    }
+
+    @Signal
+    public void enableLogging() {
+        strategy.setLoggingEnabled(true);
+    }
+}
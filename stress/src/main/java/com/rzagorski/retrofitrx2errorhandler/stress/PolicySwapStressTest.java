@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.stress;
+
+import com.rzagorski.retrofitrx2errorhandler.RetryPolicy;
+import com.rzagorski.retrofitrx2errorhandler.RxCallAdapter;
+import com.rzagorski.retrofitrx2errorhandler.RxErrorHandingFactory;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.functions.Consumer;
+import okhttp3.ResponseBody;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+/**
+ * The policy is swapped, e.g. by the file watcher, while a subscription is retrying its call. The subscription
+ * keeps the policy it was subscribed with, so all its retries are made by the strategy of one policy,
+ * never partly by the old and partly by the new one.
+ * <br>
+ * The results are the retries counted by the strategy of the initial policy, by the strategy of the swapped in
+ * policy and the number of requests made.
+ */
+@JCStressTest
+@Description("Swapping the retry policy does not change the policy of the subscription retrying its call.")
+@Outcome(id = "3, 0, 3", expect = Expect.ACCEPTABLE, desc = "The call was subscribed before the swap.")
+@Outcome(id = "0, 3, 3", expect = Expect.ACCEPTABLE, desc = "The call was subscribed after the swap.")
+@Outcome(expect = Expect.FORBIDDEN, desc = "The retries of the call were made by both policies.")
+@State
+public class PolicySwapStressTest {
+    private final AtomicInteger initialRetries = new AtomicInteger();
+    private final AtomicInteger swappedRetries = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final RetryPolicy swapped = new RetryPolicy.Builder()
+            .addBackoffStrategy(StressStrategy.create(swappedRetries, null, 2))
+            .build();
+    private final RxErrorHandingFactory factory = new RxErrorHandingFactory(new RxCallAdapter.Builder()
+            .addBackoffStrategy(StressStrategy.create(initialRetries, null, 2))
+            .build());
+    private final Service service = new Retrofit.Builder()
+            .baseUrl("http://localhost/")
+            .callFactory(new FailingCallFactory(requests))
+            .addCallAdapterFactory(factory)
+            .build()
+            .create(Service.class);
+
+    @Actor
+    public void call() {
+        //the retries are not delayed, so the call fails after its last retry, before it returns
+        service.get().subscribe(new Consumer<ResponseBody>() {
+            @Override
+            public void accept(ResponseBody body) {
+            }
+        }, new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable throwable) {
+                //the call runs out of retries
+            }
+        });
+    }
+
+    @Actor
+    public void swap() {
+        factory.swapRetryPolicy(swapped);
+    }
+
+    @Arbiter
+    public void retries(III_Result result) {
+        result.r1 = initialRetries.get();
+        result.r2 = swappedRetries.get();
+        result.r3 = requests.get();
+    }
+
+    interface Service {
+        @GET("/")
+        Observable<ResponseBody> get();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.stress;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+
+/**
+ * One strategy retries the calls of all subscriptions. Every subscription counts its own retries,
+ * so the calls failing at the same time get all their retries and stop after the last one.
+ * <br>
+ * The results are the retries made by both subscriptions and the calls of the retry action.
+ */
+@JCStressTest
+@Description("Subscriptions retried at the same time by one strategy do not share their retry count.")
+@Outcome(id = "2, 2, 6", expect = Expect.ACCEPTABLE, desc = "Both subscriptions got all their retries.")
+@Outcome(id = "1, 2, 5", expect = Expect.FORBIDDEN, desc = "The first subscription lost a retry.")
+@Outcome(id = "2, 1, 5", expect = Expect.FORBIDDEN, desc = "The second subscription lost a retry.")
+@State
+public class SharedStrategyStressTest {
+    private final AtomicInteger retryActions = new AtomicInteger();
+    private final StressStrategy strategy = StressStrategy.create(retryActions, null, 2);
+
+    @Actor
+    public void firstSubscription(III_Result result) {
+        result.r1 = retry();
+    }
+
+    @Actor
+    public void secondSubscription(III_Result result) {
+        result.r2 = retry();
+    }
+
+    @Arbiter
+    public void retryActions(III_Result result) {
+        result.r3 = retryActions.get();
+    }
+
+    private int retry() {
+        IOException error = new IOException("Stress test");
+        try {
+            //three errors, the last one is passed on after two retries
+            return strategy.apply(Observable.just(error, error, error))
+                    .onErrorResumeNext(Observable.empty())
+                    .count()
+                    .blockingGet()
+                    .intValue();
+        } catch (Exception e) {
+            return -2;
+        }
+    }
+}
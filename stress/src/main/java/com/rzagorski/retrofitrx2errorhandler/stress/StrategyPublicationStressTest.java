@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.stress;
+
+import com.rzagorski.retrofitrx2errorhandler.backoff.strategies.Simple;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+/**
+ * Strategies are handed to other threads without synchronization, e.g. kept in a plain field of the application.
+ * The thread that finds the strategy must see it fully built, even when the builder is changed afterwards.
+ */
+@JCStressTest
+@Description("A strategy published through a data race is seen fully built.")
+@Outcome(id = "-1", expect = Expect.ACCEPTABLE, desc = "The strategy was not published yet.")
+@Outcome(id = "1", expect = Expect.ACCEPTABLE, desc = "The strategy retries the code it was built with.")
+@Outcome(id = "0", expect = Expect.FORBIDDEN, desc = "The strategy was seen with other codes than it was built with.")
+@Outcome(id = "2", expect = Expect.FORBIDDEN, desc = "The strategy was seen partially built.")
+@State
+public class StrategyPublicationStressTest {
+    private final Simple.Builder builder = Simple.init().addHttpCode(503);
+    private Simple strategy;
+
+    @Actor
+    public void build() {
+        strategy = builder.build();
+        builder.addHttpCode(500);
+    }
+
+    @Actor
+    public void use(I_Result result) {
+        Simple seen = strategy;
+        if (seen == null) {
+            result.r1 = -1;
+            return;
+        }
+        try {
+            result.r1 = seen.isApplicable(503) && !seen.isApplicable(500) ? 1 : 0;
+        } catch (RuntimeException e) {
+            result.r1 = 2;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrx2errorhandler.stress;
+
+import com.rzagorski.retrofitrx2errorhandler.backoff.BaseBackoffStrategy;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.BiConsumer;
+
+/**
+ * Retries {@link IOException} and counts the retries, waiting a second on the given scheduler
+ * or retrying immediately, when there is no scheduler.
+ */
+class StressStrategy extends BaseBackoffStrategy {
+    private final Scheduler scheduler;
+    private final int maxRetries;
+
+    private StressStrategy(Builder builder, Scheduler scheduler, int maxRetries) {
+        super(builder);
+        this.scheduler = scheduler;
+        this.maxRetries = maxRetries;
+    }
+
+    static StressStrategy create(final AtomicInteger retries, Scheduler scheduler, int maxRetries) {
+        Builder builder = new Builder()
+                .addThrowable(IOException.class)
+                .setOnRetryAction(new BiConsumer<Throwable, Integer>() {
+                    @Override
+                    public void accept(Throwable throwable, Integer retry) {
+                        retries.incrementAndGet();
+                    }
+                });
+        return new StressStrategy(builder, scheduler, maxRetries);
+    }
+
+    @Override
+    protected Observable<Long> getWaitTime(int retry) {
+        if (scheduler == null) {
+            return Observable.just(0L);
+        }
+        return Observable.timer(1, TimeUnit.SECONDS, scheduler);
+    }
+
+    @Override
+    protected int getMaxRetries() {
+        return maxRetries;
+    }
+}
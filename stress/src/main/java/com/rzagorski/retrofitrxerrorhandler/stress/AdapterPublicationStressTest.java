@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.stress;
+
+import com.rzagorski.retrofiterrorhandler.limit.RateLimit;
+import com.rzagorski.retrofitrxerrorhandler.RxCallAdapter;
+import com.rzagorski.retrofitrxerrorhandler.backoff.strategies.Simple;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The adapter is built once and read by every call. It must not share the lists of its builder,
+ * which can be used to build the next adapter at the same time.
+ */
+@JCStressTest
+@Description("An adapter published through a data race is seen fully built and is not changed by its builder.")
+@Outcome(id = "-1", expect = Expect.ACCEPTABLE, desc = "The adapter was not published yet.")
+@Outcome(id = "1", expect = Expect.ACCEPTABLE, desc = "The adapter has its rate limit and strategy.")
+@Outcome(id = "0", expect = Expect.FORBIDDEN, desc = "The adapter was changed by its builder.")
+@Outcome(id = "2", expect = Expect.FORBIDDEN, desc = "The adapter was seen partially built.")
+@State
+public class AdapterPublicationStressTest {
+    private final RxCallAdapter.Builder builder = new RxCallAdapter.Builder()
+            .addBackoffStrategy(Simple.init().addHttpCode(503).build())
+            .addRateLimit(RateLimit.forEveryHost().setRate(10, 1, TimeUnit.SECONDS).build());
+    private RxCallAdapter adapter;
+
+    @Actor
+    public void build() {
+        adapter = builder.build();
+        builder.addBackoffStrategy(Simple.init().addHttpCode(500).build())
+                .addRateLimit(RateLimit.forEveryHost().setRate(1, 1, TimeUnit.SECONDS).build());
+    }
+
+    @Actor
+    public void use(I_Result result) {
+        RxCallAdapter seen = adapter;
+        if (seen == null) {
+            result.r1 = -1;
+            return;
+        }
+        try {
+            result.r1 = seen.getRateLimits().size() == 1 && seen.getBackoffStrategies().size() == 1 ? 1 : 0;
+        } catch (RuntimeException e) {
+            result.r1 = 2;
+        }
+    }
+}
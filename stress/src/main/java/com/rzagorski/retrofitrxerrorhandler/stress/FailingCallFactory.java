@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.stress;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Makes the calls failing at once with {@link IOException}, so the retries need no server, and counts them.
+ */
+class FailingCallFactory implements Call.Factory {
+    private final AtomicInteger requests;
+
+    FailingCallFactory(AtomicInteger requests) {
+        this.requests = requests;
+    }
+
+    @Override
+    public Call newCall(final Request request) {
+        return new Call() {
+            @Override
+            public Request request() {
+                return request;
+            }
+
+            @Override
+            public Response execute() throws IOException {
+                requests.incrementAndGet();
+                throw new IOException("Stress test");
+            }
+
+            @Override
+            public void enqueue(Callback responseCallback) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void cancel() {
+            }
+
+            @Override
+            public boolean isExecuted() {
+                return false;
+            }
+
+            @Override
+            public boolean isCanceled() {
+                return false;
+            }
+
+            @Override
+            public Call clone() {
+                return newCall(request);
+            }
+        };
+    }
+}
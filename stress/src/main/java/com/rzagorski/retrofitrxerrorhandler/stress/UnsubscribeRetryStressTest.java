@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Robert Zagórski.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rzagorski.retrofitrxerrorhandler.stress;
+
+import com.rzagorski.retrofitrxerrorhandler.RxCallAdapter;
+import com.rzagorski.retrofitrxerrorhandler.RxErrorHandingFactory;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.ResponseBody;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.schedulers.TestScheduler;
+
+/**
+ * The call waits for the retry, when it is unsubscribed. The timer of the backoff strategy fires at the same time,
+ * so the retry is made and fails again, while the call is being unsubscribed.
+ * However it ends, the call must not stay counted as waiting for a retry.
+ * <br>
+ * The results are the number of requests made and the number of calls waiting for a retry.
+ */
+@JCStressTest
+@Description("Unsubscribing the call racing with the timer of the retry does not leak the pending retry.")
+@Outcome(id = "1, 0", expect = Expect.ACCEPTABLE, desc = "The call was unsubscribed before the retry.")
+@Outcome(id = "2, 0", expect = Expect.ACCEPTABLE, desc = "The call was unsubscribed after the retry.")
+@Outcome(id = "1, 1", expect = Expect.FORBIDDEN, desc = "The unsubscribed call waits for the retry.")
+@Outcome(id = "2, 1", expect = Expect.FORBIDDEN, desc = "The failed retry of the unsubscribed call was counted.")
+@State
+public class UnsubscribeRetryStressTest {
+    private final TestScheduler scheduler = new TestScheduler();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final RxErrorHandingFactory factory = new RxErrorHandingFactory(new RxCallAdapter.Builder()
+            .addBackoffStrategy(StressStrategy.create(new AtomicInteger(), scheduler, 3))
+            .build());
+    private final Subscription subscription;
+
+    public UnsubscribeRetryStressTest() {
+        Service service = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .callFactory(new FailingCallFactory(requests))
+                .addCallAdapterFactory(factory)
+                .build()
+                .create(Service.class);
+        //the first attempt fails at once and the retry waits for the timer
+        subscription = service.get().subscribe(new Action1<ResponseBody>() {
+            @Override
+            public void call(ResponseBody body) {
+            }
+        }, new Action1<Throwable>() {
+            @Override
+            public void call(Throwable throwable) {
+                //the call is unsubscribed, before it runs out of retries
+            }
+        });
+    }
+
+    @Actor
+    public void fireTimer() {
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+    }
+
+    @Actor
+    public void unsubscribe() {
+        subscription.unsubscribe();
+    }
+
+    @Arbiter
+    public void pending(II_Result result) {
+        result.r1 = requests.get();
+        result.r2 = factory.getPendingRetryCount();
+    }
+
+    interface Service {
+        @GET("/")
+        Observable<ResponseBody> get();
+    }
+}